@@ -0,0 +1,107 @@
+package com.langdong.spare.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FaultPredictionEngine 设备群批量评分与逐设备 List 接口的 JMH 基准（1k / 10k / 100k 台设备）
+ *
+ * 不参与单元测试，仅在 benchmark profile 下编译运行：
+ * <pre>
+ *   mvn -Pbenchmark test-compile exec:exec
+ *   mvn -Pbenchmark test-compile exec:exec -Djmh.args="FaultPredictionEngineBenchmark -p devices=10000 -f 1"
+ * </pre>
+ *
+ * 两条路径输入相同（每台设备 13 个月，含健康分缺月与历史不足设备）：
+ *   - fleet：一次 scoreFleet 读取列式矩阵，写入预分配输出
+ *   - list：逐设备装箱为 List 后调用单设备接口（原 predictSingleDevice 的计算路径）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaultPredictionEngineBenchmark {
+
+    private static final int MONTHS = 13;
+    private static final int PREDICTION_DAYS = 90;
+
+    @Param({"1000", "10000", "100000"})
+    public int devices;
+
+    private FaultPredictionEngine.FleetMatrix matrix;
+    private FaultPredictionEngine.FleetScores scores;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom rng = new SplittableRandom(20260518L);
+        matrix = new FaultPredictionEngine.FleetMatrix(devices, MONTHS);
+        scores = new FaultPredictionEngine.FleetScores(devices);
+        for (int d = 0; d < devices; d++) {
+            int n = d % 17 == 0 ? 4 : 6 + rng.nextInt(MONTHS - 5);
+            int base = d * MONTHS;
+            double health = 60 + rng.nextDouble() * 40;
+            for (int i = 0; i < n; i++) {
+                matrix.runHours[base + i] = rng.nextDouble() * 720;
+                matrix.faultCounts[base + i] = rng.nextInt(5);
+                matrix.mtbf[base + i] = rng.nextInt(4) == 0 ? 9999.0 : 50 + rng.nextDouble() * 1500;
+                health -= rng.nextDouble() * 4;
+                matrix.healthScores[base + i] = rng.nextInt(6) == 0 ? Double.NaN : health;
+            }
+            matrix.monthCounts[d] = n;
+        }
+    }
+
+    @Benchmark
+    public int fleet() {
+        return FaultPredictionEngine.scoreFleet(matrix, devices, PREDICTION_DAYS, scores);
+    }
+
+    @Benchmark
+    public void list(Blackhole bh) {
+        for (int d = 0; d < devices; d++) {
+            int n = matrix.monthCounts[d];
+            if (!FaultPredictionEngine.hasEnoughHistoryData(n)) {
+                continue;
+            }
+            int base = d * matrix.stride;
+            List<Double> runHours = new ArrayList<>(n);
+            List<Integer> faults = new ArrayList<>(n);
+            List<Double> mtbf = new ArrayList<>(n);
+            List<Double> health = new ArrayList<>(n);
+            for (int i = base; i < base + n; i++) {
+                runHours.add(matrix.runHours[i]);
+                faults.add(matrix.faultCounts[i]);
+                mtbf.add(matrix.mtbf[i]);
+                if (!Double.isNaN(matrix.healthScores[i])) {
+                    health.add(matrix.healthScores[i]);
+                }
+            }
+            double avgRunHours = FaultPredictionEngine.calcAvgRunHours(runHours);
+            double freq = FaultPredictionEngine.calcFaultFrequency(faults);
+            double avgMtbf = FaultPredictionEngine.calcAvgMTBF(mtbf);
+            double deterioration = FaultPredictionEngine.calcDeteriorationRate(health);
+            int expected = FaultPredictionEngine.predictExpectedFaults(freq, PREDICTION_DAYS);
+            bh.consume(FaultPredictionEngine.predictFailureProbability(avgRunHours, freq, avgMtbf, deterioration));
+            bh.consume(FaultPredictionEngine.calcConfidenceIntervalLower(expected));
+            bh.consume(FaultPredictionEngine.calcConfidenceIntervalUpper(expected));
+            bh.consume(FaultPredictionEngine.calcFeatureImportance(avgRunHours, freq, avgMtbf, deterioration));
+        }
+    }
+}
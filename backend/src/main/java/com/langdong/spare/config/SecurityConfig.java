@@ -24,11 +24,7 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import com.langdong.spare.entity.User;
-import com.langdong.spare.entity.Menu;
-import com.langdong.spare.mapper.UserMapper;
-import com.langdong.spare.mapper.MenuMapper;
+import com.langdong.spare.service.UserAuthorityCache;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -77,7 +73,7 @@ public class SecurityConfig {
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http, JwtUtil jwtUtil,
-            UserMapper userMapper, MenuMapper menuMapper) throws Exception {
+            UserAuthorityCache userAuthorityCache) throws Exception {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(csrf -> csrf.disable())
@@ -89,12 +85,13 @@ public class SecurityConfig {
                     .requestMatchers(HttpMethod.POST, "/api/python/callback/weekly").permitAll()
                     .requestMatchers("/internal/ai/**").permitAll()
                         .anyRequest().authenticated())
-                .addFilterBefore(jwtFilter(jwtUtil, userMapper, menuMapper),
+                .addFilterBefore(jwtFilter(jwtUtil, userAuthorityCache),
                         UsernamePasswordAuthenticationFilter.class);
         return http.build();
     }
 
-    private OncePerRequestFilter jwtFilter(JwtUtil jwtUtil, UserMapper userMapper, MenuMapper menuMapper) {
+    // 用户状态与权限取自 UserAuthorityCache，稳态下鉴权不访问数据库
+    private OncePerRequestFilter jwtFilter(JwtUtil jwtUtil, UserAuthorityCache userAuthorityCache) {
         return new OncePerRequestFilter() {
             @Override
             protected void doFilterInternal(HttpServletRequest req,
@@ -103,17 +100,12 @@ public class SecurityConfig {
                 String header = req.getHeader("Authorization");
                 if (StringUtils.hasText(header) && header.startsWith("Bearer ")) {
                     String token = header.substring(7);
-                    if (jwtUtil.validate(token)) {
-                        String username = jwtUtil.getUsername(token);
-                        User user = userMapper.findByUsername(username);
-                        if (user != null && user.getStatus() == 1) {
-                            List<Menu> menus = menuMapper.findMenusByUserId(user.getId());
-                            List<SimpleGrantedAuthority> authorities = menus.stream()
-                                    .filter(m -> m.getPermission() != null && !m.getPermission().isEmpty())
-                                    .map(m -> new SimpleGrantedAuthority(m.getPermission()))
-                                    .toList();
+                    String username = jwtUtil.resolveUsername(token);
+                    if (username != null) {
+                        UserAuthorityCache.AuthorityEntry entry = userAuthorityCache.resolve(username);
+                        if (entry != null && entry.enabled()) {
                             UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(username,
-                                    null, authorities);
+                                    null, entry.authorities());
                             SecurityContextHolder.getContext().setAuthentication(auth);
                         }
                     }
@@ -3,6 +3,7 @@ package com.langdong.spare.controller;
 import com.langdong.spare.dto.DeviceHealthVO;
 import com.langdong.spare.dto.HealthDashboardVO;
 import com.langdong.spare.entity.DeviceHealth;
+import com.langdong.spare.entity.HealthConfig;
 import com.langdong.spare.service.DeviceHealthService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -24,6 +25,13 @@ import java.util.Map;
  *   GET  /api/phm/health/ranking                风险设备排行榜
  *   GET  /api/phm/health/dashboard              健康监控仪表盘
  *   POST /api/phm/health/batch-evaluate         手动触发批量评估
+ *   GET  /api/phm/health/config                 查询健康配置
+ *   POST /api/phm/health/config                 新增健康配置
+ *   PUT  /api/phm/health/config/{id}            修改健康配置
+ *   DELETE /api/phm/health/config/{id}          删除健康配置
+ *   GET  /api/phm/health/config/stats           配置缓存命中统计
+ *
+ * 配置的新增/修改/删除需要 phm:health:config 权限（与触发评估的 phm:health:evaluate 分开授权）
  */
 @RestController
 @RequestMapping("/api/phm/health")
@@ -225,4 +233,109 @@ public class HealthController {
         response.put("data", latestHealth);
         return ResponseEntity.ok(response);
     }
+
+    // ================================================================
+    // /api/phm/health/config — 健康配置管理（修改后立即刷新配置缓存）
+    // ================================================================
+
+    /**
+     * 查询全部健康配置
+     *
+     * @return 配置列表
+     */
+    @GetMapping("/config")
+    @PreAuthorize("hasAuthority('phm:health:view')")
+    public ResponseEntity<Map<String, Object>> listConfigs() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "查询成功");
+        response.put("data", deviceHealthService.listHealthConfigs());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 新增健康配置
+     *
+     * @param config 配置内容
+     * @return 新配置ID
+     */
+    @PostMapping("/config")
+    @PreAuthorize("hasAuthority('phm:health:config')")
+    public ResponseEntity<Map<String, Object>> createConfig(@RequestBody HealthConfig config) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Long id = deviceHealthService.createHealthConfig(config);
+            response.put("code", 200);
+            response.put("message", "新增成功");
+            response.put("data", id);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("code", 400);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 修改健康配置（只需提交要修改的字段，未提交的字段保持原值）
+     *
+     * @param id     配置ID
+     * @param config 配置内容
+     * @return 修改结果
+     */
+    @PutMapping("/config/{id}")
+    @PreAuthorize("hasAuthority('phm:health:config')")
+    public ResponseEntity<Map<String, Object>> updateConfig(@PathVariable Long id, @RequestBody HealthConfig config) {
+        config.setId(id);
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (!deviceHealthService.updateHealthConfig(config)) {
+                response.put("code", 404);
+                response.put("message", "配置不存在");
+                return ResponseEntity.status(404).body(response);
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("code", 400);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        response.put("code", 200);
+        response.put("message", "修改成功");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 删除健康配置
+     *
+     * @param id 配置ID
+     * @return 删除结果
+     */
+    @DeleteMapping("/config/{id}")
+    @PreAuthorize("hasAuthority('phm:health:config')")
+    public ResponseEntity<Map<String, Object>> deleteConfig(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        if (!deviceHealthService.deleteHealthConfig(id)) {
+            response.put("code", 404);
+            response.put("message", "配置不存在");
+            return ResponseEntity.status(404).body(response);
+        }
+        response.put("code", 200);
+        response.put("message", "删除成功");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 查询健康配置缓存命中统计
+     *
+     * @return 配置条数、加载时间、命中/未命中次数、刷新次数
+     */
+    @GetMapping("/config/stats")
+    @PreAuthorize("hasAuthority('phm:health:view')")
+    public ResponseEntity<Map<String, Object>> getConfigStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "查询成功");
+        response.put("data", deviceHealthService.getHealthConfigStats());
+        return ResponseEntity.ok(response);
+    }
 }
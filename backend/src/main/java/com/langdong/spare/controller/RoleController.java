@@ -3,6 +3,7 @@ package com.langdong.spare.controller;
 import com.langdong.spare.entity.Role;
 import com.langdong.spare.mapper.RoleMapper;
 import com.langdong.spare.mapper.RoleMenuMapper;
+import com.langdong.spare.service.UserAuthorityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -23,6 +24,9 @@ public class RoleController {
     @Autowired
     private RoleMenuMapper roleMenuMapper;
 
+    @Autowired
+    private UserAuthorityCache userAuthorityCache;
+
     @GetMapping
     @PreAuthorize("hasAuthority('sys:role:list')")
     public ResponseEntity<List<Role>> list() {
@@ -49,6 +53,7 @@ public class RoleController {
     public ResponseEntity<?> delete(@PathVariable Long id) {
         roleMenuMapper.deleteByRoleId(id);
         roleMapper.deleteById(id);
+        userAuthorityCache.invalidateAll();
         return ResponseEntity.ok().build();
     }
 
@@ -71,6 +76,8 @@ public class RoleController {
                 roleMenuMapper.insert(id, ((Number) menuIdObj).longValue());
             }
         }
+        // 角色权限变化影响该角色下全部用户，整体失效权限缓存（事务提交后生效）
+        userAuthorityCache.invalidateAll();
         return ResponseEntity.ok().build();
     }
 }
@@ -3,6 +3,7 @@ package com.langdong.spare.controller;
 import com.langdong.spare.entity.User;
 import com.langdong.spare.mapper.UserMapper;
 import com.langdong.spare.mapper.UserRoleMapper;
+import com.langdong.spare.service.UserAuthorityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -26,6 +27,9 @@ public class UserController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserAuthorityCache userAuthorityCache;
+
     @GetMapping
     @PreAuthorize("hasAuthority('sys:user:list')")
     public ResponseEntity<List<User>> list() {
@@ -84,6 +88,7 @@ public class UserController {
             user.setPassword(null);
         }
         userMapper.update(user);
+        userAuthorityCache.invalidateUser(id);
         return ResponseEntity.ok(user);
     }
 
@@ -92,6 +97,7 @@ public class UserController {
     public ResponseEntity<?> delete(@PathVariable Long id) {
         userRoleMapper.deleteByUserId(id);
         userMapper.deleteById(id);
+        userAuthorityCache.invalidateUser(id);
         return ResponseEntity.ok().build();
     }
 
@@ -112,6 +118,7 @@ public class UserController {
                 userRoleMapper.insert(id, ((Number) roleIdObj).longValue());
             }
         }
+        userAuthorityCache.invalidateUser(id);
         return ResponseEntity.ok().build();
     }
 }
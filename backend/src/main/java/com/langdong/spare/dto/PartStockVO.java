@@ -0,0 +1,17 @@
+package com.langdong.spare.dto;
+
+import lombok.Data;
+
+/**
+ * 备件当前可用库存视图对象
+ * 用于补货建议批量比对 ROP（优先仓储总台账，兜底物理库存）
+ */
+@Data
+public class PartStockVO {
+
+    /** 备件编码（对应 spare_part.code） */
+    private String partCode;
+
+    /** 当前可用库存 */
+    private Integer quantity;
+}
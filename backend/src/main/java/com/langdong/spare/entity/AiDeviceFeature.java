@@ -42,4 +42,9 @@ public class AiDeviceFeature {
 
     /** 最近一次重大故障日期 */
     private LocalDate lastMajorFaultDate;
+
+    // ---- 联查字段（非表字段）----
+
+    /** 当月平均健康评分（联查 ai_device_health，仅故障预测加载时填充，无评估记录为 null） */
+    private BigDecimal healthScore;
 }
@@ -0,0 +1,40 @@
+package com.langdong.spare.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * PHM设备输入水位实体
+ * 对应数据库表：ai_phm_watermark
+ *
+ * 记录设备上次成功评估时消费到的输入位置（特征月份与摘要、工单ID、领用单ID、配置版本、所在月份），
+ * 与当前输入逐项比对即可判断设备是否需要重新评估
+ */
+@Data
+public class PhmWatermark {
+
+    /** 设备ID（主键，关联 equipment.id） */
+    private Long deviceId;
+
+    /** 最新特征月份（yyyy-MM） */
+    private String featureMonth;
+
+    /** 回看窗口内特征行摘要（CRC32） */
+    private Long featureDigest;
+
+    /** 最大工单ID */
+    private Long lastWorkOrderId;
+
+    /** 最大领用单ID */
+    private Long lastRequisitionId;
+
+    /** 健康配置版本 */
+    private Long configVersion;
+
+    /** 评估时所在月份（yyyy-MM） */
+    private String windowMonth;
+
+    /** 更新时间 */
+    private LocalDateTime updatedAt;
+}
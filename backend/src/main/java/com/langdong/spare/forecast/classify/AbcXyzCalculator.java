@@ -130,14 +130,34 @@ public final class AbcXyzCalculator {
         if (monthlyDemands == null || monthlyDemands.isEmpty()) {
             return Double.MAX_VALUE;
         }
-        double mean = monthlyDemands.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+        double[] xs = new double[monthlyDemands.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = monthlyDemands.get(i);
+        }
+        return cv2(xs, 0, xs.length);
+    }
+
+    /**
+     * 基于原始数组片段 {@code xs[from .. from+len)} 计算 CV²（口径同 {@link #cv2(List)}，免装箱）。
+     */
+    public static double cv2(double[] xs, int from, int len) {
+        if (len <= 0) {
+            return Double.MAX_VALUE;
+        }
+        double sum = 0.0;
+        for (int i = from; i < from + len; i++) {
+            sum += xs[i];
+        }
+        double mean = sum / len;
         if (mean <= 0) {
             return Double.MAX_VALUE;
         }
-        double variance = monthlyDemands.stream()
-                .mapToDouble(d -> (d - mean) * (d - mean))
-                .average().orElse(0.0);
-        return variance / (mean * mean);
+        double ss = 0.0;
+        for (int i = from; i < from + len; i++) {
+            double d = xs[i] - mean;
+            ss += d * d;
+        }
+        return (ss / len) / (mean * mean);
     }
 
     /**
@@ -181,29 +201,45 @@ public final class AbcXyzCalculator {
         double[] crit = new double[n];
         double[] lead = new double[n];
         double[] repl = new double[n];
+        double[] cv2Arr = new double[n];
         for (int i = 0; i < n; i++) {
             PartInput in = inputs.get(i);
             cost[i] = in.annualCost();
             crit[i] = in.criticalityRaw();
             lead[i] = in.leadTimeRaw();
             repl[i] = in.replaceDiffRaw();
+            cv2Arr[i] = cv2(in.monthlyDemands());
         }
 
+        Classification[] classified = classifyAll(cost, crit, lead, repl, cv2Arr, cfg);
+        for (int i = 0; i < n; i++) {
+            result.put(inputs.get(i).partCode(), classified[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 批量分类的列式核心：输入为按备件下标对齐的原始数组（CV² 由调用方预先算好），
+     * 供滚动多月分类等高频场景复用，免去 {@link PartInput} 与月度序列的装箱开销。
+     *
+     * @return 与输入下标对齐的分类结果
+     */
+    public static Classification[] classifyAll(double[] cost, double[] crit, double[] lead, double[] repl,
+                                               double[] cv2Arr, ForecastProperties.Classify cfg) {
+        int n = cost.length;
         double[] nCost = minMax(cost);
         double[] nCrit = minMax(crit);
         double[] nLead = minMax(lead);
         double[] nRepl = minMax(repl);
 
-        // composite_score（[0,1]）与 CV²
+        // composite_score（[0,1]）
         double[] composite = new double[n];
-        double[] cv2Arr = new double[n];
         double totalComposite = 0.0;
         for (int i = 0; i < n; i++) {
             composite[i] = nCost[i] * cfg.getWeightAnnualCost()
                     + nCrit[i] * cfg.getWeightCriticality()
                     + nLead[i] * cfg.getWeightLeadTime()
                     + nRepl[i] * cfg.getWeightReplaceDiff();
-            cv2Arr[i] = cv2(inputs.get(i).monthlyDemands());
             totalComposite += composite[i];
         }
 
@@ -233,10 +269,11 @@ public final class AbcXyzCalculator {
             }
         }
 
+        Classification[] result = new Classification[n];
         for (int i = 0; i < n; i++) {
             String xyz = xyzClass(cv2Arr[i], cfg);
-            result.put(inputs.get(i).partCode(), new Classification(
-                    abc[i], xyz, abcCode(abc[i]), xyzCode(xyz), composite[i], cv2Arr[i], cost[i]));
+            result[i] = new Classification(
+                    abc[i], xyz, abcCode(abc[i]), xyzCode(xyz), composite[i], cv2Arr[i], cost[i]);
         }
         return result;
     }
@@ -1,22 +1,25 @@
 package com.langdong.spare.forecast.classify;
 
-import com.langdong.spare.dto.MonthlyConsumptionVO;
 import com.langdong.spare.entity.SparePart;
 import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshot;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.forecast.feature.MonthSeries;
+import com.langdong.spare.forecast.feature.MonthlyConsumptionMatrix;
 import com.langdong.spare.forecast.feature.MonthlyClassCodeProvider;
-import com.langdong.spare.mapper.SparePartMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ABC×XYZ 批量分类器（模块 A，服务两阶段预测特征）。
@@ -37,11 +40,14 @@ public class AbcXyzClassifier {
     /** 年消耗金额与 CV² 的回看窗口（月）。年消耗金额按滚动 12 个月口径。 */
     private static final int WINDOW_MONTHS = 12;
 
-    private final SparePartMapper sparePartMapper;
+    /** 无消耗记录备件的窗口序列（全 0）。 */
+    private static final double[] ZERO_WINDOW = new double[WINDOW_MONTHS];
+
+    private final ConsumptionSnapshotProvider snapshotProvider;
     private final ForecastProperties props;
 
-    public AbcXyzClassifier(SparePartMapper sparePartMapper, ForecastProperties props) {
-        this.sparePartMapper = sparePartMapper;
+    public AbcXyzClassifier(ConsumptionSnapshotProvider snapshotProvider, ForecastProperties props) {
+        this.snapshotProvider = snapshotProvider;
         this.props = props;
     }
 
@@ -53,54 +59,27 @@ public class AbcXyzClassifier {
      */
     public Map<String, AbcXyzCalculator.Classification> classifyAsOf(String asOfMonth) {
         YearMonth asOf = YearMonth.parse(asOfMonth);
-        List<SparePart> parts = sparePartMapper.findAllForClassify();
-        if (parts == null || parts.isEmpty()) {
+        ConsumptionSnapshot snapshot = snapshotProvider.acquire(asOf.minusMonths(WINDOW_MONTHS), asOf);
+        List<SparePart> parts = snapshot.parts();
+        if (parts.isEmpty()) {
             return new LinkedHashMap<>();
         }
 
-        // 窗口月份集合：严格早于 asOfMonth 的最近 12 个月
-        List<String> windowMonths = new ArrayList<>(WINDOW_MONTHS);
-        for (int i = WINDOW_MONTHS; i >= 1; i--) {
-            windowMonths.add(asOf.minusMonths(i).toString());
-        }
-
-        // 一次性加载窗口内消耗（fromMonth 为窗口最早月的 1 号）
-        String fromMonth = asOf.minusMonths(WINDOW_MONTHS).atDay(1)
-                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        List<MonthlyConsumptionVO> consumption = sparePartMapper.findAllMonthlyConsumption(fromMonth);
-
-        // partCode -> (month -> qty)，仅保留窗口内月份（防泄露：丢弃 >= asOfMonth 的月份）
-        Map<String, Map<String, Double>> byPart = new HashMap<>();
-        if (consumption != null) {
-            for (MonthlyConsumptionVO vo : consumption) {
-                if (vo == null || vo.getPartCode() == null || vo.getMonth() == null) {
-                    continue;
-                }
-                YearMonth m;
-                try {
-                    m = YearMonth.parse(vo.getMonth());
-                } catch (Exception ex) {
-                    continue;
-                }
-                if (!m.isBefore(asOf)) {
-                    continue; // 丢弃 >= asOfMonth 的数据
-                }
-                double qty = vo.getQty() == null ? 0.0 : vo.getQty();
-                byPart.computeIfAbsent(vo.getPartCode(), k -> new HashMap<>()).put(vo.getMonth(), qty);
-            }
-        }
+        // 共享快照中只读取窗口 [asOf-12, asOf) 内消耗（防泄露：不触及 >= asOfMonth 的月份）
+        MonthlyConsumptionMatrix consumption = snapshot.consumption();
+        int firstIndex = MonthSeries.indexOf(asOf.minusMonths(WINDOW_MONTHS));
 
         // 组装计算输入
         List<AbcXyzCalculator.PartInput> inputs = new ArrayList<>(parts.size());
         for (SparePart part : parts) {
             String code = part.getCode();
-            Map<String, Double> mq = byPart.getOrDefault(code, new HashMap<>());
+            int row = consumption.rowOf(code);
 
             // 窗口内月度序列（缺失月补 0）
             List<Double> series = new ArrayList<>(WINDOW_MONTHS);
             double sum = 0.0;
-            for (String wm : windowMonths) {
-                double q = mq.getOrDefault(wm, 0.0);
+            for (int m = 0; m < WINDOW_MONTHS; m++) {
+                double q = consumption.at(row, firstIndex + m);
                 series.add(q);
                 sum += q;
             }
@@ -124,10 +103,11 @@ public class AbcXyzClassifier {
     /**
      * 返回带缓存的分类码提供者：每个不同的 asOfMonth 仅计算一次。
      *
-     * <p>用于 FeatureBuilder 批量构造跨月训练矩阵，避免同月重复全量分类。</p>
+     * <p>用于 FeatureBuilder 批量构造跨月训练矩阵，避免同月重复全量分类。缓存线程安全，
+     * 可被并行重算的多个 worker 共享（同月并发未命中时只计算一次）。</p>
      */
     public MonthlyClassCodeProvider codeProviderWithCache() {
-        final Map<String, Map<String, AbcXyzCalculator.Classification>> cache = new HashMap<>();
+        final Map<String, Map<String, AbcXyzCalculator.Classification>> cache = new ConcurrentHashMap<>();
         return (partCode, asOfMonth) -> {
             Map<String, AbcXyzCalculator.Classification> monthMap =
                     cache.computeIfAbsent(asOfMonth, this::classifyAsOf);
@@ -139,6 +119,153 @@ public class AbcXyzClassifier {
         };
     }
 
+    /**
+     * 滚动多月分类：一次性加载备件档案与消耗历史，在内存中逐月滑动 12 个月窗口，
+     * 计算 [firstAsOfMonth, lastAsOfMonth] 内每个截止月的分类编码。
+     *
+     * <p>相比 {@link #codeProviderWithCache()} 每个未命中月份各做一次全量分类，
+     * 本方法整个区间只取一次共享消耗快照；窗口消耗和按月 O(1) 增量滑动，CV² 直接在原始数组片段上计算。
+     * 每个截止月的口径与 {@link #classifyAsOf(String)} 完全一致（窗口 [asOf-12, asOf)，防泄露）。
+     * 区间外的月份回退到按月缓存的逐月分类。</p>
+     *
+     * @param firstAsOfMonth 区间首个截止月（yyyy-MM）
+     * @param lastAsOfMonth  区间最后一个截止月（yyyy-MM，含）
+     */
+    public MonthlyClassCodeProvider rollingCodeProvider(String firstAsOfMonth, String lastAsOfMonth) {
+        YearMonth first = YearMonth.parse(firstAsOfMonth);
+        YearMonth last = YearMonth.parse(lastAsOfMonth);
+        if (last.isBefore(first)) {
+            throw new IllegalArgumentException("滚动分类区间非法: " + firstAsOfMonth + " ~ " + lastAsOfMonth);
+        }
+        MonthlyClassCodeProvider fallback = codeProviderWithCache();
+        // 矩阵覆盖 [base, last)：最后一个截止月的窗口末月为 last-1
+        YearMonth base = first.minusMonths(WINDOW_MONTHS);
+        ConsumptionSnapshot snapshot = snapshotProvider.acquire(base, last);
+        List<SparePart> parts = snapshot.parts();
+        if (parts.isEmpty()) {
+            return fallback;
+        }
+
+        long start = System.currentTimeMillis();
+        int n = parts.size();
+        int asOfCount = (int) ChronoUnit.MONTHS.between(first, last) + 1;
+
+        Map<String, Integer> index = new HashMap<>(n * 2);
+        double[] price = new double[n];
+        double[] crit = new double[n];
+        double[] lead = new double[n];
+        double[] repl = new double[n];
+        for (int i = 0; i < n; i++) {
+            SparePart part = parts.get(i);
+            index.put(part.getCode(), i);
+            price[i] = priceToDouble(part.getPrice());
+            crit[i] = (part.getIsCritical() != null && part.getIsCritical() == 1) ? 1.0 : 0.0;
+            lead[i] = part.getLeadTime() != null ? part.getLeadTime() : 0.0;
+            repl[i] = part.getReplaceDiff() != null ? part.getReplaceDiff() : 3.0;
+        }
+
+        // 共享快照的 备件行 × 月份 消耗矩阵（行主序）；rowOffset 指向各备件行内 base 月所在位置，
+        // 滑动窗口只读取 [base, last) 内月份
+        MonthlyConsumptionMatrix consumption = snapshot.consumption();
+        double[] demand = consumption.values();
+        int shift = MonthSeries.indexOf(base) - consumption.baseIndex();
+        int[] rowOffset = new int[n];
+        for (int i = 0; i < n; i++) {
+            int row = consumption.rowOf(parts.get(i).getCode());
+            rowOffset[i] = row < 0 ? -1 : consumption.offset(row) + shift;
+        }
+
+        // 初始窗口和：首个截止月的窗口 [0, 12)
+        double[] windowSum = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int m = 0; m < WINDOW_MONTHS && rowOffset[i] >= 0; m++) {
+                windowSum[i] += demand[rowOffset[i] + m];
+            }
+        }
+
+        byte[][] packed = new byte[asOfCount][];
+        double[] cost = new double[n];
+        double[] cv2 = new double[n];
+        for (int t = 0; t < asOfCount; t++) {
+            for (int i = 0; i < n; i++) {
+                cost[i] = price[i] * windowSum[i];
+                cv2[i] = rowOffset[i] < 0
+                        ? AbcXyzCalculator.cv2(ZERO_WINDOW, 0, WINDOW_MONTHS)
+                        : AbcXyzCalculator.cv2(demand, rowOffset[i] + t, WINDOW_MONTHS);
+            }
+            AbcXyzCalculator.Classification[] monthResult =
+                    AbcXyzCalculator.classifyAll(cost, crit, lead, repl, cv2, props.getClassify());
+            byte[] codes = new byte[n];
+            for (int i = 0; i < n; i++) {
+                codes[i] = (byte) ((monthResult[i].abcCode() << 2) | monthResult[i].xyzCode());
+            }
+            packed[t] = codes;
+
+            // 窗口右移一个月：加入新月、移出最旧月
+            if (t + 1 < asOfCount) {
+                for (int i = 0; i < n; i++) {
+                    int row = rowOffset[i];
+                    if (row >= 0) {
+                        windowSum[i] += demand[row + t + WINDOW_MONTHS] - demand[row + t];
+                    }
+                }
+            }
+        }
+
+        log.info("[ABC×XYZ] 滚动分类完成: {} ~ {}，共 {} 个截止月，备件数={}，耗时={} ms",
+                firstAsOfMonth, lastAsOfMonth, asOfCount, n, System.currentTimeMillis() - start);
+        return new RollingCodeProvider(first, packed, index, fallback);
+    }
+
+    /**
+     * 滚动分类结果的只读视图：按 (截止月下标, 备件下标) 存放打包的分类编码（ABC_code &lt;&lt; 2 | XYZ_code）。
+     * 构造后不可变，可被多个 worker 并发读取。
+     */
+    private static final class RollingCodeProvider implements MonthlyClassCodeProvider {
+        /** 共享只读编码数组：CODES[abc][xyz]，避免逐样本分配。 */
+        private static final int[][][] CODES = new int[4][4][];
+
+        static {
+            for (int a = 0; a < 4; a++) {
+                for (int x = 0; x < 4; x++) {
+                    CODES[a][x] = new int[]{a, x};
+                }
+            }
+        }
+
+        private final int firstIndex;
+        private final byte[][] packed;
+        private final Map<String, Integer> index;
+        private final MonthlyClassCodeProvider fallback;
+
+        RollingCodeProvider(YearMonth first, byte[][] packed, Map<String, Integer> index,
+                            MonthlyClassCodeProvider fallback) {
+            this.firstIndex = MonthSeries.indexOf(first);
+            this.packed = packed;
+            this.index = index;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public int[] codesAsOf(String partCode, String asOfMonth) {
+            return codesAsOf(partCode, MonthSeries.indexOf(YearMonth.parse(asOfMonth)));
+        }
+
+        @Override
+        public int[] codesAsOf(String partCode, int asOfMonthIndex) {
+            int t = asOfMonthIndex - firstIndex;
+            if (t < 0 || t >= packed.length) {
+                return fallback.codesAsOf(partCode, MonthSeries.monthOf(asOfMonthIndex));
+            }
+            Integer i = index.get(partCode);
+            if (i == null) {
+                return CODES[1][3]; // 默认 C/Z
+            }
+            int code = packed[t][i];
+            return CODES[code >> 2][code & 0x3];
+        }
+    }
+
     /** 便捷：将 BigDecimal 价格安全转 double（供外部复用）。 */
     static double priceToDouble(BigDecimal price) {
         return price == null ? 0.0 : price.doubleValue();
@@ -3,6 +3,9 @@ package com.langdong.spare.forecast.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * 需求预测与安全库存总配置。
  *
@@ -26,9 +29,117 @@ public class ForecastProperties {
     /** 是否开启增量快照训练优化（月初重算时避开无新领用的备件，默认开启）。 */
     private boolean incrementalEnabled = true;
 
+    /**
+     * 特征加载是否采用批量流式模式（默认开启）：一次流式读取全部设备↔备件关联与窗口期设备特征，
+     * 在内存中关联；关闭后回退为逐备件查询关联设备与特征的旧路径。
+     */
+    private boolean bulkFeatureLoad = true;
+
+    /**
+     * 共享消耗快照的数据水位复核间隔（毫秒，默认 30 秒）：间隔内直接复用快照，超过后查询一次水位，
+     * 水位变化才重新加载。本进程出库会立即使快照失效，不受此间隔限制。
+     */
+    private long consumptionSnapshotCheckMs = 30_000L;
+
     /** 模型训练快照文件保存基目录（支持相对/绝对路径）。 */
     private String modelBaseDir = "target/models/";
 
+    /**
+     * 两阶段模型训练粒度：PER_PART 为每个备件独立训练一套模型（默认）；
+     * GLOBAL 汇集全部备件样本训练一套全局模型并批量推理。
+     */
+    private ModelMode modelMode = ModelMode.PER_PART;
+
+    /** 按备件分片的并行重算参数。 */
+    private Parallel parallel = new Parallel();
+
+    /** 预测/分类结果分批落库参数。 */
+    private Persist persist = new Persist();
+
+    /**
+     * 两阶段模型训练粒度。
+     */
+    public enum ModelMode {
+        /** 每个备件独立训练（产物位于 {@code <version>/<partCode>}）。 */
+        PER_PART,
+        /** 全部备件汇集样本训练一个全局模型（产物位于 {@code <version>/_global}）。 */
+        GLOBAL
+    }
+
+    /**
+     * 月度重算并行执行配置。
+     *
+     * <p>开启后各备件的「样本构造 → 训练 → 推理 → 蒙特卡洛」作为独立任务分发到有界工作线程池；
+     * 每个 worker 内 XGBoost 的 nthread 按 CPU 核数统一分配，避免 worker × nthread 超订。</p>
+     */
+    @Data
+    public static class Parallel {
+        /** 是否开启并行重算（默认关闭，保持原串行行为）。 */
+        private boolean enabled = false;
+        /** 并行 worker 数；≤0 时取可用 CPU 核数。 */
+        private int workers = 0;
+        /**
+         * 确定性模式：串行与并行重算的 XGBoost nthread 均固定为 {@link #xgbThreadsPerWorker}，与 worker 数无关，
+         * 保证相同种子下串行与不同并行度的输出完全一致。关闭时并行 nthread = max(1, 核数 / workers)，
+         * 串行沿用 {@code xgboost.nthread}。
+         */
+        private boolean deterministic = true;
+        /** 确定性模式下每个 worker 内 XGBoost 的 nthread。 */
+        private int xgbThreadsPerWorker = 1;
+
+        /** 解析实际 worker 数（不超过待处理备件数）。 */
+        public int resolveWorkers(int taskCount) {
+            int w = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+            return Math.max(1, Math.min(w, Math.max(1, taskCount)));
+        }
+
+        /** 解析每个 worker 内 XGBoost 的 nthread。 */
+        public int resolveXgbThreads(int resolvedWorkers) {
+            if (deterministic) {
+                return Math.max(1, xgbThreadsPerWorker);
+            }
+            return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, resolvedWorkers));
+        }
+    }
+
+    /**
+     * 月度重算结果落库配置。
+     *
+     * <p>预测结果与分类结果按 {@link #batchSize} 分批写入，每批一条多行 INSERT，
+     * 单条语句大小与备件总数无关，不受 max_allowed_packet 限制。重算不持有长事务，
+     * 删除正式表旧结果与写入新结果只在最后一个短事务内进行。</p>
+     *
+     * <p>默认 STAGING 模式依赖暂存表，部署时须先执行 {@code sql/forecast_staging_migration.sql}。</p>
+     */
+    @Data
+    public static class Persist {
+        /** 每批写入行数（同时是按备件编码分段删除的编码数）；≤0 时取 500。 */
+        private int batchSize = 500;
+        /** 落库模式，默认 STAGING（内存占用与备件总数无关）。 */
+        private Mode mode = Mode.STAGING;
+
+        /** 解析实际批大小。 */
+        public int resolveBatchSize() {
+            return batchSize > 0 ? batchSize : 500;
+        }
+
+        /**
+         * 落库模式。
+         */
+        public enum Mode {
+            /**
+             * 结果在内存中累积，全部备件完成后在一个事务内删除目标月旧结果并分批写入正式表。
+             * 内存占用随备件总数线性增长，仅用于备件规模较小或尚未建立暂存表的环境。
+             */
+            DIRECT,
+            /**
+             * 随处理进度在独立短事务内分批写入暂存表（*_staging），不在内存中累积全部实体；
+             * 全部备件完成后在一个事务内删除正式表旧结果并整体搬入。默认模式，依赖暂存表迁移脚本。
+             */
+            STAGING
+        }
+    }
+
     /**
      * 蒙特卡洛模拟配置（算法 3-2）。
      */
@@ -42,6 +153,38 @@ public class ForecastProperties {
         private int workingDays = 22;
         /** 90% 区间反推标准差用的正态分位常数（1.645 = z_{0.95}）。 */
         private double intervalZ = 1.645;
+        /** 提前期不超过一个月工作日（L ≤ W）时改用半解析分位数近似，跳过模拟。 */
+        private boolean analyticSingleMonth = true;
+        /** 是否按量化参数缓存模拟结果（LRU）。 */
+        private boolean cacheEnabled = true;
+        /** 分位数结果缓存容量（条）。 */
+        private int cacheSize = 20000;
+        /** 缓存键量化的有效数字位数（p、ŷ、L、U 统一按有效数字取整）。 */
+        private int quantizeDigits = 4;
+        /** 按 ABC 类别覆盖模拟次数（如 {@code A: 100000}）；未配置的类别使用 {@link #simulations}。 */
+        private Map<String, Integer> simulationsByClass = new HashMap<>();
+        /** 分块并行时每块的模拟次数；块划分只取决于模拟次数与块大小，与线程数无关。 */
+        private int blockSize = 10000;
+        /** 模拟次数达到该值时启用分块并行（各块使用由种子确定性派生的独立随机流）；≤ 0 关闭。 */
+        private int parallelThreshold = 50000;
+        /** 分块并行 ForkJoin 池并行度（0 = CPU 核数）。 */
+        private int parallelism = 0;
+
+        /** 解析某 ABC 类别的模拟次数。 */
+        public int simulationsOf(String abcClass) {
+            if (abcClass != null) {
+                Integer n = simulationsByClass.get(abcClass);
+                if (n != null && n > 0) {
+                    return n;
+                }
+            }
+            return simulations;
+        }
+
+        /** 该模拟次数是否走分块并行（结果随之切换为分块随机流，故只由配置决定）。 */
+        public boolean isBlockParallel(int simulationCount) {
+            return parallelThreshold > 0 && simulationCount >= parallelThreshold && blockSize > 0;
+        }
     }
 
     /**
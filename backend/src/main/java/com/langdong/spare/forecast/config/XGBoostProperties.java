@@ -32,6 +32,9 @@ public class XGBoostProperties {
     /** 上界分位数 τ（90% 预测区间上界），默认 0.95。 */
     private double quantileUpper = 0.95;
 
+    /** 单个 Booster 训练线程数 nthread；≤0 时不显式设置（由 XGBoost 取全部核）。 */
+    private int nthread = 0;
+
     /**
      * 单个 Booster 的超参数集合（表 3-3 列）。
      */
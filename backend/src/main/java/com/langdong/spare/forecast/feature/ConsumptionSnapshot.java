@@ -0,0 +1,72 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.entity.SparePart;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * 备件档案 + 月度消耗历史的不可变快照，由 {@link ConsumptionSnapshotProvider} 加载并在各预测/分类服务间共享。
+ *
+ * <p>覆盖 [from, to) 月份区间；各调用方按自身窗口读取 {@link #consumption()}，防泄露过滤由调用方按月份序号完成。
+ * {@link #parts()} 中的备件对象为共享实例，调用方只读不改。</p>
+ */
+public final class ConsumptionSnapshot {
+
+    private final long version;
+    private final String watermark;
+    private final LocalDateTime loadedAt;
+    private final YearMonth from;
+    private final YearMonth to;
+    private final List<SparePart> parts;
+    private final MonthlyConsumptionMatrix consumption;
+
+    ConsumptionSnapshot(long version, String watermark, LocalDateTime loadedAt, YearMonth from, YearMonth to,
+                        List<SparePart> parts, MonthlyConsumptionMatrix consumption) {
+        this.version = version;
+        this.watermark = watermark;
+        this.loadedAt = loadedAt;
+        this.from = from;
+        this.to = to;
+        this.parts = parts;
+        this.consumption = consumption;
+    }
+
+    /** 是否完整覆盖 [from, toExclusive) 区间。 */
+    public boolean covers(YearMonth from, YearMonth toExclusive) {
+        return !from.isBefore(this.from) && !toExclusive.isAfter(this.to);
+    }
+
+    /** 进程内递增的快照版本号。 */
+    public long version() {
+        return version;
+    }
+
+    /** 加载时的数据水位（消耗汇总表、备件档案的最后更新时间与条数）。 */
+    public String watermark() {
+        return watermark;
+    }
+
+    public LocalDateTime loadedAt() {
+        return loadedAt;
+    }
+
+    public YearMonth from() {
+        return from;
+    }
+
+    public YearMonth to() {
+        return to;
+    }
+
+    /** 全部备件档案（findAllForClassify 口径，只读）。 */
+    public List<SparePart> parts() {
+        return parts;
+    }
+
+    /** 备件 × 月份 消耗矩阵，行号顺序与 {@link #parts()} 的编码顺序一致。 */
+    public MonthlyConsumptionMatrix consumption() {
+        return consumption;
+    }
+}
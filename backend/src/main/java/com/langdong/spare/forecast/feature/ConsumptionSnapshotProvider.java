@@ -0,0 +1,182 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享消耗历史快照提供者。
+ *
+ * <p>月度批处理中 ABC×XYZ 分类、预测特征加载、AI 特征组装、分类重算都需要「全部备件档案 + 月度消耗」，
+ * 窗口大量重叠。本组件一次加载覆盖默认窗口（历史回看月数 + 分类窗口）的 {@link ConsumptionSnapshot}，
+ * 以 volatile 引用整体发布，各服务只读共享，领用明细联表聚合在一个批次内只执行一次。</p>
+ *
+ * <p>失效策略：快照以数据水位（{@link SparePartMapper#findConsumptionWatermark()}）为键，
+ * 超过 {@code forecast.consumption-snapshot-check-ms} 后复核一次水位，变化才重新加载；
+ * 本进程出库调用 {@link #invalidate()}（事务提交后生效），下次获取时立即复核。
+ * 请求区间超出当前快照时按「请求区间 ∪ 默认窗口」重新加载。加载过程串行，并发获取只加载一次。</p>
+ */
+@Component
+public class ConsumptionSnapshotProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumptionSnapshotProvider.class);
+
+    /** 默认窗口在历史回看月数之外额外覆盖的月数：12 个月分类窗口 + 1 个月滚动分类起点。 */
+    private static final int EXTRA_MONTHS = 13;
+
+    private final SparePartMapper sparePartMapper;
+    private final ForecastProperties forecastProperties;
+
+    private volatile ConsumptionSnapshot snapshot;
+
+    /** 上次确认水位未变的时间（毫秒）。 */
+    private volatile long checkedAt;
+
+    /** 本进程出库后置位，下次获取时忽略复核间隔。 */
+    private volatile boolean dirty;
+
+    private long nextVersion = 1;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ConsumptionSnapshotProvider(SparePartMapper sparePartMapper, ForecastProperties forecastProperties) {
+        this.sparePartMapper = sparePartMapper;
+        this.forecastProperties = forecastProperties;
+    }
+
+    /**
+     * 获取覆盖默认窗口的快照。
+     */
+    public ConsumptionSnapshot acquire() {
+        YearMonth now = YearMonth.now();
+        return acquire(defaultFrom(now), now.plusMonths(1));
+    }
+
+    /**
+     * 获取覆盖 [from, toExclusive) 的快照；当前快照覆盖该区间且数据水位未变时直接复用。
+     */
+    public ConsumptionSnapshot acquire(YearMonth from, YearMonth toExclusive) {
+        ConsumptionSnapshot current = snapshot;
+        if (current != null && current.covers(from, toExclusive) && isFresh(current)) {
+            hits.increment();
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && current.covers(from, toExclusive) && isFresh(current)) {
+                hits.increment();
+                return current;
+            }
+            YearMonth now = YearMonth.now();
+            YearMonth loadFrom = min(from, defaultFrom(now));
+            YearMonth loadTo = max(toExclusive, now.plusMonths(1));
+            snapshot = load(loadFrom, loadTo);
+            return snapshot;
+        }
+    }
+
+    /**
+     * 标记消耗历史已变化（出库后调用）。处于事务中时在提交后生效，避免提交前重新加载到旧数据。
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markDirty();
+                }
+            });
+        } else {
+            markDirty();
+        }
+    }
+
+    /**
+     * 当前快照信息与命中统计
+     */
+    public Map<String, Object> stats() {
+        ConsumptionSnapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", current == null ? 0L : current.version());
+        stats.put("loadedAt", current == null ? null : current.loadedAt());
+        stats.put("from", current == null ? null : current.from().toString());
+        stats.put("to", current == null ? null : current.to().toString());
+        stats.put("partCount", current == null ? 0 : current.parts().size());
+        stats.put("consumptionRows", current == null ? 0 : current.consumption().acceptedRows());
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private void markDirty() {
+        dirty = true;
+        invalidations.increment();
+    }
+
+    /** 复核间隔内且未被置脏视为新鲜；否则查询一次水位比对。 */
+    private boolean isFresh(ConsumptionSnapshot current) {
+        long now = System.currentTimeMillis();
+        if (!dirty && now - checkedAt < forecastProperties.getConsumptionSnapshotCheckMs()) {
+            return true;
+        }
+        if (Objects.equals(current.watermark(), sparePartMapper.findConsumptionWatermark())) {
+            dirty = false;
+            checkedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    private ConsumptionSnapshot load(YearMonth from, YearMonth to) {
+        long start = System.currentTimeMillis();
+        // 先取水位再读数据：加载期间落地的出库会使水位变化，下次复核时重新加载
+        dirty = false;
+        String watermark = sparePartMapper.findConsumptionWatermark();
+        List<SparePart> parts = sparePartMapper.findAllForClassify();
+        if (parts == null) {
+            parts = Collections.emptyList();
+        }
+        List<String> codes = new ArrayList<>(parts.size());
+        for (SparePart part : parts) {
+            codes.add(part.getCode());
+        }
+        MonthlyConsumptionMatrix consumption = MonthlyConsumptionMatrix.load(sparePartMapper, codes, from, to);
+        ConsumptionSnapshot loaded = new ConsumptionSnapshot(nextVersion++, watermark, LocalDateTime.now(),
+                from, to, Collections.unmodifiableList(parts), consumption);
+        checkedAt = System.currentTimeMillis();
+        loads.increment();
+        log.info("[消耗快照] 快照 v{} 加载完成：{} ~ {}，备件 {} 个，消耗记录 {} 条，耗时 {} ms",
+                loaded.version(), from, to, parts.size(), consumption.acceptedRows(), checkedAt - start);
+        return loaded;
+    }
+
+    private YearMonth defaultFrom(YearMonth now) {
+        return now.minusMonths(forecastProperties.getHistoryMonths() + EXTRA_MONTHS);
+    }
+
+    private static YearMonth min(YearMonth a, YearMonth b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static YearMonth max(YearMonth a, YearMonth b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
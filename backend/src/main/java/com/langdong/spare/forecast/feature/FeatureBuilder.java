@@ -27,6 +27,10 @@ public class FeatureBuilder {
     private static final int LAG_WINDOW = 3;
     /** 正需求滞后均值取最近 N 次正需求。 */
     private static final int POS_LAG_WINDOW = 3;
+    /** 正需求滞后的最大回看月数。 */
+    private static final int MAX_POS_LOOKBACK = 600;
+    /** 无分类时的保守默认编码 C/Z（只读）。 */
+    private static final int[] DEFAULT_CODES = {1, 3};
 
     /**
      * 为目标月构造单条推理特征向量。
@@ -43,54 +47,16 @@ public class FeatureBuilder {
         fv.setPartCode(ctx.getPartCode());
         fv.setTargetMonth(targetMonth);
 
-        YearMonth target = YearMonth.parse(targetMonth);
+        int t = MonthSeries.indexOf(YearMonth.parse(targetMonth));
 
         // 防泄露 + 数据不足判定：目标月之前必须至少有一个消耗历史月
-        if (!hasHistoryBefore(ctx, target)) {
+        if (!hasHistoryBefore(ctx, t)) {
             fv.setDataInsufficient(true);
             fv.setInsufficientReason("目标月 " + targetMonth + " 之前无任何消耗历史（疑似新备件）");
             return fv;
         }
 
-        String prev1 = target.minusMonths(1).toString();
-
-        // #1 lag_1
-        fv.setLag1(ctx.demandOf(prev1));
-
-        // #2/#3 近3月均值与样本标准差
-        double[] lag3 = new double[LAG_WINDOW];
-        for (int i = 0; i < LAG_WINDOW; i++) {
-            lag3[i] = ctx.demandOf(target.minusMonths(i + 1L).toString());
-        }
-        fv.setLag3Mean(mean(lag3));
-        fv.setLag3Std(sampleStd(lag3));
-
-        // #4 近6月零需求占比
-        int zeroCount = 0;
-        for (int i = 0; i < ZERO_RATIO_WINDOW; i++) {
-            if (ctx.demandOf(target.minusMonths(i + 1L).toString()) == 0.0) {
-                zeroCount++;
-            }
-        }
-        fv.setZeroRatio6((double) zeroCount / ZERO_RATIO_WINDOW);
-
-        // #5/#6 上月设备运行时长 / 维修工单数
-        fv.setEquipHr(ctx.equipHrOf(prev1));
-        fv.setRepairCnt(ctx.repairCntOf(prev1));
-
-        // #7 月份季节编码（整数，⚠️默认）
-        fv.setMonth(target.getMonthValue());
-
-        // #8/#9 ABC_code / XYZ_code（取目标月前一月的分类结果）
-        int[] codes = safeCodes(codeProvider, ctx.getPartCode(), prev1);
-        fv.setAbcCode(codes[0]);
-        fv.setXyzCode(codes[1]);
-
-        // #10/#11 阶段二正需求滞后
-        if (includeStage2) {
-            fillPositiveLags(ctx, target, fv);
-        }
-
+        fillFeatures(ctx, t, codeProvider, includeStage2, fv);
         return fv;
     }
 
@@ -100,6 +66,9 @@ public class FeatureBuilder {
      * <p>为每个「其之前存在历史」的月 t 生成一条样本：特征仅用 &lt; t 数据，标签为 t 月实际消耗。
      * 阶段二正需求滞后同样填充，训练阶段二时再按 {@code demand>0} 筛子集。</p>
      *
+     * <p>labelMonths 为连续月份（升序或降序，月度重算即为降序连续区间）时走滑动窗口单趟构造
+     * （见 {@link #slidingWindowFeatures}），否则逐月独立构造；两条路径特征逐位一致。</p>
+     *
      * @param ctx           备件历史数据
      * @param labelMonths   需要生成标签的月份列表（yyyy-MM，通常为该备件有数据覆盖的月份，升序）
      * @param codeProvider  分类码提供者
@@ -107,97 +76,244 @@ public class FeatureBuilder {
      */
     public List<TrainingSample> buildTrainingSamples(PartFeatureContext ctx, List<String> labelMonths,
                                                      MonthlyClassCodeProvider codeProvider) {
+        if (labelMonths == null || labelMonths.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int[] idx = new int[labelMonths.size()];
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = MonthSeries.indexOf(YearMonth.parse(labelMonths.get(i)));
+        }
+        if (!isContiguous(idx)) {
+            return buildTrainingSamplesPointwise(ctx, labelMonths, codeProvider);
+        }
+
+        int lo = Math.min(idx[0], idx[idx.length - 1]);
+        int hi = Math.max(idx[0], idx[idx.length - 1]);
+        FeatureVector[] window = slidingWindowFeatures(ctx, lo, hi, codeProvider);
+        List<TrainingSample> samples = new ArrayList<>(idx.length);
+        for (int i = 0; i < idx.length; i++) {
+            FeatureVector fv = window[idx[i] - lo];
+            if (fv != null) {
+                fv.setTargetMonth(labelMonths.get(i));
+                samples.add(new TrainingSample(fv, ctx.demandAt(idx[i])));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 逐月独立构造训练样本（每个标签月各自随机访问历史），用于非连续标签月及等价性校验。
+     */
+    List<TrainingSample> buildTrainingSamplesPointwise(PartFeatureContext ctx, List<String> labelMonths,
+                                                       MonthlyClassCodeProvider codeProvider) {
         List<TrainingSample> samples = new ArrayList<>();
         if (labelMonths == null) {
             return samples;
         }
         for (String month : labelMonths) {
-            YearMonth target = YearMonth.parse(month);
-            if (!hasHistoryBefore(ctx, target)) {
+            int t = MonthSeries.indexOf(YearMonth.parse(month));
+            if (!hasHistoryBefore(ctx, t)) {
                 continue; // 该月之前无历史，无法构造无泄露特征，跳过
             }
-            FeatureVector fv = buildInferenceVector(ctx, month, codeProvider, true);
-            if (fv.isDataInsufficient()) {
-                continue;
-            }
-            samples.add(new TrainingSample(fv, ctx.demandOf(month)));
+            FeatureVector fv = new FeatureVector();
+            fv.setPartCode(ctx.getPartCode());
+            fv.setTargetMonth(month);
+            fillFeatures(ctx, t, codeProvider, true, fv);
+            samples.add(new TrainingSample(fv, ctx.demandAt(t)));
         }
         return samples;
     }
 
+    /**
+     * 滑动窗口单趟构造 [lo, hi] 每个目标月的 11 维特征（下标 t - lo；目标月前无历史的位置为 null）。
+     *
+     * <p>自 lo 向后推进，每月 O(1) 更新：lag 1~3 依次移位；近 6 月零需求数按「移入 t-1、移出 t-7」增减；
+     * 最近 3 次正需求保存在按新旧排序的定长缓冲中，仅在上月需求为正时移入，并按 600 月回看上限过滤。
+     * 均值/标准差/正需求均值每月由缓冲值按原定义的顺序重新累加（不维护浮点滚动和），
+     * 因此与 {@link #buildInferenceVector} 的结果逐位一致。</p>
+     */
+    FeatureVector[] slidingWindowFeatures(PartFeatureContext ctx, int lo, int hi,
+                                          MonthlyClassCodeProvider codeProvider) {
+        FeatureVector[] out = new FeatureVector[hi - lo + 1];
+        int firstHistory = ctx.firstHistoryIndex();
+
+        double d1 = ctx.demandAt(lo - 1);
+        double d2 = ctx.demandAt(lo - 2);
+        double d3 = ctx.demandAt(lo - 3);
+        int zeroCount = ctx.zeroDemandMonths(lo - ZERO_RATIO_WINDOW, lo);
+
+        // 最近正需求缓冲：下标 0 为最近一次
+        double[] posVal = new double[POS_LAG_WINDOW];
+        int[] posIdx = new int[POS_LAG_WINDOW];
+        int posCount = 0;
+        int m = ctx.lastPositiveAtOrBefore(lo - 1);
+        while (posCount < POS_LAG_WINDOW && m != MonthSeries.INVALID) {
+            posVal[posCount] = ctx.demandAt(m);
+            posIdx[posCount] = m;
+            posCount++;
+            m = ctx.lastPositiveAtOrBefore(m - 1);
+        }
+
+        for (int t = lo; t <= hi; t++) {
+            if (t > lo) {
+                // 窗口右移一月：移入 t-1
+                double entering = ctx.demandAt(t - 1);
+                d3 = d2;
+                d2 = d1;
+                d1 = entering;
+                zeroCount += (entering == 0.0 ? 1 : 0) - (ctx.demandAt(t - 1 - ZERO_RATIO_WINDOW) == 0.0 ? 1 : 0);
+                if (entering > 0) {
+                    for (int k = POS_LAG_WINDOW - 1; k > 0; k--) {
+                        posVal[k] = posVal[k - 1];
+                        posIdx[k] = posIdx[k - 1];
+                    }
+                    posVal[0] = entering;
+                    posIdx[0] = t - 1;
+                    posCount = Math.min(posCount + 1, POS_LAG_WINDOW);
+                }
+            }
+            if (firstHistory >= t) {
+                continue; // 该月之前无历史，无法构造无泄露特征
+            }
+
+            FeatureVector fv = new FeatureVector();
+            fv.setPartCode(ctx.getPartCode());
+            fv.setTargetMonth(MonthSeries.monthOf(t));
+
+            fv.setLag1(d1);
+            double lagMean = (0.0 + d1 + d2 + d3) / LAG_WINDOW;
+            double ss = 0.0 + (d1 - lagMean) * (d1 - lagMean) + (d2 - lagMean) * (d2 - lagMean)
+                    + (d3 - lagMean) * (d3 - lagMean);
+            fv.setLag3Mean(lagMean);
+            fv.setLag3Std(Math.sqrt(ss / (LAG_WINDOW - 1)));
+            fv.setZeroRatio6((double) zeroCount / ZERO_RATIO_WINDOW);
+            fv.setEquipHr(ctx.equipHrAt(t - 1));
+            fv.setRepairCnt(ctx.repairCntAt(t - 1));
+            fv.setMonth(MonthSeries.calendarMonth(t));
+
+            int[] codes = safeCodes(codeProvider, ctx.getPartCode(), t - 1);
+            fv.setAbcCode(codes[0]);
+            fv.setXyzCode(codes[1]);
+
+            int earliest = t - MAX_POS_LOOKBACK;
+            int found = 0;
+            double sum = 0.0;
+            while (found < posCount && posIdx[found] >= earliest) {
+                sum += posVal[found];
+                found++;
+            }
+            fv.setPosLag1(found > 0 ? posVal[0] : 0.0);
+            fv.setPosLag3Mean(found > 0 ? sum / found : 0.0);
+
+            out[t - lo] = fv;
+        }
+        return out;
+    }
+
     // ================================================================
     // 内部工具
     // ================================================================
 
-    /** 目标月之前是否存在任一消耗历史月。 */
-    private boolean hasHistoryBefore(PartFeatureContext ctx, YearMonth target) {
-        for (String m : ctx.getMonthlyDemand().keySet()) {
-            if (YearMonth.parse(m).isBefore(target)) {
-                return true;
+    /**
+     * 按月份序号填充 11 维特征（调用方已保证目标月前存在历史）。
+     *
+     * <p>全部读取走 {@link PartFeatureContext} 的列式数组：lag/均值/标准差直接按月下标读取，
+     * 零需求占比走非零月前缀计数，正需求滞后沿「最近正需求月」回指跳转，不产生任何中间对象。
+     * 浮点累加顺序与逐月读取的定义保持一致（t-1, t-2, t-3）。</p>
+     */
+    private void fillFeatures(PartFeatureContext ctx, int t, MonthlyClassCodeProvider codeProvider,
+                              boolean includeStage2, FeatureVector fv) {
+        // #1 lag_1
+        double d1 = ctx.demandAt(t - 1);
+        double d2 = ctx.demandAt(t - 2);
+        double d3 = ctx.demandAt(t - 3);
+        fv.setLag1(d1);
+
+        // #2/#3 近3月均值与样本标准差（除以 n-1）
+        double lagMean = (0.0 + d1 + d2 + d3) / LAG_WINDOW;
+        double ss = 0.0 + (d1 - lagMean) * (d1 - lagMean) + (d2 - lagMean) * (d2 - lagMean)
+                + (d3 - lagMean) * (d3 - lagMean);
+        fv.setLag3Mean(lagMean);
+        fv.setLag3Std(Math.sqrt(ss / (LAG_WINDOW - 1)));
+
+        // #4 近6月零需求占比
+        int zeroCount = ctx.zeroDemandMonths(t - ZERO_RATIO_WINDOW, t);
+        fv.setZeroRatio6((double) zeroCount / ZERO_RATIO_WINDOW);
+
+        // #5/#6 上月设备运行时长 / 维修工单数
+        fv.setEquipHr(ctx.equipHrAt(t - 1));
+        fv.setRepairCnt(ctx.repairCntAt(t - 1));
+
+        // #7 月份季节编码（整数，⚠️默认）
+        fv.setMonth(MonthSeries.calendarMonth(t));
+
+        // #8/#9 ABC_code / XYZ_code（取目标月前一月的分类结果）
+        int[] codes = safeCodes(codeProvider, ctx.getPartCode(), t - 1);
+        fv.setAbcCode(codes[0]);
+        fv.setXyzCode(codes[1]);
+
+        // #10/#11 阶段二正需求滞后
+        if (includeStage2) {
+            fillPositiveLags(ctx, t, fv);
+        }
+    }
+
+    /** 月份序号是否构成步长 ±1 的连续区间（长度 1 亦视为连续）。 */
+    private static boolean isContiguous(int[] idx) {
+        if (idx.length < 2) {
+            return true;
+        }
+        int step = idx[1] - idx[0];
+        if (step != 1 && step != -1) {
+            return false;
+        }
+        for (int i = 2; i < idx.length; i++) {
+            if (idx[i] - idx[i - 1] != step) {
+                return false;
             }
         }
-        return false;
+        return true;
+    }
+
+    /** 目标月之前是否存在任一消耗历史月。 */
+    private boolean hasHistoryBefore(PartFeatureContext ctx, int t) {
+        return ctx.firstHistoryIndex() < t;
     }
 
     /** 填充 #10 pos_lag_1 与 #11 pos_lag_3_mean（仅回看严格早于目标月的正需求）。 */
-    private void fillPositiveLags(PartFeatureContext ctx, YearMonth target, FeatureVector fv) {
-        List<Double> recentPositives = new ArrayList<>();
-        // 从前一月起向前回看，最多回看一个合理窗口（历史跨度）
-        YearMonth cursor = target.minusMonths(1);
-        // 回看上限：不早于最早历史月；用一个较大的安全上限防止死循环
-        int maxLookback = 600; // 50 年，足够覆盖任何真实历史
-        for (int i = 0; i < maxLookback && recentPositives.size() < POS_LAG_WINDOW; i++) {
-            double d = ctx.demandOf(cursor.toString());
-            if (d > 0) {
-                recentPositives.add(d);
+    private void fillPositiveLags(PartFeatureContext ctx, int t, FeatureVector fv) {
+        // 回看上限：目标月前 600 个月（50 年，足够覆盖任何真实历史）
+        int earliest = t - MAX_POS_LOOKBACK;
+        int found = 0;
+        double first = 0.0;
+        double sum = 0.0;
+        int m = ctx.lastPositiveAtOrBefore(t - 1);
+        while (found < POS_LAG_WINDOW && m != MonthSeries.INVALID && m >= earliest) {
+            double d = ctx.demandAt(m);
+            if (found == 0) {
+                first = d;
             }
-            cursor = cursor.minusMonths(1);
+            sum += d;
+            found++;
+            m = ctx.lastPositiveAtOrBefore(m - 1);
         }
-        if (!recentPositives.isEmpty()) {
-            fv.setPosLag1(recentPositives.get(0));
-            double sum = 0;
-            for (double v : recentPositives) {
-                sum += v;
-            }
-            fv.setPosLag3Mean(sum / recentPositives.size());
+        if (found > 0) {
+            fv.setPosLag1(first);
+            fv.setPosLag3Mean(sum / found);
         } else {
             fv.setPosLag1(0.0);
             fv.setPosLag3Mean(0.0);
         }
     }
 
-    private int[] safeCodes(MonthlyClassCodeProvider provider, String partCode, String asOfMonth) {
+    private int[] safeCodes(MonthlyClassCodeProvider provider, String partCode, int asOfMonthIndex) {
         if (provider == null) {
-            return new int[]{1, 3}; // 默认 C/Z
+            return DEFAULT_CODES; // 默认 C/Z
         }
-        int[] codes = provider.codesAsOf(partCode, asOfMonth);
+        int[] codes = provider.codesAsOf(partCode, asOfMonthIndex);
         if (codes == null || codes.length < 2) {
-            return new int[]{1, 3};
+            return DEFAULT_CODES;
         }
         return codes;
     }
-
-    private static double mean(double[] xs) {
-        if (xs.length == 0) {
-            return 0.0;
-        }
-        double sum = 0;
-        for (double x : xs) {
-            sum += x;
-        }
-        return sum / xs.length;
-    }
-
-    /** 样本标准差（除以 n-1）；样本数 &lt; 2 时返回 0。 */
-    private static double sampleStd(double[] xs) {
-        if (xs.length < 2) {
-            return 0.0;
-        }
-        double m = mean(xs);
-        double ss = 0;
-        for (double x : xs) {
-            ss += (x - m) * (x - m);
-        }
-        return Math.sqrt(ss / (xs.length - 1));
-    }
 }
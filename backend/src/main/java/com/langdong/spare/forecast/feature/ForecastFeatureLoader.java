@@ -1,18 +1,16 @@
 package com.langdong.spare.forecast.feature;
 
-import com.langdong.spare.dto.MonthlyConsumptionVO;
 import com.langdong.spare.entity.AiDeviceFeature;
 import com.langdong.spare.entity.EquipmentSparePart;
 import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.config.ForecastProperties;
 import com.langdong.spare.mapper.AiDeviceFeatureMapper;
 import com.langdong.spare.mapper.EquipmentSparePartMapper;
-import com.langdong.spare.mapper.SparePartMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -27,62 +25,162 @@ public class ForecastFeatureLoader {
 
     private static final Logger log = LoggerFactory.getLogger(ForecastFeatureLoader.class);
 
-    private final SparePartMapper sparePartMapper;
+    private final ConsumptionSnapshotProvider snapshotProvider;
     private final EquipmentSparePartMapper equipmentSparePartMapper;
     private final AiDeviceFeatureMapper aiDeviceFeatureMapper;
+    private final ForecastProperties forecastProperties;
 
-    public ForecastFeatureLoader(SparePartMapper sparePartMapper,
+    public ForecastFeatureLoader(ConsumptionSnapshotProvider snapshotProvider,
                                  EquipmentSparePartMapper equipmentSparePartMapper,
-                                 AiDeviceFeatureMapper aiDeviceFeatureMapper) {
-        this.sparePartMapper = sparePartMapper;
+                                 AiDeviceFeatureMapper aiDeviceFeatureMapper,
+                                 ForecastProperties forecastProperties) {
+        this.snapshotProvider = snapshotProvider;
         this.equipmentSparePartMapper = equipmentSparePartMapper;
         this.aiDeviceFeatureMapper = aiDeviceFeatureMapper;
+        this.forecastProperties = forecastProperties;
     }
 
     /**
      * 为目标月份批量加载所有备件的历史特征上下文。
      *
+     * <p>默认走批量流式模式（{@code forecast.bulk-feature-load=true}）：设备↔备件关联与窗口期设备特征
+     * 各一次流式查询，在内存中按备件关联汇总；关闭后回退为逐备件两次查询的旧路径。两条路径结果一致。</p>
+     *
      * @param targetMonth   预测目标月份（yyyy-MM）
      * @param historyMonths 历史回看月数（通常为 36）
      * @return partCode -> 备件特征上下文
      */
     public Map<String, PartFeatureContext> loadAllContexts(String targetMonth, int historyMonths) {
         log.info("[特征加载] 开始为月份 {} 加载历史特征，回看月数: {}", targetMonth, historyMonths);
+        long start = System.currentTimeMillis();
 
         YearMonth target = YearMonth.parse(targetMonth);
         YearMonth startMonth = target.minusMonths(historyMonths);
 
-        // 1. 加载所有备件档案
-        List<SparePart> parts = sparePartMapper.findAllForClassify();
-        if (parts == null || parts.isEmpty()) {
+        // 1~2. 备件档案与窗口期月度消耗：取自共享消耗快照（同批次内与分类等服务共用一次加载）
+        long phase = System.currentTimeMillis();
+        ConsumptionSnapshot snapshot = snapshotProvider.acquire(startMonth, target);
+        List<SparePart> parts = snapshot.parts();
+        if (parts.isEmpty()) {
             log.warn("[特征加载] 未找到任何备件档案");
             return Collections.emptyMap();
         }
+        MonthlyConsumptionMatrix consumption = snapshot.consumption();
+        log.info("[特征加载] 阶段1-2 备件档案 {} 个、月度消耗取自快照 v{}，耗时={} ms",
+                parts.size(), snapshot.version(), System.currentTimeMillis() - phase);
+
+        Map<String, PartFeatureContext> result;
+        if (forecastProperties.isBulkFeatureLoad()) {
+            result = assembleBulk(parts, consumption, target, startMonth);
+        } else {
+            result = assemblePerPart(parts, consumption, target, startMonth);
+        }
 
-        // 2. 批量加载月度消耗（一次性载入窗口期内所有消耗）
-        String fromMonthStr = startMonth.atDay(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        List<MonthlyConsumptionVO> consumptions = sparePartMapper.findAllMonthlyConsumption(fromMonthStr);
+        log.info("[特征加载] 特征载入完成，共处理备件 {} 个，总耗时={} ms",
+                result.size(), System.currentTimeMillis() - start);
+        return result;
+    }
 
-        // 备件编码 -> (月份 -> 消耗量)，并应用防泄露过滤 (只保留 < targetMonth 的数据)
-        Map<String, Map<String, Double>> consumptionMap = new HashMap<>();
-        if (consumptions != null) {
-            for (MonthlyConsumptionVO vo : consumptions) {
-                if (vo.getPartCode() == null || vo.getMonth() == null) {
-                    continue;
+    /**
+     * 将矩阵中该备件在 [startMonth, target) 内有记录的月份写入上下文的消耗序列
+     * （快照覆盖范围更宽，严格防泄露：不读取 >= targetMonth 的消耗）。
+     */
+    private static void fillDemand(PartFeatureContext context, MonthlyConsumptionMatrix consumption,
+                                   YearMonth target, YearMonth startMonth) {
+        int row = consumption.rowOf(context.getPartCode());
+        if (row < 0) {
+            return;
+        }
+        for (int m = MonthSeries.indexOf(startMonth), end = MonthSeries.indexOf(target); m < end; m++) {
+            if (consumption.has(row, m)) {
+                context.putDemandAt(m, consumption.at(row, m));
+            }
+        }
+    }
+
+    /**
+     * 批量模式：两次流式查询 + 内存关联。
+     *
+     * <p>设备特征先按设备汇总为「月份 → {运行时长, 工单数}」，再对每个备件按设备 ID 升序累加，
+     * 与旧路径（SQL 按 device_id, stat_month 排序后逐行 merge）的浮点累加顺序一致。</p>
+     */
+    private Map<String, PartFeatureContext> assembleBulk(List<SparePart> parts,
+                                                         MonthlyConsumptionMatrix consumption,
+                                                         YearMonth target, YearMonth startMonth) {
+        // 3. 流式加载设备↔备件关联：sparePartId -> 设备 ID（升序去重）
+        long phase = System.currentTimeMillis();
+        Map<Long, TreeSet<Long>> devicesByPart = new HashMap<>();
+        int[] mappingRows = {0};
+        equipmentSparePartMapper.streamAllMappings(ctx -> {
+            EquipmentSparePart esp = ctx.getResultObject();
+            mappingRows[0]++;
+            if (esp.getSparePartId() != null && esp.getEquipmentId() != null) {
+                devicesByPart.computeIfAbsent(esp.getSparePartId(), k -> new TreeSet<>()).add(esp.getEquipmentId());
+            }
+        });
+        log.info("[特征加载] 阶段3 设备关联: {} 行，关联备件 {} 个，耗时={} ms",
+                mappingRows[0], devicesByPart.size(), System.currentTimeMillis() - phase);
+
+        // 4. 流式加载窗口期设备特征：deviceId -> (月份 -> {运行时长, 工单数})
+        phase = System.currentTimeMillis();
+        Map<Long, Map<String, double[]>> featuresByDevice = new HashMap<>();
+        int[] featureRows = {0};
+        aiDeviceFeatureMapper.streamMappedFeatures(startMonth.toString(), target.toString(), ctx -> {
+            AiDeviceFeature f = ctx.getResultObject();
+            featureRows[0]++;
+            if (f.getDeviceId() == null || f.getStatMonth() == null) {
+                return;
+            }
+            try {
+                YearMonth m = YearMonth.parse(f.getStatMonth());
+                if (!m.isBefore(target)) {
+                    return; // 严格防泄露：抛弃 >= targetMonth 的设备状态数据
                 }
-                try {
-                    YearMonth m = YearMonth.parse(vo.getMonth());
-                    if (!m.isBefore(target)) {
-                        continue; // 严格防泄露：抛弃 >= targetMonth 的消耗数据
+            } catch (Exception ignored) {
+                return;
+            }
+            double hrs = f.getRunHours() != null ? f.getRunHours().doubleValue() : 0.0;
+            double cnt = f.getWorkOrderCount() != null ? f.getWorkOrderCount().doubleValue() : 0.0;
+            double[] acc = featuresByDevice.computeIfAbsent(f.getDeviceId(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(f.getStatMonth(), k -> new double[2]);
+            acc[0] += hrs;
+            acc[1] += cnt;
+        });
+        log.info("[特征加载] 阶段4 设备特征: {} 行，设备 {} 台，耗时={} ms",
+                featureRows[0], featuresByDevice.size(), System.currentTimeMillis() - phase);
+
+        // 5. 内存关联组装上下文
+        phase = System.currentTimeMillis();
+        Map<String, PartFeatureContext> result = new HashMap<>();
+        for (SparePart part : parts) {
+            String code = part.getCode();
+            PartFeatureContext context = new PartFeatureContext(code);
+            fillDemand(context, consumption, target, startMonth);
+
+            TreeSet<Long> deviceIds = devicesByPart.get(part.getId());
+            if (deviceIds != null) {
+                for (Long deviceId : deviceIds) {
+                    Map<String, double[]> byMonth = featuresByDevice.get(deviceId);
+                    if (byMonth == null) {
+                        continue;
+                    }
+                    for (Map.Entry<String, double[]> e : byMonth.entrySet()) {
+                        context.getMonthlyEquipHr().merge(e.getKey(), e.getValue()[0], Double::sum);
+                        context.getMonthlyRepairCnt().merge(e.getKey(), e.getValue()[1], Double::sum);
                     }
-                    double qty = vo.getQty() == null ? 0.0 : vo.getQty();
-                    consumptionMap.computeIfAbsent(vo.getPartCode(), k -> new HashMap<>())
-                            .put(vo.getMonth(), qty);
-                } catch (Exception ignored) {
                 }
             }
+            result.put(code, context);
         }
+        log.info("[特征加载] 阶段5 内存组装: 备件 {} 个，耗时={} ms", result.size(), System.currentTimeMillis() - phase);
+        return result;
+    }
 
+    /** 旧路径：逐备件查询关联设备及其特征（每个备件两次 DB 往返）。 */
+    private Map<String, PartFeatureContext> assemblePerPart(List<SparePart> parts,
+                                                            MonthlyConsumptionMatrix consumption,
+                                                            YearMonth target, YearMonth startMonth) {
+        long phase = System.currentTimeMillis();
         Map<String, PartFeatureContext> result = new HashMap<>();
         String fromMonthDeviceStr = startMonth.toString(); // 格式为 yyyy-MM
 
@@ -92,8 +190,7 @@ public class ForecastFeatureLoader {
             PartFeatureContext context = new PartFeatureContext(code);
 
             // 填充消耗历史
-            Map<String, Double> demands = consumptionMap.getOrDefault(code, Collections.emptyMap());
-            context.setMonthlyDemand(new HashMap<>(demands));
+            fillDemand(context, consumption, target, startMonth);
 
             // 获取关联的设备
             List<EquipmentSparePart> eqSps = equipmentSparePartMapper.findBySparePartId(part.getId());
@@ -131,7 +228,7 @@ public class ForecastFeatureLoader {
             result.put(code, context);
         }
 
-        log.info("[特征加载] 特征载入完成，共处理备件 {} 个", result.size());
+        log.info("[特征加载] 阶段3 逐备件关联查询: 备件 {} 个，耗时={} ms", result.size(), System.currentTimeMillis() - phase);
         return result;
     }
 }
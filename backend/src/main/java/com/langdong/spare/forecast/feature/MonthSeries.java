@@ -0,0 +1,295 @@
+package com.langdong.spare.forecast.feature;
+
+import java.time.YearMonth;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 按月份序号寻址的原始类型时间序列（{@link PartFeatureContext} 的列式存储）。
+ *
+ * <p>月份序号 = {@code year * 12 + (month - 1)}；内部以 {@code double[]} 连续存放
+ * [base, base + capacity) 区间的数值，并以 {@code boolean[]} 区分「显式写入 0」与「缺失」，
+ * 以保留旧 {@code Map<String, Double>} 的键语义（{@code hasHistoryBefore} 依赖键是否存在）。
+ * 区间外或缺失月份读取为 0。</p>
+ *
+ * <p>{@link #asMap()} 提供按 yyyy-MM 键读写的实时视图，兼容原 Map 接口的调用方；
+ * 每次写入递增 {@link #version()}，供上层派生索引（前缀和等）判断是否需要重建。非线程安全。</p>
+ */
+public final class MonthSeries {
+
+    /** 非法月份键的序号标记。 */
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private static final double[] EMPTY_VALUES = new double[0];
+    private static final boolean[] EMPTY_PRESENT = new boolean[0];
+
+    private int base;
+    private double[] values = EMPTY_VALUES;
+    private boolean[] present = EMPTY_PRESENT;
+    private int size;
+    private int version;
+    private Map<String, Double> mapView;
+
+    /** yyyy-MM → 月份序号；格式非法返回 {@link #INVALID}。 */
+    public static int indexOf(String month) {
+        if (month == null || month.length() != 7 || month.charAt(4) != '-') {
+            return INVALID;
+        }
+        int year = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = month.charAt(i) - '0';
+            if (c < 0 || c > 9) {
+                return INVALID;
+            }
+            year = year * 10 + c;
+        }
+        int m1 = month.charAt(5) - '0';
+        int m2 = month.charAt(6) - '0';
+        if (m1 < 0 || m1 > 9 || m2 < 0 || m2 > 9) {
+            return INVALID;
+        }
+        int mon = m1 * 10 + m2;
+        if (mon < 1 || mon > 12) {
+            return INVALID;
+        }
+        return year * 12 + (mon - 1);
+    }
+
+    public static int indexOf(YearMonth month) {
+        return month.getYear() * 12 + (month.getMonthValue() - 1);
+    }
+
+    /** 月份序号 → yyyy-MM。 */
+    public static String monthOf(int index) {
+        int year = Math.floorDiv(index, 12);
+        int mon = Math.floorMod(index, 12) + 1;
+        char[] buf = {
+                (char) ('0' + year / 1000 % 10), (char) ('0' + year / 100 % 10),
+                (char) ('0' + year / 10 % 10), (char) ('0' + year % 10), '-',
+                (char) ('0' + mon / 10), (char) ('0' + mon % 10)};
+        return new String(buf);
+    }
+
+    /** 月份序号对应的日历月（1~12）。 */
+    public static int calendarMonth(int index) {
+        return Math.floorMod(index, 12) + 1;
+    }
+
+    /** 读取某月数值；缺失或区间外返回 0。 */
+    public double at(int index) {
+        int i = index - base;
+        return i >= 0 && i < values.length ? values[i] : 0.0;
+    }
+
+    /** 该月是否显式写入过数值（含 0）。 */
+    public boolean has(int index) {
+        int i = index - base;
+        return i >= 0 && i < present.length && present[i];
+    }
+
+    public void put(int index, double value) {
+        ensureCovers(index);
+        int i = index - base;
+        if (!present[i]) {
+            present[i] = true;
+            size++;
+        }
+        values[i] = value;
+        version++;
+    }
+
+    public boolean remove(int index) {
+        int i = index - base;
+        if (i < 0 || i >= present.length || !present[i]) {
+            return false;
+        }
+        present[i] = false;
+        values[i] = 0.0;
+        size--;
+        version++;
+        return true;
+    }
+
+    public void clear() {
+        values = EMPTY_VALUES;
+        present = EMPTY_PRESENT;
+        size = 0;
+        version++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    /** 底层数组首元素对应的月份序号。 */
+    public int base() {
+        return base;
+    }
+
+    /** 底层数组覆盖的月数（含缺失月）。 */
+    public int capacity() {
+        return values.length;
+    }
+
+    /** 最早显式写入的月份序号；空序列返回 {@link Integer#MAX_VALUE}。 */
+    public int firstIndex() {
+        for (int i = 0; i < present.length; i++) {
+            if (present[i]) {
+                return base + i;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /** 以 yyyy-MM 为键的实时读写视图（按月份升序迭代）。 */
+    public Map<String, Double> asMap() {
+        if (mapView == null) {
+            mapView = new MapView();
+        }
+        return mapView;
+    }
+
+    /** 用给定 Map 的内容整体替换当前序列。 */
+    public void replaceWith(Map<String, Double> source) {
+        clear();
+        if (source != null) {
+            for (Map.Entry<String, Double> e : source.entrySet()) {
+                asMap().put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void ensureCovers(int index) {
+        if (values.length == 0) {
+            base = index;
+            values = new double[1];
+            present = new boolean[1];
+            return;
+        }
+        int lo = Math.min(base, index);
+        int hi = Math.max(base + values.length - 1, index);
+        if (lo == base && hi == base + values.length - 1) {
+            return;
+        }
+        double[] nv = new double[hi - lo + 1];
+        boolean[] np = new boolean[hi - lo + 1];
+        System.arraycopy(values, 0, nv, base - lo, values.length);
+        System.arraycopy(present, 0, np, base - lo, present.length);
+        values = nv;
+        present = np;
+        base = lo;
+    }
+
+    private final class MapView extends AbstractMap<String, Double> {
+
+        @Override
+        public Double get(Object key) {
+            int idx = key instanceof String s ? indexOf(s) : INVALID;
+            return idx != INVALID && has(idx) ? at(idx) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int idx = key instanceof String s ? indexOf(s) : INVALID;
+            return idx != INVALID && has(idx);
+        }
+
+        @Override
+        public Double put(String key, Double value) {
+            int idx = indexOf(key);
+            if (idx == INVALID) {
+                throw new IllegalArgumentException("月份键格式应为 yyyy-MM: " + key);
+            }
+            if (value == null) {
+                throw new NullPointerException("月份 " + key + " 的数值不能为 null");
+            }
+            Double old = has(idx) ? at(idx) : null;
+            MonthSeries.this.put(idx, value);
+            return old;
+        }
+
+        @Override
+        public Double remove(Object key) {
+            int idx = key instanceof String s ? indexOf(s) : INVALID;
+            if (idx == INVALID || !has(idx)) {
+                return null;
+            }
+            double old = at(idx);
+            MonthSeries.this.remove(idx);
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            MonthSeries.this.clear();
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Double>> iterator() {
+                    return new Iterator<>() {
+                        private int next = seek(0);
+                        private int last = -1;
+
+                        private int seek(int from) {
+                            int i = from;
+                            while (i < present.length && !present[i]) {
+                                i++;
+                            }
+                            return i;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < present.length;
+                        }
+
+                        @Override
+                        public Entry<String, Double> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            last = next;
+                            next = seek(next + 1);
+                            return new SimpleImmutableEntry<>(monthOf(base + last), values[last]);
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0) {
+                                throw new IllegalStateException();
+                            }
+                            MonthSeries.this.remove(base + last);
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
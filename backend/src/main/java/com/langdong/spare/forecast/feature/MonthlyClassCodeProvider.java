@@ -18,4 +18,15 @@ public interface MonthlyClassCodeProvider {
      * @return 长度 2 的数组 {ABC_code, XYZ_code}；无分类时约定返回保守默认 {1, 3}（C/Z）
      */
     int[] codesAsOf(String partCode, String asOfMonth);
+
+    /**
+     * 按月份序号（{@link MonthSeries#indexOf}）查询分类编码。默认转换为 yyyy-MM 后委托字符串版本；
+     * 预计算型实现可覆盖以避免逐样本的字符串分配。返回数组视为只读。
+     *
+     * @param partCode        备件编码
+     * @param asOfMonthIndex  截止月份序号
+     */
+    default int[] codesAsOf(String partCode, int asOfMonthIndex) {
+        return codesAsOf(partCode, MonthSeries.monthOf(asOfMonthIndex));
+    }
 }
@@ -0,0 +1,157 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.dto.MonthlyConsumptionVO;
+import com.langdong.spare.mapper.SparePartMapper;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 备件 × 月份 的月度消耗矩阵（行主序 {@code double[]}）。
+ *
+ * <p>替代 {@code List<MonthlyConsumptionVO>} + {@code Map<partCode, Map<month, qty>>} 的两级装箱结构：
+ * 通过 {@link SparePartMapper#streamMonthlyConsumption} 流式读取，每行直接写入
+ * {@code values[row * span + (monthIndex - baseIndex)]}，内存占用与「备件数 × 月数」成正比，
+ * 与消耗记录条数无关。行号按构造时传入的备件编码顺序分配（重复编码共用首行），
+ * 月份序号口径同 {@link MonthSeries#indexOf(String)}。</p>
+ *
+ * <p>仅保留 [from, toExclusive) 区间内、且编码在备件列表中的记录，区间外月份（含防泄露需丢弃的
+ * 目标月及之后）直接丢弃。{@code present} 区分「有消耗记录」与「缺失」，以保留旧 Map 的键语义。
+ * 加载完成后只读，可被多个线程并发读取；加载过程非线程安全。</p>
+ */
+public final class MonthlyConsumptionMatrix {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final Map<String, Integer> rowByCode;
+    private final int partCount;
+    private final int baseIndex;
+    private final int span;
+    private final double[] values;
+    private final boolean[] present;
+    private int acceptedRows;
+    private int droppedRows;
+
+    /**
+     * @param partCodes   备件编码（决定行号顺序；null 编码不分配行）
+     * @param from        首月（含）
+     * @param toExclusive 截止月（不含）
+     */
+    public MonthlyConsumptionMatrix(List<String> partCodes, YearMonth from, YearMonth toExclusive) {
+        this.baseIndex = MonthSeries.indexOf(from);
+        this.span = Math.max(0, MonthSeries.indexOf(toExclusive) - baseIndex);
+        this.rowByCode = new HashMap<>(partCodes.size() * 2);
+        int rows = 0;
+        for (String code : partCodes) {
+            if (code != null && !rowByCode.containsKey(code)) {
+                rowByCode.put(code, rows++);
+            }
+        }
+        this.partCount = rows;
+        this.values = new double[rows * span];
+        this.present = new boolean[rows * span];
+    }
+
+    /**
+     * 流式加载 [from, toExclusive) 区间的月度消耗，不物化中间列表。
+     */
+    public static MonthlyConsumptionMatrix load(SparePartMapper mapper, List<String> partCodes,
+                                                YearMonth from, YearMonth toExclusive) {
+        MonthlyConsumptionMatrix matrix = new MonthlyConsumptionMatrix(partCodes, from, toExclusive);
+        mapper.streamMonthlyConsumption(from.atDay(1).format(DAY_FORMAT),
+                ctx -> matrix.accept(ctx.getResultObject()));
+        return matrix;
+    }
+
+    /**
+     * 折叠一行消耗记录；编码未知、月份非法或超出区间时丢弃。
+     *
+     * @return 是否写入矩阵
+     */
+    public boolean accept(MonthlyConsumptionVO vo) {
+        if (vo == null || vo.getPartCode() == null) {
+            droppedRows++;
+            return false;
+        }
+        Integer row = rowByCode.get(vo.getPartCode());
+        int m = MonthSeries.indexOf(vo.getMonth()) - baseIndex;
+        if (row == null || m < 0 || m >= span) {
+            droppedRows++;
+            return false;
+        }
+        int cell = row * span + m;
+        values[cell] = vo.getQty() == null ? 0.0 : vo.getQty();
+        present[cell] = true;
+        acceptedRows++;
+        return true;
+    }
+
+    /** 备件编码对应的行号；不在矩阵中返回 -1。 */
+    public int rowOf(String partCode) {
+        Integer row = partCode == null ? null : rowByCode.get(partCode);
+        return row == null ? -1 : row;
+    }
+
+    /** 读取某行某月（{@link MonthSeries} 月份序号）的消耗；行号为 -1、缺失或区间外返回 0。 */
+    public double at(int row, int monthIndex) {
+        int m = monthIndex - baseIndex;
+        return row < 0 || m < 0 || m >= span ? 0.0 : values[row * span + m];
+    }
+
+    /** 该月是否有消耗记录。 */
+    public boolean has(int row, int monthIndex) {
+        int m = monthIndex - baseIndex;
+        return row >= 0 && m >= 0 && m < span && present[row * span + m];
+    }
+
+    /** 行在 {@link #values()} 中的起始偏移。 */
+    public int offset(int row) {
+        return row * span;
+    }
+
+    /** 底层行主序数组（只读共享，调用方不得修改）。 */
+    public double[] values() {
+        return values;
+    }
+
+    /** 首月的月份序号。 */
+    public int baseIndex() {
+        return baseIndex;
+    }
+
+    /** 每行月数。 */
+    public int span() {
+        return span;
+    }
+
+    public int partCount() {
+        return partCount;
+    }
+
+    /** 写入矩阵的记录条数。 */
+    public int acceptedRows() {
+        return acceptedRows;
+    }
+
+    /** 因编码未知、月份非法或超出区间被丢弃的记录条数。 */
+    public int droppedRows() {
+        return droppedRows;
+    }
+
+    /** 至少有一个月消耗记录的备件数。 */
+    public int partsWithConsumption() {
+        int count = 0;
+        for (int row = 0; row < partCount; row++) {
+            for (int i = row * span, end = i + span; i < end; i++) {
+                if (present[i]) {
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -1,29 +1,45 @@
 package com.langdong.spare.forecast.feature;
 
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 单个备件的原始历史数据容器，作为 {@link FeatureBuilder} 的纯输入。
  *
- * <p>所有 map 的 key 均为月份字符串（yyyy-MM），value 为该月的聚合量。特征构造仅读取
- * 「严格早于目标月」的键，从数据结构上支撑防泄露测试。此对象不含任何 DB/Spring 依赖。</p>
+ * <p>消耗量、设备运行时长、维修工单数均以 {@link MonthSeries}（月份序号寻址的 {@code double[]}）列式存放；
+ * {@code getMonthlyXxx()} 返回以月份字符串（yyyy-MM）为键的实时 Map 视图，兼容原有调用方。
+ * 特征构造仅读取「严格早于目标月」的月份，从数据结构上支撑防泄露测试。此对象不含任何 DB/Spring 依赖。</p>
+ *
+ * <p>需求序列另维护两份派生索引（非零月前缀计数、最近正需求月回指），在序列版本变化后首次读取时惰性重建，
+ * 使零需求占比与正需求滞后的计算与回看窗口长度无关。非线程安全：同一上下文只应由一个线程构造特征。</p>
  */
-@Data
 public class PartFeatureContext {
 
+    @Getter
+    @Setter
     private String partCode;
 
-    /** 月度消耗量（yyyy-MM → 件数）。缺失月视为 0 需求。 */
-    private Map<String, Double> monthlyDemand = new HashMap<>();
+    /** 月度消耗量（月份序号 → 件数）。缺失月视为 0 需求。 */
+    private final MonthSeries demand = new MonthSeries();
+
+    /** 月度关联设备运行时长汇总（月份序号 → 小时）。 */
+    private final MonthSeries equipHr = new MonthSeries();
 
-    /** 月度关联设备运行时长汇总（yyyy-MM → 小时）。 */
-    private Map<String, Double> monthlyEquipHr = new HashMap<>();
+    /** 月度关联设备维修工单数（月份序号 → 工单数）。 */
+    private final MonthSeries repairCnt = new MonthSeries();
 
-    /** 月度关联设备维修工单数（yyyy-MM → 工单数）。 */
-    private Map<String, Double> monthlyRepairCnt = new HashMap<>();
+    /** 派生索引对应的需求序列版本；-1 表示尚未构建。 */
+    private int derivedVersion = -1;
+    /** 派生索引首元素对应的月份序号（与构建时的 demand.base() 一致）。 */
+    private int derivedBase;
+    /** nonZeroPrefix[i] = [base, base+i) 内需求非 0 的月数。 */
+    private int[] nonZeroPrefix;
+    /** lastPositive[i] = 不晚于 base+i 的最近一个正需求月的数组下标，无则 -1。 */
+    private int[] lastPositive;
+    /** 最早一个消耗历史月的序号。 */
+    private int firstHistory;
 
     public PartFeatureContext() {
     }
@@ -32,15 +48,131 @@ public class PartFeatureContext {
         this.partCode = partCode;
     }
 
+    // ================================================================
+    // Map 视图（兼容原接口）
+    // ================================================================
+
+    public Map<String, Double> getMonthlyDemand() {
+        return demand.asMap();
+    }
+
+    public void setMonthlyDemand(Map<String, Double> monthlyDemand) {
+        demand.replaceWith(monthlyDemand);
+    }
+
+    public Map<String, Double> getMonthlyEquipHr() {
+        return equipHr.asMap();
+    }
+
+    public void setMonthlyEquipHr(Map<String, Double> monthlyEquipHr) {
+        equipHr.replaceWith(monthlyEquipHr);
+    }
+
+    public Map<String, Double> getMonthlyRepairCnt() {
+        return repairCnt.asMap();
+    }
+
+    public void setMonthlyRepairCnt(Map<String, Double> monthlyRepairCnt) {
+        repairCnt.replaceWith(monthlyRepairCnt);
+    }
+
     public double demandOf(String month) {
-        return monthlyDemand.getOrDefault(month, 0.0);
+        return demand.at(MonthSeries.indexOf(month));
     }
 
     public double equipHrOf(String month) {
-        return monthlyEquipHr.getOrDefault(month, 0.0);
+        return equipHr.at(MonthSeries.indexOf(month));
     }
 
     public double repairCntOf(String month) {
-        return monthlyRepairCnt.getOrDefault(month, 0.0);
+        return repairCnt.at(MonthSeries.indexOf(month));
+    }
+
+    // ================================================================
+    // 列式访问（月份序号见 MonthSeries.indexOf）
+    // ================================================================
+
+    public double demandAt(int monthIndex) {
+        return demand.at(monthIndex);
+    }
+
+    /** 按月份序号写入消耗量（批量加载用，免去月份字符串往返）。 */
+    void putDemandAt(int monthIndex, double value) {
+        demand.put(monthIndex, value);
+    }
+
+    public double equipHrAt(int monthIndex) {
+        return equipHr.at(monthIndex);
+    }
+
+    public double repairCntAt(int monthIndex) {
+        return repairCnt.at(monthIndex);
+    }
+
+    /** 最早消耗历史月的序号；无任何消耗记录时返回 {@link Integer#MAX_VALUE}。 */
+    public int firstHistoryIndex() {
+        ensureDerived();
+        return firstHistory;
+    }
+
+    /** [fromIndex, toIndex) 内零需求（含缺失）月数，基于非零月前缀计数 O(1) 求得。 */
+    public int zeroDemandMonths(int fromIndex, int toIndex) {
+        if (toIndex <= fromIndex) {
+            return 0;
+        }
+        ensureDerived();
+        int lo = Math.max(fromIndex - derivedBase, 0);
+        int hi = Math.min(toIndex - derivedBase, nonZeroPrefix.length - 1);
+        int nonZero = hi > lo ? nonZeroPrefix[hi] - nonZeroPrefix[lo] : 0;
+        return (toIndex - fromIndex) - nonZero;
+    }
+
+    /**
+     * 不晚于 {@code monthIndex} 的最近一个正需求月序号；不存在时返回 {@link MonthSeries#INVALID}。
+     */
+    public int lastPositiveAtOrBefore(int monthIndex) {
+        ensureDerived();
+        int i = monthIndex - derivedBase;
+        if (i < 0) {
+            return MonthSeries.INVALID;
+        }
+        if (i >= lastPositive.length) {
+            i = lastPositive.length - 1;
+            if (i < 0) {
+                return MonthSeries.INVALID;
+            }
+        }
+        int p = lastPositive[i];
+        return p < 0 ? MonthSeries.INVALID : derivedBase + p;
+    }
+
+    private void ensureDerived() {
+        if (derivedVersion == demand.version() && nonZeroPrefix != null) {
+            return;
+        }
+        int n = demand.capacity();
+        int base = demand.base();
+        int[] prefix = new int[n + 1];
+        int[] lastPos = new int[n];
+        int last = -1;
+        for (int i = 0; i < n; i++) {
+            double d = demand.at(base + i);
+            prefix[i + 1] = prefix[i] + (d == 0.0 ? 0 : 1);
+            if (d > 0) {
+                last = i;
+            }
+            lastPos[i] = last;
+        }
+        nonZeroPrefix = prefix;
+        lastPositive = lastPos;
+        derivedBase = base;
+        firstHistory = demand.firstIndex();
+        derivedVersion = demand.version();
+    }
+
+    @Override
+    public String toString() {
+        return "PartFeatureContext(partCode=" + partCode + ", monthlyDemand=" + demand
+                + ", monthlyEquipHr=" + equipHr + ", monthlyRepairCnt=" + repairCnt + ")";
     }
 }
@@ -75,6 +75,30 @@ public class FeatureVector {
         };
     }
 
+    /**
+     * 将阶段一特征写入行主序缓冲区 {@code dst[offset .. offset+9)}，供批量推理复用缓冲区、免逐行分配。
+     */
+    public void writeStage1(float[] dst, int offset) {
+        dst[offset] = (float) lag1;
+        dst[offset + 1] = (float) lag3Mean;
+        dst[offset + 2] = (float) lag3Std;
+        dst[offset + 3] = (float) zeroRatio6;
+        dst[offset + 4] = (float) equipHr;
+        dst[offset + 5] = (float) repairCnt;
+        dst[offset + 6] = (float) month;
+        dst[offset + 7] = (float) abcCode;
+        dst[offset + 8] = (float) xyzCode;
+    }
+
+    /**
+     * 将阶段二特征写入行主序缓冲区 {@code dst[offset .. offset+11)}。
+     */
+    public void writeStage2(float[] dst, int offset) {
+        writeStage1(dst, offset);
+        dst[offset + 9] = (float) posLag1;
+        dst[offset + 10] = (float) posLag3Mean;
+    }
+
     /**
      * 导出阶段二特征数组（顺序严格对应 {@link #STAGE2_FEATURES}）。
      */
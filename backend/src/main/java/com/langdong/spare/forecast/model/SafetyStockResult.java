@@ -5,7 +5,7 @@ import lombok.Data;
 /**
  * 蒙特卡洛安全库存计算输出（算法 3-2）。
  *
- * <p>由 {@code LeadTimeDemandSimulator} 基于提前期累计需求分布的经验分位数得到。</p>
+ * <p>由 {@code LeadTimeDemandSimulator} 基于提前期累计需求分布的经验分位数得到（短提前期可由 {@code LeadTimeQuantileService} 半解析近似）。</p>
  */
 @Data
 public class SafetyStockResult {
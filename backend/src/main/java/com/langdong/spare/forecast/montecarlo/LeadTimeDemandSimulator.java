@@ -2,25 +2,41 @@ package com.langdong.spare.forecast.montecarlo;
 
 import com.langdong.spare.forecast.config.ForecastProperties;
 import com.langdong.spare.forecast.model.SafetyStockResult;
-import org.apache.commons.math3.random.JDKRandomGenerator;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 /**
  * 提前期需求蒙特卡洛模拟器（算法 3-2）。
  *
  * <p>基于预测的发生概率、均值、区间上下界推导标准差，并通过蒙特卡洛模拟
  * 生成提前期内的累计需求经验分布，结合服务水平分位数，计算出补货点（ROP）与安全库存（SS）。</p>
+ *
+ * <p>模拟核心无对象分配：随机源为按配置种子构造的 {@link SplittableRandom}（非同步、可拆分），
+ * 截断正态采样走 {@link TruncatedNormalSampler.Prepared} 的有理逆 CDF，样本写入每线程复用的缓冲区，
+ * 分位数由 {@link SampleQuantile} 选择算法求得（与 commons-math Percentile 结果一致）。
+ * 相同种子与参数下结果完全可复现。</p>
+ *
+ * <p>模拟次数达到 {@code forecast.monte-carlo.parallel-threshold} 时改为分块并行：按固定块大小切分，
+ * 每块使用由种子依次 {@code split()} 派生的独立随机流，在专用 ForkJoin 池中并行写入各自的样本区间，
+ * 合并后的样本与线程数无关，结果同样可复现。A 类备件可借此使用更高的模拟次数。</p>
  */
 @Component
 public class LeadTimeDemandSimulator {
 
     private static final Logger log = LoggerFactory.getLogger(LeadTimeDemandSimulator.class);
 
+    /** 每线程复用的样本缓冲区（按需扩容），避免每个备件分配 simulations 长度的数组。 */
+    private static final ThreadLocal<double[]> SAMPLE_BUFFER = ThreadLocal.withInitial(() -> new double[0]);
+
     private final ForecastProperties forecastProperties;
     private final TruncatedNormalSampler sampler;
+    private volatile ForkJoinPool blockPool;
 
     public LeadTimeDemandSimulator(ForecastProperties forecastProperties) {
         this.forecastProperties = forecastProperties;
@@ -41,39 +57,45 @@ public class LeadTimeDemandSimulator {
     public SafetyStockResult calculateSafetyStock(double occurrenceProb, double positiveQty,
                                                   double lowerBound, double upperBound,
                                                   int leadTime, double serviceLevel) {
+        return calculateSafetyStock(occurrenceProb, positiveQty, lowerBound, upperBound, leadTime, serviceLevel,
+                forecastProperties.getMonteCarlo().getSimulations());
+    }
+
+    /**
+     * 以指定模拟次数计算安全库存与补货点（用于按 ABC 类别区分模拟次数）。
+     *
+     * @param simulations 模拟次数 M
+     */
+    public SafetyStockResult calculateSafetyStock(double occurrenceProb, double positiveQty,
+                                                  double lowerBound, double upperBound,
+                                                  int leadTime, double serviceLevel, int simulations) {
         // 1. 参数校验
-        if (occurrenceProb < 0.0 || occurrenceProb > 1.0) {
-            throw new IllegalArgumentException("需求发生概率必须在 [0, 1] 之间: " + occurrenceProb);
-        }
-        if (leadTime < 0) {
-            throw new IllegalArgumentException("采购提前期不能为负数: " + leadTime);
-        }
-        if (serviceLevel < 0.0 || serviceLevel > 1.0) {
-            throw new IllegalArgumentException("服务水平必须在 [0, 1] 之间: " + serviceLevel);
-        }
+        validateInputs(occurrenceProb, leadTime, serviceLevel);
 
         ForecastProperties.MonteCarlo mcConfig = forecastProperties.getMonteCarlo();
-        int simulations = mcConfig.getSimulations();
 
         // 边界保护：若提前期为 0，则不需要备库，直接返回零
         if (leadTime == 0) {
             return new SafetyStockResult(0, 0, serviceLevel, 0.0, 0.0);
         }
 
-        // 调用模拟核心方法
-        double[] samples = simulateLeadTimeDemandSamples(occurrenceProb, positiveQty, lowerBound, upperBound, leadTime, simulations);
+        // 调用模拟核心方法（写入每线程复用缓冲区）
+        double[] samples = SAMPLE_BUFFER.get();
+        if (samples.length < simulations) {
+            samples = new double[simulations];
+            SAMPLE_BUFFER.set(samples);
+        }
+        simulateInto(samples, occurrenceProb, positiveQty, lowerBound, upperBound, leadTime, simulations);
 
         // 计算统计指标与分位数
         double sampleMean = 0.0;
-        for (double val : samples) {
-            sampleMean += val;
+        for (int m = 0; m < simulations; m++) {
+            sampleMean += samples[m];
         }
         sampleMean /= simulations;
 
-        // 计算服务水平 α 对应的经验分位数
-        Percentile percentile = new Percentile();
-        percentile.setData(samples);
-        double leadTimeDemandQuantile = percentile.evaluate(serviceLevel * 100.0);
+        // 计算服务水平 α 对应的经验分位数（选择算法，原地打乱缓冲区，须在求均值之后）
+        double leadTimeDemandQuantile = SampleQuantile.evaluate(samples, simulations, serviceLevel * 100.0);
 
         // 补货点 ROP = ceil( Quantile(samples, α) )
         int reorderPoint = (int) Math.ceil(leadTimeDemandQuantile);
@@ -89,12 +111,38 @@ public class LeadTimeDemandSimulator {
         return new SafetyStockResult(reorderPoint, safetyStock, serviceLevel, sampleMean, leadTimeDemandQuantile);
     }
 
+    /** 校验发生概率、提前期与服务水平的取值范围。 */
+    static void validateInputs(double occurrenceProb, int leadTime, double serviceLevel) {
+        if (occurrenceProb < 0.0 || occurrenceProb > 1.0) {
+            throw new IllegalArgumentException("需求发生概率必须在 [0, 1] 之间: " + occurrenceProb);
+        }
+        if (leadTime < 0) {
+            throw new IllegalArgumentException("采购提前期不能为负数: " + leadTime);
+        }
+        if (serviceLevel < 0.0 || serviceLevel > 1.0) {
+            throw new IllegalArgumentException("服务水平必须在 [0, 1] 之间: " + serviceLevel);
+        }
+    }
+
     /**
      * 导出模拟样本集合，用于评估计算（如 CRPS）。
      */
     public double[] simulateLeadTimeDemandSamples(double occurrenceProb, double positiveQty,
                                                   double lowerBound, double upperBound,
                                                   int leadTime, int simulations) {
+        if (simulations <= 0) {
+            throw new IllegalArgumentException("模拟次数必须大于 0: " + simulations);
+        }
+        double[] samples = new double[simulations];
+        simulateInto(samples, occurrenceProb, positiveQty, lowerBound, upperBound, leadTime, simulations);
+        return samples;
+    }
+
+    /**
+     * 模拟核心：将 simulations 次提前期累计需求写入 {@code out[0, simulations)}。
+     */
+    private void simulateInto(double[] out, double occurrenceProb, double positiveQty,
+                              double lowerBound, double upperBound, int leadTime, int simulations) {
         ForecastProperties.MonteCarlo mcConfig = forecastProperties.getMonteCarlo();
         int workingDays = mcConfig.getWorkingDays();
         double intervalZ = mcConfig.getIntervalZ();
@@ -112,15 +160,36 @@ public class LeadTimeDemandSimulator {
         if (sd < 0) {
             sd = 0.0;
         }
+        TruncatedNormalSampler.Prepared positive = sampler.prepare(positiveQty, sd);
 
-        // 初始化共享种子的随机数生成器，保证 100% 可复现
-        JDKRandomGenerator rng = new JDKRandomGenerator();
-        rng.setSeed(seed);
+        if (!mcConfig.isBlockParallel(simulations)) {
+            // 以共享种子初始化随机源，保证 100% 可复现
+            simulateBlock(out, 0, simulations, new SplittableRandom(seed), occurrenceProb, positive, leadTime, workingDays);
+            return;
+        }
 
-        double[] samples = new double[simulations];
+        // 分块并行：按固定块大小切分，各块随机流由种子依次 split 派生，与线程数、调度顺序无关
+        int blockSize = mcConfig.getBlockSize();
+        int blocks = (simulations + blockSize - 1) / blockSize;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            streams[b] = root.split();
+        }
+        blockPool().submit(() -> IntStream.range(0, blocks).parallel().forEach(b -> {
+            int from = b * blockSize;
+            int to = Math.min(simulations, from + blockSize);
+            simulateBlock(out, from, to, streams[b], occurrenceProb, positive, leadTime, workingDays);
+        })).join();
+    }
 
+    /**
+     * 单随机流模拟 [from, to) 区间的样本。
+     */
+    private static void simulateBlock(double[] out, int from, int to, SplittableRandom rng, double occurrenceProb,
+                                      TruncatedNormalSampler.Prepared positive, int leadTime, int workingDays) {
         // 蒙特卡洛模拟循环
-        for (int m = 0; m < simulations; m++) {
+        for (int m = from; m < to; m++) {
             // 触发日：均匀分布整数 s ∈ [1, W]
             int s = rng.nextInt(workingDays) + 1;
 
@@ -132,23 +201,43 @@ public class LeadTimeDemandSimulator {
             while (remainingDays > 0) {
                 int daysToTake = Math.min(remainingDays, daysInCurrentMonth);
 
-                // 采样发生状态 I ~ Bernoulli(p_t)
-                int i = (rng.nextDouble() < occurrenceProb) ? 1 : 0;
-
-                // 采样正需求量 Y ~ TruncatedNormal(mean, sd, 0)
-                double y = sampler.sample(rng, positiveQty, sd);
-
-                double dMonth = i * y;
-                accumulatedDemand += (daysToTake / (double) workingDays) * dMonth;
+                // 采样发生状态 I ~ Bernoulli(p_t)；未发生时无需再采样正需求量
+                if (rng.nextDouble() < occurrenceProb) {
+                    // 采样正需求量 Y ~ TruncatedNormal(mean, sd, 0)
+                    accumulatedDemand += (daysToTake / (double) workingDays) * positive.sample(rng);
+                }
 
                 // 扣减剩余提前期，并将下一个月的可用工作日重置为整个月工作日 W
                 remainingDays -= daysToTake;
                 daysInCurrentMonth = workingDays;
             }
 
-            samples[m] = accumulatedDemand;
+            out[m] = accumulatedDemand;
         }
+    }
 
-        return samples;
+    /** 分块并行专用 ForkJoin 池（首次使用时按配置并行度创建）。 */
+    private ForkJoinPool blockPool() {
+        ForkJoinPool pool = blockPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = blockPool;
+                if (pool == null) {
+                    int parallelism = forecastProperties.getMonteCarlo().getParallelism();
+                    pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+                    blockPool = pool;
+                    log.info("[蒙特卡洛] 分块并行池已创建，并行度={}", pool.getParallelism());
+                }
+            }
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = blockPool;
+        if (pool != null) {
+            pool.shutdown();
+        }
     }
 }
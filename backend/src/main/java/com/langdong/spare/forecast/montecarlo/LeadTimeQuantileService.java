@@ -0,0 +1,180 @@
+package com.langdong.spare.forecast.montecarlo;
+
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.forecast.model.SafetyStockResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提前期需求分位数服务：位于 {@link LeadTimeDemandSimulator} 之前的三级求解。
+ *
+ * <ol>
+ *   <li>提前期不超过一个月工作日（L ≤ W）时，走 {@link SingleMonthLeadTimeApproximation} 半解析近似；</li>
+ *   <li>其余参数组合按量化后的 (p, ŷ, L, U, leadTime, α, M) 查有界 LRU 缓存；</li>
+ *   <li>缓存未命中才执行完整蒙特卡洛模拟并回填。</li>
+ * </ol>
+ *
+ * <p>启用缓存时，模拟一律以<b>量化后的参数</b>执行，结果只取决于量化键而与备件到达顺序、缓存状态无关，
+ * 保证并行/串行重算结果一致。三类路径的调用次数可通过 {@link #stats()} 获取。</p>
+ */
+@Component
+public class LeadTimeQuantileService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeadTimeQuantileService.class);
+
+    private final LeadTimeDemandSimulator simulator;
+    private final ForecastProperties forecastProperties;
+    private final Map<Key, SafetyStockResult> cache;
+
+    private final AtomicLong analyticCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong simulatedCount = new AtomicLong();
+
+    public LeadTimeQuantileService(LeadTimeDemandSimulator simulator, ForecastProperties forecastProperties) {
+        this.simulator = simulator;
+        this.forecastProperties = forecastProperties;
+        final int capacity = Math.max(1, forecastProperties.getMonteCarlo().getCacheSize());
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SafetyStockResult> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 计算安全库存与补货点，参数含义同 {@link LeadTimeDemandSimulator#calculateSafetyStock}。
+     */
+    public SafetyStockResult calculateSafetyStock(double occurrenceProb, double positiveQty,
+                                                  double lowerBound, double upperBound,
+                                                  int leadTime, double serviceLevel) {
+        return calculateSafetyStock(occurrenceProb, positiveQty, lowerBound, upperBound, leadTime, serviceLevel, null);
+    }
+
+    /**
+     * 按备件 ABC 类别解析模拟次数（{@code forecast.monte-carlo.simulations-by-class}）后计算安全库存。
+     *
+     * @param abcClass ABC 类别（A/B/C），为 null 时使用默认模拟次数
+     */
+    public SafetyStockResult calculateSafetyStock(double occurrenceProb, double positiveQty,
+                                                  double lowerBound, double upperBound,
+                                                  int leadTime, double serviceLevel, String abcClass) {
+        ForecastProperties.MonteCarlo mc = forecastProperties.getMonteCarlo();
+        int simulations = mc.simulationsOf(abcClass);
+        LeadTimeDemandSimulator.validateInputs(occurrenceProb, leadTime, serviceLevel);
+        if (leadTime == 0) {
+            return simulator.calculateSafetyStock(occurrenceProb, positiveQty, lowerBound, upperBound, leadTime,
+                    serviceLevel, simulations);
+        }
+
+        // 1. 单月提前期：半解析近似
+        if (mc.isAnalyticSingleMonth()
+                && SingleMonthLeadTimeApproximation.applicable(leadTime, mc.getWorkingDays(), serviceLevel)) {
+            double sd = Math.max(0.0, (upperBound - lowerBound) / (2.0 * mc.getIntervalZ()));
+            double[] qm = SingleMonthLeadTimeApproximation.quantileAndMean(
+                    occurrenceProb, positiveQty, sd, leadTime, mc.getWorkingDays(), serviceLevel);
+            analyticCount.incrementAndGet();
+            int reorderPoint = (int) Math.ceil(qm[0]);
+            return new SafetyStockResult(reorderPoint, reorderPoint - (int) Math.ceil(qm[1]), serviceLevel, qm[1], qm[0]);
+        }
+
+        if (!mc.isCacheEnabled()) {
+            simulatedCount.incrementAndGet();
+            return simulator.calculateSafetyStock(occurrenceProb, positiveQty, lowerBound, upperBound, leadTime,
+                    serviceLevel, simulations);
+        }
+
+        // 2. 量化参数查 LRU 缓存
+        int digits = mc.getQuantizeDigits();
+        Key key = new Key(quantize(occurrenceProb, digits), quantize(positiveQty, digits),
+                quantize(lowerBound, digits), quantize(upperBound, digits), leadTime, serviceLevel,
+                simulations);
+        SafetyStockResult cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            cacheHitCount.incrementAndGet();
+            return cached;
+        }
+
+        // 3. 未命中：以量化参数完整模拟并回填
+        SafetyStockResult result = simulator.calculateSafetyStock(
+                key.occurrenceProb(), key.positiveQty(), key.lowerBound(), key.upperBound(), leadTime, serviceLevel,
+                simulations);
+        simulatedCount.incrementAndGet();
+        synchronized (cache) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /** 当前统计快照。 */
+    public Stats stats() {
+        return new Stats(analyticCount.get(), cacheHitCount.get(), simulatedCount.get());
+    }
+
+    /** 清零统计（缓存内容保留，跨月重算可继续复用）。 */
+    public void resetStats() {
+        analyticCount.set(0);
+        cacheHitCount.set(0);
+        simulatedCount.set(0);
+    }
+
+    /** 清空缓存（模拟参数如种子、工作日变化后调用）。 */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        log.info("[蒙特卡洛] 分位数缓存已清空");
+    }
+
+    /**
+     * 按有效数字位数量化（概率同样适用：0.12345 → 0.1235）。
+     */
+    static double quantize(double x, int digits) {
+        if (x == 0.0 || Double.isNaN(x) || Double.isInfinite(x) || digits <= 0) {
+            return x;
+        }
+        return new BigDecimal(x).round(new MathContext(digits, RoundingMode.HALF_EVEN)).doubleValue();
+    }
+
+    /** 缓存键：全部为量化后的参数。 */
+    record Key(double occurrenceProb, double positiveQty, double lowerBound, double upperBound,
+               int leadTime, double serviceLevel, int simulations) {
+    }
+
+    /**
+     * 三类路径调用次数统计。
+     *
+     * @param analytic  半解析近似次数
+     * @param cacheHits 缓存命中次数
+     * @param simulated 完整模拟次数
+     */
+    public record Stats(long analytic, long cacheHits, long simulated) {
+
+        public long total() {
+            return analytic + cacheHits + simulated;
+        }
+
+        /** 免模拟率 = (解析 + 命中) / 总数。 */
+        public double avoidedRate() {
+            long total = total();
+            return total == 0 ? 0.0 : (double) (analytic + cacheHits) / total;
+        }
+
+        /** 缓存命中率 = 命中 / (命中 + 模拟)。 */
+        public double cacheHitRate() {
+            long lookups = cacheHits + simulated;
+            return lookups == 0 ? 0.0 : (double) cacheHits / lookups;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.langdong.spare.forecast.montecarlo;
+
+/**
+ * 基于选择算法的经验分位数（不做全排序）。
+ *
+ * <p>估计方式与 commons-math {@code Percentile}（默认 LEGACY 估计）一致：
+ * pos = p·(n+1)，取第 ⌊pos⌋、⌊pos⌋+1 个次序统计量线性插值；pos &lt; 1 取最小值，pos ≥ n 取最大值。
+ * 次序统计量通过原地快速选择（三数取中）求得，期望 O(n)，会打乱输入缓冲区前 n 个元素的顺序。</p>
+ */
+public final class SampleQuantile {
+
+    private SampleQuantile() {
+    }
+
+    /**
+     * 计算缓冲区前 n 个样本的经验分位数（原地选择，调用后元素顺序被改变）。
+     *
+     * @param data     样本缓冲区
+     * @param n        有效样本数（&gt; 0）
+     * @param quantile 百分位，[0, 100]
+     */
+    public static double evaluate(double[] data, int n, double quantile) {
+        if (n <= 0 || n > data.length) {
+            throw new IllegalArgumentException("有效样本数非法: " + n);
+        }
+        if (quantile < 0.0 || quantile > 100.0) {
+            throw new IllegalArgumentException("百分位必须在 [0, 100] 之间: " + quantile);
+        }
+        double p = quantile / 100.0;
+        double pos = p == 0.0 ? 0.0 : (p == 1.0 ? n : p * (n + 1));
+        if (pos < 1) {
+            return select(data, n, 0);
+        }
+        if (pos >= n) {
+            return select(data, n, n - 1);
+        }
+        double fpos = Math.floor(pos);
+        int intPos = (int) fpos;
+        double dif = pos - fpos;
+        double lower = select(data, n, intPos - 1);
+        // 选择后 [intPos, n) 均 ≥ lower，第 intPos 个次序统计量即其中最小值
+        double upper = data[intPos];
+        for (int i = intPos + 1; i < n; i++) {
+            if (data[i] < upper) {
+                upper = data[i];
+            }
+        }
+        return lower + dif * (upper - lower);
+    }
+
+    /** 原地快速选择第 k 小（0 起）元素；返回后 data[k] 即结果，左侧均 ≤ 它、右侧均 ≥ 它。 */
+    static double select(double[] data, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            // 三数取中，结果放到 right 作为枢轴
+            if (data[mid] < data[left]) {
+                swap(data, mid, left);
+            }
+            if (data[right] < data[left]) {
+                swap(data, right, left);
+            }
+            if (data[mid] < data[right]) {
+                swap(data, mid, right);
+            }
+            double pivot = data[right];
+            int store = left;
+            for (int i = left; i < right; i++) {
+                if (data[i] < pivot) {
+                    swap(data, i, store++);
+                }
+            }
+            swap(data, store, right);
+            // 枢轴右侧与其相等的元素聚拢，避免大量重复值（如零需求）时退化为 O(n²)
+            int eqEnd = store + 1;
+            for (int i = store + 1; i <= right; i++) {
+                if (data[i] == pivot) {
+                    swap(data, i, eqEnd++);
+                }
+            }
+            if (k < store) {
+                right = store - 1;
+            } else if (k >= eqEnd) {
+                left = eqEnd;
+            } else {
+                return pivot;
+            }
+        }
+        return data[k];
+    }
+
+    private static void swap(double[] data, int i, int j) {
+        double t = data[i];
+        data[i] = data[j];
+        data[j] = t;
+    }
+}
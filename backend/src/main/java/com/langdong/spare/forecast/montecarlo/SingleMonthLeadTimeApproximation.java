@@ -0,0 +1,143 @@
+package com.langdong.spare.forecast.montecarlo;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+/**
+ * 提前期不超过一个月工作日（L ≤ W）时的提前期需求分布半解析近似。
+ *
+ * <p>与 {@link LeadTimeDemandSimulator} 同一模型：触发日 s ~ U{1..W}，首月覆盖 a = W − s + 1 天。
+ * L ≤ a 时提前期落在单月内，D = (L/W)·I·Y，其 CDF 为 (1−p) + p·F_Y(x·W/L)，精确；
+ * 否则跨越一个月边界，D = c₁I₁Y₁ + c₂I₂Y₂，仅双月同时发生的卷积项 c₁Y₁ + c₂Y₂ 用同均值同方差的正态近似，
+ * 其余各项精确。对 s 取平均得 F(x)，二分求 F(x) = α 的分位数；均值 E[D] = p·E[Y]·L/W 为精确值。</p>
+ *
+ * <p>Y 为下界 0 的截断正态，退化规则与 {@link TruncatedNormalSampler} 一致（σ≈0 取常数 max(0, μ)，
+ * Φ(a) ≥ 0.9999999 取 0）。纯函数、线程安全。</p>
+ */
+final class SingleMonthLeadTimeApproximation {
+
+    private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(0.0, 1.0);
+    private static final int MAX_BISECTIONS = 100;
+
+    private SingleMonthLeadTimeApproximation() {
+    }
+
+    /** 是否适用：0 &lt; L ≤ W 且服务水平 &lt; 1（α = 1 时理论分位数无界，交由模拟取样本最大值）。 */
+    static boolean applicable(int leadTime, int workingDays, double serviceLevel) {
+        return leadTime > 0 && leadTime <= workingDays && serviceLevel < 1.0;
+    }
+
+    /**
+     * @return {分位数, 均值}
+     */
+    static double[] quantileAndMean(double occurrenceProb, double mean, double sd,
+                                    int leadTime, int workingDays, double serviceLevel) {
+        PositiveDemand y = new PositiveDemand(mean, sd);
+        double expected = occurrenceProb * y.m1 * leadTime / workingDays;
+
+        if (y.isZero() || occurrenceProb == 0.0 || cdf(0.0, occurrenceProb, y, leadTime, workingDays) >= serviceLevel) {
+            return new double[]{0.0, expected};
+        }
+        double lo = 0.0;
+        double hi = (double) leadTime / workingDays * (y.m1 + 10.0 * Math.sqrt(y.var)) + 1.0;
+        while (cdf(hi, occurrenceProb, y, leadTime, workingDays) < serviceLevel) {
+            lo = hi;
+            hi *= 2.0;
+        }
+        for (int i = 0; i < MAX_BISECTIONS && hi - lo > 1e-9 * (1.0 + hi); i++) {
+            double mid = 0.5 * (lo + hi);
+            if (cdf(mid, occurrenceProb, y, leadTime, workingDays) >= serviceLevel) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+        return new double[]{hi, expected};
+    }
+
+    /** F(x) = P(D ≤ x)，对触发日 s 取平均。 */
+    private static double cdf(double x, double p, PositiveDemand y, int leadTime, int workingDays) {
+        double q = 1.0 - p;
+        double acc = 0.0;
+        for (int s = 1; s <= workingDays; s++) {
+            int firstDays = workingDays - s + 1;
+            if (firstDays >= leadTime) {
+                double c = (double) leadTime / workingDays;
+                acc += q + p * y.cdf(x / c);
+            } else {
+                double c1 = (double) firstDays / workingDays;
+                double c2 = (double) (leadTime - firstDays) / workingDays;
+                acc += q * q + p * q * (y.cdf(x / c1) + y.cdf(x / c2)) + p * p * y.sumCdf(x, c1, c2);
+            }
+        }
+        return acc / workingDays;
+    }
+
+    /** 下界 0 的截断正态 Y 的 CDF 与一、二阶矩。 */
+    private static final class PositiveDemand {
+        private final double mean;
+        private final double sd;
+        private final double phiA;
+        private final double tail;
+        /** 退化常数；NaN 表示非退化。 */
+        private final double constant;
+        private final double m1;
+        private final double var;
+
+        PositiveDemand(double mean, double sd) {
+            this.mean = mean;
+            this.sd = sd;
+            if (sd <= 1e-9) {
+                constant = Math.max(0.0, mean);
+                phiA = 0.0;
+                tail = 1.0;
+                m1 = constant;
+                var = 0.0;
+                return;
+            }
+            double a = -mean / sd;
+            double pa = STANDARD_NORMAL.cumulativeProbability(a);
+            if (pa >= 0.9999999) {
+                constant = 0.0;
+                phiA = pa;
+                tail = 1.0 - pa;
+                m1 = 0.0;
+                var = 0.0;
+                return;
+            }
+            constant = Double.NaN;
+            phiA = pa;
+            tail = 1.0 - pa;
+            double lambda = STANDARD_NORMAL.density(a) / tail;
+            m1 = mean + sd * lambda;
+            var = sd * sd * Math.max(0.0, 1.0 + a * lambda - lambda * lambda);
+        }
+
+        boolean isZero() {
+            return constant == 0.0;
+        }
+
+        double cdf(double v) {
+            if (v < 0) {
+                return 0.0;
+            }
+            if (constant == constant) {
+                return v >= constant ? 1.0 : 0.0;
+            }
+            double f = (STANDARD_NORMAL.cumulativeProbability((v - mean) / sd) - phiA) / tail;
+            return Math.min(1.0, Math.max(0.0, f));
+        }
+
+        /** c₁Y₁ + c₂Y₂（独立同分布）的 CDF：正态矩匹配近似，退化时为阶跃。 */
+        double sumCdf(double x, double c1, double c2) {
+            if (x < 0) {
+                return 0.0;
+            }
+            double mu = (c1 + c2) * m1;
+            double s2 = (c1 * c1 + c2 * c2) * var;
+            if (s2 <= 0.0) {
+                return x >= mu ? 1.0 : 0.0;
+            }
+            return STANDARD_NORMAL.cumulativeProbability((x - mu) / Math.sqrt(s2));
+        }
+    }
+}
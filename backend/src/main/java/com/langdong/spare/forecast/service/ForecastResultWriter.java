@@ -0,0 +1,159 @@
+package com.langdong.spare.forecast.service;
+
+import com.langdong.spare.entity.AiForecastResult;
+import com.langdong.spare.entity.PartClassify;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.mapper.AiForecastResultMapper;
+import com.langdong.spare.mapper.PartClassifyMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 月度重算结果分批写入器（单次重算使用，非线程安全）。
+ *
+ * <p>重算本身不在事务内运行；写入器的每次落库都通过 {@code transactionTemplate}（调用方配置为 REQUIRES_NEW）
+ * 开启独立的短事务，正式表行锁只在最后的切换事务内持有。目标月旧结果按备件编码分段删除，
+ * 每段不超过 {@code batchSize} 个编码。</p>
+ *
+ * <ul>
+ *   <li>DIRECT：实体在内存中累积至 {@link #finish}，再在一个事务内删除正式表旧结果并分批写入；</li>
+ *   <li>STAGING：{@link #begin} 清理暂存表，缓冲满 {@code batchSize} 条即在独立事务内写入暂存表并释放，
+ *       {@link #finish} 时在一个事务内删除正式表旧结果并整体搬入，随后清理暂存表。</li>
+ * </ul>
+ */
+final class ForecastResultWriter {
+
+    private final AiForecastResultMapper aiForecastResultMapper;
+    private final PartClassifyMapper partClassifyMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final String targetMonth;
+    private final List<String> partCodes;
+    private final boolean staging;
+    private final int batchSize;
+
+    private List<AiForecastResult> forecastBuffer;
+    private List<PartClassify> classifyBuffer;
+
+    private int written;
+    private int flushes;
+
+    /**
+     * @param transactionTemplate 每次落库使用的事务模板
+     * @param targetMonth         目标月份
+     * @param partCodes           本次重算覆盖的全部备件编码（其目标月旧结果将被替换，含本次跳过的备件）
+     * @param persist             落库配置
+     */
+    ForecastResultWriter(AiForecastResultMapper aiForecastResultMapper, PartClassifyMapper partClassifyMapper,
+                         TransactionTemplate transactionTemplate, String targetMonth, List<String> partCodes,
+                         ForecastProperties.Persist persist) {
+        this.aiForecastResultMapper = aiForecastResultMapper;
+        this.partClassifyMapper = partClassifyMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.targetMonth = targetMonth;
+        this.partCodes = partCodes;
+        this.staging = persist.getMode() == ForecastProperties.Persist.Mode.STAGING;
+        this.batchSize = persist.resolveBatchSize();
+        this.forecastBuffer = new ArrayList<>(staging ? batchSize : Math.max(batchSize, partCodes.size()));
+        this.classifyBuffer = new ArrayList<>(staging ? batchSize : Math.max(batchSize, partCodes.size()));
+    }
+
+    /** 写入前准备：STAGING 清理上次残留的暂存记录；DIRECT 不做任何写入。 */
+    void begin() {
+        if (staging) {
+            transactionTemplate.executeWithoutResult(status -> deleteStaging());
+        }
+    }
+
+    /** 交付一个备件的预测与分类实体；STAGING 模式下缓冲满一批即写出。 */
+    void add(AiForecastResult forecast, PartClassify classify) {
+        forecastBuffer.add(forecast);
+        classifyBuffer.add(classify);
+        if (staging && forecastBuffer.size() >= batchSize) {
+            List<AiForecastResult> forecasts = forecastBuffer;
+            List<PartClassify> classifies = classifyBuffer;
+            // 整批交出后换新缓冲区，已写出的实体随批次列表一起释放
+            forecastBuffer = new ArrayList<>(batchSize);
+            classifyBuffer = new ArrayList<>(batchSize);
+            transactionTemplate.executeWithoutResult(status -> insertChunk(forecasts, classifies));
+        }
+    }
+
+    /**
+     * 在一个短事务内删除正式表旧结果并写入新结果（DIRECT 分批写入缓冲，STAGING 整体搬入暂存记录），
+     * {@code inPublishTx} 随同一事务执行；STAGING 模式提交后再清理暂存表。
+     *
+     * @param inPublishTx 需与结果切换一同提交的写入（如模型版本注册），可为 null
+     */
+    void finish(Runnable inPublishTx) {
+        if (staging) {
+            List<AiForecastResult> forecasts = forecastBuffer;
+            List<PartClassify> classifies = classifyBuffer;
+            forecastBuffer = new ArrayList<>(0);
+            classifyBuffer = new ArrayList<>(0);
+            if (!forecasts.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> insertChunk(forecasts, classifies));
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            deleteLive();
+            if (staging) {
+                aiForecastResultMapper.publishStagingByMonth(targetMonth);
+                partClassifyMapper.publishStagingByMonth(targetMonth);
+            } else {
+                for (int from = 0; from < forecastBuffer.size(); from += batchSize) {
+                    int to = Math.min(forecastBuffer.size(), from + batchSize);
+                    insertChunk(forecastBuffer.subList(from, to), classifyBuffer.subList(from, to));
+                }
+            }
+            if (inPublishTx != null) {
+                inPublishTx.run();
+            }
+        });
+        forecastBuffer = new ArrayList<>(0);
+        classifyBuffer = new ArrayList<>(0);
+        if (staging) {
+            transactionTemplate.executeWithoutResult(status -> deleteStaging());
+        }
+    }
+
+    /** 已写出的预测记录条数。 */
+    int written() {
+        return written;
+    }
+
+    /** 多行 INSERT 批次数（预测与分类各一条语句计为一批）。 */
+    int flushes() {
+        return flushes;
+    }
+
+    boolean isStaging() {
+        return staging;
+    }
+
+    private void insertChunk(List<AiForecastResult> forecasts, List<PartClassify> classifies) {
+        if (staging) {
+            aiForecastResultMapper.insertStagingBatch(forecasts);
+            partClassifyMapper.insertStagingBatch(classifies);
+        } else {
+            aiForecastResultMapper.insertBatch(forecasts);
+            partClassifyMapper.insertBatch(classifies);
+        }
+        written += forecasts.size();
+        flushes++;
+    }
+
+    private void deleteLive() {
+        for (int from = 0; from < partCodes.size(); from += batchSize) {
+            List<String> chunk = partCodes.subList(from, Math.min(partCodes.size(), from + batchSize));
+            aiForecastResultMapper.deleteByMonthAndPartCodes(targetMonth, chunk);
+            partClassifyMapper.deleteByMonthAndPartCodes(targetMonth, chunk);
+        }
+    }
+
+    private void deleteStaging() {
+        aiForecastResultMapper.deleteStagingByMonth(targetMonth);
+        partClassifyMapper.deleteStagingByMonth(targetMonth);
+    }
+}
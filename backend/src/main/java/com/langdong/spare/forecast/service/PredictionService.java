@@ -13,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -26,6 +28,12 @@ public class PredictionService {
 
     private static final Logger log = LoggerFactory.getLogger(PredictionService.class);
 
+    private static final int STAGE1_COLS = FeatureVector.STAGE1_FEATURES.length;
+    private static final int STAGE2_COLS = FeatureVector.STAGE2_FEATURES.length;
+
+    /** 批量推理缓冲区按线程复用（并行重算时各 worker 独立）。 */
+    private static final ThreadLocal<BatchBuffers> BUFFERS = ThreadLocal.withInitial(BatchBuffers::new);
+
     private final DemandOccurrenceStage occurrenceStage;
     private final DemandQuantityStage quantityStage;
 
@@ -74,32 +82,90 @@ public class PredictionService {
         if (x == null) {
             throw new IllegalArgumentException("特征向量为空");
         }
-        if (x.isDataInsufficient()) {
-            ForecastResult r = ForecastResult.insufficient(x.getPartCode(), x.getTargetMonth(),
-                    x.getInsufficientReason());
-            r.setModelVersion(model.getModelVersion());
-            return r;
+        return forecastAll(model, Collections.singletonList(x))[0];
+    }
+
+    /**
+     * 批量推理（列表形式），结果顺序与输入一致。
+     *
+     * @see #forecastAll(TwoStageModel, List)
+     */
+    public List<ForecastResult> forecastBatch(TwoStageModel model, List<FeatureVector> vectors) {
+        if (vectors == null || vectors.isEmpty()) {
+            return new ArrayList<>();
         }
+        return Arrays.asList(forecastAll(model, vectors));
+    }
 
-        float[] s1Feat = x.toStage1Array();
-        float[] s2Feat = x.toStage2Array();
+    /**
+     * 向量化批量推理（算法 3-1 步骤 5~10 的批量形式）。
+     *
+     * <p>将全部有效行写入两块行主序连续缓冲区（阶段一 9 列 / 阶段二 11 列），阶段一分类器一个 DMatrix，
+     * 阶段二三个回归器共享一个 DMatrix，整个批次仅两次原生矩阵构造。缓冲区按线程复用，
+     * 容量不足时才扩容，在线场景与月度批量场景均不产生逐行分配。</p>
+     *
+     * <p>数据不足的特征向量不进入矩阵，直接返回占位结果。</p>
+     *
+     * @param model   两阶段模型
+     * @param vectors 目标月特征向量列表
+     * @return 与输入一一对应的预测结果数组
+     */
+    public ForecastResult[] forecastAll(TwoStageModel model, List<FeatureVector> vectors) {
+        if (vectors == null || vectors.isEmpty()) {
+            return new ForecastResult[0];
+        }
+        int n = vectors.size();
+        BatchBuffers buf = BUFFERS.get().ensure(n);
 
-        // 步骤6：发生概率（经校准）
-        double p = clamp01(model.getStageOne().predictOccurrenceProb(s1Feat));
-        // 步骤7：正需求量点估计
-        double yHat = model.getStageTwo().predictPositiveQty(s2Feat);
-        // 步骤8：分位数区间
-        double lower = model.getStageTwo().predictLower(s2Feat);
-        double upper = model.getStageTwo().predictUpper(s2Feat);
+        // 步骤5：组装特征矩阵（跳过数据不足行）
+        int rows = 0;
+        for (int i = 0; i < n; i++) {
+            FeatureVector x = vectors.get(i);
+            if (x == null) {
+                throw new IllegalArgumentException("特征向量为空（下标 " + i + "）");
+            }
+            if (x.isDataInsufficient()) {
+                continue;
+            }
+            x.writeStage1(buf.stage1, rows * STAGE1_COLS);
+            x.writeStage2(buf.stage2, rows * STAGE2_COLS);
+            buf.rowIndex[rows++] = i;
+        }
+
+        // 步骤6：发生概率（经校准）；步骤7~8：正需求量点估计与分位数区间
+        if (rows > 0) {
+            model.getStageOne().predictOccurrenceProbs(buf.stage1, rows, buf.prob);
+            model.getStageTwo().predictAll(buf.stage2, rows, buf.point, buf.lower, buf.upper);
+        }
+
+        // 步骤9~10：区间校正、总需求点估计 D_hat = p × ŷ 与结果组装
+        ForecastResult[] out = new ForecastResult[n];
+        for (int r = 0; r < rows; r++) {
+            int i = buf.rowIndex[r];
+            out[i] = assemble(model, vectors.get(i), buf.prob[r], buf.point[r], buf.lower[r], buf.upper[r]);
+        }
+        for (int i = 0; i < n; i++) {
+            if (out[i] == null) {
+                FeatureVector x = vectors.get(i);
+                ForecastResult r = ForecastResult.insufficient(x.getPartCode(), x.getTargetMonth(),
+                        x.getInsufficientReason());
+                r.setModelVersion(model.getModelVersion());
+                out[i] = r;
+            }
+        }
+        return out;
+    }
+
+    /** 由四个 Booster 输出组装六标准字段（步骤 6~10 的公共部分）。 */
+    private static ForecastResult assemble(TwoStageModel model, FeatureVector x,
+                                           double rawP, double yHat, double lower, double upper) {
+        double p = clamp01(rawP);
         if (lower > upper) {
             // 分位数交叉（小样本偶发）时交换，保证 L ≤ U
             double tmp = lower;
             lower = upper;
             upper = tmp;
         }
-        // 步骤9：总需求点估计
-        double dHat = p * yHat;
-
         ForecastResult r = new ForecastResult();
         r.setPartCode(x.getPartCode());
         r.setTargetMonth(x.getTargetMonth());
@@ -107,11 +173,38 @@ public class PredictionService {
         r.setPositiveQty(yHat);
         r.setLowerBound(lower);
         r.setUpperBound(upper);
-        r.setDemandHat(dHat);
+        r.setDemandHat(p * yHat);
         r.setModelVersion(model.getModelVersion());
         return r;
     }
 
+    /**
+     * 线程私有的批量推理缓冲区（按需扩容，跨调用复用）。
+     */
+    private static final class BatchBuffers {
+        float[] stage1 = new float[0];
+        float[] stage2 = new float[0];
+        int[] rowIndex = new int[0];
+        double[] prob = new double[0];
+        double[] point = new double[0];
+        double[] lower = new double[0];
+        double[] upper = new double[0];
+
+        BatchBuffers ensure(int rows) {
+            if (rowIndex.length < rows) {
+                int cap = Math.max(rows, rowIndex.length * 2);
+                stage1 = new float[cap * STAGE1_COLS];
+                stage2 = new float[cap * STAGE2_COLS];
+                rowIndex = new int[cap];
+                prob = new double[cap];
+                point = new double[cap];
+                lower = new double[cap];
+                upper = new double[cap];
+            }
+            return this;
+        }
+    }
+
     private static double clamp01(double v) {
         if (v < 0) {
             return 0;
@@ -1,5 +1,6 @@
 package com.langdong.spare.forecast.service;
 
+import com.langdong.spare.dto.PartStockVO;
 import com.langdong.spare.entity.ReorderSuggest;
 import com.langdong.spare.forecast.model.ForecastResult;
 import com.langdong.spare.mapper.ReorderSuggestMapper;
@@ -10,19 +11,31 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 智能补货推送业务服务（模块 G）。
  *
  * <p>比对备件当前可用库存与补货点 ROP，对于低于 ROP 的备件生成补货建议，
  * 计算推荐采购量并标记紧急度，最终按紧急程度降序幂等持久化落库（对应测试 TC-PO-01）。</p>
+ *
+ * <p>批量路径：一次查询全部备件库存后在内存中比对 ROP，按备件编码集合分段删除当月待处理建议，
+ * 再分段多行插入，整个阶段的数据库往返次数与备件数无关（约 备件数/{@value #DELETE_CHUNK_SIZE} + 备件数/{@value #INSERT_CHUNK_SIZE} + 1）。</p>
  */
 @Service
 public class ReplenishmentService {
 
     private static final Logger log = LoggerFactory.getLogger(ReplenishmentService.class);
 
+    /** 按编码集合删除时每段编码数（控制 IN 列表长度） */
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    /** 每条多行 INSERT 写入的建议条数 */
+    private static final int INSERT_CHUNK_SIZE = 500;
+
     private final ReorderSuggestMapper reorderSuggestMapper;
 
     public ReplenishmentService(ReorderSuggestMapper reorderSuggestMapper) {
@@ -44,6 +57,7 @@ public class ReplenishmentService {
 
         log.info("[智能补货] 开始计算补货建议，目标月份: {}，预测条数: {}", suggestMonth, forecasts.size());
         List<ReorderSuggest> suggestionList = new ArrayList<>();
+        Map<String, Integer> stockByCode = loadCurrentStock();
 
         for (ForecastResult fr : forecasts) {
             // 跳过数据不足或计算失败的记录
@@ -55,8 +69,8 @@ public class ReplenishmentService {
             int reorderPoint = fr.getReorderPoint() != null ? fr.getReorderPoint() : 0;
             int safetyStock = fr.getSafetyStock() != null ? fr.getSafetyStock() : 0;
 
-            // 1. 获取当前可用库存（优先读仓储总台账，兜底物理库存）
-            Integer stock = reorderSuggestMapper.findCurrentStockByPartCode(partCode);
+            // 1. 获取当前可用库存（优先读仓储总台账，兜底物理库存；已一次性批量读入内存）
+            Integer stock = stockByCode.get(partCode);
             int currentStock = stock == null ? 0 : Math.max(stock, 0);
 
             // 2. 核心比对：当前可用库存是否触及/低于补货点 ROP
@@ -90,16 +104,48 @@ public class ReplenishmentService {
             return "紧急".equals(a.getUrgency()) ? -1 : 1;
         });
 
-        // 6. 事务内幂等持久化落库
-        int insertCount = 0;
-        for (ReorderSuggest suggest : suggestionList) {
-            // 同月同备件仅保留最新的一条待处理建议，重复生成时覆盖
-            reorderSuggestMapper.deletePendingByPartAndMonth(suggest.getPartCode(), suggestMonth);
-            reorderSuggestMapper.insert(suggest);
-            insertCount++;
-        }
+        // 6. 事务内幂等持久化落库：同月同备件仅保留最新的一条待处理建议，重复生成时覆盖
+        int insertCount = persist(suggestMonth, suggestionList);
 
         log.info("[智能补货] 建议计算完毕，共向数据库推送 {} 条补货建议", insertCount);
         return suggestionList;
     }
+
+    /**
+     * 一次查询全部备件当前库存，编码重复时保留首条（与单备件查询 LIMIT 1 口径一致）
+     */
+    private Map<String, Integer> loadCurrentStock() {
+        List<PartStockVO> rows = reorderSuggestMapper.findAllCurrentStock();
+        Map<String, Integer> stockByCode = new HashMap<>(rows == null ? 16 : rows.size() * 2);
+        if (rows != null) {
+            for (PartStockVO row : rows) {
+                if (row.getPartCode() != null) {
+                    stockByCode.putIfAbsent(row.getPartCode(), row.getQuantity());
+                }
+            }
+        }
+        return stockByCode;
+    }
+
+    /**
+     * 分段删除本批备件当月的待处理建议后分段多行插入；同一备件出现多次时以排序后最后一条为准（与逐条覆盖结果一致）
+     *
+     * @return 插入条数
+     */
+    private int persist(String suggestMonth, List<ReorderSuggest> suggestionList) {
+        Map<String, ReorderSuggest> latestByCode = new LinkedHashMap<>();
+        for (ReorderSuggest suggest : suggestionList) {
+            latestByCode.put(suggest.getPartCode(), suggest);
+        }
+        List<String> partCodes = new ArrayList<>(latestByCode.keySet());
+        for (int from = 0; from < partCodes.size(); from += DELETE_CHUNK_SIZE) {
+            reorderSuggestMapper.deletePendingByMonthAndParts(suggestMonth,
+                    partCodes.subList(from, Math.min(partCodes.size(), from + DELETE_CHUNK_SIZE)));
+        }
+        List<ReorderSuggest> rows = new ArrayList<>(latestByCode.values());
+        for (int from = 0; from < rows.size(); from += INSERT_CHUNK_SIZE) {
+            reorderSuggestMapper.insertBatch(rows.subList(from, Math.min(rows.size(), from + INSERT_CHUNK_SIZE)));
+        }
+        return rows.size();
+    }
 }
@@ -16,8 +16,9 @@ import com.langdong.spare.forecast.model.FeatureVector;
 import com.langdong.spare.forecast.model.ForecastResult;
 import com.langdong.spare.forecast.model.SafetyStockResult;
 import com.langdong.spare.forecast.model.TrainingSample;
-import com.langdong.spare.forecast.montecarlo.LeadTimeDemandSimulator;
+import com.langdong.spare.forecast.montecarlo.LeadTimeQuantileService;
 import com.langdong.spare.forecast.stage.TwoStageModel;
+import com.langdong.spare.forecast.xgboost.XgbTrainer;
 import com.langdong.spare.mapper.AiForecastResultMapper;
 import com.langdong.spare.mapper.AiModelRegistryMapper;
 import com.langdong.spare.mapper.PartClassifyMapper;
@@ -25,7 +26,9 @@ import com.langdong.spare.mapper.SparePartMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -35,6 +38,12 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -42,17 +51,24 @@ import java.util.stream.Collectors;
  *
  * <p>主要编排：加载历史特征 -> ABC×XYZ 分类 -> 两阶段模型重训(包含增量快照优化)
  * -> 两阶段概率预测 -> 蒙特卡洛提前期累计需求模拟 -> 事务一致性落库与模型注册。</p>
+ *
+ * <p>落库：重算本身不在事务内运行，各备件结果按档案顺序交付 {@link ForecastResultWriter}；
+ * 默认 {@code forecast.persist.mode=STAGING}，随处理进度按 {@code forecast.persist.batch-size} 在独立短事务内写入暂存表。
+ * 两种模式都在最后一个短事务内切换正式表结果并注册模型版本。</p>
  */
 @Service
 public class StockThresholdService {
 
     private static final Logger log = LoggerFactory.getLogger(StockThresholdService.class);
 
+    /** 全局模型模式下的模型快照子目录名。 */
+    static final String GLOBAL_MODEL_DIR = "_global";
+
     private final ForecastFeatureLoader featureLoader;
     private final AbcXyzClassifier abcXyzClassifier;
     private final FeatureBuilder featureBuilder;
     private final PredictionService predictionService;
-    private final LeadTimeDemandSimulator leadTimeDemandSimulator;
+    private final LeadTimeQuantileService leadTimeQuantileService;
 
     private final SparePartMapper sparePartMapper;
     private final AiForecastResultMapper aiForecastResultMapper;
@@ -62,6 +78,9 @@ public class StockThresholdService {
     private final ForecastProperties forecastProperties;
     private final XGBoostProperties xgboostProperties;
 
+    /** 落库短事务模板（REQUIRES_NEW），重算期间不持有长事务。 */
+    private final TransactionTemplate persistTransactionTemplate;
+
     // 增量优化配置开关，可通过 application.yml 中的 forecast.incremental 覆盖，默认 true
     private boolean incrementalEnabled = true;
     private String modelBaseDir = "target/models/";
@@ -70,24 +89,27 @@ public class StockThresholdService {
                                  AbcXyzClassifier abcXyzClassifier,
                                  FeatureBuilder featureBuilder,
                                  PredictionService predictionService,
-                                 LeadTimeDemandSimulator leadTimeDemandSimulator,
+                                 LeadTimeQuantileService leadTimeQuantileService,
                                  SparePartMapper sparePartMapper,
                                  AiForecastResultMapper aiForecastResultMapper,
                                  PartClassifyMapper partClassifyMapper,
                                  AiModelRegistryMapper aiModelRegistryMapper,
                                  ForecastProperties forecastProperties,
-                                 XGBoostProperties xgboostProperties) {
+                                 XGBoostProperties xgboostProperties,
+                                 PlatformTransactionManager transactionManager) {
         this.featureLoader = featureLoader;
         this.abcXyzClassifier = abcXyzClassifier;
         this.featureBuilder = featureBuilder;
         this.predictionService = predictionService;
-        this.leadTimeDemandSimulator = leadTimeDemandSimulator;
+        this.leadTimeQuantileService = leadTimeQuantileService;
         this.sparePartMapper = sparePartMapper;
         this.aiForecastResultMapper = aiForecastResultMapper;
         this.partClassifyMapper = partClassifyMapper;
         this.aiModelRegistryMapper = aiModelRegistryMapper;
         this.forecastProperties = forecastProperties;
         this.xgboostProperties = xgboostProperties;
+        this.persistTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.persistTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
         this.incrementalEnabled = forecastProperties.isIncrementalEnabled();
         this.modelBaseDir = forecastProperties.getModelBaseDir();
     }
@@ -119,16 +141,16 @@ public class StockThresholdService {
     /**
      * 全量执行需求预测与库存阈值计算。
      */
-    @Transactional
     public List<ForecastResult> executeForecastAndStockThreshold(String targetMonth) {
         return executeForecastAndStockThreshold(targetMonth, null);
     }
 
     /**
      * 全量执行需求预测与库存阈值计算，包含进度更新。
+     *
+     * <p>方法本身不开启事务：训练与推理可能持续数小时，落库由 {@link ForecastResultWriter} 拆分为独立短事务。</p>
      */
-    @Transactional
-    public List<ForecastResult> executeForecastAndStockThreshold(String targetMonth, java.util.function.Consumer<ProgressUpdate> progressConsumer) {
+    public List<ForecastResult> executeForecastAndStockThreshold(String targetMonth, Consumer<ProgressUpdate> progressConsumer) {
         log.info("[重算任务] 开始执行两阶段智能预测与安全库存计算，目标月份: {}", targetMonth);
 
         YearMonth target = YearMonth.parse(targetMonth);
@@ -152,21 +174,11 @@ public class StockThresholdService {
         AiModelRegistry prevRegistry = aiModelRegistryMapper.findProductionModel("demand-forecaster-two-stage");
         String prevModelVersion = prevRegistry != null ? prevRegistry.getModelVersion() : null;
 
-        // 获取月度分类编码提供者 (防泄露)
-        MonthlyClassCodeProvider codeProvider = abcXyzClassifier.codeProviderWithCache();
-
-        List<ForecastResult> results = new ArrayList<>();
-        List<AiForecastResult> entitiesToInsert = new ArrayList<>();
-        List<PartClassify> classifiesToInsert = new ArrayList<>();
-
-        if (progressConsumer != null) {
-            progressConsumer.accept(new ProgressUpdate(parts.size(), 0, 0, "TRAINING", "正在执行分类与XGBoost两阶段模型训练"));
-        }
+        // 获取月度分类编码提供者 (防泄露)：一次加载，滚动计算训练样本与推理所需的全部截止月
+        MonthlyClassCodeProvider codeProvider = abcXyzClassifier.rollingCodeProvider(
+                target.minusMonths(historyMonths + 1L).toString(), cutoffMonth);
 
         Path baseDir = Paths.get(modelBaseDir);
-        int trainCount = 0;
-        int reuseCount = 0;
-        int skipCount = 0;
 
         // 构造训练时间段（36 个月，终止于上月）
         List<String> trainingMonths = new ArrayList<>();
@@ -174,166 +186,447 @@ public class StockThresholdService {
             trainingMonths.add(target.minusMonths(i + 1L).toString());
         }
 
-        for (SparePart part : parts) {
-            if (progressConsumer != null) {
-                progressConsumer.accept(new ProgressUpdate(parts.size(), results.size(), skipCount, "TRAINING", "正在执行第 " + (results.size() + 1) + "/" + parts.size() + " 个备件的两阶段XGBoost预测重算"));
-            }
+        leadTimeQuantileService.resetStats();
+        RecomputeContext rc = new RecomputeContext(targetMonth, cutoffMonth, modelVersion, baseDir,
+                prevModelVersion, classifications, contexts, codeProvider, trainingMonths);
 
-            String partCode = part.getCode();
-            PartFeatureContext context = contexts.get(partCode);
-            AbcXyzCalculator.Classification classification = classifications.get(partCode);
+        if (progressConsumer != null) {
+            progressConsumer.accept(new ProgressUpdate(parts.size(), 0, 0, "TRAINING", "正在执行分类与XGBoost两阶段模型训练"));
+        }
 
-            if (context == null || classification == null) {
-                results.add(ForecastResult.insufficient(partCode, targetMonth, "未找到备件特征或分类数据"));
-                skipCount++;
-                continue;
+        // 6. 分批且幂等持久化落库：结果随备件完成按档案顺序交付写入器，正式表只在最后的短事务内切换
+        List<String> partCodes = parts.stream().map(SparePart::getCode).collect(Collectors.toList());
+        ForecastResultWriter writer = new ForecastResultWriter(aiForecastResultMapper, partClassifyMapper,
+                persistTransactionTemplate, targetMonth, partCodes, forecastProperties.getPersist());
+        writer.begin();
+        OutcomeCollector collector = new OutcomeCollector(parts.size(), writer);
+
+        if (forecastProperties.getModelMode() == ForecastProperties.ModelMode.GLOBAL) {
+            processPartsGlobal(parts, rc, progressConsumer, collector);
+        } else if (forecastProperties.getParallel().isEnabled() && parts.size() > 1) {
+            processPartsParallel(parts, rc, progressConsumer, collector);
+        } else {
+            processPartsSerial(parts, rc, progressConsumer, collector);
+        }
+
+        List<ForecastResult> results = collector.results;
+        int trainCount = collector.trainCount;
+        int reuseCount = collector.reuseCount;
+        int skipCount = collector.skipCount;
+
+        // 7. 模型版本注册记录
+        AiModelRegistry registry = new AiModelRegistry();
+        registry.setModelName("demand-forecaster-two-stage");
+        registry.setModelVersion(modelVersion);
+        registry.setAlgoType("TWO_STAGE");
+        registry.setArtifactPath(baseDir.resolve(modelVersion).toAbsolutePath().toString());
+        registry.setTrainParts(trainCount + reuseCount);
+        // 估计每个备件 36 个月的大概周数 (36 * 4)
+        registry.setTrainWeeks(36 * 4);
+        registry.setStatus("PRODUCTION");
+        registry.setDeployTime(LocalDateTime.now());
+        registry.setCreateTime(LocalDateTime.now());
+
+        // 结果切换与模型版本注册在同一短事务内提交：将之前生产的模型状态置为 ARCHIVED 归档
+        writer.finish(() -> {
+            if (prevRegistry != null) {
+                aiModelRegistryMapper.updateStatus(prevRegistry.getId(), "ARCHIVED");
             }
+            aiModelRegistryMapper.insert(registry);
+        });
+        log.info("[重算任务] 结果落库完成: 模式={}, 写入={} 条, 批次={}",
+                writer.isStaging() ? "STAGING" : "DIRECT", writer.written(), writer.flushes());
 
-            Path currentModelDir = baseDir.resolve(modelVersion).resolve(partCode);
-            Path prevModelDir = prevModelVersion != null ? baseDir.resolve(prevModelVersion).resolve(partCode) : null;
+        log.info("[重算任务] 两阶段预测重算落库成功！重训数={}, 复用数={}, 跳过数={}, 已注册生产版本: {}",
+                trainCount, reuseCount, skipCount, modelVersion);
+        LeadTimeQuantileService.Stats qs = leadTimeQuantileService.stats();
+        log.info("[重算任务] 安全库存分位数: 解析近似={}, 缓存命中={}, 完整模拟={}, 免模拟率={}%, 缓存命中率={}%",
+                qs.analytic(), qs.cacheHits(), qs.simulated(),
+                String.format("%.1f", qs.avoidedRate() * 100), String.format("%.1f", qs.cacheHitRate() * 100));
 
-            TwoStageModel partModel = null;
-            boolean hasPrevModel = prevModelDir != null && Files.exists(prevModelDir.resolve("classifier.xgb"));
+        return results;
+    }
 
-            // 增量优化：判断上月有无新增消耗
-            double lastMonthDemand = context.demandOf(cutoffMonth);
-            boolean hasNewConsumption = lastMonthDemand > 0.0;
+    /**
+     * 串行逐个处理备件（默认模式，行为与历史版本一致）。
+     *
+     * <p>确定性模式下 XGBoost nthread 与并行模式一样固定为 {@code xgbThreadsPerWorker}，串行与并行结果逐位一致。</p>
+     */
+    private void processPartsSerial(List<SparePart> parts, RecomputeContext rc,
+                                    Consumer<ProgressUpdate> progressConsumer, OutcomeCollector collector) {
+        ForecastProperties.Parallel cfg = forecastProperties.getParallel();
+        int skipCount = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            if (progressConsumer != null) {
+                progressConsumer.accept(new ProgressUpdate(parts.size(), i, skipCount, "TRAINING", "正在执行第 " + (i + 1) + "/" + parts.size() + " 个备件的两阶段XGBoost预测重算"));
+            }
+            SparePart part = parts.get(i);
+            PartOutcome outcome = cfg.isDeterministic()
+                    ? XgbTrainer.withNthread(cfg.resolveXgbThreads(1), () -> processPart(part, rc))
+                    : processPart(part, rc);
+            if (outcome.kind == PartOutcome.Kind.SKIPPED) {
+                skipCount++;
+            }
+            collector.accept(outcome);
+        }
+    }
 
-            if (incrementalEnabled && hasPrevModel && !hasNewConsumption) {
-                // 复用上月模型，进行快照拷贝
+    /**
+     * 有界并行处理备件：每个备件一个任务，结果写入按档案下标对齐的槽位数组。
+     *
+     * <p>worker 数与每个 worker 内 XGBoost nthread 由 {@link ForecastProperties.Parallel} 统一分配；
+     * 进度在每个备件完成后串行化上报，保证 processed 单调递增。任一备件抛出未预期异常时取消其余任务并原样上抛，
+     * 与串行模式的失败语义一致。</p>
+     *
+     * <p>调用线程按档案顺序等待各任务，依次把结果交付收集器，交付后释放槽位。落库只发生在调用线程上，
+     * 由写入器自行开启短事务（本方法不在事务内运行），工作线程不接触数据库。</p>
+     */
+    private void processPartsParallel(List<SparePart> parts, RecomputeContext rc,
+                                      Consumer<ProgressUpdate> progressConsumer, OutcomeCollector collector) {
+        ForecastProperties.Parallel cfg = forecastProperties.getParallel();
+        int workers = cfg.resolveWorkers(parts.size());
+        int xgbThreads = cfg.resolveXgbThreads(workers);
+        log.info("[重算任务] 并行模式: workers={}, xgbThreadsPerWorker={}, deterministic={}",
+                workers, xgbThreads, cfg.isDeterministic());
+
+        PartOutcome[] outcomes = new PartOutcome[parts.size()];
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        Object progressLock = new Object();
+
+        AtomicInteger threadSeq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "forecast-part-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                final int idx = i;
+                futures.add(pool.submit(() -> {
+                    PartOutcome outcome = XgbTrainer.withNthread(xgbThreads, () -> processPart(parts.get(idx), rc));
+                    outcomes[idx] = outcome;
+                    if (outcome.kind == PartOutcome.Kind.SKIPPED) {
+                        skipped.incrementAndGet();
+                    }
+                    if (progressConsumer != null) {
+                        synchronized (progressLock) {
+                            int done = processed.incrementAndGet();
+                            progressConsumer.accept(new ProgressUpdate(parts.size(), done, skipped.get(), "TRAINING",
+                                    "已完成 " + done + "/" + parts.size() + " 个备件的两阶段XGBoost预测重算"));
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    copyDirectory(prevModelDir, currentModelDir);
-                    partModel = TwoStageModel.load(currentModelDir, cutoffMonth, modelVersion);
-                    reuseCount++;
-                } catch (Exception e) {
-                    log.warn("[重算任务] 复用上月模型快照失败，将重新训练: part={}, error={}", partCode, e.getMessage());
+                    futures.get(i).get();
+                    collector.accept(outcomes[i]);
+                    outcomes[i] = null;
+                } catch (ExecutionException e) {
+                    futures.forEach(other -> other.cancel(true));
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("并行重算任务失败: " + cause.getMessage(), cause);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("并行重算被中断", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            // 若无法复用（无上月模型、有新领用、或增量开关关闭），则重新训练
-            if (partModel == null) {
-                List<TrainingSample> trainingSamples = featureBuilder.buildTrainingSamples(context, trainingMonths, codeProvider);
-                List<TrainingSample> positives = trainingSamples.stream().filter(TrainingSample::isPositive).collect(Collectors.toList());
+    /**
+     * 全局模型模式：汇集全部备件的训练样本训练一个两阶段模型，再一次性批量推理所有备件。
+     *
+     * <p>备件级差异由特征向量中的 ABC_code / XYZ_code、滞后统计等刻画；产物仅一组五个文件，
+     * 保存在 {@code <modelBaseDir>/<version>/_global}。增量快照复用仅适用于按件模式，此处总是重训。</p>
+     */
+    private void processPartsGlobal(List<SparePart> parts, RecomputeContext rc,
+                                    Consumer<ProgressUpdate> progressConsumer, OutcomeCollector collector) {
+        PartOutcome[] outcomes = new PartOutcome[parts.size()];
+        List<Integer> eligible = new ArrayList<>(parts.size());
+        List<TrainingSample> pooled = new ArrayList<>();
+        boolean anyPositive = false;
+
+        // 1. 汇集样本
+        for (int i = 0; i < parts.size(); i++) {
+            String partCode = parts.get(i).getCode();
+            PartFeatureContext context = rc.contexts.get(partCode);
+            if (context == null || rc.classifications.get(partCode) == null) {
+                outcomes[i] = PartOutcome.skipped(ForecastResult.insufficient(partCode, rc.targetMonth, "未找到备件特征或分类数据"));
+                continue;
+            }
+            eligible.add(i);
+            for (TrainingSample sample : featureBuilder.buildTrainingSamples(context, rc.trainingMonths, rc.codeProvider)) {
+                pooled.add(sample);
+                anyPositive |= sample.isPositive();
+            }
+        }
 
-                if (positives.isEmpty()) {
-                    // 没有正需求样本，无法训练回归器，跳过
-                    results.add(ForecastResult.insufficient(partCode, targetMonth, "正需求历史数据不足，跳过训练"));
-                    skipCount++;
-                    continue;
-                }
+        if (!anyPositive) {
+            for (int idx : eligible) {
+                outcomes[idx] = PartOutcome.skipped(ForecastResult.insufficient(parts.get(idx).getCode(), rc.targetMonth,
+                        "全部备件均无正需求历史，全局模型无法训练"));
+            }
+            collector.acceptAll(outcomes);
+            return;
+        }
 
-                try {
-                    partModel = predictionService.train(trainingSamples, cutoffMonth, modelVersion);
-                    partModel.save(currentModelDir);
-                    trainCount++;
-                } catch (Exception e) {
-                    log.error("[重算任务] 模型训练失败: part={}, error={}", partCode, e.getMessage());
-                    results.add(ForecastResult.insufficient(partCode, targetMonth, "模型训练失败: " + e.getMessage()));
-                    skipCount++;
-                    continue;
-                }
+        // 2. 训练单个全局两阶段模型
+        if (progressConsumer != null) {
+            progressConsumer.accept(new ProgressUpdate(parts.size(), 0, parts.size() - eligible.size(), "TRAINING",
+                    "正在基于 " + pooled.size() + " 条汇集样本训练全局两阶段XGBoost模型"));
+        }
+        long trainStart = System.currentTimeMillis();
+        TwoStageModel globalModel = predictionService.train(pooled, rc.cutoffMonth, rc.modelVersion);
+        globalModel.save(rc.baseDir.resolve(rc.modelVersion).resolve(GLOBAL_MODEL_DIR));
+        log.info("[重算任务] 全局模型训练完成: 备件={}, 样本={}, 耗时={} ms",
+                eligible.size(), pooled.size(), System.currentTimeMillis() - trainStart);
+
+        // 3. 批量推理：每个 Booster 仅一次 predict 调用
+        List<FeatureVector> vectors = new ArrayList<>(eligible.size());
+        for (int idx : eligible) {
+            vectors.add(featureBuilder.buildInferenceVector(rc.contexts.get(parts.get(idx).getCode()),
+                    rc.targetMonth, rc.codeProvider, true));
+        }
+        List<ForecastResult> forecasts = predictionService.forecastBatch(globalModel, vectors);
+
+        // 4. 逐件蒙特卡洛与实体组装
+        int skipCount = parts.size() - eligible.size();
+        for (int k = 0; k < eligible.size(); k++) {
+            int idx = eligible.get(k);
+            SparePart part = parts.get(idx);
+            outcomes[idx] = completePart(part, rc.classifications.get(part.getCode()), forecasts.get(k),
+                    PartOutcome.Kind.TRAINED, rc);
+            if (progressConsumer != null) {
+                progressConsumer.accept(new ProgressUpdate(parts.size(), skipCount + k + 1, skipCount, "SIMULATING",
+                        "正在计算第 " + (k + 1) + "/" + eligible.size() + " 个备件的提前期安全库存"));
+            }
+        }
+        collector.acceptAll(outcomes);
+    }
+
+    /**
+     * 单个备件的完整处理：快照复用或重训 → 推理 → 蒙特卡洛 → 组装落库实体。
+     *
+     * <p>只读共享状态（上下文、分类结果、分类码提供者），不写 DB，可被多个 worker 并发调用。</p>
+     */
+    private PartOutcome processPart(SparePart part, RecomputeContext rc) {
+        String partCode = part.getCode();
+        String targetMonth = rc.targetMonth;
+        PartFeatureContext context = rc.contexts.get(partCode);
+        AbcXyzCalculator.Classification classification = rc.classifications.get(partCode);
+
+        if (context == null || classification == null) {
+            return PartOutcome.skipped(ForecastResult.insufficient(partCode, targetMonth, "未找到备件特征或分类数据"));
+        }
+
+        Path currentModelDir = rc.baseDir.resolve(rc.modelVersion).resolve(partCode);
+        Path prevModelDir = rc.prevModelVersion != null ? rc.baseDir.resolve(rc.prevModelVersion).resolve(partCode) : null;
+
+        TwoStageModel partModel = null;
+        PartOutcome.Kind kind = PartOutcome.Kind.TRAINED;
+        boolean hasPrevModel = prevModelDir != null && Files.exists(prevModelDir.resolve("classifier.xgb"));
+
+        // 增量优化：判断上月有无新增消耗
+        double lastMonthDemand = context.demandOf(rc.cutoffMonth);
+        boolean hasNewConsumption = lastMonthDemand > 0.0;
+
+        if (incrementalEnabled && hasPrevModel && !hasNewConsumption) {
+            // 复用上月模型，进行快照拷贝
+            try {
+                copyDirectory(prevModelDir, currentModelDir);
+                partModel = TwoStageModel.load(currentModelDir, rc.cutoffMonth, rc.modelVersion);
+                kind = PartOutcome.Kind.REUSED;
+            } catch (Exception e) {
+                log.warn("[重算任务] 复用上月模型快照失败，将重新训练: part={}, error={}", partCode, e.getMessage());
             }
+        }
 
-            // 4. 执行单月推理
-            FeatureVector fv = featureBuilder.buildInferenceVector(context, targetMonth, codeProvider, true);
-            ForecastResult fr = predictionService.forecast(partModel, fv);
-
-            double ltQuantile = 0.0;
-            if (!fr.isDataInsufficient()) {
-                // 5. 蒙特卡洛模拟安全库存
-                int leadTime = part.getLeadTime() != null ? part.getLeadTime() : 30;
-                double serviceLevel = forecastProperties.getClassify().serviceLevelOf(classification.abcClass());
-
-                SafetyStockResult ssRes = leadTimeDemandSimulator.calculateSafetyStock(
-                        fr.getOccurrenceProb(),
-                        fr.getPositiveQty(),
-                        fr.getLowerBound(),
-                        fr.getUpperBound(),
-                        leadTime,
-                        serviceLevel
-                );
-
-                fr.setReorderPoint(ssRes.getReorderPoint());
-                fr.setSafetyStock(ssRes.getSafetyStock());
-                fr.setServiceLevel(ssRes.getServiceLevel());
-                ltQuantile = ssRes.getLeadTimeDemandQuantile();
-            } else {
-                fr.setReorderPoint(0);
-                fr.setSafetyStock(0);
-                fr.setServiceLevel(0.0);
+        // 若无法复用（无上月模型、有新领用、或增量开关关闭），则重新训练
+        if (partModel == null) {
+            List<TrainingSample> trainingSamples = featureBuilder.buildTrainingSamples(context, rc.trainingMonths, rc.codeProvider);
+            List<TrainingSample> positives = trainingSamples.stream().filter(TrainingSample::isPositive).collect(Collectors.toList());
+
+            if (positives.isEmpty()) {
+                // 没有正需求样本，无法训练回归器，跳过
+                return PartOutcome.skipped(ForecastResult.insufficient(partCode, targetMonth, "正需求历史数据不足，跳过训练"));
             }
 
-            results.add(fr);
-
-            // 组装 DB 实体
-            AiForecastResult fEntity = new AiForecastResult();
-            fEntity.setPartCode(partCode);
-            fEntity.setForecastMonth(targetMonth);
-            fEntity.setPredictQty(BigDecimal.valueOf(fr.getDemandHat()));
-            fEntity.setLowerBound(BigDecimal.valueOf(fr.getLowerBound()));
-            fEntity.setUpperBound(BigDecimal.valueOf(fr.getUpperBound()));
-            fEntity.setOccurrenceProb(BigDecimal.valueOf(fr.getOccurrenceProb()));
-            fEntity.setPositiveQty(BigDecimal.valueOf(fr.getPositiveQty()));
-            fEntity.setLeadTimeQuantile(BigDecimal.valueOf(ltQuantile));
-            fEntity.setAlgoType(fr.getAlgoType());
-            fEntity.setModelVersion(modelVersion);
-            fEntity.setCreateTime(LocalDateTime.now());
-            entitiesToInsert.add(fEntity);
-
-            PartClassify cEntity = new PartClassify();
-            cEntity.setPartCode(partCode);
-            cEntity.setClassifyMonth(targetMonth);
-            cEntity.setAbcClass(classification.abcClass());
-            cEntity.setXyzClass(classification.xyzClass());
-            cEntity.setCompositeScore(BigDecimal.valueOf(classification.compositeScore()));
-            cEntity.setAnnualCost(BigDecimal.valueOf(classification.annualCost()));
-            cEntity.setCv2(BigDecimal.valueOf(classification.cv2() == Double.MAX_VALUE ? 0.0 : classification.cv2()));
-            cEntity.setSafetyStock(fr.getSafetyStock());
-            cEntity.setReorderPoint(fr.getReorderPoint());
-            cEntity.setServiceLevel(BigDecimal.valueOf(fr.getServiceLevel() * 100.0));
-            cEntity.setStrategyCode(classification.abcClass() + classification.xyzClass());
-            cEntity.setCreateTime(LocalDateTime.now());
-            classifiesToInsert.add(cEntity);
+            try {
+                partModel = predictionService.train(trainingSamples, rc.cutoffMonth, rc.modelVersion);
+                partModel.save(currentModelDir);
+            } catch (Exception e) {
+                log.error("[重算任务] 模型训练失败: part={}, error={}", partCode, e.getMessage());
+                return PartOutcome.skipped(ForecastResult.insufficient(partCode, targetMonth, "模型训练失败: " + e.getMessage()));
+            }
         }
 
-        // 6. 批量且幂等持久化落库
-        List<String> partCodes = parts.stream().map(SparePart::getCode).collect(Collectors.toList());
+        // 4. 执行单月推理
+        FeatureVector fv = featureBuilder.buildInferenceVector(context, targetMonth, rc.codeProvider, true);
+        ForecastResult fr = predictionService.forecast(partModel, fv);
 
-        // 删除旧的预测与分类结果
-        aiForecastResultMapper.deleteByMonthAndPartCodes(targetMonth, partCodes);
-        partClassifyMapper.deleteByMonthAndPartCodes(targetMonth, partCodes);
+        return completePart(part, classification, fr, kind, rc);
+    }
 
-        // 批量插入
-        if (!entitiesToInsert.isEmpty()) {
-            aiForecastResultMapper.insertBatch(entitiesToInsert);
+    /**
+     * 推理完成后的公共收尾：蒙特卡洛安全库存 + 组装预测/分类落库实体。
+     */
+    private PartOutcome completePart(SparePart part, AbcXyzCalculator.Classification classification,
+                                     ForecastResult fr, PartOutcome.Kind kind, RecomputeContext rc) {
+        String partCode = part.getCode();
+        String targetMonth = rc.targetMonth;
+
+        double ltQuantile = 0.0;
+        if (!fr.isDataInsufficient()) {
+            // 5. 蒙特卡洛模拟安全库存
+            int leadTime = part.getLeadTime() != null ? part.getLeadTime() : 30;
+            double serviceLevel = forecastProperties.getClassify().serviceLevelOf(classification.abcClass());
+
+            SafetyStockResult ssRes = leadTimeQuantileService.calculateSafetyStock(
+                    fr.getOccurrenceProb(),
+                    fr.getPositiveQty(),
+                    fr.getLowerBound(),
+                    fr.getUpperBound(),
+                    leadTime,
+                    serviceLevel,
+                    classification.abcClass()
+            );
+
+            fr.setReorderPoint(ssRes.getReorderPoint());
+            fr.setSafetyStock(ssRes.getSafetyStock());
+            fr.setServiceLevel(ssRes.getServiceLevel());
+            ltQuantile = ssRes.getLeadTimeDemandQuantile();
+        } else {
+            fr.setReorderPoint(0);
+            fr.setSafetyStock(0);
+            fr.setServiceLevel(0.0);
+        }
+
+        // 组装 DB 实体
+        AiForecastResult fEntity = new AiForecastResult();
+        fEntity.setPartCode(partCode);
+        fEntity.setForecastMonth(targetMonth);
+        fEntity.setPredictQty(BigDecimal.valueOf(fr.getDemandHat()));
+        fEntity.setLowerBound(BigDecimal.valueOf(fr.getLowerBound()));
+        fEntity.setUpperBound(BigDecimal.valueOf(fr.getUpperBound()));
+        fEntity.setOccurrenceProb(BigDecimal.valueOf(fr.getOccurrenceProb()));
+        fEntity.setPositiveQty(BigDecimal.valueOf(fr.getPositiveQty()));
+        fEntity.setLeadTimeQuantile(BigDecimal.valueOf(ltQuantile));
+        fEntity.setAlgoType(fr.getAlgoType());
+        fEntity.setModelVersion(rc.modelVersion);
+        fEntity.setCreateTime(LocalDateTime.now());
+
+        PartClassify cEntity = new PartClassify();
+        cEntity.setPartCode(partCode);
+        cEntity.setClassifyMonth(targetMonth);
+        cEntity.setAbcClass(classification.abcClass());
+        cEntity.setXyzClass(classification.xyzClass());
+        cEntity.setCompositeScore(BigDecimal.valueOf(classification.compositeScore()));
+        cEntity.setAnnualCost(BigDecimal.valueOf(classification.annualCost()));
+        cEntity.setCv2(BigDecimal.valueOf(classification.cv2() == Double.MAX_VALUE ? 0.0 : classification.cv2()));
+        cEntity.setSafetyStock(fr.getSafetyStock());
+        cEntity.setReorderPoint(fr.getReorderPoint());
+        cEntity.setServiceLevel(BigDecimal.valueOf(fr.getServiceLevel() * 100.0));
+        cEntity.setStrategyCode(classification.abcClass() + classification.xyzClass());
+        cEntity.setCreateTime(LocalDateTime.now());
+
+        return new PartOutcome(kind, fr, fEntity, cEntity);
+    }
+
+    /**
+     * 按档案顺序汇总各备件结果：保留返回给调用方的 {@link ForecastResult}，落库实体交付写入器后不再持有。
+     */
+    private static final class OutcomeCollector {
+        final List<ForecastResult> results;
+        final ForecastResultWriter writer;
+        int trainCount;
+        int reuseCount;
+        int skipCount;
+
+        OutcomeCollector(int expected, ForecastResultWriter writer) {
+            this.results = new ArrayList<>(expected);
+            this.writer = writer;
         }
-        if (!classifiesToInsert.isEmpty()) {
-            partClassifyMapper.insertBatch(classifiesToInsert);
+
+        void accept(PartOutcome outcome) {
+            results.add(outcome.result);
+            switch (outcome.kind) {
+                case TRAINED:
+                    trainCount++;
+                    break;
+                case REUSED:
+                    reuseCount++;
+                    break;
+                default:
+                    skipCount++;
+                    break;
+            }
+            if (outcome.forecastEntity != null) {
+                writer.add(outcome.forecastEntity, outcome.classifyEntity);
+            }
         }
 
-        // 7. 模型版本注册记录
-        AiModelRegistry registry = new AiModelRegistry();
-        registry.setModelName("demand-forecaster-two-stage");
-        registry.setModelVersion(modelVersion);
-        registry.setAlgoType("TWO_STAGE");
-        registry.setArtifactPath(baseDir.resolve(modelVersion).toAbsolutePath().toString());
-        registry.setTrainParts(trainCount + reuseCount);
-        // 估计每个备件 36 个月的大概周数 (36 * 4)
-        registry.setTrainWeeks(36 * 4);
-        registry.setStatus("PRODUCTION");
-        registry.setDeployTime(LocalDateTime.now());
-        registry.setCreateTime(LocalDateTime.now());
+        void acceptAll(PartOutcome[] outcomes) {
+            for (PartOutcome outcome : outcomes) {
+                accept(outcome);
+            }
+        }
+    }
 
-        // 将之前生产的模型状态置为 ARCHIVED 归档
-        if (prevRegistry != null) {
-            aiModelRegistryMapper.updateStatus(prevRegistry.getId(), "ARCHIVED");
+    /** 单次重算内各备件共享的只读输入。 */
+    private static final class RecomputeContext {
+        final String targetMonth;
+        final String cutoffMonth;
+        final String modelVersion;
+        final Path baseDir;
+        final String prevModelVersion;
+        final Map<String, AbcXyzCalculator.Classification> classifications;
+        final Map<String, PartFeatureContext> contexts;
+        final MonthlyClassCodeProvider codeProvider;
+        final List<String> trainingMonths;
+
+        RecomputeContext(String targetMonth, String cutoffMonth, String modelVersion, Path baseDir,
+                         String prevModelVersion, Map<String, AbcXyzCalculator.Classification> classifications,
+                         Map<String, PartFeatureContext> contexts, MonthlyClassCodeProvider codeProvider,
+                         List<String> trainingMonths) {
+            this.targetMonth = targetMonth;
+            this.cutoffMonth = cutoffMonth;
+            this.modelVersion = modelVersion;
+            this.baseDir = baseDir;
+            this.prevModelVersion = prevModelVersion;
+            this.classifications = classifications;
+            this.contexts = contexts;
+            this.codeProvider = codeProvider;
+            this.trainingMonths = trainingMonths;
         }
-        aiModelRegistryMapper.insert(registry);
+    }
 
-        log.info("[重算任务] 两阶段预测重算落库成功！重训数={}, 复用数={}, 跳过数={}, 已注册生产版本: {}",
-                trainCount, reuseCount, skipCount, modelVersion);
+    /** 单个备件的处理结果；跳过时不含落库实体。 */
+    private static final class PartOutcome {
+        enum Kind { TRAINED, REUSED, SKIPPED }
 
-        return results;
+        final Kind kind;
+        final ForecastResult result;
+        final AiForecastResult forecastEntity;
+        final PartClassify classifyEntity;
+
+        PartOutcome(Kind kind, ForecastResult result, AiForecastResult forecastEntity, PartClassify classifyEntity) {
+            this.kind = kind;
+            this.result = result;
+            this.forecastEntity = forecastEntity;
+            this.classifyEntity = classifyEntity;
+        }
+
+        static PartOutcome skipped(ForecastResult result) {
+            return new PartOutcome(Kind.SKIPPED, result, null, null);
+        }
     }
 
     private void copyDirectory(Path src, Path dest) throws IOException {
@@ -62,13 +62,19 @@ public class DemandOccurrenceStage {
                 List<TrainingSample> foldCalib = ordered.subList(trainSize, ordered.size());
                 if (bothClassesPresent(foldTrain)) {
                     XgbModel foldClf = trainClassifier(foldTrain, cutoffMonth);
-                    double[] rawProbs = new double[foldCalib.size()];
+                    // 校准折一次性批量推理（单个 DMatrix），避免逐行 JNI 往返
+                    int ncol = FeatureVector.STAGE1_FEATURES.length;
+                    float[] flat = new float[foldCalib.size() * ncol];
                     int[] labels = new int[foldCalib.size()];
                     for (int i = 0; i < foldCalib.size(); i++) {
-                        FeatureVector fv = foldCalib.get(i).getFeatures();
-                        rawProbs[i] = foldClf.predictOne(fv.toStage1Array());
+                        foldCalib.get(i).getFeatures().writeStage1(flat, i * ncol);
                         labels[i] = foldCalib.get(i).getOccurrenceLabel();
                     }
+                    float[] rawOut = foldClf.predict(flat, foldCalib.size(), ncol);
+                    double[] rawProbs = new double[rawOut.length];
+                    for (int i = 0; i < rawOut.length; i++) {
+                        rawProbs[i] = rawOut[i];
+                    }
                     calibrator.fit(rawProbs, labels);
                     log.info("[阶段一] 校准方法={}, Brier: {} → {}",
                             calibrator.getMethod(), calibrator.getBrierBefore(), calibrator.getBrierAfter());
@@ -1,6 +1,7 @@
 package com.langdong.spare.forecast.stage;
 
 import com.langdong.spare.forecast.calibration.ProbabilityCalibrator;
+import com.langdong.spare.forecast.model.FeatureVector;
 import com.langdong.spare.forecast.xgboost.XgbModel;
 
 /**
@@ -22,6 +23,20 @@ public class StageOneModel {
         return calibrator.calibrate(raw);
     }
 
+    /**
+     * 批量预测经校准的发生概率（单个 DMatrix、单次 Booster 调用）。
+     *
+     * @param flat 行主序阶段一特征缓冲区（9 列），仅读取前 {@code nrow × 9} 个元素
+     * @param nrow 行数
+     * @param out  输出数组，长度 ≥ nrow
+     */
+    public void predictOccurrenceProbs(float[] flat, int nrow, double[] out) {
+        float[] raw = classifier.predict(flat, nrow, FeatureVector.STAGE1_FEATURES.length);
+        for (int i = 0; i < nrow; i++) {
+            out[i] = calibrator.calibrate(raw[i]);
+        }
+    }
+
     public XgbModel getClassifier() {
         return classifier;
     }
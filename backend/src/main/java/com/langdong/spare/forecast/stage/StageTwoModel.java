@@ -1,5 +1,6 @@
 package com.langdong.spare.forecast.stage;
 
+import com.langdong.spare.forecast.model.FeatureVector;
 import com.langdong.spare.forecast.xgboost.XgbModel;
 
 /**
@@ -32,6 +33,25 @@ public class StageTwoModel {
         return Math.max(0.0, upperQuantile.predictOne(stage2Features));
     }
 
+    /**
+     * 批量预测点估计与区间上下界：三个回归器共享同一个 DMatrix（裁剪 ≥ 0）。
+     *
+     * @param flat  行主序阶段二特征缓冲区（11 列），仅读取前 {@code nrow × 11} 个元素
+     * @param nrow  行数
+     * @param point 点估计输出，长度 ≥ nrow
+     * @param lower 下界输出，长度 ≥ nrow
+     * @param upper 上界输出，长度 ≥ nrow
+     */
+    public void predictAll(float[] flat, int nrow, double[] point, double[] lower, double[] upper) {
+        float[][] raw = XgbModel.predictShared(flat, nrow, FeatureVector.STAGE2_FEATURES.length,
+                pointRegressor, lowerQuantile, upperQuantile);
+        for (int i = 0; i < nrow; i++) {
+            point[i] = Math.max(0.0, raw[0][i]);
+            lower[i] = Math.max(0.0, raw[1][i]);
+            upper[i] = Math.max(0.0, raw[2][i]);
+        }
+    }
+
     public XgbModel getPointRegressor() {
         return pointRegressor;
     }
@@ -72,28 +72,73 @@ public class XgbModel {
             return new float[0];
         }
         int ncol = features[0].length;
-        float[] flat = flatten(features, ncol);
-        try {
-            DMatrix dm = new DMatrix(flat, features.length, ncol, Float.NaN);
-            float[][] out = booster.predict(dm);
-            float[] result = new float[out.length];
-            for (int i = 0; i < out.length; i++) {
-                result[i] = out[i][0];
-            }
-            return result;
-        } catch (XGBoostError e) {
-            throw new ForecastModelException("XGBoost 推理失败: type=" + type, e);
-        }
+        return predict(flatten(features, ncol), features.length, ncol);
+    }
+
+    /**
+     * 基于行主序连续缓冲区的批量预测（不做二维数组拷贝）。
+     *
+     * @param flat 行主序特征缓冲区，仅读取前 {@code nrow × ncol} 个元素（允许复用更大的缓冲区）
+     * @param nrow 行数
+     * @param ncol 列数
+     */
+    public float[] predict(float[] flat, int nrow, int ncol) {
+        return predictShared(flat, nrow, ncol, this)[0];
     }
 
     /**
      * 单样本预测。
      */
     public float predictOne(float[] feature) {
-        float[] r = predict(new float[][]{feature});
+        float[] r = predict(feature, 1, feature.length);
         return r.length > 0 ? r[0] : 0f;
     }
 
+    /**
+     * 多个同列结构 Booster 共享一个 DMatrix 的批量预测（如阶段二的点/下界/上界三个回归器）。
+     *
+     * <p>整个批次只构造一次原生 DMatrix，用毕立即释放，避免逐 Booster、逐行重复的 JNI 往返。</p>
+     *
+     * @param flat   行主序特征缓冲区，仅读取前 {@code nrow × ncol} 个元素
+     * @param nrow   行数
+     * @param ncol   列数
+     * @param models 共享该矩阵的 Booster（列顺序须一致）
+     * @return 按 models 顺序，每个 Booster 一行输出
+     */
+    public static float[][] predictShared(float[] flat, int nrow, int ncol, XgbModel... models) {
+        float[][] result = new float[models.length][];
+        if (nrow == 0) {
+            for (int k = 0; k < models.length; k++) {
+                result[k] = new float[0];
+            }
+            return result;
+        }
+        if (flat == null || flat.length < nrow * ncol) {
+            throw new ForecastModelException("特征缓冲区长度不足，期望至少 " + (nrow * ncol));
+        }
+        DMatrix dm = null;
+        XgbModelType current = models.length > 0 ? models[0].type : null;
+        try {
+            dm = new DMatrix(flat, nrow, ncol, Float.NaN);
+            for (int k = 0; k < models.length; k++) {
+                current = models[k].type;
+                float[][] out = models[k].booster.predict(dm);
+                float[] col = new float[out.length];
+                for (int i = 0; i < out.length; i++) {
+                    col[i] = out[i][0];
+                }
+                result[k] = col;
+            }
+            return result;
+        } catch (XGBoostError e) {
+            throw new ForecastModelException("XGBoost 推理失败: type=" + current, e);
+        } finally {
+            if (dm != null) {
+                dm.dispose();
+            }
+        }
+    }
+
     // ================================================================
     // 快照保存 / 加载
     // ================================================================
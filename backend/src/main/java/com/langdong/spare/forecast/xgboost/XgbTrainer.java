@@ -9,6 +9,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * XGBoost4J 训练器（模块 C）。
@@ -23,6 +24,9 @@ import java.util.Map;
 @Component
 public class XgbTrainer {
 
+    /** 当前线程的 nthread 覆盖值（并行重算时由调度方按 worker 分配，优先于全局配置）。 */
+    private static final ThreadLocal<Integer> NTHREAD_OVERRIDE = new ThreadLocal<>();
+
     private final XGBoostProperties props;
 
     public XgbTrainer(XGBoostProperties props) {
@@ -72,6 +76,25 @@ public class XgbTrainer {
         return new XgbModel(booster, XgbModelType.QUANTILE_REGRESSOR, featureNames, cutoffMonth, alpha);
     }
 
+    /**
+     * 在当前线程内以指定 nthread 执行训练动作，执行完毕恢复原值。
+     *
+     * <p>供按备件并行重算使用：worker 数 × nthread 不超过 CPU 核数，避免线程超订。</p>
+     */
+    public static <T> T withNthread(int nthread, Supplier<T> action) {
+        Integer previous = NTHREAD_OVERRIDE.get();
+        NTHREAD_OVERRIDE.set(nthread);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                NTHREAD_OVERRIDE.remove();
+            } else {
+                NTHREAD_OVERRIDE.set(previous);
+            }
+        }
+    }
+
     // ================================================================
     // 内部
     // ================================================================
@@ -88,6 +111,11 @@ public class XgbTrainer {
         params.put("lambda", cfg.getRegLambda());   // reg_lambda
         params.put("seed", props.getSeed());        // 固定 42，可复现
         params.put("verbosity", 0);
+        Integer override = NTHREAD_OVERRIDE.get();
+        int nthread = override != null ? override : props.getNthread();
+        if (nthread > 0) {
+            params.put("nthread", nthread);
+        }
         return params;
     }
 
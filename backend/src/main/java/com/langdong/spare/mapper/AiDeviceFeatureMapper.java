@@ -3,6 +3,7 @@ package com.langdong.spare.mapper;
 import com.langdong.spare.entity.AiDeviceFeature;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
@@ -22,6 +23,19 @@ public interface AiDeviceFeatureMapper {
             @Param("deviceIds") List<Long> deviceIds,
             @Param("fromMonth") String fromMonth);
 
+    /**
+     * 流式遍历 [fromMonth, toMonth) 窗口内、且至少关联一个备件的全部设备特征记录
+     * （按 device_id, stat_month 升序），用于预测特征批量加载，避免逐备件查询。
+     *
+     * @param fromMonth 起始月份（含），格式 yyyy-MM
+     * @param toMonth   截止月份（不含），格式 yyyy-MM
+     * @param handler   逐行回调
+     */
+    void streamMappedFeatures(
+            @Param("fromMonth") String fromMonth,
+            @Param("toMonth") String toMonth,
+            ResultHandler<AiDeviceFeature> handler);
+
     /**
      * 插入或覆盖更新单条设备特征（REPLACE INTO 保证幂等）
      */
@@ -37,4 +51,22 @@ public interface AiDeviceFeatureMapper {
     List<AiDeviceFeature> findRecentMonthsByDevice(
             @Param("deviceId") Long deviceId,
             @Param("months") int months);
+
+    /**
+     * 查询全部设备最近N个月的特征数据（批量健康评估用）
+     *
+     * @param months 月数
+     * @return 特征数据列表（按设备ID升序、月份降序）
+     */
+    List<AiDeviceFeature> findRecentMonthsAll(@Param("months") int months);
+
+    /**
+     * 批量查询设备最近N个月的特征数据，并联查当月平均健康评分（故障预测批量加载用）
+     *
+     * @param deviceIds 设备ID列表（null或空=全部设备）
+     * @param months    月数
+     * @return 特征数据列表（按设备ID升序、月份降序），healthScore 为当月平均健康分
+     */
+    List<AiDeviceFeature> findRecentMonthsWithHealth(@Param("deviceIds") List<Long> deviceIds,
+                                                     @Param("months") int months);
 }
@@ -24,6 +24,21 @@ public interface AiForecastResultMapper {
             @Param("month") String month,
             @Param("partCodes") List<String> partCodes);
 
+    /**
+     * 批量插入暂存表 ai_forecast_result_staging（STAGING 落库模式）
+     */
+    void insertStagingBatch(@Param("list") List<AiForecastResult> list);
+
+    /**
+     * 清理暂存表中指定月份的记录
+     */
+    int deleteStagingByMonth(@Param("month") String month);
+
+    /**
+     * 将暂存表中指定月份的记录整体搬入正式表
+     */
+    int publishStagingByMonth(@Param("month") String month);
+
     /**
      * 按备件编码查询历史预测（按月升序）
      */
@@ -48,6 +48,24 @@ public interface DeviceHealthMapper {
      */
     DeviceHealth findLatestByDevice(@Param("deviceId") Long deviceId);
 
+    /**
+     * 批量查询每台设备的最新健康记录（窗口函数一次取回，替代逐设备 findLatestByDevice）
+     *
+     * @param deviceIds 设备ID列表（null或空=全部设备）
+     * @return 每台设备一条最新健康记录（不含设备联查字段）
+     */
+    List<DeviceHealth> findLatestPerDevice(@Param("deviceIds") List<Long> deviceIds);
+
+    /**
+     * 沿用设备最新健康记录：将每台设备早于 recordDate 的最新一条复制为 recordDate 当日记录
+     * （增量评估中输入未变化的设备使用；当日已有记录时保持不变）
+     *
+     * @param deviceIds  设备ID列表
+     * @param recordDate 记录日期
+     * @return 影响行数
+     */
+    int carryForward(@Param("deviceIds") List<Long> deviceIds, @Param("recordDate") LocalDate recordDate);
+
     /**
      * 查询设备的健康趋势（最近N天）
      *
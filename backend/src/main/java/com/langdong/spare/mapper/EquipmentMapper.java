@@ -2,6 +2,7 @@ package com.langdong.spare.mapper;
 
 import com.langdong.spare.entity.Equipment;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -9,6 +10,12 @@ import java.util.List;
 public interface EquipmentMapper {
     List<Equipment> findAll();
 
+    /** 查询全部设备的ID、编码与重要性（批量健康评估用） */
+    List<Equipment> findAllForHealth();
+
+    /** 按ID批量查询设备的ID、编码与重要性（批量故障预测用） */
+    List<Equipment> findByIds(@Param("ids") List<Long> ids);
+
     Equipment findById(Long id);
 
     int insert(Equipment equipment);
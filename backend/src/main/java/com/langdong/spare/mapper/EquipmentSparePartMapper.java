@@ -3,6 +3,7 @@ package com.langdong.spare.mapper;
 import com.langdong.spare.entity.EquipmentSparePart;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
@@ -12,6 +13,16 @@ public interface EquipmentSparePartMapper {
 
     List<EquipmentSparePart> findBySparePartId(Long sparePartId);
 
+    /**
+     * 批量查询多台设备的配套备件（按设备ID升序，组内顺序与 findByEquipmentId 一致）
+     */
+    List<EquipmentSparePart> findByEquipmentIds(@Param("equipmentIds") List<Long> equipmentIds);
+
+    /**
+     * 流式遍历全部设备↔备件关联（仅 equipment_id / spare_part_id），供特征批量加载在内存中建立映射。
+     */
+    void streamAllMappings(ResultHandler<EquipmentSparePart> handler);
+
     EquipmentSparePart findByEqAndSpId(@Param("equipmentId") Long equipmentId, @Param("sparePartId") Long sparePartId);
 
     int insert(EquipmentSparePart equipmentSparePart);
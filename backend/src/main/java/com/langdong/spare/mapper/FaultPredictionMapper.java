@@ -48,6 +48,26 @@ public interface FaultPredictionMapper {
      */
     FaultPrediction findLatestByDevice(@Param("deviceId") Long deviceId);
 
+    /**
+     * 批量查询每台设备的最新预测记录（窗口函数一次取回，替代逐设备 findLatestByDevice）
+     *
+     * @param deviceIds 设备ID列表（null或空=全部设备）
+     * @return 每台设备一条最新预测记录（不含设备和健康联查字段）
+     */
+    List<FaultPrediction> findLatestPerDevice(@Param("deviceIds") List<Long> deviceIds);
+
+    /**
+     * 沿用设备最新预测记录：将每台设备的最新一条复制到 targetMonth（已有该目标月记录时保持不变）
+     *
+     * @param deviceIds      设备ID列表
+     * @param predictionDate 预测日期
+     * @param targetMonth    目标月份（yyyy-MM）
+     * @return 影响行数
+     */
+    int carryForward(@Param("deviceIds") List<Long> deviceIds,
+                     @Param("predictionDate") LocalDate predictionDate,
+                     @Param("targetMonth") String targetMonth);
+
     /**
      * 查询设备的预测历史（最近N个月）
      *
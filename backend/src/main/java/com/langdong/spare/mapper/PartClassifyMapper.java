@@ -95,4 +95,19 @@ public interface PartClassifyMapper {
      * 删除指定月份和备件编码的分类记录（用于重算幂等覆盖）
      */
     int deleteByMonthAndPartCodes(@Param("month") String month, @Param("partCodes") List<String> partCodes);
+
+    /**
+     * 批量插入暂存表 biz_part_classify_staging（STAGING 落库模式）
+     */
+    int insertStagingBatch(@Param("list") List<PartClassify> list);
+
+    /**
+     * 清理暂存表中指定月份的记录
+     */
+    int deleteStagingByMonth(@Param("month") String month);
+
+    /**
+     * 将暂存表中指定月份的记录整体搬入正式表
+     */
+    int publishStagingByMonth(@Param("month") String month);
 }
@@ -0,0 +1,49 @@
+package com.langdong.spare.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 备件月度消耗汇总 Mapper
+ * 对应数据库表：part_monthly_consumption
+ */
+@Mapper
+public interface PartMonthlyConsumptionMapper {
+
+    /**
+     * 累加某备件某月的出库数量（不存在则插入），已存在时同一语句内递增行版本 version
+     *
+     * @param sparePartId 备件ID
+     * @param statMonth   统计月份（yyyy-MM）
+     * @param delta       增量（可为负，用于出库数量修正）
+     * @return 影响行数
+     */
+    int addQuantity(@Param("sparePartId") Long sparePartId,
+                    @Param("statMonth") String statMonth,
+                    @Param("delta") int delta);
+
+    /**
+     * 删除 fromMonth（含）之后的汇总行；fromMonth 为 null 时删除全部
+     *
+     * @param fromMonth 起始月份（yyyy-MM）
+     * @return 删除行数
+     */
+    int deleteFromMonth(@Param("fromMonth") String fromMonth);
+
+    /**
+     * 按源表（领用明细 ⋈ 领用单）重算 fromMonth（含）之后的汇总行；fromMonth 为 null 时重算全部
+     *
+     * 本语句即月度消耗口径的参考定义：领用单状态 OUTBOUND/INSTALLED、out_qty &gt; 0、按 approve_time 所在月归集
+     *
+     * @param fromMonth 起始月份（yyyy-MM）
+     * @return 写入行数
+     */
+    int rebuildFromMonth(@Param("fromMonth") String fromMonth);
+
+    /**
+     * 重算代次 +1（删除并重写汇总行后调用，使消耗水位单调变化）
+     *
+     * @return 影响行数
+     */
+    int bumpRebuildVersion();
+}
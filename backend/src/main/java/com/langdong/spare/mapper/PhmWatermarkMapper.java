@@ -0,0 +1,39 @@
+package com.langdong.spare.mapper;
+
+import com.langdong.spare.entity.PhmWatermark;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * PHM设备输入水位 Mapper
+ * 对应数据库表：ai_phm_watermark
+ */
+@Mapper
+public interface PhmWatermarkMapper {
+
+    /**
+     * 按设备聚合当前输入位置（一次 SQL）：最近N个月特征的最新月份与摘要、最大工单ID、最大领用单ID
+     * 返回记录不含 configVersion / windowMonth，由调用方补充
+     *
+     * @param months 特征回看月数（与故障预测回看窗口一致）
+     * @return 每台设备一条
+     */
+    List<PhmWatermark> findCurrentInputs(@Param("months") int months);
+
+    /**
+     * 查询全部已保存的水位
+     *
+     * @return 水位列表
+     */
+    List<PhmWatermark> findAll();
+
+    /**
+     * 批量写入水位（按设备ID覆盖）
+     *
+     * @param list 水位列表
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("list") List<PhmWatermark> list);
+}
@@ -1,5 +1,6 @@
 package com.langdong.spare.mapper;
 
+import com.langdong.spare.dto.PartStockVO;
 import com.langdong.spare.entity.ReorderSuggest;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -13,11 +14,27 @@ public interface ReorderSuggestMapper {
 
     Integer findCurrentStockByPartCode(@Param("partCode") String partCode);
 
+    /**
+     * 一次查询全部备件的当前可用库存（口径同 findCurrentStockByPartCode）
+     */
+    List<PartStockVO> findAllCurrentStock();
+
     void deletePendingByPartAndMonth(@Param("partCode") String partCode,
                                      @Param("suggestMonth") String suggestMonth);
 
+    /**
+     * 按备件编码集合删除指定月份的待处理建议
+     */
+    int deletePendingByMonthAndParts(@Param("suggestMonth") String suggestMonth,
+                                     @Param("partCodes") List<String> partCodes);
+
     int insert(ReorderSuggest suggest);
 
+    /**
+     * 多行插入补货建议
+     */
+    int insertBatch(@Param("list") List<ReorderSuggest> list);
+
     int bootstrapPendingSuggestions(@Param("suggestMonth") String suggestMonth);
 
     void updateStatus(@Param("id") Long id, @Param("status") String status);
@@ -26,4 +26,11 @@ public interface RequisitionItemMapper {
      */
     int updateBatchInfo(@Param("itemId") Long itemId, @Param("batchInfo") String batchInfo);
 
+    /**
+     * 批量更新领用明细的出库数量和批次信息（单条 UPDATE ... CASE）
+     * @param items 明细（使用 id、outQty、batchInfo）
+     * @return 影响行数
+     */
+    int updateOutboundBatch(@Param("items") List<RequisitionItem> items);
+
 }
@@ -4,6 +4,7 @@ import com.langdong.spare.dto.MonthlyConsumptionVO;
 import com.langdong.spare.entity.SparePart;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
@@ -25,6 +26,11 @@ public interface SparePartMapper {
 
     List<SparePart> findByEquipmentId(Long equipmentId);
 
+    /**
+     * 按ID批量查询备件名称与单价（维护建议成本估算用）
+     */
+    List<SparePart> findPricesByIds(@Param("ids") List<Long> ids);
+
     /**
      * 查询所有备件档案（含分类计算所需字段：is_critical、replace_diff、lead_time、price）
      * 用于分类模块全量重算
@@ -32,10 +38,19 @@ public interface SparePartMapper {
     List<SparePart> findAllForClassify();
 
     /**
-     * 查询所有备件近12个月的月度消耗汇总
-     * 数据来源：biz_requisition_item（出库数量）+ biz_requisition（状态和时间）
+     * 流式遍历月度消耗汇总（口径见 {@link PartMonthlyConsumptionMapper#rebuildFromMonth}），逐行回调而不整体物化列表，
+     * 供 MonthlyConsumptionMatrix 直接折叠为原始类型矩阵。
+     * 数据来自出库时增量维护的 part_monthly_consumption 汇总表，按月份范围扫描，不再联表聚合领用明细。
      *
-     * @param fromMonth 起始月份（含），格式 yyyy-MM-dd，通常为当前日期减12个月
+     * @param fromMonth 起始月份（含），格式 yyyy-MM-dd
+     * @param handler   逐行回调
+     */
+    void streamMonthlyConsumption(@Param("fromMonth") String fromMonth,
+                                  ResultHandler<MonthlyConsumptionVO> handler);
+
+    /**
+     * 月度消耗数据水位（消耗汇总表的重算代次、行数与行版本之和，备件档案的最后更新时间与条数拼接），
+     * 供共享消耗快照判断是否需要重新加载
      */
-    List<MonthlyConsumptionVO> findAllMonthlyConsumption(@Param("fromMonth") String fromMonth);
+    String findConsumptionWatermark();
 }
@@ -3,7 +3,9 @@ package com.langdong.spare.mapper;
 import com.langdong.spare.entity.SparePartStock;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface SparePartStockMapper {
@@ -21,4 +23,18 @@ public interface SparePartStockMapper {
      * @return 可用库存数量
      */
     int getAvailableQuantity(@Param("sparePartId") Long sparePartId);
+
+    /**
+     * 批量查询多个备件的库存（FIFO 批量出库校验使用）
+     * @param sparePartIds 备件ID集合
+     * @return 库存记录（无库存记录的备件不返回）
+     */
+    List<SparePartStock> findBySparePartIds(@Param("sparePartIds") Collection<Long> sparePartIds);
+
+    /**
+     * 批量调整多个备件的库存（单条 UPDATE ... CASE）
+     * @param deltas 备件ID -> 调整数量（出库为负数）
+     * @return 影响行数
+     */
+    int addQuantities(@Param("deltas") Map<Long, Integer> deltas);
 }
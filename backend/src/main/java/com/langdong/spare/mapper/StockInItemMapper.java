@@ -4,7 +4,9 @@ import com.langdong.spare.entity.StockInItem;
 import org.apache.ibatis.annotations.Mapper;
 
 import org.apache.ibatis.annotations.Param;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface StockInItemMapper {
@@ -23,6 +25,31 @@ public interface StockInItemMapper {
      */
     List<StockInItem> findAvailableBatchesBySparePartId(@Param("sparePartId") Long sparePartId);
 
+    /**
+     * 锁定读取指定备件按入库时间升序的前 limit 个可用批次（当前读，返回已提交的最新余量，不含入库单号）
+     * @param sparePartId 备件ID
+     * @param skipLocked  是否跳过已被其他事务锁定的批次（SKIP LOCKED，需 MySQL 8.0+），否则等待行锁
+     * @param limit       最多锁定的批次数
+     * @return 按 in_time ASC, id ASC 排序的批次列表（只返回 remaining_qty > 0 的批次）
+     */
+    List<StockInItem> findAvailableBatchesForUpdate(@Param("sparePartId") Long sparePartId,
+                                                    @Param("skipLocked") boolean skipLocked,
+                                                    @Param("limit") int limit);
+
+    /**
+     * 按批次ID查询入库单号（一致性读，不锁定入库单）
+     * @param itemIds 批次ID
+     * @return 仅填充 id 与 receiptCode 的批次列表
+     */
+    List<StockInItem> findReceiptCodesByItemIds(@Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * 批量扣减批次库存（单条 UPDATE ... CASE，每个批次仍校验 remaining_qty &gt;= 扣减量）
+     * @param deductions 批次ID -> 扣减数量
+     * @return 影响行数，小于批次数即存在余量已被并发扣减的批次
+     */
+    int deductBatchQuantities(@Param("deductions") Map<Long, Integer> deductions);
+
     /**
      * 扣减批次库存（原子操作）
      * @param batchId 批次ID
@@ -1,10 +1,12 @@
 package com.langdong.spare.service;
 
-import com.langdong.spare.dto.MonthlyConsumptionVO;
 import com.langdong.spare.entity.PartClassify;
 import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshot;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.forecast.feature.MonthSeries;
+import com.langdong.spare.forecast.feature.MonthlyConsumptionMatrix;
 import com.langdong.spare.mapper.PartClassifyMapper;
-import com.langdong.spare.mapper.SparePartMapper;
 import com.langdong.spare.util.ClassifyCalculator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +17,7 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -33,7 +36,7 @@ public class ClassifyService {
     private static final Logger log = LoggerFactory.getLogger(ClassifyService.class);
 
     @Autowired
-    private SparePartMapper sparePartMapper;
+    private ConsumptionSnapshotProvider consumptionSnapshotProvider;
 
     @Autowired
     private PartClassifyMapper partClassifyMapper;
@@ -85,34 +88,18 @@ public class ClassifyService {
         // 当前分类月份（格式：yyyy-MM）
         String classifyMonth = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM"));
 
-        // ---- 第1步：查询所有备件档案 ----
-        List<SparePart> parts = sparePartMapper.findAllForClassify();
-        if (parts == null || parts.isEmpty()) {
+        // ---- 第1~2步：备件档案与近12个月月度消耗，取自共享消耗快照 ----
+        // 区间：当前日期往前12个月 ~ 当月（含）
+        YearMonth currentMonth = YearMonth.now();
+        ConsumptionSnapshot snapshot = consumptionSnapshotProvider.acquire(
+                currentMonth.minusMonths(12), currentMonth.plusMonths(1));
+        List<SparePart> parts = snapshot.parts();
+        if (parts.isEmpty()) {
             log.warn("[分类重算] 备件档案为空，跳过计算");
             return;
         }
-        log.info("[分类重算] 共读取备件 {} 条", parts.size());
-
-        // ---- 第2步：查询近12个月月度消耗 ----
-        // 起始日期：当前日期往前12个月
-        String fromMonth = LocalDate.now()
-                .minusMonths(12)
-                .withDayOfMonth(1)
-                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-
-        List<MonthlyConsumptionVO> consumptionList = sparePartMapper.findAllMonthlyConsumption(fromMonth);
-
-        // 按 partCode 分组，key=备件编码，value=Map<月份, 消耗量>
-        Map<String, Map<String, Integer>> consumptionMap = new HashMap<>();
-        if (consumptionList != null) {
-            for (MonthlyConsumptionVO vo : consumptionList) {
-                consumptionMap
-                        .computeIfAbsent(vo.getPartCode(), k -> new LinkedHashMap<>())
-                        .put(vo.getMonth(), vo.getQty());
-            }
-        }
-        log.info("[分类重算] 共读取月度消耗记录 {} 条（涉及 {} 个备件）",
-                consumptionList == null ? 0 : consumptionList.size(), consumptionMap.size());
+        MonthlyConsumptionMatrix consumption = snapshot.consumption();
+        log.info("[分类重算] 共读取备件 {} 条，月度消耗取自快照 v{}", parts.size(), snapshot.version());
 
         // ---- 第3步：计算每个备件的年消耗金额和综合得分 ----
         // 中间结果：partCode -> 年消耗金额
@@ -125,12 +112,12 @@ public class ClassifyService {
 
         for (SparePart part : parts) {
             String code = part.getCode();
-            Map<String, Integer> monthQtyMap = consumptionMap.getOrDefault(code, Collections.emptyMap());
+            int row = consumption.rowOf(code);
 
             // 补全12个月数据（没有消耗记录的月份填0）
             List<Integer> demands = new ArrayList<>(12);
             for (String m : last12Months) {
-                demands.add(monthQtyMap.getOrDefault(m, 0));
+                demands.add((int) consumption.at(row, MonthSeries.indexOf(m)));
             }
             monthlyDemandMap.put(code, demands);
 
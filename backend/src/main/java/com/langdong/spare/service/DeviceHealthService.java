@@ -28,6 +28,7 @@ import java.util.*;
  *   3. 健康趋势查询
  *   4. 风险设备排行榜
  *   5. 统计和Dashboard数据
+ *   6. 健康配置管理（经 HealthConfigRegistry 缓存）
  */
 @Service
 public class DeviceHealthService {
@@ -46,6 +47,18 @@ public class DeviceHealthService {
     @Autowired
     private AiDeviceFeatureMapper aiDeviceFeatureMapper;
 
+    @Autowired
+    private HealthConfigRegistry healthConfigRegistry;
+
+    /** 健康评估回看月数 */
+    private static final int RECENT_MONTHS = 3;
+
+    /** 批量评估每批写入条数（每批一条多行 INSERT，独立提交） */
+    private static final int INSERT_CHUNK_SIZE = 500;
+
+    /** 按ID分段写入时每段设备数（控制 IN 列表长度） */
+    private static final int ID_CHUNK_SIZE = 1000;
+
     // ================================================================
     // 1. 单设备健康评估
     // ================================================================
@@ -66,95 +79,24 @@ public class DeviceHealthService {
             throw new RuntimeException("设备不存在");
         }
 
-        // 获取配置
-        HealthConfig config = getHealthConfig(null, equipment.getImportanceLevel());
+        // 获取配置（内存注册表，不访问数据库）
+        HealthConfig config = healthConfigRegistry.lookup(null, equipment.getImportanceLevel());
 
         // 查询最近3个月的设备特征数据
-        List<AiDeviceFeature> recentFeatures = aiDeviceFeatureMapper.findRecentMonthsByDevice(deviceId, 3);
+        List<AiDeviceFeature> recentFeatures = aiDeviceFeatureMapper.findRecentMonthsByDevice(deviceId, RECENT_MONTHS);
 
         if (recentFeatures == null || recentFeatures.isEmpty()) {
             log.warn("[健康评估] 设备 {} 无历史特征数据，跳过评估", equipment.getCode());
             return null;
         }
 
-        // 计算各维度评分
-        List<Double> runtimeScores = new ArrayList<>();
-        List<Double> faultScores = new ArrayList<>();
-        List<Double> workorderScores = new ArrayList<>();
-        List<Double> replacementScores = new ArrayList<>();
-
-        for (AiDeviceFeature feature : recentFeatures) {
-            // BigDecimal转Double
-            Double runHours = feature.getRunHours() != null ? feature.getRunHours().doubleValue() : 0.0;
-            Double mtbf = feature.getMtbf() != null ? feature.getMtbf().doubleValue() : 9999.0;
-            Integer workOrderCount = feature.getWorkOrderCount();
-            Integer partReplaceQty = feature.getPartReplaceQty();
-
-            // 计算各维度评分
-            double runtimeScore = DeviceHealthCalculator.calcRuntimeScore(
-                    runHours,
-                    720.0  // 标准运行时长（月度30天×24小时）
-            );
-            double faultScore = DeviceHealthCalculator.calcFaultScore(mtbf);
-            double workorderScore = DeviceHealthCalculator.calcWorkorderScore(
-                    workOrderCount != null ? workOrderCount : 0
-            );
-            double replacementScore = DeviceHealthCalculator.calcReplacementScore(
-                    partReplaceQty != null ? partReplaceQty : 0
-            );
-
-            runtimeScores.add(runtimeScore);
-            faultScores.add(faultScore);
-            workorderScores.add(workorderScore);
-            replacementScores.add(replacementScore);
-        }
-
-        // 计算综合健康评分（使用时间衰减）
-        List<Double> monthlyHealthScores = new ArrayList<>();
-        for (int i = 0; i < runtimeScores.size(); i++) {
-            // DeviceHealthCalculator使用固定权重（25%/35%/20%/20%）
-            double monthScore = DeviceHealthCalculator.calcHealthScore(
-                    runtimeScores.get(i),
-                    faultScores.get(i),
-                    workorderScores.get(i),
-                    replacementScores.get(i)
-            );
-            monthlyHealthScores.add(monthScore);
-        }
-
-        // 应用时间衰减得到最终健康分
-        double finalHealthScore = DeviceHealthCalculator.calcHealthScoreWithDecay(monthlyHealthScores);
-
-        // 确定风险等级
-        String riskLevel = DeviceHealthCalculator.determineRiskLevel(
-                finalHealthScore,
-                config.getCriticalThreshold().doubleValue(),
-                config.getHighThreshold().doubleValue(),
-                config.getMediumThreshold().doubleValue()
-        );
-
-        // 构建健康记录
-        DeviceHealth record = new DeviceHealth();
-        record.setDeviceId(deviceId);
-        record.setRecordDate(LocalDate.now());
-        record.setHealthScore(BigDecimal.valueOf(DeviceHealthCalculator.round(finalHealthScore, 2)));
-        record.setRiskLevel(riskLevel);
-
-        // 保存最近一个月的各维度评分（索引0为最近月）
-        if (!runtimeScores.isEmpty()) {
-            record.setRuntimeScore(BigDecimal.valueOf(DeviceHealthCalculator.round(runtimeScores.get(0), 2)));
-            record.setFaultScore(BigDecimal.valueOf(DeviceHealthCalculator.round(faultScores.get(0), 2)));
-            record.setWorkorderScore(BigDecimal.valueOf(DeviceHealthCalculator.round(workorderScores.get(0), 2)));
-            record.setReplacementScore(BigDecimal.valueOf(DeviceHealthCalculator.round(replacementScores.get(0), 2)));
-        }
-
-        record.setAlgorithmVersion("DeviceHealthCalculator_v1.0");
+        DeviceHealth record = buildHealthRecord(deviceId, recentFeatures, config, LocalDate.now());
 
         // 插入数据库
         deviceHealthMapper.insert(record);
 
         log.info("[健康评估] 设备 {} 评估完成，健康分={}, 风险等级={}, 记录ID={}",
-                equipment.getCode(), finalHealthScore, riskLevel, record.getId());
+                equipment.getCode(), record.getHealthScore(), record.getRiskLevel(), record.getId());
 
         return record.getId();
     }
@@ -166,35 +108,160 @@ public class DeviceHealthService {
     /**
      * 批量评估所有设备的健康状况
      *
+     * 集合式流程（替代逐设备 evaluateSingleDevice 的 4~5 次往返）：
+     *   1. 一次查询全部设备（ID/编码/重要性）、全部设备最近3个月特征
+     *   2. 内存中按设备分组，用 DeviceHealthCalculator 评分，配置取自 HealthConfigRegistry（按重要性匹配一次）
+     *   3. 每 {@value #INSERT_CHUNK_SIZE} 条一次多行 insertBatch 写入
+     *
+     * 方法本身不开启事务：每次 insertBatch 为一条独立提交的语句，即按批提交，
+     * 单批失败只影响该批设备，不会回滚已写入的批次。
+     *
      * @return 评估成功的设备数量
      */
-    @Transactional
     public int batchEvaluateAllDevices() {
         log.info("[健康评估] 开始批量评估所有设备...");
+        long start = System.currentTimeMillis();
 
-        // 查询所有设备
-        List<Equipment> allDevices = equipmentMapper.findAll();
-        if (allDevices == null || allDevices.isEmpty()) {
+        BulkHealthInputs inputs = loadBulkInputs();
+        List<Equipment> allDevices = inputs.getDevices();
+        if (allDevices.isEmpty()) {
             log.warn("[健康评估] 设备档案为空，跳过评估");
             return 0;
         }
+        long loaded = System.currentTimeMillis();
 
         int successCount = 0;
+        int skippedCount = 0;
+        List<DeviceHealth> chunk = new ArrayList<>(Math.min(INSERT_CHUNK_SIZE, allDevices.size()));
         for (Equipment device : allDevices) {
+            DeviceHealth record;
             try {
-                Long recordId = evaluateSingleDevice(device.getId());
-                if (recordId != null) {
-                    successCount++;
-                }
+                record = evaluate(inputs, device);
             } catch (Exception e) {
                 log.error("[健康评估] 设备 {} 评估失败", device.getCode(), e);
+                continue;
+            }
+            if (record == null) {
+                skippedCount++;
+                continue;
+            }
+            chunk.add(record);
+            if (chunk.size() >= INSERT_CHUNK_SIZE) {
+                successCount += flushChunk(chunk);
+                chunk = new ArrayList<>(INSERT_CHUNK_SIZE);
             }
         }
+        successCount += flushChunk(chunk);
 
-        log.info("[健康评估] 批量评估完成，共评估 {}/{} 台设备", successCount, allDevices.size());
+        log.info("[健康评估] 批量评估完成，共评估 {}/{} 台设备（无特征跳过 {} 台），评分写入耗时 {} ms，总耗时 {} ms",
+                successCount, allDevices.size(), skippedCount,
+                System.currentTimeMillis() - loaded, System.currentTimeMillis() - start);
         return successCount;
     }
 
+    /**
+     * 一次性加载批量评估所需的全部输入：设备、健康配置（按重要性预先匹配）、最近3个月特征
+     *
+     * @return 只读的批量评估输入，可被多个线程并发读取
+     */
+    public BulkHealthInputs loadBulkInputs() {
+        long start = System.currentTimeMillis();
+        List<Equipment> devices = equipmentMapper.findAllForHealth();
+        if (devices == null || devices.isEmpty()) {
+            return new BulkHealthInputs(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), LocalDate.now());
+        }
+
+        Map<Long, List<AiDeviceFeature>> featuresByDevice =
+                groupByDevice(aiDeviceFeatureMapper.findRecentMonthsAll(RECENT_MONTHS));
+
+        // 同一重要性只匹配一次配置（deviceType 与单设备评估一致，均按全局类型匹配）
+        Map<String, HealthConfig> configByImportance = new HashMap<>();
+        for (Equipment device : devices) {
+            configByImportance.computeIfAbsent(device.getImportanceLevel(),
+                    importance -> healthConfigRegistry.lookup(null, importance));
+        }
+
+        log.info("[健康评估] 批量加载完成：设备 {} 台，配置 {} 组，有特征设备 {} 台，耗时 {} ms",
+                devices.size(), configByImportance.size(), featuresByDevice.size(),
+                System.currentTimeMillis() - start);
+        return new BulkHealthInputs(devices, featuresByDevice, configByImportance, LocalDate.now());
+    }
+
+    /**
+     * 基于已加载输入在内存中评估单台设备（不写库）
+     *
+     * @param inputs 批量评估输入
+     * @param device 设备
+     * @return 健康记录；设备无最近特征数据时返回 null
+     */
+    public DeviceHealth evaluate(BulkHealthInputs inputs, Equipment device) {
+        List<AiDeviceFeature> recentFeatures = inputs.featuresByDevice.get(device.getId());
+        if (recentFeatures == null || recentFeatures.isEmpty()) {
+            return null;
+        }
+        HealthConfig config = inputs.configByImportance.get(device.getImportanceLevel());
+        if (config == null) {
+            config = healthConfigRegistry.lookup(null, device.getImportanceLevel());
+        }
+        return buildHealthRecord(device.getId(), recentFeatures, config, inputs.recordDate);
+    }
+
+    /**
+     * 多行写入已在内存中评估的健康记录（流水线按设备分块使用，每 {@value #INSERT_CHUNK_SIZE} 条一条语句）
+     *
+     * 与 {@link #batchEvaluateAllDevices} 不同，写入失败直接抛出，由调用方将该块设备记为失败、不推进水位。
+     *
+     * @param records 健康记录
+     * @return 写入条数
+     */
+    public int saveEvaluated(List<DeviceHealth> records) {
+        for (int from = 0; from < records.size(); from += INSERT_CHUNK_SIZE) {
+            // 复用 insertBatch 的当日覆盖语义，保证同日重跑不冲突
+            deviceHealthMapper.insertBatch(records.subList(from, Math.min(records.size(), from + INSERT_CHUNK_SIZE)));
+        }
+        return records.size();
+    }
+
+    /**
+     * 沿用设备的最新健康记录作为今日记录（增量评估中输入未变化的设备使用）
+     *
+     * @param deviceIds 设备ID列表
+     * @return 新写入的记录数
+     */
+    public int carryForwardHealth(List<Long> deviceIds) {
+        int rows = 0;
+        LocalDate today = LocalDate.now();
+        for (int from = 0; from < deviceIds.size(); from += ID_CHUNK_SIZE) {
+            rows += deviceHealthMapper.carryForward(
+                    deviceIds.subList(from, Math.min(deviceIds.size(), from + ID_CHUNK_SIZE)), today);
+        }
+        return rows;
+    }
+
+    /**
+     * 批量健康评估输入（加载后只读）
+     */
+    public static final class BulkHealthInputs {
+
+        private final List<Equipment> devices;
+        private final Map<Long, List<AiDeviceFeature>> featuresByDevice;
+        private final Map<String, HealthConfig> configByImportance;
+        private final LocalDate recordDate;
+
+        BulkHealthInputs(List<Equipment> devices, Map<Long, List<AiDeviceFeature>> featuresByDevice,
+                         Map<String, HealthConfig> configByImportance, LocalDate recordDate) {
+            this.devices = devices;
+            this.featuresByDevice = featuresByDevice;
+            this.configByImportance = configByImportance;
+            this.recordDate = recordDate;
+        }
+
+        /** 全部设备（ID/编码/重要性） */
+        public List<Equipment> getDevices() {
+            return devices;
+        }
+    }
+
     // ================================================================
     // 3. 健康趋势查询
     // ================================================================
@@ -320,39 +387,274 @@ public class DeviceHealthService {
     // ================================================================
 
     /**
-     * 获取健康配置（支持优先级匹配）
+     * 按最近N个月特征计算设备健康记录（单设备与批量评估共用）
      *
-     * @param deviceType      设备类型
-     * @param importanceLevel 重要性等级
-     * @return 健康配置
+     * @param deviceId       设备ID
+     * @param recentFeatures 最近N个月特征（按月份降序，索引0为最近月）
+     * @param config         健康配置
+     * @param recordDate     记录日期
+     * @return 未持久化的健康记录
      */
-    private HealthConfig getHealthConfig(String deviceType, String importanceLevel) {
-        HealthConfig config = healthConfigMapper.findByDeviceTypeAndImportance(deviceType, importanceLevel);
-        if (config == null) {
-            // 兜底：使用全局默认配置
-            config = healthConfigMapper.findGlobalDefault();
-            if (config == null) {
-                log.error("[健康评估] 未找到健康配置，使用硬编码默认值");
-                config = createDefaultConfig();
+    private DeviceHealth buildHealthRecord(Long deviceId, List<AiDeviceFeature> recentFeatures,
+                                           HealthConfig config, LocalDate recordDate) {
+        // 计算各维度评分
+        List<Double> runtimeScores = new ArrayList<>();
+        List<Double> faultScores = new ArrayList<>();
+        List<Double> workorderScores = new ArrayList<>();
+        List<Double> replacementScores = new ArrayList<>();
+
+        for (AiDeviceFeature feature : recentFeatures) {
+            // BigDecimal转Double
+            Double runHours = feature.getRunHours() != null ? feature.getRunHours().doubleValue() : 0.0;
+            Double mtbf = feature.getMtbf() != null ? feature.getMtbf().doubleValue() : 9999.0;
+            Integer workOrderCount = feature.getWorkOrderCount();
+            Integer partReplaceQty = feature.getPartReplaceQty();
+
+            // 计算各维度评分
+            double runtimeScore = DeviceHealthCalculator.calcRuntimeScore(
+                    runHours,
+                    720.0  // 标准运行时长（月度30天×24小时）
+            );
+            double faultScore = DeviceHealthCalculator.calcFaultScore(mtbf);
+            double workorderScore = DeviceHealthCalculator.calcWorkorderScore(
+                    workOrderCount != null ? workOrderCount : 0
+            );
+            double replacementScore = DeviceHealthCalculator.calcReplacementScore(
+                    partReplaceQty != null ? partReplaceQty : 0
+            );
+
+            runtimeScores.add(runtimeScore);
+            faultScores.add(faultScore);
+            workorderScores.add(workorderScore);
+            replacementScores.add(replacementScore);
+        }
+
+        // 计算综合健康评分（使用时间衰减）
+        List<Double> monthlyHealthScores = new ArrayList<>();
+        for (int i = 0; i < runtimeScores.size(); i++) {
+            // DeviceHealthCalculator使用固定权重（25%/35%/20%/20%）
+            double monthScore = DeviceHealthCalculator.calcHealthScore(
+                    runtimeScores.get(i),
+                    faultScores.get(i),
+                    workorderScores.get(i),
+                    replacementScores.get(i)
+            );
+            monthlyHealthScores.add(monthScore);
+        }
+
+        // 应用时间衰减得到最终健康分
+        double finalHealthScore = DeviceHealthCalculator.calcHealthScoreWithDecay(monthlyHealthScores);
+
+        // 确定风险等级
+        String riskLevel = DeviceHealthCalculator.determineRiskLevel(
+                finalHealthScore,
+                config.getCriticalThreshold().doubleValue(),
+                config.getHighThreshold().doubleValue(),
+                config.getMediumThreshold().doubleValue()
+        );
+
+        // 构建健康记录
+        DeviceHealth record = new DeviceHealth();
+        record.setDeviceId(deviceId);
+        record.setRecordDate(recordDate);
+        record.setHealthScore(BigDecimal.valueOf(DeviceHealthCalculator.round(finalHealthScore, 2)));
+        record.setRiskLevel(riskLevel);
+
+        // 保存最近一个月的各维度评分（索引0为最近月）
+        if (!runtimeScores.isEmpty()) {
+            record.setRuntimeScore(BigDecimal.valueOf(DeviceHealthCalculator.round(runtimeScores.get(0), 2)));
+            record.setFaultScore(BigDecimal.valueOf(DeviceHealthCalculator.round(faultScores.get(0), 2)));
+            record.setWorkorderScore(BigDecimal.valueOf(DeviceHealthCalculator.round(workorderScores.get(0), 2)));
+            record.setReplacementScore(BigDecimal.valueOf(DeviceHealthCalculator.round(replacementScores.get(0), 2)));
+        }
+
+        record.setAlgorithmVersion("DeviceHealthCalculator_v1.0");
+        return record;
+    }
+
+    /**
+     * 将按设备ID有序的特征列表分组（保持组内原有月份降序）
+     */
+    private static Map<Long, List<AiDeviceFeature>> groupByDevice(List<AiDeviceFeature> features) {
+        Map<Long, List<AiDeviceFeature>> grouped = new HashMap<>();
+        if (features == null) {
+            return grouped;
+        }
+        for (AiDeviceFeature feature : features) {
+            grouped.computeIfAbsent(feature.getDeviceId(), k -> new ArrayList<>(RECENT_MONTHS + 1)).add(feature);
+        }
+        return grouped;
+    }
+
+    /**
+     * 写入一批健康记录，失败时记录日志并返回0（不影响其他批次）
+     */
+    private int flushChunk(List<DeviceHealth> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        try {
+            deviceHealthMapper.insertBatch(chunk);
+            return chunk.size();
+        } catch (Exception e) {
+            log.error("[健康评估] 批量写入失败，本批 {} 条记录未保存", chunk.size(), e);
+            return 0;
+        }
+    }
+
+    // ================================================================
+    // 6. 健康配置管理
+    // ================================================================
+
+    /**
+     * 查询全部健康配置
+     */
+    public List<HealthConfig> listHealthConfigs() {
+        return healthConfigMapper.findAll();
+    }
+
+    /**
+     * 新增健康配置，未填写的阈值/权重/预测参数取默认值，校验通过后写库并刷新配置注册表
+     *
+     * @param config 配置记录
+     * @return 新配置ID
+     * @throws IllegalArgumentException 配置已存在或取值不合法
+     */
+    public Long createHealthConfig(HealthConfig config) {
+        HealthConfig merged = HealthConfigRegistry.createDefaultConfig();
+        merged.setDeviceType(config.getDeviceType());
+        merged.setImportanceLevel(config.getImportanceLevel());
+        mergeHealthConfig(merged, config);
+        validateHealthConfig(merged);
+        if (healthConfigMapper.countByDeviceTypeAndImportance(merged.getDeviceType(), merged.getImportanceLevel()) > 0) {
+            throw new IllegalArgumentException("该设备类型与重要性的配置已存在");
+        }
+        healthConfigMapper.insert(merged);
+        healthConfigRegistry.refresh();
+        log.info("[健康评估] 新增健康配置 ID={}, 类型={}, 重要性={}",
+                merged.getId(), merged.getDeviceType(), merged.getImportanceLevel());
+        return merged.getId();
+    }
+
+    /**
+     * 修改健康配置：请求中非空字段覆盖现有配置，未提交的字段保持原值，校验通过后写库并刷新配置注册表
+     *
+     * @param config 配置记录（id 必填，其余字段可部分提交）
+     * @return 是否更新成功（配置不存在时返回 false）
+     * @throws IllegalArgumentException 合并后取值不合法或与其他配置冲突
+     */
+    public boolean updateHealthConfig(HealthConfig config) {
+        HealthConfig existing = config.getId() == null ? null : healthConfigMapper.findById(config.getId());
+        if (existing == null) {
+            return false;
+        }
+        String oldDeviceType = existing.getDeviceType();
+        String oldImportance = existing.getImportanceLevel();
+        if (config.getDeviceType() != null) {
+            existing.setDeviceType(config.getDeviceType());
+        }
+        if (config.getImportanceLevel() != null) {
+            existing.setImportanceLevel(config.getImportanceLevel());
+        }
+        mergeHealthConfig(existing, config);
+        validateHealthConfig(existing);
+        boolean keyChanged = !Objects.equals(oldDeviceType, existing.getDeviceType())
+                || !Objects.equals(oldImportance, existing.getImportanceLevel());
+        if (keyChanged && healthConfigMapper.countByDeviceTypeAndImportance(
+                existing.getDeviceType(), existing.getImportanceLevel()) > 0) {
+            throw new IllegalArgumentException("该设备类型与重要性的配置已存在");
+        }
+        int rows = healthConfigMapper.update(existing);
+        if (rows > 0) {
+            healthConfigRegistry.refresh();
+            log.info("[健康评估] 修改健康配置 ID={}", existing.getId());
+        }
+        return rows > 0;
+    }
+
+    /**
+     * 删除健康配置，写库后刷新配置注册表
+     *
+     * @param id 配置ID
+     * @return 是否删除成功
+     */
+    public boolean deleteHealthConfig(Long id) {
+        int rows = healthConfigMapper.deleteById(id);
+        if (rows > 0) {
+            healthConfigRegistry.refresh();
+            log.info("[健康评估] 删除健康配置 ID={}", id);
+        }
+        return rows > 0;
+    }
+
+    /**
+     * 将 patch 中非空的阈值、权重、预测参数覆盖到 target
+     */
+    private static void mergeHealthConfig(HealthConfig target, HealthConfig patch) {
+        if (patch.getCriticalThreshold() != null) {
+            target.setCriticalThreshold(patch.getCriticalThreshold());
+        }
+        if (patch.getHighThreshold() != null) {
+            target.setHighThreshold(patch.getHighThreshold());
+        }
+        if (patch.getMediumThreshold() != null) {
+            target.setMediumThreshold(patch.getMediumThreshold());
+        }
+        if (patch.getRuntimeWeight() != null) {
+            target.setRuntimeWeight(patch.getRuntimeWeight());
+        }
+        if (patch.getFaultWeight() != null) {
+            target.setFaultWeight(patch.getFaultWeight());
+        }
+        if (patch.getWorkorderWeight() != null) {
+            target.setWorkorderWeight(patch.getWorkorderWeight());
+        }
+        if (patch.getReplacementWeight() != null) {
+            target.setReplacementWeight(patch.getReplacementWeight());
+        }
+        if (patch.getPredictionWindowDays() != null) {
+            target.setPredictionWindowDays(patch.getPredictionWindowDays());
+        }
+        if (patch.getMinHistoryMonths() != null) {
+            target.setMinHistoryMonths(patch.getMinHistoryMonths());
+        }
+    }
+
+    /**
+     * 校验完整配置：阈值 0 ≤ 严重 &lt; 高 &lt; 中 ≤ 100，四项权重均在 [0, 1] 且合计为 1，预测参数为正数
+     */
+    private static void validateHealthConfig(HealthConfig config) {
+        BigDecimal critical = config.getCriticalThreshold();
+        BigDecimal high = config.getHighThreshold();
+        BigDecimal medium = config.getMediumThreshold();
+        if (critical == null || high == null || medium == null) {
+            throw new IllegalArgumentException("风险阈值不能为空");
+        }
+        if (critical.signum() < 0 || medium.compareTo(BigDecimal.valueOf(100)) > 0
+                || critical.compareTo(high) >= 0 || high.compareTo(medium) >= 0) {
+            throw new IllegalArgumentException("风险阈值须满足 0 ≤ 严重 < 高 < 中 ≤ 100");
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (BigDecimal weight : Arrays.asList(config.getRuntimeWeight(), config.getFaultWeight(),
+                config.getWorkorderWeight(), config.getReplacementWeight())) {
+            if (weight == null || weight.signum() < 0 || weight.compareTo(BigDecimal.ONE) > 0) {
+                throw new IllegalArgumentException("评分权重须在 0 ~ 1 之间");
             }
+            sum = sum.add(weight);
+        }
+        if (sum.subtract(BigDecimal.ONE).abs().compareTo(new BigDecimal("0.001")) > 0) {
+            throw new IllegalArgumentException("四项评分权重之和须为 1，当前为 " + sum.stripTrailingZeros().toPlainString());
+        }
+        if (config.getPredictionWindowDays() == null || config.getPredictionWindowDays() <= 0
+                || config.getMinHistoryMonths() == null || config.getMinHistoryMonths() <= 0) {
+            throw new IllegalArgumentException("预测窗口天数与最少历史月数须为正整数");
         }
-        return config;
     }
 
     /**
-     * 创建默认配置（兜底）
+     * 配置注册表命中统计
      */
-    private HealthConfig createDefaultConfig() {
-        HealthConfig config = new HealthConfig();
-        config.setCriticalThreshold(BigDecimal.valueOf(40));
-        config.setHighThreshold(BigDecimal.valueOf(60));
-        config.setMediumThreshold(BigDecimal.valueOf(80));
-        config.setRuntimeWeight(BigDecimal.valueOf(0.25));
-        config.setFaultWeight(BigDecimal.valueOf(0.35));
-        config.setWorkorderWeight(BigDecimal.valueOf(0.20));
-        config.setReplacementWeight(BigDecimal.valueOf(0.20));
-        config.setPredictionWindowDays(90);
-        config.setMinHistoryMonths(6);
-        return config;
+    public Map<String, Object> getHealthConfigStats() {
+        return healthConfigRegistry.stats();
     }
 }
@@ -7,7 +7,6 @@ import com.langdong.spare.mapper.EquipmentMapper;
 import com.langdong.spare.mapper.FaultPredictionMapper;
 import com.langdong.spare.mapper.AiDeviceFeatureMapper;
 import com.langdong.spare.util.FaultPredictionEngine;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +18,7 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**
  * 设备故障预测服务
@@ -44,7 +44,17 @@ public class FaultPredictionService {
     @Autowired
     private AiDeviceFeatureMapper aiDeviceFeatureMapper;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    /** 预测回看月数 */
+    private static final int HISTORY_MONTHS = 12;
+
+    /** 按ID分段查询时每段设备数（控制 IN 列表长度） */
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    /** 评分矩阵行宽（回看月数 + 1，容纳跨月边界的多一条记录） */
+    private static final int ROW_MONTHS = HISTORY_MONTHS + 1;
+
+    /** 批量预测每批评分与写入条数（每批一次设备群评分 + 一条多行 INSERT，独立提交） */
+    private static final int INSERT_CHUNK_SIZE = 500;
 
     // ================================================================
     // 1. 单设备故障预测
@@ -67,84 +77,27 @@ public class FaultPredictionService {
             throw new RuntimeException("设备不存在");
         }
 
-        // 查询最近12个月的设备特征数据
-        List<AiDeviceFeature> recentFeatures = aiDeviceFeatureMapper.findRecentMonthsByDevice(deviceId, 12);
+        // 查询最近12个月的设备特征数据（联查当月平均健康分）
+        List<AiDeviceFeature> recentFeatures = aiDeviceFeatureMapper.findRecentMonthsWithHealth(
+                Collections.singletonList(deviceId), HISTORY_MONTHS);
 
-        if (recentFeatures.isEmpty() || recentFeatures.size() < 6) {
+        if (recentFeatures == null || recentFeatures.size() < 6) {
             log.warn("[故障预测] 设备 {} 历史数据不足（需至少6个月），跳过预测", equipment.getCode());
             return null;
         }
 
-        // 提取特征数据
-        List<Double> runHours = new ArrayList<>();
-        List<Integer> faultCounts = new ArrayList<>();
-        List<Double> mtbfValues = new ArrayList<>();
-        List<Double> healthScores = new ArrayList<>();
-
-        for (AiDeviceFeature feature : recentFeatures) {
-            // BigDecimal转Double
-            Double runHour = feature.getRunHours() != null ? feature.getRunHours().doubleValue() : 0.0;
-            Integer faultCount = feature.getFaultCount();
-            Double mtbf = feature.getMtbf() != null ? feature.getMtbf().doubleValue() : 9999.0;
-            // health_score需要联查ai_device_health表，暂时使用默认值
-            Double healthScore = 100.0;
-
-            runHours.add(runHour);
-            faultCounts.add(faultCount != null ? faultCount : 0);
-            mtbfValues.add(mtbf);
-            healthScores.add(healthScore);
-        }
-
-        // 计算特征
-        double avgRunHours = FaultPredictionEngine.calcAvgRunHours(runHours);
-        double faultFrequency = FaultPredictionEngine.calcFaultFrequency(faultCounts);
-        double avgMTBF = FaultPredictionEngine.calcAvgMTBF(mtbfValues);
-        double deteriorationRate = FaultPredictionEngine.calcDeteriorationRate(healthScores);
-
-        // 预测故障概率
-        double failureProbability = FaultPredictionEngine.predictFailureProbability(
-                avgRunHours, faultFrequency, avgMTBF, deteriorationRate
-        );
-
-        // 预测故障次数
-        int expectedFaults = FaultPredictionEngine.predictExpectedFaults(faultFrequency, predictionDays);
-        int faultCountLower = FaultPredictionEngine.calcConfidenceIntervalLower(expectedFaults);
-        int faultCountUpper = FaultPredictionEngine.calcConfidenceIntervalUpper(expectedFaults);
-
-        // 计算特征重要性（用于可视化）
-        Map<String, Double> featureImportance = FaultPredictionEngine.calcFeatureImportance(
-                avgRunHours, faultFrequency, avgMTBF, deteriorationRate
-        );
-
-        // 构建预测记录
-        FaultPrediction prediction = new FaultPrediction();
-        prediction.setDeviceId(deviceId);
-        prediction.setPredictionDate(LocalDate.now());
-
-        // 计算目标月份（当前月份 + predictionDays/30）
-        YearMonth targetMonth = YearMonth.now().plusMonths(predictionDays / 30);
-        prediction.setTargetMonth(targetMonth.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-
-        prediction.setPredictedFaultCount(expectedFaults);
-        prediction.setFailureProbability(BigDecimal.valueOf(FaultPredictionEngine.round(failureProbability, 4)));
-        prediction.setFaultCountLower(faultCountLower);
-        prediction.setFaultCountUpper(faultCountUpper);
-
-        // 转换特征重要性为JSON
-        try {
-            prediction.setFeatureImportance(objectMapper.writeValueAsString(featureImportance));
-        } catch (Exception e) {
-            log.error("[故障预测] 特征重要性JSON序列化失败", e);
-            prediction.setFeatureImportance("{}");
-        }
-
-        prediction.setModelType("LogisticRegression_v1.0");
+        FaultPredictionEngine.FleetMatrix matrix = new FaultPredictionEngine.FleetMatrix(1, ROW_MONTHS);
+        FaultPredictionEngine.FleetScores scores = new FaultPredictionEngine.FleetScores(1);
+        fillRow(matrix, 0, recentFeatures);
+        FaultPredictionEngine.scoreFleet(matrix, 1, predictionDays, scores);
+        FaultPrediction prediction = toPrediction(deviceId, scores, 0, LocalDate.now(), targetMonthOf(predictionDays));
 
         // 插入数据库
         faultPredictionMapper.insert(prediction);
 
         log.info("[故障预测] 设备 {} 预测完成，故障概率={}, 预期故障数={}, 记录ID={}",
-                equipment.getCode(), failureProbability, expectedFaults, prediction.getId());
+                equipment.getCode(), prediction.getFailureProbability(), prediction.getPredictedFaultCount(),
+                prediction.getId());
 
         return prediction.getId();
     }
@@ -156,47 +109,230 @@ public class FaultPredictionService {
     /**
      * 批量预测多个设备的故障情况
      *
+     * 批量模式（替代逐设备 findById + 特征查询 + 单行插入）：
+     *   1. 一次查询设备（ID/编码），一次查询最近12个月特征并联查当月平均健康分
+     *      （指定设备时按 {@value #QUERY_CHUNK_SIZE} 个ID一组分段查询）
+     *   2. 特征按设备逐行写入复用的设备 × 月份矩阵，每满一批调用 FaultPredictionEngine.scoreFleet 一次性评分
+     *   3. 每 {@value #INSERT_CHUNK_SIZE} 条一次多行 insertBatch 写入，按批独立提交
+     *
      * @param deviceIds      设备ID列表（null=所有设备）
      * @param predictionDays 预测窗口天数
      * @return 预测成功的设备数量
      */
-    @Transactional
     public int batchPredict(List<Long> deviceIds, int predictionDays) {
         log.info("[故障预测] 开始批量预测，设备数量={}, 预测窗口={}天",
                 deviceIds != null ? deviceIds.size() : "全部", predictionDays);
+        long start = System.currentTimeMillis();
 
         List<Equipment> devices;
+        Map<Long, List<AiDeviceFeature>> featuresByDevice;
         if (deviceIds == null || deviceIds.isEmpty()) {
-            devices = equipmentMapper.findAll();
+            devices = equipmentMapper.findAllForHealth();
+            featuresByDevice = groupByDevice(aiDeviceFeatureMapper.findRecentMonthsWithHealth(null, HISTORY_MONTHS));
         } else {
-            devices = new ArrayList<>();
-            for (Long deviceId : deviceIds) {
-                Equipment device = equipmentMapper.findById(deviceId);
-                if (device != null) {
-                    devices.add(device);
-                }
+            List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+            devices = new ArrayList<>(distinctIds.size());
+            featuresByDevice = new HashMap<>();
+            for (int from = 0; from < distinctIds.size(); from += QUERY_CHUNK_SIZE) {
+                List<Long> idChunk = distinctIds.subList(from, Math.min(distinctIds.size(), from + QUERY_CHUNK_SIZE));
+                devices.addAll(equipmentMapper.findByIds(idChunk));
+                featuresByDevice.putAll(groupByDevice(
+                        aiDeviceFeatureMapper.findRecentMonthsWithHealth(idChunk, HISTORY_MONTHS)));
             }
         }
 
-        if (devices.isEmpty()) {
+        if (devices == null || devices.isEmpty()) {
             log.warn("[故障预测] 无设备需要预测");
             return 0;
         }
+        long loaded = System.currentTimeMillis();
 
-        int successCount = 0;
+        List<Long> ids = new ArrayList<>(devices.size());
         for (Equipment device : devices) {
-            try {
-                Long recordId = predictSingleDevice(device.getId(), predictionDays);
-                if (recordId != null) {
-                    successCount++;
-                }
-            } catch (Exception e) {
-                log.error("[故障预测] 设备 {} 预测失败", device.getCode(), e);
+            ids.add(device.getId());
+        }
+        int[] counts = scoreDevices(ids, featuresByDevice, predictionDays, this::flushChunk);
+
+        log.info("[故障预测] 批量预测完成，成功 {}/{} 台设备（历史数据不足 {} 台），加载耗时 {} ms，总耗时 {} ms",
+                counts[0], devices.size(), counts[1], loaded - start, System.currentTimeMillis() - start);
+        return counts[0];
+    }
+
+    /**
+     * 对一块已知设备做批量故障预测并写入（PHM 每日流水线按块调用，替代逐设备 predictSingleDevice）
+     *
+     * 与 {@link #batchPredict} 共用评分与写入流程，但不再查询设备档案（调用方已持有），
+     * 特征按 {@value #QUERY_CHUNK_SIZE} 个ID一段查询；写入失败直接抛出，由调用方将该块设备记为失败。
+     *
+     * @param deviceIds      设备ID列表
+     * @param predictionDays 预测窗口天数
+     * @return 写入的预测记录数（历史数据不足的设备不写入）
+     */
+    public int predictDevices(List<Long> deviceIds, int predictionDays) {
+        if (deviceIds == null || deviceIds.isEmpty()) {
+            return 0;
+        }
+        Map<Long, List<AiDeviceFeature>> featuresByDevice = new HashMap<>();
+        for (int from = 0; from < deviceIds.size(); from += QUERY_CHUNK_SIZE) {
+            featuresByDevice.putAll(groupByDevice(aiDeviceFeatureMapper.findRecentMonthsWithHealth(
+                    deviceIds.subList(from, Math.min(deviceIds.size(), from + QUERY_CHUNK_SIZE)), HISTORY_MONTHS)));
+        }
+        return scoreDevices(deviceIds, featuresByDevice, predictionDays, chunk -> {
+            faultPredictionMapper.insertBatch(chunk);
+            return chunk.size();
+        })[0];
+    }
+
+    /**
+     * 按设备顺序逐行填入复用矩阵，每满 {@value #INSERT_CHUNK_SIZE} 行评分一次并交给 writer 写入
+     *
+     * @return {写入成功数, 历史数据不足数}
+     */
+    private int[] scoreDevices(List<Long> deviceIds, Map<Long, List<AiDeviceFeature>> featuresByDevice,
+                               int predictionDays, ToIntFunction<List<FaultPrediction>> writer) {
+        LocalDate predictionDate = LocalDate.now();
+        String targetMonth = targetMonthOf(predictionDays);
+        int capacity = Math.min(INSERT_CHUNK_SIZE, Math.max(1, deviceIds.size()));
+        FaultPredictionEngine.FleetMatrix matrix = new FaultPredictionEngine.FleetMatrix(capacity, ROW_MONTHS);
+        FaultPredictionEngine.FleetScores scores = new FaultPredictionEngine.FleetScores(capacity);
+        long[] rowDeviceIds = new long[capacity];
+
+        int successCount = 0;
+        int insufficientCount = 0;
+        int rows = 0;
+        for (Long deviceId : deviceIds) {
+            List<AiDeviceFeature> recentFeatures = featuresByDevice.get(deviceId);
+            if (recentFeatures == null || recentFeatures.size() < 6) {
+                insufficientCount++;
+                continue;
+            }
+            fillRow(matrix, rows, recentFeatures);
+            rowDeviceIds[rows++] = deviceId;
+            if (rows == capacity) {
+                successCount += scoreAndFlush(matrix, scores, rowDeviceIds, rows, predictionDays, predictionDate,
+                        targetMonth, writer);
+                rows = 0;
             }
         }
+        successCount += scoreAndFlush(matrix, scores, rowDeviceIds, rows, predictionDays, predictionDate,
+                targetMonth, writer);
+        return new int[]{successCount, insufficientCount};
+    }
 
-        log.info("[故障预测] 批量预测完成，成功 {}/{} 台设备", successCount, devices.size());
-        return successCount;
+    /**
+     * 沿用设备的最新预测记录到本次目标月份（增量评估中输入未变化的设备使用）
+     *
+     * @param deviceIds      设备ID列表
+     * @param predictionDays 预测窗口天数
+     * @return 新写入的记录数
+     */
+    public int carryForwardPredictions(List<Long> deviceIds, int predictionDays) {
+        int rows = 0;
+        LocalDate today = LocalDate.now();
+        String targetMonth = targetMonthOf(predictionDays);
+        for (int from = 0; from < deviceIds.size(); from += QUERY_CHUNK_SIZE) {
+            rows += faultPredictionMapper.carryForward(
+                    deviceIds.subList(from, Math.min(deviceIds.size(), from + QUERY_CHUNK_SIZE)), today, targetMonth);
+        }
+        return rows;
+    }
+
+    /**
+     * 将单台设备的特征列表（按月份降序）按时间正序写入矩阵第 row 行
+     *
+     * 运行时长/故障缺失按 0、MTBF 缺失按 9999（无故障）、当月无健康评估记录按 NaN 填充；
+     * 超过行宽时只保留最近 {@value #ROW_MONTHS} 个月
+     */
+    private static void fillRow(FaultPredictionEngine.FleetMatrix matrix, int row, List<AiDeviceFeature> recentFeatures) {
+        int n = Math.min(recentFeatures.size(), matrix.stride);
+        int base = row * matrix.stride;
+        for (int i = 0; i < n; i++) {
+            AiDeviceFeature feature = recentFeatures.get(n - 1 - i);
+            matrix.runHours[base + i] = feature.getRunHours() != null ? feature.getRunHours().doubleValue() : 0.0;
+            matrix.faultCounts[base + i] = feature.getFaultCount() != null ? feature.getFaultCount() : 0;
+            matrix.mtbf[base + i] = feature.getMtbf() != null ? feature.getMtbf().doubleValue() : 9999.0;
+            matrix.healthScores[base + i] = feature.getHealthScore() != null
+                    ? feature.getHealthScore().doubleValue() : Double.NaN;
+        }
+        matrix.monthCounts[row] = n;
+    }
+
+    /**
+     * 对矩阵前 rows 行一次性评分，转换为预测记录后交给 writer 多行写入
+     *
+     * @return 成功写入的记录数
+     */
+    private static int scoreAndFlush(FaultPredictionEngine.FleetMatrix matrix, FaultPredictionEngine.FleetScores scores,
+                                     long[] rowDeviceIds, int rows, int predictionDays,
+                                     LocalDate predictionDate, String targetMonth,
+                                     ToIntFunction<List<FaultPrediction>> writer) {
+        if (rows == 0) {
+            return 0;
+        }
+        FaultPredictionEngine.scoreFleet(matrix, rows, predictionDays, scores);
+        List<FaultPrediction> chunk = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            if (scores.isScored(r)) {
+                chunk.add(toPrediction(rowDeviceIds[r], scores, r, predictionDate, targetMonth));
+            }
+        }
+        return chunk.isEmpty() ? 0 : writer.applyAsInt(chunk);
+    }
+
+    /**
+     * 由评分输出第 row 行构建预测记录（单设备与批量预测共用）
+     */
+    private static FaultPrediction toPrediction(Long deviceId, FaultPredictionEngine.FleetScores scores, int row,
+                                                LocalDate predictionDate, String targetMonth) {
+        FaultPrediction prediction = new FaultPrediction();
+        prediction.setDeviceId(deviceId);
+        prediction.setPredictionDate(predictionDate);
+        prediction.setTargetMonth(targetMonth);
+        prediction.setPredictedFaultCount(scores.expectedFaults[row]);
+        prediction.setFailureProbability(BigDecimal.valueOf(FaultPredictionEngine.round(scores.probability[row], 4)));
+        prediction.setFaultCountLower(scores.faultCountLower[row]);
+        prediction.setFaultCountUpper(scores.faultCountUpper[row]);
+        prediction.setFeatureImportance(FaultPredictionEngine.featureImportanceJson(
+                scores.featureShares, row * FaultPredictionEngine.FEATURE_COUNT));
+        prediction.setModelType("LogisticRegression_v1.0");
+        return prediction;
+    }
+
+    /**
+     * 计算目标月份（当前月份 + predictionDays/30）
+     */
+    private static String targetMonthOf(int predictionDays) {
+        return YearMonth.now().plusMonths(predictionDays / 30).format(DateTimeFormatter.ofPattern("yyyy-MM"));
+    }
+
+    /**
+     * 将按设备ID有序的特征列表分组（保持组内原有月份降序）
+     */
+    private static Map<Long, List<AiDeviceFeature>> groupByDevice(List<AiDeviceFeature> features) {
+        Map<Long, List<AiDeviceFeature>> grouped = new HashMap<>();
+        if (features == null) {
+            return grouped;
+        }
+        for (AiDeviceFeature feature : features) {
+            grouped.computeIfAbsent(feature.getDeviceId(), k -> new ArrayList<>(HISTORY_MONTHS + 1)).add(feature);
+        }
+        return grouped;
+    }
+
+    /**
+     * 写入一批预测记录，失败时记录日志并返回0（不影响其他批次）
+     */
+    private int flushChunk(List<FaultPrediction> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        try {
+            faultPredictionMapper.insertBatch(chunk);
+            return chunk.size();
+        } catch (Exception e) {
+            log.error("[故障预测] 批量写入失败，本批 {} 条记录未保存", chunk.size(), e);
+            return 0;
+        }
     }
 
     // ================================================================
@@ -1,18 +1,39 @@
 package com.langdong.spare.service;
 
 import com.langdong.spare.entity.OutboundBatchTrace;
+import com.langdong.spare.entity.SparePartStock;
 import com.langdong.spare.entity.StockInItem;
 import com.langdong.spare.mapper.OutboundBatchTraceMapper;
 import com.langdong.spare.mapper.SparePartStockMapper;
 import com.langdong.spare.mapper.StockInItemMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * FIFO 出库核心服务
@@ -31,14 +52,83 @@ public class FifoOutboundService {
     @Autowired
     private SparePartStockMapper sparePartStockMapper;
 
+    @Autowired
+    private DataSource dataSource;
+
+    /** 进程内分段锁段数 */
+    private static final int LOCK_STRIPES = 64;
+
+    /** 批量出库单条多行 UPDATE / INSERT 的最大行数 */
+    private static final int BATCH_CHUNK_SIZE = 500;
+
+    /** 单备件锁定读首次锁定的批次数，余量不足时翻倍续读 */
+    private static final int LOCK_PAGE_SIZE = 8;
+
+    /** 批次规划读取方式：OPTIMISTIC 快照读 + 条件更新校验；SKIP_LOCKED 锁定读并跳过其他事务已锁定的批次（需 MySQL 8.0+） */
+    @Value("${fifo.outbound.lock-mode:OPTIMISTIC}")
+    private LockMode lockMode = LockMode.OPTIMISTIC;
+
+    /** 是否启用进程内按备件分段加锁 */
+    @Value("${fifo.outbound.striped-lock:true}")
+    private boolean stripedLock = true;
+
+    /** 分段锁最长等待时间（毫秒） */
+    @Value("${fifo.outbound.lock-wait-ms:3000}")
+    private long lockWaitMs = 3000L;
+
+    /** 单次出库最多规划轮数（含首轮） */
+    @Value("${fifo.outbound.max-attempts:5}")
+    private int maxAttempts = 5;
+
+    /** SKIP_LOCKED 模式下余量不足时的退避基数（毫秒，按轮次线性递增） */
+    @Value("${fifo.outbound.retry-backoff-ms:20}")
+    private long retryBackoffMs = 20L;
+
+    private final ReentrantLock[] stripes = newStripes();
+
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder replans = new LongAdder();
+    private final LongAdder lockTimeouts = new LongAdder();
+    private final LongAdder batchLines = new LongAdder();
+    private final LongAdder batchFallbacks = new LongAdder();
+
+    /**
+     * 批次规划读取方式
+     */
+    public enum LockMode {
+        /** 首轮快照读规划，条件更新冲突后以等锁的锁定读重新规划 */
+        OPTIMISTIC,
+        /** 每轮均以 FOR UPDATE SKIP LOCKED 锁定读规划，并发出库互不等待；仅支持 MySQL 8.0+，启动时校验 */
+        SKIP_LOCKED
+    }
+
+    /**
+     * 批量出库的一行需求
+     *
+     * @param reqItemId   领用明细ID
+     * @param sparePartId 备件ID
+     * @param requiredQty 需要出库的数量
+     */
+    public record OutboundLine(Long reqItemId, Long sparePartId, int requiredQty) {
+    }
+
     /**
      * 执行 FIFO 出库扣减
      *
+     * 并发控制：
+     *   1. 同一 JVM 内按备件ID分段加锁（{@value #LOCK_STRIPES} 段），持有至事务结束，同一备件的出库串行执行；
+     *      等锁超过 fifo.outbound.lock-wait-ms 后不再等待，退回数据库层面的乐观校验
+     *   2. 批次扣减为条件更新（remaining_qty &gt;= 扣减量），更新 0 行即视为版本冲突：已成功扣减的批次保留，
+     *      剩余需求按锁定读（当前读）重新规划，最多 fifo.outbound.max-attempts 轮，不因单次冲突回滚整张领用单
+     *   3. 锁定读按 FIFO 顺序只锁定覆盖剩余需求所需的批次（先锁 {@value #LOCK_PAGE_SIZE} 个，不足时翻倍续读）；
+     *      lock-mode = SKIP_LOCKED 时所有规划读使用 FOR UPDATE SKIP LOCKED，跨节点并发出库各自领取未被锁定的批次，
+     *      余量不足时短暂退避后重试
+     *
      * @param reqItemId    领用明细ID
      * @param sparePartId  备件ID
      * @param requiredQty  需要出库的数量
      * @return 批次分配信息摘要（如：IN20240101[10件] + IN20240102[5件]）
-     * @throws RuntimeException 库存不足时抛出异常
+     * @throws RuntimeException 库存不足或重试耗尽时抛出异常
      */
     @Transactional(rollbackFor = Exception.class)
     public String processFifoOutbound(Long reqItemId, Long sparePartId, int requiredQty) {
@@ -54,60 +144,170 @@ public class FifoOutboundService {
             throw new RuntimeException(errorMsg);
         }
 
-        // 2. 按入库时间升序加载所有有余量的批次（FIFO 核心排序）
-        List<StockInItem> availableBatches = stockInItemMapper
-                .findAvailableBatchesBySparePartId(sparePartId);
+        ReentrantLock stripe = lockStripe(sparePartId);
+        List<ReentrantLock> held = stripe == null ? Collections.emptyList() : List.of(stripe);
+        boolean releaseOnCompletion = !held.isEmpty() && releaseAfterCompletion(held);
+        try {
+            return allocate(reqItemId, sparePartId, requiredQty);
+        } finally {
+            if (!releaseOnCompletion) {
+                held.forEach(ReentrantLock::unlock);
+            }
+        }
+    }
 
-        if (availableBatches.isEmpty()) {
-            throw new RuntimeException("未找到可用入库批次，数据异常");
+    /**
+     * 启动校验：SKIP_LOCKED 依赖 MySQL 8.0 的 SKIP LOCKED 语法，5.7 及以下直接拒绝启动
+     */
+    @PostConstruct
+    void checkLockMode() {
+        if (lockMode != LockMode.SKIP_LOCKED) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            if (metaData.getDatabaseMajorVersion() < 8) {
+                throw new IllegalStateException(String.format(
+                        "fifo.outbound.lock-mode=SKIP_LOCKED 需要 MySQL 8.0 及以上，当前数据库版本 %s，请改用 OPTIMISTIC",
+                        metaData.getDatabaseProductVersion()));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("fifo.outbound.lock-mode=SKIP_LOCKED 启动校验失败：无法读取数据库版本", e);
         }
+    }
 
-        // 3. 逐批次扣减
+    /**
+     * 批量执行多行 FIFO 出库扣减（大领用单一次性出库）
+     *
+     * 与逐行调用 {@link #processFifoOutbound} 相比，语句数与行数无关：
+     *   1. 一次查询校验全部备件总库存（按备件汇总需求）
+     *   2. 按段号升序获取涉及备件的分段锁，再按备件ID升序逐备件锁定读取覆盖其汇总需求的批次
+     *      （{@link #lockAvailableBatches}：先锁 {@value #LOCK_PAGE_SIZE} 个，不足时翻倍续读），
+     *      锁定行数随需求而非批次总数增长；入库单号最后一次性一致性读取，不锁定入库单
+     *   3. 内存中按明细顺序逐行 FIFO 规划，同一备件的多行依次消耗同一批次序列
+     *   4. 批次扣减、追溯记录、总库存调整各为一条多行语句（超过 {@value #BATCH_CHUNK_SIZE} 行分段）
+     *
+     * 等锁读取已续读到末批，看到的即已提交的最新余量，余量不足即确实缺货；SKIP_LOCKED 模式下余量不足可能是批次被
+     * 其他事务锁定，该备件的各行改走逐行重新规划（{@link #allocate}）。固定的备件升序加锁顺序避免并发批量出库互相死锁。
+     * 批量扣减影响行数不符时整单回滚。
+     *
+     * @param lines 出库需求，按明细顺序
+     * @return 与 lines 一一对应的批次分配信息摘要
+     * @throws RuntimeException 库存不足、扣减冲突或重试耗尽时抛出异常
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<String> processFifoOutboundBatch(List<OutboundLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 按备件汇总需求（按备件ID升序）
+        Map<Long, Integer> requiredByPart = new TreeMap<>();
+        for (OutboundLine line : lines) {
+            requiredByPart.merge(line.sparePartId(), line.requiredQty(), Integer::sum);
+        }
+        log.info("开始批量 FIFO 出库: 明细{}行, 备件{}种", lines.size(), requiredByPart.size());
+
+        // 1. 一次查询检查各备件总库存是否充足
+        Map<Long, Integer> availableByPart = new HashMap<>();
+        for (SparePartStock stock : sparePartStockMapper.findBySparePartIds(requiredByPart.keySet())) {
+            availableByPart.put(stock.getSparePartId(), stock.getQuantity() == null ? 0 : stock.getQuantity());
+        }
+        for (Map.Entry<Long, Integer> entry : requiredByPart.entrySet()) {
+            int totalAvailable = availableByPart.getOrDefault(entry.getKey(), 0);
+            if (totalAvailable < entry.getValue()) {
+                String errorMsg = String.format("备件[%d]库存不足，需要%d件，可用%d件",
+                        entry.getKey(), entry.getValue(), totalAvailable);
+                log.error(errorMsg);
+                throw new RuntimeException(errorMsg);
+            }
+        }
+
+        List<ReentrantLock> held = lockStripes(requiredByPart.keySet());
+        boolean releaseOnCompletion = !held.isEmpty() && releaseAfterCompletion(held);
+        try {
+            return allocateBatch(lines, requiredByPart);
+        } finally {
+            if (!releaseOnCompletion) {
+                held.forEach(ReentrantLock::unlock);
+            }
+        }
+    }
+
+    /**
+     * 按 FIFO 规划并扣减批次；版本冲突或余量不足时按最新批次余量重新规划剩余需求
+     */
+    private String allocate(Long reqItemId, Long sparePartId, int requiredQty) {
         int remainingNeed = requiredQty;
         List<OutboundBatchTrace> traceRecords = new ArrayList<>();
         StringBuilder batchInfoBuilder = new StringBuilder();
 
-        for (StockInItem batch : availableBatches) {
-            if (remainingNeed <= 0) {
-                break; // 已满足需求
-            }
+        for (int attempt = 1; ; attempt++) {
+            // 2. 按入库时间升序加载有余量的批次（FIFO 核心排序）；重新规划时使用锁定读取得最新余量
+            boolean lockingRead = attempt > 1 || lockMode == LockMode.SKIP_LOCKED;
+            List<StockInItem> availableBatches = lockingRead
+                    ? lockAvailableBatches(sparePartId, remainingNeed)
+                    : stockInItemMapper.findAvailableBatchesBySparePartId(sparePartId);
 
-            int batchRemaining = batch.getRemainingQty();
-            int deductQty;
+            // 3. 逐批次扣减
+            boolean conflict = false;
+            for (StockInItem batch : availableBatches) {
+                if (remainingNeed <= 0) {
+                    break; // 已满足需求
+                }
+                int deductQty = Math.min(batch.getRemainingQty(), remainingNeed);
 
-            if (batchRemaining >= remainingNeed) {
-                // 当前批次足以满足剩余需求
-                deductQty = remainingNeed;
-                remainingNeed = 0;
-            } else {
-                // 当前批次不够，全部扣完
-                deductQty = batchRemaining;
-                remainingNeed -= batchRemaining;
-            }
+                // 4. 扣减批次库存（UPDATE ... WHERE remaining_qty >= deductQty，0 行即余量已被并发扣减）
+                int updated = stockInItemMapper.deductBatchQuantity(batch.getId(), deductQty);
+                if (updated == 0) {
+                    conflict = true;
+                    conflicts.increment();
+                    log.warn("批次[{}]扣减冲突（余量已被并发扣减），第{}轮重新规划剩余{}件",
+                            batch.getReceiptCode(), attempt, remainingNeed);
+                    break;
+                }
+                remainingNeed -= deductQty;
 
-            // 4. 扣减批次库存（UPDATE stock_in_item SET remaining_qty = remaining_qty - deductQty）
-            int updated = stockInItemMapper.deductBatchQuantity(batch.getId(), deductQty);
-            if (updated == 0) {
-                throw new RuntimeException("批次库存扣减失败，可能并发冲突或数据异常");
-            }
+                // 5. 记录批次追溯
+                OutboundBatchTrace trace = new OutboundBatchTrace();
+                trace.setReqItemId(reqItemId);
+                trace.setStockInItemId(batch.getId());
+                trace.setSparePartId(sparePartId);
+                trace.setDeductQty(deductQty);
+                trace.setOutboundTime(LocalDateTime.now());
+                traceRecords.add(trace);
 
-            // 5. 记录批次追溯
-            OutboundBatchTrace trace = new OutboundBatchTrace();
-            trace.setReqItemId(reqItemId);
-            trace.setStockInItemId(batch.getId());
-            trace.setSparePartId(sparePartId);
-            trace.setDeductQty(deductQty);
-            trace.setOutboundTime(LocalDateTime.now());
-            traceRecords.add(trace);
+                // 6. 构建批次信息摘要
+                if (batchInfoBuilder.length() > 0) {
+                    batchInfoBuilder.append(" + ");
+                }
+                batchInfoBuilder.append(String.format("%s[%d件]",
+                        batch.getReceiptCode(), deductQty));
 
-            // 6. 构建批次信息摘要
-            if (batchInfoBuilder.length() > 0) {
-                batchInfoBuilder.append(" + ");
+                log.info("从批次[{}]扣减{}件，剩余需求{}件", batch.getReceiptCode(), deductQty, remainingNeed);
             }
-            batchInfoBuilder.append(String.format("%s[%d件]",
-                    batch.getReceiptCode(), deductQty));
 
-            log.info("从批次[{}]扣减{}件，剩余需求{}件", batch.getReceiptCode(), deductQty, remainingNeed);
+            if (remainingNeed <= 0) {
+                break;
+            }
+            // 等锁读取（非 SKIP LOCKED 的锁定读）已续读到末批，看到的是全部已提交余量：无冲突仍不足即确实缺货
+            boolean definitive = lockingRead && lockMode != LockMode.SKIP_LOCKED;
+            if (!conflict && definitive) {
+                String errorMsg = availableBatches.isEmpty() && remainingNeed == requiredQty
+                        ? "未找到可用入库批次，数据异常"
+                        : String.format("备件[%d]批次库存不足，需要%d件，尚缺%d件", sparePartId, requiredQty, remainingNeed);
+                log.error(errorMsg);
+                throw new RuntimeException(errorMsg);
+            }
+            if (attempt >= maxAttempts) {
+                String errorMsg = String.format("备件[%d]批次库存扣减失败：重新规划%d轮后仍缺%d件，可能并发冲突或库存不足",
+                        sparePartId, attempt, remainingNeed);
+                log.error(errorMsg);
+                throw new RuntimeException(errorMsg);
+            }
+            replans.increment();
+            if (lockMode == LockMode.SKIP_LOCKED) {
+                backoff(attempt);
+            }
         }
 
         // 7. 批量插入追溯记录
@@ -124,6 +324,283 @@ public class FifoOutboundService {
         return batchInfo;
     }
 
+    /**
+     * 按 FIFO 顺序锁定读取足以覆盖 need 的批次：先锁 {@value #LOCK_PAGE_SIZE} 个，余量不足且可能还有批次时翻倍重读
+     * （本事务已锁定的行不会被 SKIP LOCKED 跳过，重读结果包含上一轮的批次），只锁需要的行；
+     * 入库单号另行一致性读取，不锁定入库单
+     */
+    private List<StockInItem> lockAvailableBatches(Long sparePartId, int need) {
+        List<StockInItem> batches = lockBatchesCovering(sparePartId, need);
+        fillReceiptCodes(batches);
+        return batches;
+    }
+
+    /**
+     * {@link #lockAvailableBatches} 的锁定读部分（不补充入库单号，供批量出库汇总后一次补充）
+     */
+    private List<StockInItem> lockBatchesCovering(Long sparePartId, int need) {
+        boolean skipLocked = lockMode == LockMode.SKIP_LOCKED;
+        for (int limit = LOCK_PAGE_SIZE; ; limit *= 2) {
+            List<StockInItem> batches = stockInItemMapper.findAvailableBatchesForUpdate(sparePartId, skipLocked, limit);
+            int covered = batches.stream().mapToInt(StockInItem::getRemainingQty).sum();
+            if (covered >= need || batches.size() < limit) {
+                return batches;
+            }
+        }
+    }
+
+    /**
+     * 为锁定读取的批次补充入库单号（批次ID超过 {@value #BATCH_CHUNK_SIZE} 个时分段查询）
+     */
+    private void fillReceiptCodes(List<StockInItem> batches) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(batches.size());
+        for (StockInItem batch : batches) {
+            ids.add(batch.getId());
+        }
+        Map<Long, String> codes = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += BATCH_CHUNK_SIZE) {
+            for (StockInItem item : stockInItemMapper.findReceiptCodesByItemIds(
+                    ids.subList(from, Math.min(ids.size(), from + BATCH_CHUNK_SIZE)))) {
+                codes.put(item.getId(), item.getReceiptCode());
+            }
+        }
+        for (StockInItem batch : batches) {
+            String code = codes.get(batch.getId());
+            if (code != null) {
+                batch.setReceiptCode(code);
+            }
+        }
+    }
+
+    /**
+     * 批量规划并扣减：逐备件按需锁定读取，内存规划，多行语句写回
+     */
+    private List<String> allocateBatch(List<OutboundLine> lines, Map<Long, Integer> requiredByPart) {
+        boolean skipLocked = lockMode == LockMode.SKIP_LOCKED;
+
+        // 2. 按备件ID升序逐备件锁定读取（当前读）覆盖汇总需求的批次，组内保持 FIFO 顺序；入库单号汇总后一次补充
+        Map<Long, List<StockInItem>> batchesByPart = new HashMap<>();
+        List<StockInItem> locked = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : requiredByPart.entrySet()) {
+            List<StockInItem> batches = lockBatchesCovering(entry.getKey(), entry.getValue());
+            batchesByPart.put(entry.getKey(), batches);
+            locked.addAll(batches);
+        }
+        fillReceiptCodes(locked);
+        Set<Long> fallbackParts = new HashSet<>();
+        for (Map.Entry<Long, Integer> entry : requiredByPart.entrySet()) {
+            int covered = batchesByPart.getOrDefault(entry.getKey(), Collections.emptyList()).stream()
+                    .mapToInt(StockInItem::getRemainingQty).sum();
+            if (covered >= entry.getValue()) {
+                continue;
+            }
+            if (!skipLocked) {
+                String errorMsg = covered == 0
+                        ? "未找到可用入库批次，数据异常"
+                        : String.format("备件[%d]批次库存不足，需要%d件，尚缺%d件",
+                                entry.getKey(), entry.getValue(), entry.getValue() - covered);
+                log.error(errorMsg);
+                throw new RuntimeException(errorMsg);
+            }
+            fallbackParts.add(entry.getKey());
+        }
+
+        // 3. 内存中逐行规划：同一备件的多行共用批次游标，批次余量在内存中递减
+        Map<Long, Integer> deductions = new LinkedHashMap<>();
+        Map<Long, Integer> stockDeltas = new TreeMap<>();
+        Map<Long, Integer> cursorByPart = new HashMap<>();
+        List<OutboundBatchTrace> traceRecords = new ArrayList<>();
+        String[] batchInfos = new String[lines.size()];
+        LocalDateTime outboundTime = LocalDateTime.now();
+        for (int i = 0; i < lines.size(); i++) {
+            OutboundLine line = lines.get(i);
+            if (fallbackParts.contains(line.sparePartId())) {
+                continue;
+            }
+            List<StockInItem> batches = batchesByPart.getOrDefault(line.sparePartId(), Collections.emptyList());
+            int cursor = cursorByPart.getOrDefault(line.sparePartId(), 0);
+            int remainingNeed = line.requiredQty();
+            StringBuilder batchInfoBuilder = new StringBuilder();
+            while (remainingNeed > 0) {
+                StockInItem batch = batches.get(cursor);
+                int deductQty = Math.min(batch.getRemainingQty(), remainingNeed);
+                batch.setRemainingQty(batch.getRemainingQty() - deductQty);
+                if (batch.getRemainingQty() == 0) {
+                    cursor++;
+                }
+                remainingNeed -= deductQty;
+                deductions.merge(batch.getId(), deductQty, Integer::sum);
+
+                OutboundBatchTrace trace = new OutboundBatchTrace();
+                trace.setReqItemId(line.reqItemId());
+                trace.setStockInItemId(batch.getId());
+                trace.setSparePartId(line.sparePartId());
+                trace.setDeductQty(deductQty);
+                trace.setOutboundTime(outboundTime);
+                traceRecords.add(trace);
+
+                if (batchInfoBuilder.length() > 0) {
+                    batchInfoBuilder.append(" + ");
+                }
+                batchInfoBuilder.append(String.format("%s[%d件]", batch.getReceiptCode(), deductQty));
+            }
+            cursorByPart.put(line.sparePartId(), cursor);
+            stockDeltas.merge(line.sparePartId(), -line.requiredQty(), Integer::sum);
+            batchInfos[i] = batchInfoBuilder.toString();
+        }
+
+        // 4. 批量扣减批次库存：锁定读之后余量不应再变化，影响行数不符即数据异常，整单回滚
+        int updated = 0;
+        for (Map<Long, Integer> chunk : chunk(deductions)) {
+            updated += stockInItemMapper.deductBatchQuantities(chunk);
+        }
+        if (updated != deductions.size()) {
+            conflicts.increment();
+            String errorMsg = String.format("批量扣减批次库存冲突：计划扣减%d个批次，实际更新%d个", deductions.size(), updated);
+            log.error(errorMsg);
+            throw new RuntimeException(errorMsg);
+        }
+        for (int from = 0; from < traceRecords.size(); from += BATCH_CHUNK_SIZE) {
+            outboundBatchTraceMapper.insertBatch(traceRecords.subList(from, Math.min(traceRecords.size(), from + BATCH_CHUNK_SIZE)));
+        }
+        for (Map<Long, Integer> chunk : chunk(stockDeltas)) {
+            sparePartStockMapper.addQuantities(chunk);
+        }
+
+        // 5. SKIP LOCKED 下批次被其他事务锁定的备件逐行重新规划
+        for (int i = 0; i < lines.size(); i++) {
+            OutboundLine line = lines.get(i);
+            if (fallbackParts.contains(line.sparePartId())) {
+                batchFallbacks.increment();
+                batchInfos[i] = allocate(line.reqItemId(), line.sparePartId(), line.requiredQty());
+            }
+        }
+        batchLines.add(lines.size());
+
+        log.info("批量 FIFO 出库完成: 明细{}行, 扣减批次{}个, 逐行重新规划备件{}种",
+                lines.size(), deductions.size(), fallbackParts.size());
+        return Arrays.asList(batchInfos);
+    }
+
+    /**
+     * 出库并发统计：冲突次数、重新规划轮数、等锁超时次数、批量出库行数及逐行回退行数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lockMode", lockMode.name());
+        stats.put("conflicts", conflicts.sum());
+        stats.put("replans", replans.sum());
+        stats.put("lockTimeouts", lockTimeouts.sum());
+        stats.put("batchLines", batchLines.sum());
+        stats.put("batchFallbacks", batchFallbacks.sum());
+        return stats;
+    }
+
+    /**
+     * 获取备件所在分段锁；未开启、等待超时或被中断时返回 null（由数据库条件更新兜底）
+     */
+    private ReentrantLock lockStripe(Long sparePartId) {
+        if (!stripedLock || sparePartId == null) {
+            return null;
+        }
+        return tryLockStripe(Math.floorMod(sparePartId.hashCode(), LOCK_STRIPES), sparePartId, lockWaitMs);
+    }
+
+    /**
+     * 按段号升序获取多个备件所在的分段锁（各段只取一次，与其他批量出库不会交叉等待），共用一个等待时限；
+     * 未获得的段由数据库锁定读与条件更新兜底
+     */
+    private List<ReentrantLock> lockStripes(Collection<Long> sparePartIds) {
+        List<ReentrantLock> held = new ArrayList<>();
+        if (!stripedLock) {
+            return held;
+        }
+        Map<Integer, Long> partByStripe = new TreeMap<>();
+        for (Long sparePartId : sparePartIds) {
+            if (sparePartId != null) {
+                partByStripe.putIfAbsent(Math.floorMod(sparePartId.hashCode(), LOCK_STRIPES), sparePartId);
+            }
+        }
+        long deadline = System.currentTimeMillis() + lockWaitMs;
+        for (Map.Entry<Integer, Long> entry : partByStripe.entrySet()) {
+            long waitMs = Math.max(0L, deadline - System.currentTimeMillis());
+            ReentrantLock stripe = tryLockStripe(entry.getKey(), entry.getValue(), waitMs);
+            if (stripe != null) {
+                held.add(stripe);
+            }
+        }
+        return held;
+    }
+
+    private ReentrantLock tryLockStripe(int index, Long sparePartId, long waitMs) {
+        ReentrantLock stripe = stripes[index];
+        try {
+            if (stripe.tryLock(waitMs, TimeUnit.MILLISECONDS)) {
+                return stripe;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lockTimeouts.increment();
+        log.warn("备件[{}]出库等锁超时（{} ms），改由数据库条件更新保证一致性", sparePartId, lockWaitMs);
+        return null;
+    }
+
+    /**
+     * 处于事务中时在事务结束（提交或回滚）后释放分段锁，保证下一个出库读到已提交的余量
+     */
+    private static boolean releaseAfterCompletion(List<ReentrantLock> held) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                held.forEach(ReentrantLock::unlock);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 将有序映射按 {@value #BATCH_CHUNK_SIZE} 条分段，保持原有顺序
+     */
+    private static <K, V> List<Map<K, V>> chunk(Map<K, V> map) {
+        List<Map<K, V>> chunks = new ArrayList<>();
+        Map<K, V> current = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            current.put(entry.getKey(), entry.getValue());
+            if (current.size() >= BATCH_CHUNK_SIZE) {
+                chunks.add(current);
+                current = new LinkedHashMap<>();
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("FIFO 出库重试被中断", e);
+        }
+    }
+
     /**
      * 查询出库明细的批次追溯信息
      */
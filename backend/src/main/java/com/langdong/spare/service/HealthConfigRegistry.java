@@ -0,0 +1,179 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.HealthConfig;
+import com.langdong.spare.mapper.HealthConfigMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备健康配置注册表（内存缓存）
+ *
+ * 启动时一次性加载 sys_device_health_config 全部配置，构建以 (deviceType, importanceLevel) 为键的
+ * 不可变查找表；评估时在内存中按与 findByDeviceTypeAndImportance 相同的优先级匹配：
+ *   精确匹配 > 仅类型匹配 > 仅重要性匹配 > 全局默认 > 硬编码默认值
+ *
+ * 配置经 HealthController 修改后调用 {@link #refresh()} 重新加载，新查找表构建完成后整体替换（volatile 引用），
+ * 读取方始终看到完整的旧表或新表。返回的配置对象为共享实例，调用方只读不改。
+ */
+@Service
+public class HealthConfigRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(HealthConfigRegistry.class);
+
+    @Autowired
+    private HealthConfigMapper healthConfigMapper;
+
+    /** 硬编码默认配置（无任何配置匹配时兜底） */
+    private static final HealthConfig DEFAULT_CONFIG = createDefaultConfig();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), null, 0L);
+
+    /** 命中已加载配置的查找次数 */
+    private final LongAdder hits = new LongAdder();
+
+    /** 无配置匹配、回退到硬编码默认值的查找次数 */
+    private final LongAdder misses = new LongAdder();
+
+    /** 重新加载次数（含启动加载） */
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * 启动时加载；数据库不可用时保留空表（全部回退硬编码默认值），不阻断应用启动
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("[健康配置] 启动加载失败，暂用硬编码默认值：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库重新加载全部配置并原子替换查找表
+     *
+     * @return 加载的配置条数
+     */
+    public int refresh() {
+        List<HealthConfig> configs = healthConfigMapper.findAll();
+        Map<Key, HealthConfig> byKey = new HashMap<>();
+        if (configs != null) {
+            for (HealthConfig c : configs) {
+                // 同键重复配置保留 findAll 排序中的第一条
+                byKey.putIfAbsent(new Key(c.getDeviceType(), c.getImportanceLevel()), c);
+            }
+        }
+        // 版本取配置内容的哈希：内容不变则重启后版本不变，供增量评估判断配置是否变化
+        long version = configs == null ? 0L : configs.hashCode();
+        snapshot = new Snapshot(Collections.unmodifiableMap(byKey), LocalDateTime.now(), version);
+        refreshes.increment();
+        log.info("[健康配置] 配置已加载，共 {} 条", byKey.size());
+        return byKey.size();
+    }
+
+    /**
+     * 按优先级匹配健康配置（纯内存，不访问数据库）
+     *
+     * @param deviceType      设备类型（null 不参与等值匹配）
+     * @param importanceLevel 重要性等级（null 不参与等值匹配）
+     * @return 健康配置，永不为 null
+     */
+    public HealthConfig lookup(String deviceType, String importanceLevel) {
+        HealthConfig config = snapshot.resolve(deviceType, importanceLevel);
+        if (config == null) {
+            misses.increment();
+            return DEFAULT_CONFIG;
+        }
+        hits.increment();
+        return config;
+    }
+
+    /**
+     * 当前配置版本（配置内容哈希，未加载时为 0）
+     */
+    public long version() {
+        return snapshot.version;
+    }
+
+    /**
+     * 命中统计与当前查找表信息
+     */
+    public Map<String, Object> stats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("configCount", current.byKey.size());
+        stats.put("loadedAt", current.loadedAt);
+        stats.put("version", current.version);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("refreshes", refreshes.sum());
+        return stats;
+    }
+
+    /**
+     * 创建硬编码默认配置（兜底）
+     */
+    static HealthConfig createDefaultConfig() {
+        HealthConfig config = new HealthConfig();
+        config.setCriticalThreshold(BigDecimal.valueOf(40));
+        config.setHighThreshold(BigDecimal.valueOf(60));
+        config.setMediumThreshold(BigDecimal.valueOf(80));
+        config.setRuntimeWeight(BigDecimal.valueOf(0.25));
+        config.setFaultWeight(BigDecimal.valueOf(0.35));
+        config.setWorkorderWeight(BigDecimal.valueOf(0.20));
+        config.setReplacementWeight(BigDecimal.valueOf(0.20));
+        config.setPredictionWindowDays(90);
+        config.setMinHistoryMonths(6);
+        return config;
+    }
+
+    /**
+     * 查找键 (deviceType, importanceLevel)，null 表示该维度为全局
+     */
+    private record Key(String deviceType, String importanceLevel) {
+    }
+
+    /**
+     * 不可变查找表
+     */
+    private static final class Snapshot {
+
+        private final Map<Key, HealthConfig> byKey;
+        private final LocalDateTime loadedAt;
+        private final long version;
+
+        Snapshot(Map<Key, HealthConfig> byKey, LocalDateTime loadedAt, long version) {
+            this.byKey = byKey;
+            this.loadedAt = loadedAt;
+            this.version = version;
+        }
+
+        /** 与 SQL 优先级一致：null 参数不参与等值匹配；无匹配返回 null */
+        HealthConfig resolve(String deviceType, String importanceLevel) {
+            HealthConfig c;
+            if (deviceType != null && importanceLevel != null
+                    && (c = byKey.get(new Key(deviceType, importanceLevel))) != null) {
+                return c;
+            }
+            if (deviceType != null && (c = byKey.get(new Key(deviceType, null))) != null) {
+                return c;
+            }
+            if (importanceLevel != null && (c = byKey.get(new Key(null, importanceLevel))) != null) {
+                return c;
+            }
+            return byKey.get(new Key(null, null));
+        }
+    }
+}
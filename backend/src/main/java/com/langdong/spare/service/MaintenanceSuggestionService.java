@@ -13,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /**
  * 维护建议管理服务
@@ -43,8 +44,20 @@ public class MaintenanceSuggestionService {
     @Autowired
     private EquipmentSparePartMapper equipmentSparePartMapper;
 
+    @Autowired
+    private SparePartMapper sparePartMapper;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /** 备件单价缺失时的估算单价（元） */
+    private static final double DEFAULT_PART_PRICE = 500.0;
+
+    /** 按ID分段查询时每段条数（控制 IN 列表长度） */
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    /** 批量生成每批写入条数（每批一条多行 INSERT，独立提交） */
+    private static final int INSERT_CHUNK_SIZE = 500;
+
     // ================================================================
     // 1. 维护建议生成
     // ================================================================
@@ -52,54 +65,166 @@ public class MaintenanceSuggestionService {
     /**
      * 为指定设备生成维护建议
      *
+     * 批量模式（替代逐设备 4 次查询 + 单行插入）：
+     *   1. 两条窗口查询取回每台设备的最新健康记录与最新预测记录
+     *   2. 在内存中用 shouldGenerateSuggestion 过滤，多数设备在此止步
+     *   3. 仅对需要建议的设备批量加载配套备件（BOM）与备件单价
+     *   4. 每 {@value #INSERT_CHUNK_SIZE} 条一次多行 insertBatch 写入，按批独立提交
+     *
      * @param deviceIds 设备ID列表（null=所有设备）
      * @return 生成的建议数量
      */
-    @Transactional
     public int generateSuggestions(List<Long> deviceIds) {
         log.info("[维护建议] 开始生成建议，设备数量={}", deviceIds != null ? deviceIds.size() : "全部");
+        long start = System.currentTimeMillis();
 
         List<Equipment> devices;
+        Map<Long, DeviceHealth> healthByDevice = new HashMap<>();
+        Map<Long, FaultPrediction> predictionByDevice = new HashMap<>();
         if (deviceIds == null || deviceIds.isEmpty()) {
-            devices = equipmentMapper.findAll();
+            devices = equipmentMapper.findAllForHealth();
+            indexHealth(deviceHealthMapper.findLatestPerDevice(null), healthByDevice);
+            indexPredictions(faultPredictionMapper.findLatestPerDevice(null), predictionByDevice);
         } else {
-            devices = new ArrayList<>();
-            for (Long deviceId : deviceIds) {
-                Equipment device = equipmentMapper.findById(deviceId);
-                if (device != null) {
-                    devices.add(device);
-                }
+            List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+            devices = new ArrayList<>(distinctIds.size());
+            for (List<Long> idChunk : chunks(distinctIds)) {
+                devices.addAll(equipmentMapper.findByIds(idChunk));
+                indexHealth(deviceHealthMapper.findLatestPerDevice(idChunk), healthByDevice);
+                indexPredictions(faultPredictionMapper.findLatestPerDevice(idChunk), predictionByDevice);
             }
         }
 
-        if (devices.isEmpty()) {
+        if (devices == null || devices.isEmpty()) {
             log.warn("[维护建议] 无设备需要生成建议");
             return 0;
         }
+        return generateFor(devices, healthByDevice, predictionByDevice, this::flushChunk, start).generated();
+    }
 
-        int generatedCount = 0;
+    /**
+     * 为一块已知设备生成维护建议（PHM 每日流水线按块调用，替代逐设备 generateSingleDeviceSuggestion）
+     *
+     * 与 {@link #generateSuggestions} 共用流程：按块一次取回最新健康/预测快照，内存过滤后
+     * 仅为需要建议的设备加载 BOM 与单价；不再查询设备档案（调用方已持有）。
+     * 写入失败直接抛出，由调用方将整块设备记为失败。
+     *
+     * @param devices 设备列表
+     * @return 生成的建议数及构建失败的设备
+     */
+    public SuggestionBatch generateSuggestionsForDevices(List<Equipment> devices) {
+        if (devices == null || devices.isEmpty()) {
+            return new SuggestionBatch(0, Collections.emptySet());
+        }
+        long start = System.currentTimeMillis();
+        List<Long> ids = new ArrayList<>(devices.size());
+        for (Equipment device : devices) {
+            ids.add(device.getId());
+        }
+        Map<Long, DeviceHealth> healthByDevice = new HashMap<>();
+        Map<Long, FaultPrediction> predictionByDevice = new HashMap<>();
+        for (List<Long> idChunk : chunks(ids)) {
+            indexHealth(deviceHealthMapper.findLatestPerDevice(idChunk), healthByDevice);
+            indexPredictions(faultPredictionMapper.findLatestPerDevice(idChunk), predictionByDevice);
+        }
+        return generateFor(devices, healthByDevice, predictionByDevice, chunk -> {
+            suggestionMapper.insertBatch(chunk);
+            return chunk.size();
+        }, start);
+    }
+
+    /**
+     * 批量生成核心：内存过滤、按需加载 BOM 与单价、构建建议并每 {@value #INSERT_CHUNK_SIZE} 条交给 writer 写入
+     */
+    private SuggestionBatch generateFor(List<Equipment> devices,
+                                        Map<Long, DeviceHealth> healthByDevice,
+                                        Map<Long, FaultPrediction> predictionByDevice,
+                                        ToIntFunction<List<MaintenanceSuggestion>> writer,
+                                        long start) {
+        // 内存过滤：缺少评估/预测记录或健康状况良好的设备不再触发后续查询
+        int noHealthCount = 0;
+        int noPredictionCount = 0;
+        int healthyCount = 0;
+        List<Equipment> qualifying = new ArrayList<>();
         for (Equipment device : devices) {
+            DeviceHealth latestHealth = healthByDevice.get(device.getId());
+            if (latestHealth == null) {
+                noHealthCount++;
+                continue;
+            }
+            FaultPrediction latestPrediction = predictionByDevice.get(device.getId());
+            if (latestPrediction == null) {
+                noPredictionCount++;
+                continue;
+            }
+            if (!MaintenanceSuggestionGenerator.shouldGenerateSuggestion(
+                    latestHealth.getHealthScore().doubleValue(),
+                    latestPrediction.getFailureProbability().doubleValue())) {
+                healthyCount++;
+                continue;
+            }
+            qualifying.add(device);
+        }
+
+        // 仅为需要建议的设备批量加载 BOM 与备件单价
+        Map<Long, List<EquipmentSparePart>> bomByDevice = new HashMap<>();
+        List<Long> qualifyingIds = new ArrayList<>(qualifying.size());
+        for (Equipment device : qualifying) {
+            qualifyingIds.add(device.getId());
+        }
+        for (List<Long> idChunk : chunks(qualifyingIds)) {
+            for (EquipmentSparePart part : equipmentSparePartMapper.findByEquipmentIds(idChunk)) {
+                bomByDevice.computeIfAbsent(part.getEquipmentId(), k -> new ArrayList<>()).add(part);
+            }
+        }
+        Map<Long, SparePart> partsById = loadSpareParts(bomByDevice.values());
+        long loaded = System.currentTimeMillis();
+
+        LocalDate today = LocalDate.now();
+        int generatedCount = 0;
+        Set<Long> failedDeviceIds = new HashSet<>();
+        List<MaintenanceSuggestion> chunk = new ArrayList<>(Math.min(INSERT_CHUNK_SIZE, Math.max(1, qualifying.size())));
+        for (Equipment device : qualifying) {
             try {
-                Long suggestionId = generateSingleDeviceSuggestion(device);
-                if (suggestionId != null) {
-                    generatedCount++;
-                }
+                chunk.add(buildSuggestion(device, healthByDevice.get(device.getId()),
+                        predictionByDevice.get(device.getId()), bomByDevice.get(device.getId()), partsById, today));
             } catch (Exception e) {
+                failedDeviceIds.add(device.getId());
                 log.error("[维护建议] 设备 {} 建议生成失败", device.getCode(), e);
+                continue;
+            }
+            if (chunk.size() >= INSERT_CHUNK_SIZE) {
+                generatedCount += writer.applyAsInt(chunk);
+                chunk = new ArrayList<>(INSERT_CHUNK_SIZE);
             }
         }
+        if (!chunk.isEmpty()) {
+            generatedCount += writer.applyAsInt(chunk);
+        }
 
-        log.info("[维护建议] 生成完成，共生成 {} 条建议", generatedCount);
-        return generatedCount;
+        log.info("[维护建议] 生成完成，共生成 {} 条建议（设备 {} 台：无评估 {}，无预测 {}，状况良好 {}，需建议 {}），"
+                        + "加载耗时 {} ms，总耗时 {} ms",
+                generatedCount, devices.size(), noHealthCount, noPredictionCount, healthyCount, qualifying.size(),
+                loaded - start, System.currentTimeMillis() - start);
+        return new SuggestionBatch(generatedCount, failedDeviceIds);
+    }
+
+    /**
+     * 按块生成结果
+     *
+     * @param generated       写入的建议数
+     * @param failedDeviceIds 建议构建失败的设备（调用方不应推进其水位）
+     */
+    public record SuggestionBatch(int generated, Set<Long> failedDeviceIds) {
     }
 
     /**
      * 为单个设备生成维护建议
      *
      * @param device 设备对象
-     * @return 建议记录ID
+     * @return 建议记录ID，无需建议或缺少评估/预测记录时返回 null
      */
-    private Long generateSingleDeviceSuggestion(Equipment device) {
+    public Long generateSingleDeviceSuggestion(Equipment device) {
         log.info("[维护建议] 开始生成设备 {} 的建议", device.getCode());
 
         // 1. 查询最新的健康评估记录
@@ -116,39 +241,71 @@ public class MaintenanceSuggestionService {
             return null;
         }
 
-        // 3. 提取关键指标
+        // 3. 判断是否需要生成建议
+        if (!MaintenanceSuggestionGenerator.shouldGenerateSuggestion(
+                latestHealth.getHealthScore().doubleValue(),
+                latestPrediction.getFailureProbability().doubleValue())) {
+            log.info("[维护建议] 设备 {} 健康状况良好，无需建议", device.getCode());
+            return null;
+        }
+
+        // 4. 查询配套备件及单价
+        List<EquipmentSparePart> configuredParts = equipmentSparePartMapper.findByEquipmentId(device.getId());
+        Map<Long, SparePart> partsById = loadSpareParts(Collections.singletonList(configuredParts));
+
+        // 5. 构建并保存建议
+        MaintenanceSuggestion suggestion = buildSuggestion(device, latestHealth, latestPrediction,
+                configuredParts, partsById, LocalDate.now());
+        suggestionMapper.insert(suggestion);
+
+        log.info("[维护建议] 设备 {} 建议生成完成，类型={}, 优先级={}, 记录ID={}",
+                device.getCode(), suggestion.getMaintenanceType(), suggestion.getPriorityLevel(), suggestion.getId());
+
+        return suggestion.getId();
+    }
+
+    /**
+     * 由最新健康评估与故障预测构建维护建议（单设备与批量模式共用，调用方已确认需要建议）
+     *
+     * @param configuredParts 设备配套备件（可为 null）
+     * @param partsById       备件ID → 备件（含名称、单价）
+     * @return 未持久化的建议记录
+     */
+    private MaintenanceSuggestion buildSuggestion(Equipment device,
+                                                  DeviceHealth latestHealth,
+                                                  FaultPrediction latestPrediction,
+                                                  List<EquipmentSparePart> configuredParts,
+                                                  Map<Long, SparePart> partsById,
+                                                  LocalDate today) {
+        // 1. 提取关键指标
         double healthScore = latestHealth.getHealthScore().doubleValue();
         String riskLevel = latestHealth.getRiskLevel();
         double failureProbability = latestPrediction.getFailureProbability().doubleValue();
         int predictedFaults = latestPrediction.getPredictedFaultCount();
 
-        // 4. 判断是否需要生成建议
-        if (!MaintenanceSuggestionGenerator.shouldGenerateSuggestion(healthScore, failureProbability)) {
-            log.info("[维护建议] 设备 {} 健康状况良好，无需建议", device.getCode());
-            return null;
-        }
-
-        // 5. 确定维护类型和优先级
+        // 2. 确定维护类型和优先级
         String maintenanceType = MaintenanceSuggestionGenerator.determineMaintenanceType(riskLevel, failureProbability);
         String priorityLevel = MaintenanceSuggestionGenerator.determinePriorityLevel(riskLevel, failureProbability);
 
-        // 6. 计算时间窗口
-        Map<String, LocalDate> window = MaintenanceSuggestionGenerator.calcMaintenanceWindow(priorityLevel, LocalDate.now());
+        // 3. 计算时间窗口
+        Map<String, LocalDate> window = MaintenanceSuggestionGenerator.calcMaintenanceWindow(priorityLevel, today);
 
-        // 7. 生成建议原因
+        // 4. 生成建议原因
         String reason = MaintenanceSuggestionGenerator.generateSuggestionReason(
                 riskLevel, healthScore, failureProbability, predictedFaults
         );
 
-        // 8. 查询关联备件需求
+        // 5. 关联备件需求
         List<Map<String, Object>> relatedSpareParts = buildRelatedSpareParts(
                 device.getId(),
+                configuredParts,
+                partsById,
                 latestHealth.getRuntimeScore().doubleValue(),
                 latestHealth.getFaultScore().doubleValue(),
                 predictedFaults
         );
 
-        // 9. 估算维护成本
+        // 6. 估算维护成本
         double sparePartsCost = calcSparePartsCost(relatedSpareParts);
         double estimatedDowntimeHours = estimateDowntimeHours(maintenanceType);
         double totalCost = MaintenanceSuggestionGenerator.estimateMaintenanceCost(
@@ -158,11 +315,11 @@ public class MaintenanceSuggestionService {
                 estimatedDowntimeHours
         );
 
-        // 10. 构建建议记录
+        // 7. 构建建议记录
         MaintenanceSuggestion suggestion = new MaintenanceSuggestion();
         suggestion.setDeviceId(device.getId());
         suggestion.setHealthRecordId(latestHealth.getId());
-        suggestion.setSuggestionDate(LocalDate.now());
+        suggestion.setSuggestionDate(today);
         suggestion.setMaintenanceType(maintenanceType);
         suggestion.setPriorityLevel(priorityLevel);
         suggestion.setSuggestedStartDate(window.get("startDate"));
@@ -178,33 +335,28 @@ public class MaintenanceSuggestionService {
             log.error("[维护建议] 备件需求JSON序列化失败", e);
             suggestion.setRelatedSpareParts("[]");
         }
-
-        // 11. 保存建议
-        suggestionMapper.insert(suggestion);
-
-        log.info("[维护建议] 设备 {} 建议生成完成，类型={}, 优先级={}, 记录ID={}",
-                device.getCode(), maintenanceType, priorityLevel, suggestion.getId());
-
-        return suggestion.getId();
+        return suggestion;
     }
 
     /**
      * 构建关联备件需求列表
      *
      * @param deviceId        设备ID
+     * @param configuredParts 设备配套备件
+     * @param partsById       备件ID → 备件（含名称、单价）
      * @param runtimeScore    运行时长评分
      * @param faultScore      故障频次评分
      * @param predictedFaults 预期故障次数
      * @return 备件需求列表（包含备件ID、名称、数量、单价）
      */
     private List<Map<String, Object>> buildRelatedSpareParts(Long deviceId,
+                                                               List<EquipmentSparePart> configuredParts,
+                                                               Map<Long, SparePart> partsById,
                                                                double runtimeScore,
                                                                double faultScore,
                                                                int predictedFaults) {
         List<Map<String, Object>> spareParts = new ArrayList<>();
 
-        // 查询设备配套备件
-        List<EquipmentSparePart> configuredParts = equipmentSparePartMapper.findByEquipmentId(deviceId);
         if (configuredParts == null || configuredParts.isEmpty()) {
             log.warn("[维护建议] 设备 ID={} 无配套备件配置", deviceId);
             return spareParts;
@@ -221,10 +373,11 @@ public class MaintenanceSuggestionService {
             Map<String, Object> sparePartInfo = new HashMap<>();
             sparePartInfo.put("sparePartId", part.getSparePartId());
             sparePartInfo.put("quantity", part.getQuantity());
-            // TODO: 查询备件详情获取名称和单价
-            // SparePart sparePartDetail = sparePartMapper.findById(part.getSparePartId());
-            // sparePartInfo.put("name", sparePartDetail.getName());
-            // sparePartInfo.put("unitPrice", sparePartDetail.getUnitPrice());
+            SparePart sparePartDetail = partsById.get(part.getSparePartId());
+            if (sparePartDetail != null) {
+                sparePartInfo.put("name", sparePartDetail.getName());
+                sparePartInfo.put("unitPrice", sparePartDetail.getPrice());
+            }
             spareParts.add(sparePartInfo);
         }
 
@@ -232,15 +385,88 @@ public class MaintenanceSuggestionService {
     }
 
     /**
-     * 计算备件总成本
+     * 计算备件总成本：Σ 单价 × 数量
+     *
+     * 单价缺失时按 {@value #DEFAULT_PART_PRICE} 元估算，数量缺失时按 1 件计
      *
      * @param relatedSpareParts 关联备件列表
      * @return 备件总成本
      */
     private double calcSparePartsCost(List<Map<String, Object>> relatedSpareParts) {
-        // TODO: 实际计算应从备件详情中获取单价
-        // 临时使用固定值
-        return relatedSpareParts.size() * 500.0;
+        double total = 0.0;
+        for (Map<String, Object> part : relatedSpareParts) {
+            Object unitPrice = part.get("unitPrice");
+            Object quantity = part.get("quantity");
+            double price = unitPrice instanceof Number ? ((Number) unitPrice).doubleValue() : DEFAULT_PART_PRICE;
+            int qty = quantity instanceof Number ? ((Number) quantity).intValue() : 1;
+            total += price * qty;
+        }
+        return total;
+    }
+
+    /**
+     * 批量加载配套备件涉及的备件名称与单价
+     */
+    private Map<Long, SparePart> loadSpareParts(Collection<List<EquipmentSparePart>> boms) {
+        Set<Long> partIds = new LinkedHashSet<>();
+        for (List<EquipmentSparePart> bom : boms) {
+            if (bom == null) {
+                continue;
+            }
+            for (EquipmentSparePart part : bom) {
+                if (part.getSparePartId() != null) {
+                    partIds.add(part.getSparePartId());
+                }
+            }
+        }
+        Map<Long, SparePart> partsById = new HashMap<>();
+        for (List<Long> idChunk : chunks(new ArrayList<>(partIds))) {
+            for (SparePart part : sparePartMapper.findPricesByIds(idChunk)) {
+                partsById.put(part.getId(), part);
+            }
+        }
+        return partsById;
+    }
+
+    private static void indexHealth(List<DeviceHealth> records, Map<Long, DeviceHealth> target) {
+        if (records != null) {
+            for (DeviceHealth record : records) {
+                target.put(record.getDeviceId(), record);
+            }
+        }
+    }
+
+    private static void indexPredictions(List<FaultPrediction> records, Map<Long, FaultPrediction> target) {
+        if (records != null) {
+            for (FaultPrediction record : records) {
+                target.put(record.getDeviceId(), record);
+            }
+        }
+    }
+
+    /** 按 {@value #QUERY_CHUNK_SIZE} 个一段切分ID列表（控制 IN 列表长度） */
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> result = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += QUERY_CHUNK_SIZE) {
+            result.add(ids.subList(from, Math.min(ids.size(), from + QUERY_CHUNK_SIZE)));
+        }
+        return result;
+    }
+
+    /**
+     * 写入一批建议，失败时记录日志并返回0（不影响其他批次）
+     */
+    private int flushChunk(List<MaintenanceSuggestion> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        try {
+            suggestionMapper.insertBatch(chunk);
+            return chunk.size();
+        } catch (Exception e) {
+            log.error("[维护建议] 批量写入失败，本批 {} 条建议未保存", chunk.size(), e);
+            return 0;
+        }
     }
 
     /**
@@ -0,0 +1,96 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.mapper.PartMonthlyConsumptionMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * 备件月度消耗汇总维护服务（part_monthly_consumption）
+ *
+ * 汇总口径与原月度消耗查询一致：领用单状态 OUTBOUND/INSTALLED、out_qty &gt; 0、按审批时间所在月归集。
+ *   - 增量：领用出库时在同一事务内按出库数量变化累加，随出库一起提交或回滚
+ *   - 对账：每日按源表重算近 N 个月（覆盖跨月补录、人工修数等增量路径之外的变化）
+ *   - 回填：按源表重算全部月份（初次上线或汇总表损坏时使用）
+ */
+@Service
+public class PartConsumptionRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(PartConsumptionRollupService.class);
+
+    @Autowired
+    private PartMonthlyConsumptionMapper partMonthlyConsumptionMapper;
+
+    @Autowired
+    private ConsumptionSnapshotProvider consumptionSnapshotProvider;
+
+    /** 每日对账重算的月份数（含当月） */
+    @Value("${consumption.rollup.reconcile-months:3}")
+    private int reconcileMonths = 3;
+
+    /**
+     * 记录一次出库数量变化（须在出库事务内调用）
+     *
+     * @param sparePartId 备件ID
+     * @param approveTime 领用单审批时间（决定归集月份；为空时不计入，与源表口径一致）
+     * @param delta       出库数量变化（本次出库数量 - 原出库数量）
+     */
+    public void recordOutbound(Long sparePartId, LocalDateTime approveTime, int delta) {
+        if (sparePartId == null || approveTime == null || delta == 0) {
+            return;
+        }
+        partMonthlyConsumptionMapper.addQuantity(sparePartId, YearMonth.from(approveTime).toString(), delta);
+    }
+
+    /**
+     * 每日凌晨对账（早于月初 1 点的预测/分类批处理）
+     * 自身声明事务：经代理调度执行，失败时整体回滚，保留原汇总行
+     */
+    @Scheduled(cron = "${consumption.rollup.reconcile-cron:0 30 0 * * ?}")
+    @Transactional(rollbackFor = Exception.class)
+    public void scheduledReconcile() {
+        reconcile(reconcileMonths);
+    }
+
+    /**
+     * 按源表重算近 months 个月（含当月）的汇总
+     *
+     * @param months 月份数
+     * @return 重算后的汇总行数
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int reconcile(int months) {
+        String fromMonth = YearMonth.now().minusMonths(Math.max(1, months) - 1L).toString();
+        return rebuild(fromMonth);
+    }
+
+    /**
+     * 按源表重算全部月份
+     *
+     * @return 重算后的汇总行数
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int backfill() {
+        return rebuild(null);
+    }
+
+    private int rebuild(String fromMonth) {
+        long start = System.currentTimeMillis();
+        int deleted = partMonthlyConsumptionMapper.deleteFromMonth(fromMonth);
+        int rows = partMonthlyConsumptionMapper.rebuildFromMonth(fromMonth);
+        // 删除重写会使行数与行版本回落，递增重算代次保证其他节点的消耗水位仍然变化
+        partMonthlyConsumptionMapper.bumpRebuildVersion();
+        consumptionSnapshotProvider.invalidate();
+        log.info("[消耗汇总] 重算完成：起始月份 {}，清理 {} 行，写入 {} 行，耗时 {} ms",
+                fromMonth == null ? "全部" : fromMonth, deleted, rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+}
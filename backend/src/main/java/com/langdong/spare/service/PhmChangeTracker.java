@@ -0,0 +1,154 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.PhmWatermark;
+import com.langdong.spare.mapper.PhmWatermarkMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * PHM增量评估变更跟踪
+ *
+ * 每台设备保存一条输入水位（ai_phm_watermark），记录上次成功评估时消费到的：
+ *   - 回看窗口内最新特征月份与特征摘要（识别新增月份及当月特征原地更新）
+ *   - 最大工单ID、最大领用单ID
+ *   - 健康配置版本、所在月份（跨月后回看窗口平移，需重新评估）
+ *
+ * 每日流程开始时一次查询聚合当前输入位置，与已保存水位逐项比对，仅输入变化的设备重新评估；
+ * 流程结束后仅为评估成功的设备推进水位，失败设备下次自动重试。
+ */
+@Service
+public class PhmChangeTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(PhmChangeTracker.class);
+
+    @Autowired
+    private PhmWatermarkMapper phmWatermarkMapper;
+
+    @Autowired
+    private HealthConfigRegistry healthConfigRegistry;
+
+    /** 特征回看月数（与故障预测回看窗口一致，覆盖健康评估的3个月） */
+    private static final int FEATURE_LOOKBACK_MONTHS = 12;
+
+    /** 水位每批写入条数 */
+    private static final int UPSERT_CHUNK_SIZE = 500;
+
+    /**
+     * 计算本次需要重新评估的设备
+     *
+     * @param forceFull 是否强制全量（所有设备视为已变化，仍会计算当前水位用于评估后保存）
+     * @return 变更集
+     */
+    public ChangeSet detectChanges(boolean forceFull) {
+        long start = System.currentTimeMillis();
+        long configVersion = healthConfigRegistry.version();
+        String windowMonth = YearMonth.now().toString();
+
+        Map<Long, PhmWatermark> current = new HashMap<>();
+        for (PhmWatermark w : phmWatermarkMapper.findCurrentInputs(FEATURE_LOOKBACK_MONTHS)) {
+            w.setConfigVersion(configVersion);
+            w.setWindowMonth(windowMonth);
+            current.put(w.getDeviceId(), w);
+        }
+
+        Set<Long> changed;
+        if (forceFull) {
+            changed = current.keySet();
+        } else {
+            Map<Long, PhmWatermark> saved = new HashMap<>();
+            for (PhmWatermark w : phmWatermarkMapper.findAll()) {
+                saved.put(w.getDeviceId(), w);
+            }
+            changed = new HashSet<>();
+            for (PhmWatermark w : current.values()) {
+                if (!sameInputs(w, saved.get(w.getDeviceId()))) {
+                    changed.add(w.getDeviceId());
+                }
+            }
+        }
+
+        log.info("[PHM编排] 变更检测完成：{}，设备 {} 台，需评估 {} 台，耗时 {} ms",
+                forceFull ? "强制全量" : "增量", current.size(), changed.size(), System.currentTimeMillis() - start);
+        return new ChangeSet(current, changed, forceFull);
+    }
+
+    /**
+     * 推进水位（仅传入本次评估成功的设备）
+     *
+     * @param watermarks 水位列表
+     * @return 写入的设备数
+     */
+    public int commit(List<PhmWatermark> watermarks) {
+        int saved = 0;
+        for (int from = 0; from < watermarks.size(); from += UPSERT_CHUNK_SIZE) {
+            List<PhmWatermark> chunk = watermarks.subList(from, Math.min(watermarks.size(), from + UPSERT_CHUNK_SIZE));
+            try {
+                phmWatermarkMapper.upsertBatch(chunk);
+                saved += chunk.size();
+            } catch (Exception e) {
+                // 水位未推进只会导致下次重复评估，不影响结果正确性
+                log.error("[PHM编排] 水位写入失败，本批 {} 台设备下次将重新评估", chunk.size(), e);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * 当前输入与已保存水位是否一致（无已保存水位视为变化）
+     */
+    static boolean sameInputs(PhmWatermark current, PhmWatermark saved) {
+        return saved != null
+                && Objects.equals(current.getFeatureMonth(), saved.getFeatureMonth())
+                && Objects.equals(current.getFeatureDigest(), saved.getFeatureDigest())
+                && Objects.equals(current.getLastWorkOrderId(), saved.getLastWorkOrderId())
+                && Objects.equals(current.getLastRequisitionId(), saved.getLastRequisitionId())
+                && Objects.equals(current.getConfigVersion(), saved.getConfigVersion())
+                && Objects.equals(current.getWindowMonth(), saved.getWindowMonth());
+    }
+
+    /**
+     * 变更集：当前水位与需重新评估的设备
+     */
+    public static final class ChangeSet {
+
+        private final Map<Long, PhmWatermark> current;
+        private final Set<Long> changed;
+        private final boolean fullRun;
+
+        ChangeSet(Map<Long, PhmWatermark> current, Set<Long> changed, boolean fullRun) {
+            this.current = current;
+            this.changed = changed;
+            this.fullRun = fullRun;
+        }
+
+        /** 全量模式：所有设备均需评估（含变更检测失败时的兜底） */
+        static ChangeSet full() {
+            return new ChangeSet(Collections.emptyMap(), Collections.emptySet(), true);
+        }
+
+        /** 设备是否需要重新评估（检测后新增、尚无当前水位的设备同样视为变化） */
+        public boolean isChanged(Long deviceId) {
+            return fullRun || changed.contains(deviceId) || !current.containsKey(deviceId);
+        }
+
+        /** 设备当前水位（评估成功后提交）；无记录时返回 null */
+        public PhmWatermark watermarkOf(Long deviceId) {
+            return current.get(deviceId);
+        }
+
+        public boolean isFullRun() {
+            return fullRun;
+        }
+    }
+}
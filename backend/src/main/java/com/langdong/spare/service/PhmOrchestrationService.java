@@ -1,16 +1,34 @@
 package com.langdong.spare.service;
 
 import com.langdong.spare.entity.DeviceHealth;
+import com.langdong.spare.entity.Equipment;
 import com.langdong.spare.entity.FaultPrediction;
+import com.langdong.spare.entity.PhmWatermark;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -27,6 +45,15 @@ import java.util.stream.Collectors;
  *   Step 2: 对高风险设备进行故障预测（FaultPredictionService）
  *   Step 3: 根据评估和预测结果生成维护建议（MaintenanceSuggestionService）
  *   Step 4: （可选）高优先级建议自动创建领用单和工单
+ *
+ * 每日流程以流水线方式执行：设备按 phm.pipeline.chunk-size 分块，每块作为独立任务依次经过
+ * 健康评估 → （HIGH/CRITICAL 时）故障预测 → 维护建议，任务提交到有界线程池，
+ * 队列满时由提交线程自行执行（背压），首批建议无需等待全量健康评估结束即可落库。
+ * 手动触发的单步接口仍按整批执行。
+ *
+ * 增量模式（phm.incremental.enabled，默认开启）：流程开始时由 PhmChangeTracker 比对每台设备的输入水位，
+ * 仅特征、工单、领用、健康配置或所在月份发生变化的设备进入流水线，其余设备沿用上次的健康记录与预测记录；
+ * 每月 phm.incremental.full-run-day 日及手动指定时执行强制全量，用于月度对账。
  */
 @Service
 public class PhmOrchestrationService {
@@ -42,6 +69,9 @@ public class PhmOrchestrationService {
     @Autowired
     private MaintenanceSuggestionService suggestionService;
 
+    @Autowired
+    private PhmChangeTracker changeTracker;
+
     /** 防重复执行标志 */
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
 
@@ -51,6 +81,33 @@ public class PhmOrchestrationService {
     /** 高风险设备故障概率阈值（用于筛选需要预测的设备） */
     private static final double HIGH_RISK_PROBABILITY_THRESHOLD = 0.5;
 
+    /** 流水线工作线程数（受数据库连接池大小约束，不宜过大） */
+    @Value("${phm.pipeline.workers:4}")
+    private int pipelineWorkers = 4;
+
+    /** 流水线每个任务处理的设备数（各阶段按块批量加载与写入） */
+    @Value("${phm.pipeline.chunk-size:200}")
+    private int pipelineChunkSize = 200;
+
+    /** 流水线任务队列容量（以设备块计），队满时提交线程自行执行任务形成背压 */
+    @Value("${phm.pipeline.queue-capacity:256}")
+    private int pipelineQueueCapacity = 256;
+
+    /** 等待流水线任务全部完成的最长时间（分钟） */
+    @Value("${phm.pipeline.await-minutes:120}")
+    private long pipelineAwaitMinutes = 120;
+
+    /** 是否启用增量评估（关闭时每次均全量执行） */
+    @Value("${phm.incremental.enabled:true}")
+    private boolean incrementalEnabled = true;
+
+    /** 每月强制全量对账的日期（1~28，0 表示不自动全量） */
+    @Value("${phm.incremental.full-run-day:1}")
+    private int fullRunDayOfMonth = 1;
+
+    /** 最近一次流程的统计（供状态查询） */
+    private volatile Map<String, Object> lastRunStats;
+
     // ================================================================
     // 1. 定时任务入口
     // ================================================================
@@ -66,17 +123,28 @@ public class PhmOrchestrationService {
      */
     @Scheduled(cron = "0 0 3 * * ?")
     public void scheduledPhmFlow() {
-        log.info("[PHM编排] 定时任务触发PHM每日流程（每天凌晨3点）");
-        runPhmFlow();
+        boolean forceFull = LocalDate.now().getDayOfMonth() == fullRunDayOfMonth;
+        log.info("[PHM编排] 定时任务触发PHM每日流程（每天凌晨3点）{}", forceFull ? "，本日执行月度全量对账" : "");
+        runPhmFlow(forceFull);
+    }
+
+    /**
+     * 异步触发PHM流程（增量模式下仅评估输入变化的设备）
+     */
+    @Async
+    public void runPhmFlow() {
+        runPhmFlow(false);
     }
 
     /**
      * 异步触发完整PHM流程
      * 由定时任务调用（自动触发）或 Controller 调用（手动触发）
      * 使用 @Async 确保不阻塞调用方线程
+     *
+     * @param forceFull 是否强制全量评估（忽略水位）
      */
     @Async
-    public void runPhmFlow() {
+    public void runPhmFlow(boolean forceFull) {
         // 防止重复执行
         if (!isRunning.compareAndSet(false, true)) {
             log.warn("[PHM编排] PHM流程正在运行中，跳过本次触发");
@@ -88,30 +156,24 @@ public class PhmOrchestrationService {
             log.info("[PHM编排] 开始执行PHM每日流程");
             log.info("[PHM编排] ============================================");
 
-            long startTime = System.currentTimeMillis();
-
-            // Step 1: 批量评估所有设备的健康状况
-            int healthEvaluatedCount = executeHealthEvaluation();
-
-            // Step 2: 对高风险设备进行故障预测
-            int predictionCount = executeFaultPrediction();
-
-            // Step 3: 生成维护建议
-            int suggestionCount = executeMaintenanceSuggestion();
+            // Step 1~3: 分块流水线（健康评估 → 故障预测 → 维护建议）
+            PipelineSummary summary = executePipeline(forceFull || !incrementalEnabled);
+            lastRunStats = summary.toMap();
 
             // Step 4: （可选）高优先级建议自动触发
             // TODO: Phase 2 - 自动创建领用单和工单
             // executeAutoActions();
 
-            long endTime = System.currentTimeMillis();
-            long duration = (endTime - startTime) / 1000;
-
             log.info("[PHM编排] ============================================");
             log.info("[PHM编排] PHM每日流程执行完成");
-            log.info("[PHM编排] 健康评估: {} 台设备", healthEvaluatedCount);
-            log.info("[PHM编排] 故障预测: {} 台设备", predictionCount);
-            log.info("[PHM编排] 维护建议: {} 条", suggestionCount);
-            log.info("[PHM编排] 总耗时: {} 秒", duration);
+            log.info("[PHM编排] 评估模式: {}，评估 {} 台，沿用 {} 台（沿用健康记录 {} 条，预测记录 {} 条）",
+                    summary.fullRun ? "全量" : "增量", summary.evaluatedDevices, summary.skippedDevices,
+                    summary.carriedHealth, summary.carriedPredictions);
+            log.info("[PHM编排] 健康评估: {} 台设备", summary.health.succeeded());
+            log.info("[PHM编排] 故障预测: {} 台设备", summary.prediction.succeeded());
+            log.info("[PHM编排] 维护建议: {} 条", summary.suggestion.succeeded());
+            summary.logStages();
+            log.info("[PHM编排] 总耗时: {} 秒", summary.elapsedMillis / 1000);
             log.info("[PHM编排] ============================================");
 
         } catch (Exception e) {
@@ -127,7 +189,188 @@ public class PhmOrchestrationService {
     // ================================================================
 
     /**
-     * Step 1: 批量评估所有设备的健康状况
+     * Step 1~3 流水线：设备按块作为独立任务执行 健康评估 → 故障预测 → 维护建议
+     *
+     * 策略：
+     *   - 健康评估输入（设备、配置、最近3个月特征）先一次性批量加载，块内逐设备在内存中评分后一次多行写库
+     *   - 非全量时仅输入水位变化的设备进入流水线，其余设备沿用最新健康记录与预测记录
+     *   - 三个阶段均未失败的设备在流程结束后推进水位
+     *   - 仅本次评估为 HIGH 或 CRITICAL 的设备进入故障预测（预测窗口90天），每块一次批量特征加载与多行写入
+     *   - 所有设备均进入维护建议阶段：每块一次取回最新健康/预测快照，内存过滤后仅为需建议设备加载 BOM
+     *   - 有界队列 + CallerRunsPolicy：队满时提交线程自行执行任务，控制在途任务数
+     *   - 单阶段失败只记录在该阶段统计中，不影响同块后续阶段及其他块；批量写入失败时整块该阶段记为失败
+     *
+     * @param forceFull 是否强制全量评估
+     * @return 各阶段统计
+     */
+    PipelineSummary executePipeline(boolean forceFull) {
+        log.info("[PHM编排] 流水线启动：workers={}, queueCapacity={}, 模式={}",
+                pipelineWorkers, pipelineQueueCapacity, forceFull ? "全量" : "增量");
+        long start = System.nanoTime();
+        PipelineSummary summary = new PipelineSummary(start);
+
+        DeviceHealthService.BulkHealthInputs inputs = deviceHealthService.loadBulkInputs();
+        List<Equipment> devices = inputs.getDevices();
+        if (devices.isEmpty()) {
+            log.warn("[PHM编排] 设备档案为空，跳过流水线");
+            summary.finish();
+            return summary;
+        }
+
+        // 变更检测：失败时退化为全量执行，且不推进水位
+        PhmChangeTracker.ChangeSet changes;
+        try {
+            changes = changeTracker.detectChanges(forceFull);
+        } catch (Exception e) {
+            log.warn("[PHM编排] 变更检测失败，本次按全量执行：{}", e.getMessage());
+            changes = PhmChangeTracker.ChangeSet.full();
+        }
+        List<Equipment> changedDevices = new ArrayList<>();
+        List<Long> unchangedIds = new ArrayList<>();
+        for (Equipment device : devices) {
+            if (changes.isChanged(device.getId())) {
+                changedDevices.add(device);
+            } else {
+                unchangedIds.add(device.getId());
+            }
+        }
+        summary.fullRun = changes.isFullRun();
+        summary.evaluatedDevices = changedDevices.size();
+        summary.skippedDevices = unchangedIds.size();
+
+        PhmChangeTracker.ChangeSet tracked = changes;
+        ConcurrentLinkedQueue<PhmWatermark> completed = new ConcurrentLinkedQueue<>();
+        int workers = Math.max(1, pipelineWorkers);
+        AtomicInteger threadSeq = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, pipelineQueueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "phm-pipeline-" + threadSeq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        int chunkSize = Math.max(1, pipelineChunkSize);
+        try {
+            for (int from = 0; from < changedDevices.size(); from += chunkSize) {
+                List<Equipment> chunk = changedDevices.subList(from, Math.min(changedDevices.size(), from + chunkSize));
+                pool.execute(() -> {
+                    Set<Long> failed = processChunk(chunk, inputs, summary);
+                    for (Equipment device : chunk) {
+                        PhmWatermark watermark = tracked.watermarkOf(device.getId());
+                        if (!failed.contains(device.getId()) && watermark != null) {
+                            completed.add(watermark);
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            if (!pool.awaitTermination(pipelineAwaitMinutes, TimeUnit.MINUTES)) {
+                log.error("[PHM编排] 流水线在 {} 分钟内未完成，取消剩余任务", pipelineAwaitMinutes);
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // 输入未变化的设备沿用上次结果
+        if (!unchangedIds.isEmpty()) {
+            try {
+                summary.carriedHealth = deviceHealthService.carryForwardHealth(unchangedIds);
+                summary.carriedPredictions = faultPredictionService.carryForwardPredictions(
+                        unchangedIds, PREDICTION_WINDOW_DAYS);
+            } catch (Exception e) {
+                log.error("[PHM编排] 沿用上次评估结果失败", e);
+            }
+        }
+        summary.watermarksSaved = changeTracker.commit(new ArrayList<>(completed));
+        summary.finish();
+        return summary;
+    }
+
+    /**
+     * 一块设备的流水线任务
+     *
+     * @return 任一阶段失败的设备ID（不推进水位）
+     */
+    private Set<Long> processChunk(List<Equipment> chunk, DeviceHealthService.BulkHealthInputs inputs,
+                                   PipelineSummary summary) {
+        Set<Long> failed = new HashSet<>();
+
+        // Stage 1: 健康评估（内存评分，整块一次多行写入）
+        long t0 = System.nanoTime();
+        List<DeviceHealth> records = new ArrayList<>(chunk.size());
+        int noFeature = 0;
+        for (Equipment device : chunk) {
+            try {
+                DeviceHealth health = deviceHealthService.evaluate(inputs, device);
+                if (health == null) {
+                    noFeature++;
+                } else {
+                    records.add(health);
+                }
+            } catch (Exception e) {
+                failed.add(device.getId());
+                log.error("[PHM编排] 设备 {} 健康评估失败", device.getCode(), e);
+            }
+        }
+        try {
+            deviceHealthService.saveEvaluated(records);
+            summary.health.record(t0, records.size(), noFeature, failed.size());
+        } catch (Exception e) {
+            for (DeviceHealth health : records) {
+                failed.add(health.getDeviceId());
+            }
+            summary.health.record(t0, 0, noFeature, failed.size());
+            log.error("[PHM编排] {} 台设备健康记录写入失败", records.size(), e);
+            records = Collections.emptyList();
+        }
+
+        // Stage 2: 高风险设备故障预测（整块一次特征加载、矩阵评分与多行写入）
+        List<Long> highRiskIds = new ArrayList<>();
+        for (DeviceHealth health : records) {
+            if ("CRITICAL".equals(health.getRiskLevel()) || "HIGH".equals(health.getRiskLevel())) {
+                highRiskIds.add(health.getDeviceId());
+            }
+        }
+        if (!highRiskIds.isEmpty()) {
+            long t1 = System.nanoTime();
+            try {
+                int predicted = faultPredictionService.predictDevices(highRiskIds, PREDICTION_WINDOW_DAYS);
+                summary.prediction.record(t1, predicted, highRiskIds.size() - predicted, 0);
+            } catch (Exception e) {
+                failed.addAll(highRiskIds);
+                summary.prediction.record(t1, 0, 0, highRiskIds.size());
+                log.error("[PHM编排] {} 台高风险设备故障预测失败", highRiskIds.size(), e);
+            }
+        }
+
+        // Stage 3: 维护建议（整块一次取回最新快照，内存过滤后仅为需要建议的设备加载 BOM）
+        long t2 = System.nanoTime();
+        try {
+            MaintenanceSuggestionService.SuggestionBatch batch = suggestionService.generateSuggestionsForDevices(chunk);
+            int buildFailed = batch.failedDeviceIds().size();
+            summary.suggestion.record(t2, batch.generated(), chunk.size() - batch.generated() - buildFailed, buildFailed);
+            failed.addAll(batch.failedDeviceIds());
+            if (batch.generated() > 0) {
+                summary.markFirstSuggestion();
+            }
+        } catch (Exception e) {
+            for (Equipment device : chunk) {
+                failed.add(device.getId());
+            }
+            summary.suggestion.record(t2, 0, 0, chunk.size());
+            log.error("[PHM编排] {} 台设备建议生成失败", chunk.size(), e);
+        }
+        return failed;
+    }
+
+    /**
+     * Step 1: 批量评估所有设备的健康状况（手动单步触发）
      *
      * @return 成功评估的设备数量
      */
@@ -267,8 +510,17 @@ public class PhmOrchestrationService {
      * 由 Controller 调用，供管理员手动触发
      */
     public void triggerManualPhmFlow() {
-        log.info("[PHM编排] 手动触发PHM流程");
-        runPhmFlow();
+        triggerManualPhmFlow(false);
+    }
+
+    /**
+     * 手动触发PHM流程
+     *
+     * @param forceFull 是否强制全量评估（月度对账）
+     */
+    public void triggerManualPhmFlow(boolean forceFull) {
+        log.info("[PHM编排] 手动触发PHM流程{}", forceFull ? "（强制全量）" : "");
+        runPhmFlow(forceFull);
     }
 
     /**
@@ -313,4 +565,127 @@ public class PhmOrchestrationService {
     public boolean isFlowRunning() {
         return isRunning.get();
     }
+
+    /**
+     * 查询最近一次PHM流程的统计（评估/沿用设备数、各阶段产出）
+     *
+     * @return 统计信息；尚未执行过时返回 null
+     */
+    public Map<String, Object> getLastRunStats() {
+        return lastRunStats;
+    }
+
+    // ================================================================
+    // 5. 流水线统计
+    // ================================================================
+
+    /**
+     * 单阶段统计：产出数、跳过数、失败数与耗时（线程安全）
+     */
+    static final class StageStats {
+
+        private final String name;
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        /** 记录一次完成的阶段调用：产出、无产出（如数据不足、无需建议）与失败的设备数 */
+        void record(long startNanos, int produced, int skippedDevices, int failedDevices) {
+            succeeded.add(produced);
+            skipped.add(skippedDevices);
+            failed.add(failedDevices);
+            long nanos = System.nanoTime() - startNanos;
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        int succeeded() {
+            return succeeded.intValue();
+        }
+
+        long calls() {
+            return succeeded.sum() + skipped.sum() + failed.sum();
+        }
+
+        void log(long wallNanos) {
+            long calls = calls();
+            double avgMs = calls == 0 ? 0.0 : totalNanos.sum() / 1e6 / calls;
+            double perSecond = wallNanos <= 0 ? 0.0 : calls * 1e9 / wallNanos;
+            log.info("[PHM编排] 阶段[{}] 处理 {} 台（产出 {}，跳过 {}，失败 {}），吞吐 {} 台/s，平均 {} ms/台，单次调用最大 {} ms",
+                    name, calls, succeeded.sum(), skipped.sum(), failed.sum(),
+                    String.format("%.1f", perSecond), String.format("%.2f", avgMs),
+                    String.format("%.2f", maxNanos.get() / 1e6));
+        }
+    }
+
+    /**
+     * 流水线整体统计
+     */
+    static final class PipelineSummary {
+
+        final StageStats health = new StageStats("健康评估");
+        final StageStats prediction = new StageStats("故障预测");
+        final StageStats suggestion = new StageStats("维护建议");
+
+        private final long startNanos;
+        private final AtomicLong firstSuggestionNanos = new AtomicLong(-1L);
+        long elapsedMillis;
+
+        /** 是否全量执行 */
+        boolean fullRun = true;
+        /** 进入流水线评估的设备数 */
+        int evaluatedDevices;
+        /** 输入未变化、沿用上次结果的设备数 */
+        int skippedDevices;
+        /** 沿用写入的健康记录数 */
+        int carriedHealth;
+        /** 沿用写入的预测记录数 */
+        int carriedPredictions;
+        /** 推进水位的设备数 */
+        int watermarksSaved;
+
+        PipelineSummary(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void markFirstSuggestion() {
+            firstSuggestionNanos.compareAndSet(-1L, System.nanoTime() - startNanos);
+        }
+
+        void finish() {
+            elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+        }
+
+        void logStages() {
+            long wallNanos = elapsedMillis * 1_000_000L;
+            health.log(wallNanos);
+            prediction.log(wallNanos);
+            suggestion.log(wallNanos);
+            long first = firstSuggestionNanos.get();
+            if (first >= 0) {
+                log.info("[PHM编排] 首条维护建议落库用时 {} ms", first / 1_000_000L);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("fullRun", fullRun);
+            stats.put("evaluatedDevices", evaluatedDevices);
+            stats.put("skippedDevices", skippedDevices);
+            stats.put("carriedHealth", carriedHealth);
+            stats.put("carriedPredictions", carriedPredictions);
+            stats.put("watermarksSaved", watermarksSaved);
+            stats.put("healthEvaluated", health.succeeded());
+            stats.put("predicted", prediction.succeeded());
+            stats.put("suggestions", suggestion.succeeded());
+            stats.put("elapsedMillis", elapsedMillis);
+            return stats;
+        }
+    }
 }
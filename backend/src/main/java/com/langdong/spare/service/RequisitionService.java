@@ -3,6 +3,7 @@ package com.langdong.spare.service;
 import com.langdong.spare.dto.*;
 import com.langdong.spare.entity.Requisition;
 import com.langdong.spare.entity.RequisitionItem;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
 import com.langdong.spare.mapper.RequisitionItemMapper;
 import com.langdong.spare.mapper.RequisitionMapper;
 import com.langdong.spare.mapper.SparePartStockMapper;
@@ -12,12 +13,19 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class RequisitionService {
 
+    /** 批量更新领用明细单条语句的最大行数 */
+    private static final int UPDATE_CHUNK_SIZE = 500;
+
     @Autowired
     private RequisitionMapper requisitionMapper;
 
@@ -30,6 +38,12 @@ public class RequisitionService {
     @Autowired
     private FifoOutboundService fifoOutboundService;
 
+    @Autowired
+    private ConsumptionSnapshotProvider consumptionSnapshotProvider;
+
+    @Autowired
+    private PartConsumptionRollupService consumptionRollupService;
+
     @Transactional
     public void apply(RequisitionApplyDTO dto, Long userId) {
         Requisition req = new Requisition();
@@ -77,30 +91,68 @@ public class RequisitionService {
 
     @Transactional
     public void outbound(Long id, RequisitionOutboundDTO dto) {
+        Requisition requisition = requisitionMapper.findById(id);
+        // 一次加载领用明细，按明细ID索引
+        Map<Long, RequisitionItem> itemsById = new HashMap<>();
+        for (RequisitionItem item : requisitionItemMapper.findByReqId(id)) {
+            itemsById.put(item.getId(), item);
+        }
+
+        List<RequisitionItem> outItems = new ArrayList<>();
+        List<FifoOutboundService.OutboundLine> lines = new ArrayList<>();
         for (RequisitionOutboundDTO.RequisitionOutboundItemDTO itemDto : dto.getItems()) {
             // 获取领用明细信息
-            RequisitionItem item = requisitionItemMapper.findByReqId(id).stream()
-                    .filter(i -> i.getId().equals(itemDto.getItemId()))
-                    .findFirst()
-                    .orElseThrow(() -> new RuntimeException("领用明细不存在"));
+            RequisitionItem item = itemsById.get(itemDto.getItemId());
+            if (item == null) {
+                throw new RuntimeException("领用明细不存在");
+            }
 
             if (itemDto.getOutQty() == null || itemDto.getOutQty() <= 0) {
                 continue;
             }
+            outItems.add(item);
+            lines.add(new FifoOutboundService.OutboundLine(item.getId(), item.getSparePartId(), itemDto.getOutQty()));
+        }
 
-            // ===== 调用 FIFO 服务执行批次扣减 =====
-            String batchInfo = fifoOutboundService.processFifoOutbound(
-                    item.getId(),
-                    item.getSparePartId(),
-                    itemDto.getOutQty()
-            );
+        if (!lines.isEmpty()) {
+            // ===== 调用 FIFO 服务一次性规划并扣减全部明细的批次 =====
+            List<String> batchInfos = fifoOutboundService.processFifoOutboundBatch(lines);
+
+            Map<Long, RequisitionItem> updates = new LinkedHashMap<>();
+            Map<Long, Integer> outboundDeltaByPart = new LinkedHashMap<>();
+            for (int i = 0; i < lines.size(); i++) {
+                RequisitionItem item = outItems.get(i);
+                int outQty = lines.get(i).requiredQty();
+
+                // 按出库数量变化量累计月度消耗，重复出库时只计差额
+                int previousOutQty = item.getOutQty() == null ? 0 : item.getOutQty();
+                outboundDeltaByPart.merge(item.getSparePartId(), outQty - previousOutQty, Integer::sum);
+                item.setOutQty(outQty);
+
+                RequisitionItem update = new RequisitionItem();
+                update.setId(item.getId());
+                update.setOutQty(outQty);
+                update.setBatchInfo(batchInfos.get(i));
+                updates.put(item.getId(), update);
+            }
 
             // 更新领用明细的出库数量和批次信息
-            requisitionItemMapper.updateOutbound(itemDto.getItemId(), itemDto.getOutQty());
-            requisitionItemMapper.updateBatchInfo(itemDto.getItemId(), batchInfo);
+            List<RequisitionItem> updateList = new ArrayList<>(updates.values());
+            for (int from = 0; from < updateList.size(); from += UPDATE_CHUNK_SIZE) {
+                requisitionItemMapper.updateOutboundBatch(
+                        updateList.subList(from, Math.min(updateList.size(), from + UPDATE_CHUNK_SIZE)));
+            }
+
+            // 同一事务内累加月度消耗汇总
+            for (Map.Entry<Long, Integer> entry : outboundDeltaByPart.entrySet()) {
+                consumptionRollupService.recordOutbound(entry.getKey(),
+                        requisition == null ? null : requisition.getApproveTime(), entry.getValue());
+            }
         }
         // [状态机3] OUTBOUND (已出库)：库管员实际执行库存扣减后状态变更为已出库
         requisitionMapper.updateStatus(id, "OUTBOUND");
+        // 出库计入月度消耗，事务提交后使共享消耗快照失效
+        consumptionSnapshotProvider.invalidate();
     }
 
     @Transactional
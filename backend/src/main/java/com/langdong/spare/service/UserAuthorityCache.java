@@ -0,0 +1,171 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.Menu;
+import com.langdong.spare.entity.User;
+import com.langdong.spare.mapper.MenuMapper;
+import com.langdong.spare.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录用户权限缓存（JWT 过滤器使用）
+ *
+ * 每个已认证请求原本需要 findByUsername + findMenusByUserId（菜单 ⋈ 角色菜单 ⋈ 用户角色 的 UNION 联表）两次查询，
+ * 本缓存按用户ID保存「启用状态 + 权限标识列表」，有效期 {@code security.authority-cache.ttl-ms}（默认 60 秒），
+ * 稳态下鉴权不访问数据库。
+ *
+ * 失效：
+ *   - 用户修改、删除、分配角色后调用 {@link #invalidateUser(Long)}
+ *   - 角色删除、分配菜单后调用 {@link #invalidateAll()}（影响该角色下全部用户）
+ * 处于事务中时在提交后生效；每次失效递增代次，代次变化前开始的加载结果不写回缓存，避免并发请求写入旧权限。
+ */
+@Service
+public class UserAuthorityCache {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private MenuMapper menuMapper;
+
+    /** 缓存有效期（毫秒），0 表示不缓存 */
+    @Value("${security.authority-cache.ttl-ms:60000}")
+    private long ttlMs = 60_000L;
+
+    /** 用户ID -> 权限条目 */
+    private final Map<Long, AuthorityEntry> byUserId = new ConcurrentHashMap<>();
+
+    /** 用户名 -> 用户ID（JWT 主题为用户名） */
+    private final Map<String, Long> userIdByUsername = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 按用户名获取权限条目，缓存未命中或过期时从数据库加载
+     *
+     * @param username JWT 中的用户名
+     * @return 权限条目；用户不存在时返回 null
+     */
+    public AuthorityEntry resolve(String username) {
+        if (username == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Long userId = userIdByUsername.get(username);
+        AuthorityEntry cached = userId == null ? null : byUserId.get(userId);
+        if (cached != null && cached.username().equals(username) && cached.expiresAt() > now) {
+            hits.increment();
+            return cached;
+        }
+        return load(username, now);
+    }
+
+    /**
+     * 单个用户的状态或角色变化后失效
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            AuthorityEntry removed = byUserId.remove(userId);
+            if (removed != null) {
+                userIdByUsername.remove(removed.username(), userId);
+            }
+            invalidations.increment();
+        });
+    }
+
+    /**
+     * 角色权限变化后全部失效
+     */
+    public void invalidateAll() {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            byUserId.clear();
+            userIdByUsername.clear();
+            invalidations.increment();
+        });
+    }
+
+    /**
+     * 缓存条目数与命中统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", byUserId.size());
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private AuthorityEntry load(String username, long now) {
+        long gen = generation.get();
+        User user = userMapper.findByUsername(username);
+        loads.increment();
+        if (user == null) {
+            return null;
+        }
+        boolean enabled = Integer.valueOf(1).equals(user.getStatus());
+        List<SimpleGrantedAuthority> authorities = Collections.emptyList();
+        if (enabled) {
+            List<Menu> menus = menuMapper.findMenusByUserId(user.getId());
+            authorities = menus == null ? Collections.emptyList() : menus.stream()
+                    .filter(m -> m.getPermission() != null && !m.getPermission().isEmpty())
+                    .map(m -> new SimpleGrantedAuthority(m.getPermission()))
+                    .toList();
+        }
+        AuthorityEntry entry = new AuthorityEntry(user.getId(), username, enabled, authorities, now + ttlMs);
+        // 加载期间发生过失效则本次结果只用于当前请求，不写回缓存
+        if (ttlMs > 0 && user.getId() != null && generation.get() == gen) {
+            byUserId.put(user.getId(), entry);
+            userIdByUsername.put(username, user.getId());
+        }
+        return entry;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 用户权限条目（不可变，authorities 为只读列表）
+     *
+     * @param userId      用户ID
+     * @param username    用户名
+     * @param enabled     是否启用（status = 1）
+     * @param authorities 权限标识，未启用时为空
+     * @param expiresAt   过期时间（毫秒）
+     */
+    public record AuthorityEntry(Long userId, String username, boolean enabled,
+                                 List<SimpleGrantedAuthority> authorities, long expiresAt) {
+    }
+}
@@ -1,17 +1,20 @@
 package com.langdong.spare.service.ai;
 
-import com.langdong.spare.dto.MonthlyConsumptionVO;
 import com.langdong.spare.dto.PredictContextDTO;
 import com.langdong.spare.entity.AiDeviceFeature;
 import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshot;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.forecast.feature.MonthSeries;
+import com.langdong.spare.forecast.feature.MonthlyConsumptionMatrix;
 import com.langdong.spare.mapper.AiDeviceFeatureMapper;
-import com.langdong.spare.mapper.SparePartMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -38,7 +41,7 @@ public class AiFeatureService {
     public static final int MIN_DATA_POINTS = 3;
 
     @Autowired
-    private SparePartMapper sparePartMapper;
+    private ConsumptionSnapshotProvider consumptionSnapshotProvider;
 
     /**
      * 组装所有备件的预测上下文（批量，一次性加载所有历史数据）
@@ -47,30 +50,17 @@ public class AiFeatureService {
      * @return PredictContextDTO 列表，每个元素对应一个备件，algoType 已确定
      */
     public List<PredictContextDTO> buildAllContexts(String forecastMonth) {
-        // ---- 1. 加载所有备件档案 ----
-        List<SparePart> parts = sparePartMapper.findAllForClassify();
-        if (parts == null || parts.isEmpty()) {
+        // ---- 1~2. 备件档案与近12个月消耗历史，取自共享消耗快照（多月循环调用时共用一次加载） ----
+        YearMonth currentMonth = YearMonth.now();
+        ConsumptionSnapshot snapshot = consumptionSnapshotProvider.acquire(
+                currentMonth.minusMonths(12), currentMonth.plusMonths(1));
+        List<SparePart> parts = snapshot.parts();
+        if (parts.isEmpty()) {
             log.warn("[AI特征] 备件档案为空，跳过特征组装");
             return Collections.emptyList();
         }
-        log.info("[AI特征] 共加载备件 {} 条", parts.size());
-
-        // ---- 2. 批量加载近12个月消耗历史（一次 SQL） ----
-        String fromMonth = LocalDate.now().minusMonths(12).withDayOfMonth(1)
-                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        List<MonthlyConsumptionVO> consumptionList = sparePartMapper.findAllMonthlyConsumption(fromMonth);
-
-        // 按 partCode 分组：partCode -> Map<月份, 消耗量>
-        Map<String, Map<String, Integer>> consumptionMap = new HashMap<>();
-        if (consumptionList != null) {
-            for (MonthlyConsumptionVO vo : consumptionList) {
-                consumptionMap
-                        .computeIfAbsent(vo.getPartCode(), k -> new LinkedHashMap<>())
-                        .put(vo.getMonth(), vo.getQty());
-            }
-        }
-        log.info("[AI特征] 消耗记录 {} 条，涉及 {} 备件",
-                consumptionList == null ? 0 : consumptionList.size(), consumptionMap.size());
+        MonthlyConsumptionMatrix consumption = snapshot.consumption();
+        log.info("[AI特征] 共加载备件 {} 条，消耗历史取自快照 v{}", parts.size(), snapshot.version());
 
         // ---- 3. 生成近12个月月份列表（用于补全0需求月份） ----
         List<String> last12Months = buildLast12Months();
@@ -90,12 +80,12 @@ public class AiFeatureService {
         List<PredictContextDTO> contexts = new ArrayList<>(parts.size());
         for (SparePart part : parts) {
             String code = part.getCode();
-            Map<String, Integer> mqMap = consumptionMap.getOrDefault(code, Collections.emptyMap());
+            int row = consumption.rowOf(code);
 
             // 补全12个月（缺失月填0）
             List<Integer> demands = new ArrayList<>(12);
             for (String m : last12Months) {
-                demands.add(mqMap.getOrDefault(m, 0));
+                demands.add((int) consumption.at(row, MonthSeries.indexOf(m)));
             }
 
             // 计算 ADI 和 CV²
@@ -22,6 +22,9 @@ import java.util.Map;
  *   - avgMTBF: 平均故障间隔时间（近12个月）
  *   - deteriorationRate: 劣化率（前3月健康度 - 最近3月健康度）/ 前3月健康度
  *
+ * 设备群批量评分：scoreFleet 读取列式的设备 × 月份基本类型矩阵（FleetMatrix），
+ * 一次遍历将概率、预期故障数、置信区间与特征贡献度写入预分配输出（FleetScores）
+ *
  * Phase 2 升级方向：替换为随机森林模型
  */
 public class FaultPredictionEngine {
@@ -51,6 +54,12 @@ public class FaultPredictionEngine {
     /** 最小历史数据月数 */
     private static final int MIN_HISTORY_MONTHS = 6;
 
+    /** 特征重要性输出的特征名（顺序即数组输出顺序） */
+    private static final String[] FEATURE_NAMES = {"runHours", "faultCount", "mtbf", "deterioration"};
+
+    /** 特征个数 */
+    public static final int FEATURE_COUNT = FEATURE_NAMES.length;
+
     // ================================================================
     // 特征工程
     // ================================================================
@@ -68,6 +77,24 @@ public class FaultPredictionEngine {
         return runHours.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
     }
 
+    /**
+     * 计算平均运行时长（基本类型数组版本，不装箱）
+     *
+     * @param runHours 运行时长数组
+     * @param n        有效元素个数（取前 n 个）
+     * @return 平均运行时长（小时）
+     */
+    public static double calcAvgRunHours(double[] runHours, int n) {
+        if (runHours == null || n <= 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += runHours[i];
+        }
+        return sum / n;
+    }
+
     /**
      * 计算运行时长线性趋势（斜率）
      *
@@ -117,6 +144,24 @@ public class FaultPredictionEngine {
         return (double) totalFaults / faultCounts.size();
     }
 
+    /**
+     * 计算故障频率（基本类型数组版本，不装箱）
+     *
+     * @param faultCounts 故障次数数组（按月）
+     * @param n           有效元素个数（取前 n 个）
+     * @return 平均月故障频率
+     */
+    public static double calcFaultFrequency(int[] faultCounts, int n) {
+        if (faultCounts == null || n <= 0) {
+            return 0.0;
+        }
+        int totalFaults = 0;
+        for (int i = 0; i < n; i++) {
+            totalFaults += faultCounts[i];
+        }
+        return (double) totalFaults / n;
+    }
+
     /**
      * 计算平均MTBF（平均故障间隔时间）
      *
@@ -143,6 +188,29 @@ public class FaultPredictionEngine {
         return validValues.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
     }
 
+    /**
+     * 计算平均MTBF（基本类型数组版本，不装箱）
+     *
+     * @param mtbfValues MTBF值数组（按月）
+     * @param n          有效元素个数（取前 n 个）
+     * @return 平均MTBF（小时），排除9999等标记值；无有效值时返回9999
+     */
+    public static double calcAvgMTBF(double[] mtbfValues, int n) {
+        if (mtbfValues == null || n <= 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            double mtbf = mtbfValues[i];
+            if (mtbf > 0 && mtbf < 9000) {
+                sum += mtbf;
+                valid++;
+            }
+        }
+        return valid == 0 ? 9999.0 : sum / valid;
+    }
+
     /**
      * 计算设备劣化率（健康度下降趋势）
      *
@@ -174,6 +242,26 @@ public class FaultPredictionEngine {
         return Math.max(0.0, Math.min(1.0, deterioration));
     }
 
+    /**
+     * 计算设备劣化率（基本类型数组版本，不装箱）
+     *
+     * @param healthScores 健康评分数组（按时间顺序，索引0为最早）
+     * @param n            有效元素个数（取前 n 个，至少6个）
+     * @return 劣化率（0~1）
+     */
+    public static double calcDeteriorationRate(double[] healthScores, int n) {
+        if (healthScores == null || n < 6) {
+            return 0.0;
+        }
+        double firstThreeAvg = (healthScores[0] + healthScores[1] + healthScores[2]) / 3.0;
+        double lastThreeAvg = (healthScores[n - 3] + healthScores[n - 2] + healthScores[n - 1]) / 3.0;
+        if (firstThreeAvg <= 0) {
+            return 0.0;
+        }
+        double deterioration = (firstThreeAvg - lastThreeAvg) / firstThreeAvg;
+        return Math.max(0.0, Math.min(1.0, deterioration));
+    }
+
     // ================================================================
     // 逻辑回归预测模型
     // ================================================================
@@ -300,6 +388,30 @@ public class FaultPredictionEngine {
                                                              double faultFrequency,
                                                              double avgMTBF,
                                                              double deteriorationRate) {
+        double[] shares = new double[FEATURE_COUNT];
+        calcFeatureImportance(avgRunHours, faultFrequency, avgMTBF, deteriorationRate, shares, 0);
+
+        Map<String, Double> importance = new HashMap<>();
+        for (int k = 0; k < FEATURE_COUNT; k++) {
+            importance.put(FEATURE_NAMES[k], shares[k]);
+        }
+        return importance;
+    }
+
+    /**
+     * 计算特征贡献度并写入预分配数组（不分配 Map）
+     *
+     * 写入顺序与 {@link #FEATURE_NAMES} 一致：runHours, faultCount, mtbf, deterioration
+     *
+     * @param out    输出数组
+     * @param offset 写入起始下标（写入 out[offset .. offset+3]）
+     */
+    public static void calcFeatureImportance(double avgRunHours,
+                                             double faultFrequency,
+                                             double avgMTBF,
+                                             double deteriorationRate,
+                                             double[] out,
+                                             int offset) {
         // 计算各特征的贡献值
         double runHoursContrib = COEF_AVG_RUN_HOURS * avgRunHours;
         double faultFreqContrib = COEF_FAULT_FREQUENCY * faultFrequency;
@@ -312,21 +424,214 @@ public class FaultPredictionEngine {
                 + Math.abs(mtbfContrib)
                 + Math.abs(deteriorationContrib);
 
-        Map<String, Double> importance = new HashMap<>();
         if (totalContrib > 0) {
-            importance.put("runHours", Math.abs(runHoursContrib) / totalContrib);
-            importance.put("faultCount", Math.abs(faultFreqContrib) / totalContrib);
-            importance.put("mtbf", Math.abs(mtbfContrib) / totalContrib);
-            importance.put("deterioration", Math.abs(deteriorationContrib) / totalContrib);
+            out[offset] = Math.abs(runHoursContrib) / totalContrib;
+            out[offset + 1] = Math.abs(faultFreqContrib) / totalContrib;
+            out[offset + 2] = Math.abs(mtbfContrib) / totalContrib;
+            out[offset + 3] = Math.abs(deteriorationContrib) / totalContrib;
         } else {
             // 无贡献时均分
-            importance.put("runHours", 0.25);
-            importance.put("faultCount", 0.25);
-            importance.put("mtbf", 0.25);
-            importance.put("deterioration", 0.25);
+            out[offset] = 0.25;
+            out[offset + 1] = 0.25;
+            out[offset + 2] = 0.25;
+            out[offset + 3] = 0.25;
         }
+    }
 
-        return importance;
+    /**
+     * 将特征贡献度格式化为 JSON 对象字符串（键顺序固定，与 {@link #FEATURE_NAMES} 一致）
+     *
+     * @param shares 贡献度数组
+     * @param offset 读取起始下标
+     * @return 形如 {"runHours":0.35,"faultCount":0.28,"mtbf":0.1,"deterioration":0.27} 的字符串
+     */
+    public static String featureImportanceJson(double[] shares, int offset) {
+        StringBuilder sb = new StringBuilder(96).append('{');
+        for (int k = 0; k < FEATURE_COUNT; k++) {
+            if (k > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(FEATURE_NAMES[k]).append("\":").append(shares[offset + k]);
+        }
+        return sb.append('}').toString();
+    }
+
+    // ================================================================
+    // 设备群批量评分（列式基本类型数组）
+    // ================================================================
+
+    /**
+     * 对一组设备一次性评分，结果写入预分配的输出数组（全程不装箱、不分配对象）
+     *
+     * 对前 deviceCount 台设备中的第 d 台（d 从 0 开始），读取矩阵第 d 行的前 monthCounts[d] 个月：
+     *   - 历史月数不足 {@value #MIN_HISTORY_MONTHS} 时不评分，probability[d] 写入 NaN
+     *   - 否则按与单设备列表接口相同的公式计算故障概率、预期故障次数、90%置信区间与特征贡献度
+     *
+     * @param in             设备 × 月份输入矩阵
+     * @param deviceCount    本次评分的设备数（取矩阵前 deviceCount 行）
+     * @param predictionDays 预测窗口天数
+     * @param out            预分配的输出（容量不小于 deviceCount）
+     * @return 实际评分的设备数
+     */
+    public static int scoreFleet(FleetMatrix in, int deviceCount, int predictionDays, FleetScores out) {
+        if (deviceCount > in.capacity || deviceCount > out.capacity) {
+            throw new IllegalArgumentException("设备数超出矩阵容量: " + deviceCount);
+        }
+        int stride = in.stride;
+        double[] runHours = in.runHours;
+        int[] faultCounts = in.faultCounts;
+        double[] mtbf = in.mtbf;
+        double[] health = in.healthScores;
+        int scored = 0;
+
+        for (int d = 0; d < deviceCount; d++) {
+            int n = in.monthCounts[d];
+            if (n < MIN_HISTORY_MONTHS) {
+                out.probability[d] = Double.NaN;
+                continue;
+            }
+            int base = d * stride;
+
+            // 单次遍历累加运行时长、故障次数、有效MTBF
+            double runHoursSum = 0.0;
+            int faultSum = 0;
+            double mtbfSum = 0.0;
+            int mtbfValid = 0;
+            for (int i = base, end = base + n; i < end; i++) {
+                runHoursSum += runHours[i];
+                faultSum += faultCounts[i];
+                double m = mtbf[i];
+                if (m > 0 && m < 9000) {
+                    mtbfSum += m;
+                    mtbfValid++;
+                }
+            }
+            double avgRunHours = runHoursSum / n;
+            double faultFrequency = (double) faultSum / n;
+            double avgMTBF = mtbfValid == 0 ? 9999.0 : mtbfSum / mtbfValid;
+            double deteriorationRate = deteriorationOfRow(health, base, n);
+
+            double probability = predictFailureProbability(avgRunHours, faultFrequency, avgMTBF, deteriorationRate);
+            int expected = predictExpectedFaults(faultFrequency, predictionDays);
+
+            out.probability[d] = probability;
+            out.expectedFaults[d] = expected;
+            out.faultCountLower[d] = calcConfidenceIntervalLower(expected);
+            out.faultCountUpper[d] = calcConfidenceIntervalUpper(expected);
+            calcFeatureImportance(avgRunHours, faultFrequency, avgMTBF, deteriorationRate,
+                    out.featureShares, d * FEATURE_COUNT);
+            scored++;
+        }
+        return scored;
+    }
+
+    /**
+     * 矩阵单行的劣化率：跳过 NaN（无评估记录的月份），取最早3个与最近3个有效健康分
+     *
+     * 与 {@link #calcDeteriorationRate(double[], int)} 对压缩后的有效序列计算结果一致
+     */
+    private static double deteriorationOfRow(double[] health, int base, int n) {
+        double first = 0.0;
+        int firstCount = 0;
+        int valid = 0;
+        for (int i = base, end = base + n; i < end; i++) {
+            double h = health[i];
+            if (Double.isNaN(h)) {
+                continue;
+            }
+            valid++;
+            if (firstCount < 3) {
+                first += h;
+                firstCount++;
+            }
+        }
+        if (valid < 6) {
+            return 0.0;
+        }
+        double last = 0.0;
+        int lastCount = 0;
+        for (int i = base + n - 1; i >= base && lastCount < 3; i--) {
+            double h = health[i];
+            if (!Double.isNaN(h)) {
+                last += h;
+                lastCount++;
+            }
+        }
+        double firstThreeAvg = first / 3.0;
+        double lastThreeAvg = last / 3.0;
+        if (firstThreeAvg <= 0) {
+            return 0.0;
+        }
+        double deterioration = (firstThreeAvg - lastThreeAvg) / firstThreeAvg;
+        return Math.max(0.0, Math.min(1.0, deterioration));
+    }
+
+    /**
+     * 设备 × 月份输入矩阵（行优先，每台设备占一行，行宽为 stride）
+     *
+     * 第 d 台设备的第 i 个月位于下标 d × stride + i，月份按时间正序（索引0为最早），
+     * 有效月数为 monthCounts[d]。MTBF 缺失请填 9999（无故障），健康分缺失请填 NaN。
+     * 可跨批次复用：只需覆盖本批各行并更新 monthCounts。
+     */
+    public static final class FleetMatrix {
+
+        /** 最大设备数（行数） */
+        public final int capacity;
+        /** 每台设备的最大月数（行宽） */
+        public final int stride;
+        /** 月度运行时长（小时） */
+        public final double[] runHours;
+        /** 月度故障次数 */
+        public final int[] faultCounts;
+        /** 月度MTBF（小时） */
+        public final double[] mtbf;
+        /** 月度平均健康分（NaN 表示当月无评估记录） */
+        public final double[] healthScores;
+        /** 每台设备的有效月数 */
+        public final int[] monthCounts;
+
+        public FleetMatrix(int capacity, int stride) {
+            this.capacity = capacity;
+            this.stride = stride;
+            this.runHours = new double[capacity * stride];
+            this.faultCounts = new int[capacity * stride];
+            this.mtbf = new double[capacity * stride];
+            this.healthScores = new double[capacity * stride];
+            this.monthCounts = new int[capacity];
+        }
+    }
+
+    /**
+     * 设备群评分输出（下标与输入矩阵行号一致）
+     */
+    public static final class FleetScores {
+
+        /** 最大设备数 */
+        public final int capacity;
+        /** 故障概率（未评分的设备为 NaN） */
+        public final double[] probability;
+        /** 预期故障次数 */
+        public final int[] expectedFaults;
+        /** 90%置信区间下限 */
+        public final int[] faultCountLower;
+        /** 90%置信区间上限 */
+        public final int[] faultCountUpper;
+        /** 特征贡献度，第 d 台设备位于 [d × FEATURE_COUNT, (d+1) × FEATURE_COUNT) */
+        public final double[] featureShares;
+
+        public FleetScores(int capacity) {
+            this.capacity = capacity;
+            this.probability = new double[capacity];
+            this.expectedFaults = new int[capacity];
+            this.faultCountLower = new int[capacity];
+            this.faultCountUpper = new int[capacity];
+            this.featureShares = new double[capacity * FEATURE_COUNT];
+        }
+
+        /** 第 d 台设备是否已评分 */
+        public boolean isScored(int d) {
+            return !Double.isNaN(probability[d]);
+        }
     }
 
     // ================================================================
@@ -0,0 +1,113 @@
+package com.langdong.spare.forecast.classify;
+
+import com.langdong.spare.dto.MonthlyConsumptionVO;
+import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.forecast.feature.MonthlyClassCodeProvider;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * AbcXyzClassifier 滚动多月分类单元测试：与逐月 classifyAsOf 结果逐件逐月一致，且只访问一次 DB。
+ */
+public class AbcXyzClassifierTest {
+
+    /** 构造 30 个备件、2023-01 ~ 2026-06 的随机间断消耗（含大量 0 需求月）。 */
+    private SparePartMapper mockMapper() {
+        Random rnd = new Random(7L);
+        List<SparePart> parts = new ArrayList<>();
+        List<MonthlyConsumptionVO> rows = new ArrayList<>();
+        for (int p = 0; p < 30; p++) {
+            SparePart part = new SparePart();
+            part.setCode(String.format("SP%03d", p));
+            part.setPrice(BigDecimal.valueOf(10 + rnd.nextInt(500)));
+            part.setIsCritical(rnd.nextInt(3) == 0 ? 1 : 0);
+            part.setLeadTime(7 + rnd.nextInt(60));
+            part.setReplaceDiff(1 + rnd.nextInt(5));
+            parts.add(part);
+            YearMonth m = YearMonth.of(2023, 1);
+            while (!m.isAfter(YearMonth.of(2026, 6))) {
+                if (rnd.nextDouble() < 0.4) {
+                    MonthlyConsumptionVO vo = new MonthlyConsumptionVO();
+                    vo.setPartCode(part.getCode());
+                    vo.setMonth(m.toString());
+                    vo.setQty(1 + rnd.nextInt(20));
+                    rows.add(vo);
+                }
+                m = m.plusMonths(1);
+            }
+        }
+        SparePartMapper mapper = mock(SparePartMapper.class);
+        when(mapper.findAllForClassify()).thenReturn(parts);
+        // 模拟 SQL 的 approve_time >= fromMonth 过滤，逐行流式回调
+        doAnswer(inv -> {
+            String from = ((String) inv.getArgument(0)).substring(0, 7);
+            ResultHandler<MonthlyConsumptionVO> handler = inv.getArgument(1);
+            DefaultResultContext<MonthlyConsumptionVO> ctx = new DefaultResultContext<>();
+            for (MonthlyConsumptionVO vo : rows) {
+                if (vo.getMonth().compareTo(from) >= 0) {
+                    ctx.nextResultObject(vo);
+                    handler.handleResult(ctx);
+                }
+            }
+            return null;
+        }).when(mapper).streamMonthlyConsumption(anyString(), any());
+        return mapper;
+    }
+
+    private static AbcXyzClassifier classifier(SparePartMapper mapper) {
+        ForecastProperties props = new ForecastProperties();
+        return new AbcXyzClassifier(new ConsumptionSnapshotProvider(mapper, props), props);
+    }
+
+    @Test
+    @DisplayName("滚动分类：区间内每个截止月的 ABC/XYZ 编码与逐月 classifyAsOf 完全一致")
+    void testRollingMatchesClassifyAsOf() {
+        SparePartMapper mapper = mockMapper();
+        AbcXyzClassifier classifier = classifier(mapper);
+
+        MonthlyClassCodeProvider rolling = classifier.rollingCodeProvider("2024-01", "2026-06");
+        verify(mapper, times(1)).findAllForClassify();
+        verify(mapper, times(1)).streamMonthlyConsumption(anyString(), any());
+
+        YearMonth m = YearMonth.of(2024, 1);
+        while (!m.isAfter(YearMonth.of(2026, 6))) {
+            Map<String, AbcXyzCalculator.Classification> expected = classifier.classifyAsOf(m.toString());
+            for (Map.Entry<String, AbcXyzCalculator.Classification> e : expected.entrySet()) {
+                int[] codes = rolling.codesAsOf(e.getKey(), m.toString());
+                assertEquals(e.getValue().abcCode(), codes[0], "ABC 不一致: " + e.getKey() + "@" + m);
+                assertEquals(e.getValue().xyzCode(), codes[1], "XYZ 不一致: " + e.getKey() + "@" + m);
+            }
+            m = m.plusMonths(1);
+        }
+    }
+
+    @Test
+    @DisplayName("滚动分类：未知备件返回默认 C/Z，区间外月份回退逐月分类")
+    void testRollingDefaultsAndFallback() {
+        SparePartMapper mapper = mockMapper();
+        AbcXyzClassifier classifier = classifier(mapper);
+        MonthlyClassCodeProvider rolling = classifier.rollingCodeProvider("2025-01", "2025-06");
+
+        assertArrayEquals(new int[]{1, 3}, rolling.codesAsOf("UNKNOWN", "2025-03"));
+
+        AbcXyzCalculator.Classification c = classifier.classifyAsOf("2026-01").get("SP005");
+        assertArrayEquals(new int[]{c.abcCode(), c.xyzCode()}, rolling.codesAsOf("SP005", "2026-01"));
+    }
+}
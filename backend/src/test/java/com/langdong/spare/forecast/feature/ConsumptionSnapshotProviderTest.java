@@ -0,0 +1,135 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.dto.MonthlyConsumptionVO;
+import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * ConsumptionSnapshotProvider 共享快照复用与失效单元测试
+ */
+public class ConsumptionSnapshotProviderTest {
+
+    private SparePartMapper mapper;
+    private ForecastProperties props;
+    private ConsumptionSnapshotProvider provider;
+    private final List<MonthlyConsumptionVO> rows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(SparePartMapper.class);
+        List<SparePart> parts = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            SparePart p = new SparePart();
+            p.setId((long) i);
+            p.setCode("SP" + i);
+            parts.add(p);
+        }
+        YearMonth now = YearMonth.now();
+        for (int back = 0; back < 60; back++) {
+            MonthlyConsumptionVO vo = new MonthlyConsumptionVO();
+            vo.setPartCode("SP" + (back % 3 + 1));
+            vo.setMonth(now.minusMonths(back).toString());
+            vo.setQty(back + 1);
+            rows.add(vo);
+        }
+        when(mapper.findAllForClassify()).thenReturn(parts);
+        when(mapper.findConsumptionWatermark()).thenReturn("w1");
+        doAnswer(inv -> {
+            String from = ((String) inv.getArgument(0)).substring(0, 7);
+            ResultHandler<MonthlyConsumptionVO> handler = inv.getArgument(1);
+            DefaultResultContext<MonthlyConsumptionVO> ctx = new DefaultResultContext<>();
+            for (MonthlyConsumptionVO vo : rows) {
+                if (vo.getMonth().compareTo(from) >= 0) {
+                    ctx.nextResultObject(vo);
+                    handler.handleResult(ctx);
+                }
+            }
+            return null;
+        }).when(mapper).streamMonthlyConsumption(anyString(), any());
+        props = new ForecastProperties();
+        provider = new ConsumptionSnapshotProvider(mapper, props);
+    }
+
+    @Test
+    @DisplayName("共享快照：分类、特征加载等不同窗口的请求共用一次加载，水位不变时跨复核间隔继续复用")
+    void testSnapshotSharedAcrossWindows() {
+        YearMonth now = YearMonth.now();
+        ConsumptionSnapshot a = provider.acquire(now.minusMonths(12), now.plusMonths(1));
+        ConsumptionSnapshot b = provider.acquire(now.minusMonths(36), now);
+        ConsumptionSnapshot c = provider.acquire(now.minusMonths(49), now.minusMonths(1));
+
+        assertSame(a, b);
+        assertSame(a, c);
+        verify(mapper, times(1)).findAllForClassify();
+        verify(mapper, times(1)).streamMonthlyConsumption(anyString(), any());
+        assertEquals(now.minusMonths(49), a.from());
+        assertEquals(49 + 1, a.consumption().acceptedRows());
+
+        props.setConsumptionSnapshotCheckMs(0);
+        assertSame(a, provider.acquire());
+        verify(mapper, times(1)).streamMonthlyConsumption(anyString(), any());
+
+        when(mapper.findConsumptionWatermark()).thenReturn("w2");
+        ConsumptionSnapshot reloaded = provider.acquire();
+        assertNotSame(a, reloaded);
+        assertEquals(a.version() + 1, reloaded.version());
+        assertEquals("w2", reloaded.watermark());
+        verify(mapper, times(2)).streamMonthlyConsumption(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("出库失效：事务内调用在提交后生效，提交后下一次获取立即复核水位并重新加载")
+    void testInvalidateAppliesAfterCommit() {
+        ConsumptionSnapshot first = provider.acquire();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            provider.invalidate();
+            assertSame(first, provider.acquire()); // 未提交：仍在复核间隔内，不查询水位
+            verify(mapper, times(1)).findConsumptionWatermark();
+
+            when(mapper.findConsumptionWatermark()).thenReturn("w2");
+            for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+                sync.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ConsumptionSnapshot second = provider.acquire();
+        assertNotSame(first, second);
+        assertEquals("w2", second.watermark());
+        assertEquals(1L, provider.stats().get("invalidations"));
+        assertEquals(2L, provider.stats().get("loads"));
+    }
+
+    @Test
+    @DisplayName("请求区间超出快照覆盖范围时按并集重新加载")
+    void testWiderWindowReloads() {
+        YearMonth now = YearMonth.now();
+        ConsumptionSnapshot first = provider.acquire();
+        ConsumptionSnapshot wider = provider.acquire(now.minusMonths(58), now.plusMonths(2));
+
+        assertNotSame(first, wider);
+        assertTrue(wider.covers(now.minusMonths(58), now.plusMonths(2)));
+        assertTrue(wider.covers(now.minusMonths(49), now.plusMonths(1)));
+        assertEquals(59, wider.consumption().acceptedRows());
+        assertSame(wider, provider.acquire());
+    }
+}
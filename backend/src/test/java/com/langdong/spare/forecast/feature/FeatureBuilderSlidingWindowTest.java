@@ -0,0 +1,169 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.forecast.model.FeatureVector;
+import com.langdong.spare.forecast.model.TrainingSample;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 滑动窗口训练样本构造等价性测试：与逐月独立构造 / 单条推理向量逐位一致，并复核
+ * {@link FeatureBuilderLeakTest} 的防泄露与数值期望。
+ */
+public class FeatureBuilderSlidingWindowTest {
+
+    private final FeatureBuilder builder = new FeatureBuilder();
+
+    /** 分类码随截止月变化，校验滑动路径按 t-1 取码。 */
+    private final MonthlyClassCodeProvider monthlyCodes = (part, month) -> {
+        int m = YearMonth.parse(month).getMonthValue();
+        return new int[]{1 + m % 3, 1 + (m / 3) % 3};
+    };
+
+    /** 与 FeatureBuilderLeakTest 相同的样本上下文（含目标月及未来的「诱饵」数据）。 */
+    private PartFeatureContext leakFixture() {
+        PartFeatureContext ctx = new PartFeatureContext("SP0001");
+        ctx.getMonthlyDemand().put("2026-01", 5.0);
+        ctx.getMonthlyDemand().put("2026-02", 0.0);
+        ctx.getMonthlyDemand().put("2026-03", 3.0);
+        ctx.getMonthlyDemand().put("2026-04", 0.0);
+        ctx.getMonthlyDemand().put("2026-05", 0.0);
+        ctx.getMonthlyDemand().put("2026-06", 4.0);
+        ctx.getMonthlyDemand().put("2026-07", 999.0);
+        ctx.getMonthlyDemand().put("2026-08", 888.0);
+        ctx.getMonthlyEquipHr().put("2026-06", 100.0);
+        ctx.getMonthlyEquipHr().put("2026-07", 9999.0);
+        ctx.getMonthlyRepairCnt().put("2026-06", 2.0);
+        ctx.getMonthlyRepairCnt().put("2026-07", 99.0);
+        return ctx;
+    }
+
+    /** 随机间断需求上下文：非整数需求、长段零需求、稀疏设备数据。 */
+    private PartFeatureContext randomContext(long seed) {
+        Random rnd = new Random(seed);
+        PartFeatureContext ctx = new PartFeatureContext("R" + seed);
+        YearMonth m = YearMonth.of(2020, 1).plusMonths(rnd.nextInt(12));
+        for (int i = 0; i < 80; i++) {
+            if (rnd.nextDouble() < 0.7) {
+                double d = rnd.nextDouble() < 0.5 ? 0.0 : rnd.nextInt(40) / 3.0;
+                ctx.getMonthlyDemand().put(m.toString(), d);
+            }
+            if (rnd.nextDouble() < 0.5) {
+                ctx.getMonthlyEquipHr().put(m.toString(), rnd.nextDouble() * 700);
+                ctx.getMonthlyRepairCnt().put(m.toString(), (double) rnd.nextInt(4));
+            }
+            m = m.plusMonths(1);
+        }
+        return ctx;
+    }
+
+    private static List<String> range(String from, int count) {
+        List<String> months = new ArrayList<>();
+        YearMonth m = YearMonth.parse(from);
+        for (int i = 0; i < count; i++) {
+            months.add(m.plusMonths(i).toString());
+        }
+        return months;
+    }
+
+    private static void assertBitIdentical(FeatureVector expected, FeatureVector actual, String msg) {
+        assertEquals(expected.getTargetMonth(), actual.getTargetMonth(), msg);
+        assertEquals(expected.getPartCode(), actual.getPartCode(), msg);
+        double[] e = {expected.getLag1(), expected.getLag3Mean(), expected.getLag3Std(), expected.getZeroRatio6(),
+                expected.getEquipHr(), expected.getRepairCnt(), expected.getMonth(), expected.getAbcCode(),
+                expected.getXyzCode(), expected.getPosLag1(), expected.getPosLag3Mean()};
+        double[] a = {actual.getLag1(), actual.getLag3Mean(), actual.getLag3Std(), actual.getZeroRatio6(),
+                actual.getEquipHr(), actual.getRepairCnt(), actual.getMonth(), actual.getAbcCode(),
+                actual.getXyzCode(), actual.getPosLag1(), actual.getPosLag3Mean()};
+        for (int i = 0; i < e.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(e[i]), Double.doubleToRawLongBits(a[i]),
+                    msg + " 第 " + (i + 1) + " 维不一致: " + e[i] + " vs " + a[i]);
+        }
+    }
+
+    private static void assertSamplesIdentical(List<TrainingSample> expected, List<TrainingSample> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String msg = expected.get(i).getFeatures().getTargetMonth();
+            assertBitIdentical(expected.get(i).getFeatures(), actual.get(i).getFeatures(), msg);
+            assertEquals(expected.get(i).getDemand(), actual.get(i).getDemand(), 0.0, msg);
+        }
+    }
+
+    @Test
+    @DisplayName("防泄露夹具：滑动路径复现 FeatureBuilderLeakTest 的样本与数值期望")
+    void testLeakFixtureExpectations() {
+        PartFeatureContext ctx = leakFixture();
+        List<String> labels = range("2026-01", 7);
+        List<TrainingSample> sliding = builder.buildTrainingSamples(ctx, labels, monthlyCodes);
+        assertSamplesIdentical(builder.buildTrainingSamplesPointwise(ctx, labels, monthlyCodes), sliding);
+
+        // 2026-01 之前无历史 → 跳过
+        assertEquals(6, sliding.size());
+        assertEquals("2026-02", sliding.get(0).getFeatures().getTargetMonth());
+        assertEquals(0, sliding.get(0).getOccurrenceLabel());
+        assertEquals(0.0, sliding.get(1).getFeatures().getLag1(), 1e-9, "2026-03 的 lag_1 应为 2026-02=0");
+
+        FeatureVector jul = sliding.get(5).getFeatures();
+        assertEquals("2026-07", jul.getTargetMonth());
+        assertEquals(4.0, jul.getLag1(), 1e-9);
+        assertEquals(4.0 / 3.0, jul.getLag3Mean(), 1e-9);
+        assertEquals(3.0 / 6.0, jul.getZeroRatio6(), 1e-9);
+        assertEquals(100.0, jul.getEquipHr(), 1e-9);
+        assertEquals(2.0, jul.getRepairCnt(), 1e-9);
+        assertEquals(4.0, jul.getPosLag1(), 1e-9);
+        assertEquals(4.0, jul.getPosLag3Mean(), 1e-9);
+        assertBitIdentical(builder.buildInferenceVector(ctx, "2026-07", monthlyCodes, true), jul, "2026-07");
+
+        // 篡改 >= 2026-07 的数据不得改变 2026-07 的特征
+        ctx.getMonthlyDemand().put("2026-07", -12345.0);
+        ctx.getMonthlyDemand().put("2026-09", 777.0);
+        ctx.getMonthlyEquipHr().put("2026-07", -1.0);
+        ctx.getMonthlyRepairCnt().put("2026-07", -1.0);
+        List<TrainingSample> tampered = builder.buildTrainingSamples(ctx, labels, monthlyCodes);
+        assertBitIdentical(jul, tampered.get(5).getFeatures(), "篡改后 2026-07");
+    }
+
+    @Test
+    @DisplayName("随机上下文：升序/降序连续区间与逐月构造逐位一致")
+    void testRandomContextsMatchPointwise() {
+        for (long seed = 1; seed <= 40; seed++) {
+            PartFeatureContext ctx = randomContext(seed);
+            List<String> asc = range("2019-06", 100);
+            assertSamplesIdentical(builder.buildTrainingSamplesPointwise(ctx, asc, monthlyCodes),
+                    builder.buildTrainingSamples(ctx, asc, monthlyCodes));
+
+            // 月度重算传入的是 target-1, target-2, ... 的降序列表
+            List<String> desc = new ArrayList<>(range("2022-03", 36));
+            Collections.reverse(desc);
+            assertSamplesIdentical(builder.buildTrainingSamplesPointwise(ctx, desc, monthlyCodes),
+                    builder.buildTrainingSamples(ctx, desc, monthlyCodes));
+        }
+    }
+
+    @Test
+    @DisplayName("边界：正需求超出 600 月回看上限被忽略、非连续标签月回退逐月构造")
+    void testLookbackLimitAndNonContiguous() {
+        PartFeatureContext ctx = new PartFeatureContext("OLD");
+        ctx.getMonthlyDemand().put("1970-01", 9.0);
+        ctx.getMonthlyDemand().put("2019-12", 0.0);
+        List<String> labels = range("2019-11", 5); // 2019-12 / 2020-01 起跨越 600 月边界
+        List<TrainingSample> sliding = builder.buildTrainingSamples(ctx, labels, null);
+        assertSamplesIdentical(builder.buildTrainingSamplesPointwise(ctx, labels, null), sliding);
+        assertEquals(9.0, sliding.get(0).getFeatures().getPosLag1(), 1e-9, "2019-11 距 1970-01 恰好 598 月");
+        assertEquals(0.0, sliding.get(sliding.size() - 1).getFeatures().getPosLag1(), 1e-9);
+
+        PartFeatureContext r = randomContext(99);
+        List<String> gaps = Arrays.asList("2021-05", "2021-03", "2022-01", "2021-04");
+        assertSamplesIdentical(builder.buildTrainingSamplesPointwise(r, gaps, monthlyCodes),
+                builder.buildTrainingSamples(r, gaps, monthlyCodes));
+    }
+}
@@ -0,0 +1,144 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.dto.MonthlyConsumptionVO;
+import com.langdong.spare.entity.AiDeviceFeature;
+import com.langdong.spare.entity.EquipmentSparePart;
+import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.mapper.AiDeviceFeatureMapper;
+import com.langdong.spare.mapper.EquipmentSparePartMapper;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ForecastFeatureLoader 批量流式加载单元测试：与逐备件查询旧路径结果逐月一致，且不再逐备件访问 DB。
+ */
+public class ForecastFeatureLoaderTest {
+
+    private final List<SparePart> parts = new ArrayList<>();
+    private final List<EquipmentSparePart> mappings = new ArrayList<>();
+    private final List<AiDeviceFeature> features = new ArrayList<>();
+
+    private final SparePartMapper sparePartMapper = mock(SparePartMapper.class);
+    private final EquipmentSparePartMapper espMapper = mock(EquipmentSparePartMapper.class);
+    private final AiDeviceFeatureMapper featureMapper = mock(AiDeviceFeatureMapper.class);
+
+    @SuppressWarnings("unchecked")
+    private void prepareData() {
+        Random rnd = new Random(11L);
+        for (long p = 1; p <= 20; p++) {
+            SparePart part = new SparePart();
+            part.setId(p);
+            part.setCode("SP" + p);
+            parts.add(part);
+            // 每个备件关联 0~3 台设备（设备池 1..8，可被多个备件共享）
+            int k = rnd.nextInt(4);
+            for (int i = 0; i < k; i++) {
+                EquipmentSparePart esp = new EquipmentSparePart();
+                esp.setEquipmentId(1L + rnd.nextInt(8));
+                esp.setSparePartId(p);
+                mappings.add(esp);
+            }
+        }
+        // 设备特征覆盖 2024-01 ~ 2026-08（含目标月及之后，用于校验防泄露）
+        for (long d = 1; d <= 8; d++) {
+            YearMonth m = YearMonth.of(2024, 1);
+            while (!m.isAfter(YearMonth.of(2026, 8))) {
+                AiDeviceFeature f = new AiDeviceFeature();
+                f.setDeviceId(d);
+                f.setStatMonth(m.toString());
+                f.setRunHours(BigDecimal.valueOf(rnd.nextInt(7200), 1));
+                f.setWorkOrderCount(rnd.nextInt(5));
+                features.add(f);
+                m = m.plusMonths(1);
+            }
+        }
+
+        MonthlyConsumptionVO vo = new MonthlyConsumptionVO();
+        vo.setPartCode("SP1");
+        vo.setMonth("2026-03");
+        vo.setQty(4);
+        when(sparePartMapper.findAllForClassify()).thenReturn(parts);
+        doAnswer(inv -> {
+            emit(List.of(vo), inv.getArgument(1));
+            return null;
+        }).when(sparePartMapper).streamMonthlyConsumption(anyString(), any());
+
+        when(espMapper.findBySparePartId(anyLong())).thenAnswer(inv -> {
+            Long id = inv.getArgument(0);
+            return mappings.stream().filter(e -> e.getSparePartId().equals(id)).toList();
+        });
+        when(featureMapper.findByDeviceIds(anyList(), anyString())).thenAnswer(inv -> {
+            List<Long> ids = inv.getArgument(0);
+            String from = inv.getArgument(1);
+            return features.stream()
+                    .filter(f -> ids.contains(f.getDeviceId()) && f.getStatMonth().compareTo(from) >= 0)
+                    .toList();
+        });
+        doAnswer(inv -> {
+            emit(mappings, inv.getArgument(0));
+            return null;
+        }).when(espMapper).streamAllMappings(any());
+        doAnswer(inv -> {
+            String from = inv.getArgument(0);
+            String to = inv.getArgument(1);
+            Set<Long> mapped = new HashSet<>();
+            mappings.forEach(e -> mapped.add(e.getEquipmentId()));
+            emit(features.stream()
+                    .filter(f -> mapped.contains(f.getDeviceId())
+                            && f.getStatMonth().compareTo(from) >= 0 && f.getStatMonth().compareTo(to) < 0)
+                    .toList(), inv.getArgument(2));
+            return null;
+        }).when(featureMapper).streamMappedFeatures(anyString(), anyString(), any());
+    }
+
+    private static <T> void emit(List<T> rows, ResultHandler<T> handler) {
+        DefaultResultContext<T> ctx = new DefaultResultContext<>();
+        for (T row : rows) {
+            ctx.nextResultObject(row);
+            handler.handleResult(ctx);
+        }
+    }
+
+    private Map<String, PartFeatureContext> load(boolean bulk) {
+        ForecastProperties props = new ForecastProperties();
+        props.setBulkFeatureLoad(bulk);
+        return new ForecastFeatureLoader(new ConsumptionSnapshotProvider(sparePartMapper, props), espMapper, featureMapper, props)
+                .loadAllContexts("2026-06", 24);
+    }
+
+    @Test
+    @DisplayName("批量流式加载：设备运行时长/工单数逐月与逐备件旧路径完全一致，且只做两次关联查询")
+    void testBulkMatchesPerPart() {
+        prepareData();
+        Map<String, PartFeatureContext> legacy = load(false);
+        Map<String, PartFeatureContext> bulk = load(true);
+
+        assertEquals(legacy.keySet(), bulk.keySet());
+        for (String code : legacy.keySet()) {
+            PartFeatureContext a = legacy.get(code);
+            PartFeatureContext b = bulk.get(code);
+            assertEquals(a.getMonthlyDemand(), b.getMonthlyDemand(), code);
+            assertEquals(a.getMonthlyEquipHr(), b.getMonthlyEquipHr(), code);
+            assertEquals(a.getMonthlyRepairCnt(), b.getMonthlyRepairCnt(), code);
+            assertTrue(b.getMonthlyEquipHr().keySet().stream().allMatch(m -> m.compareTo("2026-06") < 0),
+                    "不得包含目标月及之后的设备特征");
+        }
+
+        verify(espMapper, times(1)).streamAllMappings(any());
+        verify(featureMapper, times(1)).streamMappedFeatures(eq("2024-06"), eq("2026-06"), any());
+        // 旧路径调用次数 = 备件数；批量路径未新增逐备件调用
+        verify(espMapper, times(parts.size())).findBySparePartId(anyLong());
+    }
+}
@@ -0,0 +1,195 @@
+package com.langdong.spare.forecast.feature;
+
+import com.langdong.spare.dto.MonthlyConsumptionVO;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * MonthlyConsumptionMatrix 流式折叠与存储占用测试
+ */
+public class MonthlyConsumptionMatrixTest {
+
+    private static final YearMonth FROM = YearMonth.of(2023, 7);
+    private static final YearMonth TO = YearMonth.of(2026, 7);
+
+    @Test
+    @DisplayName("流式折叠：区间外月份与未知备件丢弃，有记录月与缺失月可区分，结果与 List 分组一致")
+    void testFoldMatchesListGrouping() {
+        List<String> codes = codes(50);
+        List<MonthlyConsumptionVO> rows = new ArrayList<>();
+        for (int p = 0; p < 50; p++) {
+            for (YearMonth m = FROM.minusMonths(2); !m.isAfter(TO); m = m.plusMonths(1)) {
+                if ((p * 7 + m.getMonthValue()) % 3 != 0) {
+                    rows.add(vo(codes.get(p), m.toString(), (p + m.getMonthValue()) % 9));
+                }
+            }
+        }
+        rows.add(vo("UNKNOWN", "2025-01", 5));
+        rows.add(vo("SP00001", "bad", 5));
+
+        SparePartMapper mapper = mock(SparePartMapper.class);
+        doAnswer(inv -> {
+            emit(rows, inv.getArgument(1));
+            return null;
+        }).when(mapper).streamMonthlyConsumption(eq("2023-07-01"), any());
+
+        MonthlyConsumptionMatrix matrix = MonthlyConsumptionMatrix.load(mapper, codes, FROM, TO);
+
+        Map<String, Map<String, Double>> expected = groupLikeListPath(rows, codes);
+        int accepted = 0;
+        for (String code : codes) {
+            int row = matrix.rowOf(code);
+            Map<String, Double> months = expected.getOrDefault(code, new HashMap<>());
+            accepted += months.size();
+            for (YearMonth m = FROM.minusMonths(2); !m.isAfter(TO); m = m.plusMonths(1)) {
+                int idx = MonthSeries.indexOf(m);
+                assertEquals(months.containsKey(m.toString()), matrix.has(row, idx), code + "@" + m);
+                assertEquals(months.getOrDefault(m.toString(), 0.0), matrix.at(row, idx), code + "@" + m);
+            }
+        }
+        assertEquals(36, matrix.span());
+        assertEquals(accepted, matrix.acceptedRows());
+        assertEquals(rows.size() - accepted, matrix.droppedRows());
+        assertEquals(-1, matrix.rowOf("UNKNOWN"));
+        assertEquals(0.0, matrix.at(-1, MonthSeries.indexOf(FROM)));
+        verify(mapper, times(1)).streamMonthlyConsumption(eq("2023-07-01"), any());
+    }
+
+    @Test
+    @DisplayName("驻留占用：5000 个备件 × 36 个月流式折叠后，存储仅为固定的 备件数 × 月数 原始数组，不随记录行数增长")
+    void testFootprintIsFixedPrimitiveArrays() {
+        int parts = 5000;
+        List<String> codes = codes(parts);
+        MonthlyConsumptionMatrix matrix = new MonthlyConsumptionMatrix(codes, FROM, TO);
+        double[] values = matrix.values();
+        assertEquals(36, matrix.span());
+        assertEquals(parts * matrix.span(), values.length);
+
+        // 逐行折叠 18 万条记录：不保留行对象，也不扩容，写入的始终是构造时分配的同一数组
+        generate(parts, matrix::accept);
+        generate(parts, matrix::accept);
+        assertSame(values, matrix.values());
+        assertEquals(parts * matrix.span(), matrix.values().length);
+        assertEquals(2 * parts * 36, matrix.acceptedRows());
+        assertEquals(parts, matrix.partsWithConsumption());
+        int row = matrix.rowOf(code(42));
+        assertEquals(1 + (42 + FROM.getMonthValue()) % 40, matrix.at(row, MonthSeries.indexOf(FROM)));
+    }
+
+    @Test
+    @DisplayName("内存对比：同为 5000 个备件 × 36 个月，按对象布局估算矩阵约 1.6 MB，物化行列表约 25 MB")
+    void testEstimatedFootprintAgainstMaterialisedList() {
+        int parts = 5000;
+        MonthlyConsumptionMatrix matrix = new MonthlyConsumptionMatrix(codes(parts), FROM, TO);
+        int cells = parts * matrix.span();
+        assertEquals(cells, matrix.values().length);
+
+        // 矩阵：double[cells] + boolean[cells]（编码→行号索引两条路径都需要，不计入）
+        long matrixBytes = arrayBytes(8, cells) + arrayBytes(1, cells);
+        // 物化列表：引用数组 + 每行一个 VO（3 个引用字段）、编码与月份各一个 String、一个 Integer
+        long rowBytes = objectBytes(3 * REF) + stringBytes(code(0).length()) + stringBytes(FROM.toString().length())
+                + objectBytes(4);
+        long listBytes = arrayBytes(REF, cells) + (long) cells * rowBytes;
+
+        assertEquals(1_620_032L, matrixBytes);
+        assertEquals(136L, rowBytes);
+        assertEquals(25_200_016L, listBytes);
+        assertTrue(listBytes > 15 * matrixBytes, listBytes + " vs " + matrixBytes);
+    }
+
+    /** 对象布局估算口径：64 位 JVM、压缩指针，对象头 12 字节、数组头 16 字节、引用 4 字节、8 字节对齐。 */
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REF = 4;
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
+    private static long objectBytes(int fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    private static long arrayBytes(int elementBytes, int length) {
+        return align(ARRAY_HEADER + (long) elementBytes * length);
+    }
+
+    /** Latin-1 紧凑字符串：String（value 引用 + hash + coder + hashIsZero）+ byte[]。 */
+    private static long stringBytes(int length) {
+        return objectBytes(REF + 4 + 1 + 1) + arrayBytes(1, length);
+    }
+
+    /** 按 JDBC 行映射的方式逐行生成新对象（每行独立的编码、月份字符串）。 */
+    private static void generate(int parts, Consumer<MonthlyConsumptionVO> sink) {
+        for (int p = 0; p < parts; p++) {
+            for (YearMonth m = FROM; m.isBefore(TO); m = m.plusMonths(1)) {
+                sink.accept(vo(new String(code(p)), new String(m.toString()), 1 + (p + m.getMonthValue()) % 40));
+            }
+        }
+    }
+
+    /** 旧路径口径：partCode -> (month -> qty)，只保留 [FROM, TO) 内、编码已知的记录。 */
+    private static Map<String, Map<String, Double>> groupLikeListPath(List<MonthlyConsumptionVO> rows, List<String> codes) {
+        Set<String> known = new HashSet<>(codes);
+        Map<String, Map<String, Double>> byPart = new HashMap<>();
+        for (MonthlyConsumptionVO vo : rows) {
+            YearMonth m;
+            try {
+                m = YearMonth.parse(vo.getMonth());
+            } catch (Exception e) {
+                continue;
+            }
+            if (!known.contains(vo.getPartCode()) || m.isBefore(FROM) || !m.isBefore(TO)) {
+                continue;
+            }
+            byPart.computeIfAbsent(vo.getPartCode(), k -> new HashMap<>())
+                    .put(vo.getMonth(), vo.getQty() == null ? 0.0 : vo.getQty());
+        }
+        return byPart;
+    }
+
+    private static <T> void emit(List<T> rows, ResultHandler<T> handler) {
+        DefaultResultContext<T> ctx = new DefaultResultContext<>();
+        for (T row : rows) {
+            ctx.nextResultObject(row);
+            handler.handleResult(ctx);
+        }
+    }
+
+    private static List<String> codes(int n) {
+        List<String> codes = new ArrayList<>(n);
+        for (int p = 0; p < n; p++) {
+            codes.add(code(p));
+        }
+        return codes;
+    }
+
+    private static String code(int p) {
+        return String.format("SP%05d", p + 1);
+    }
+
+    private static MonthlyConsumptionVO vo(String code, String month, int qty) {
+        MonthlyConsumptionVO vo = new MonthlyConsumptionVO();
+        vo.setPartCode(code);
+        vo.setMonth(month);
+        vo.setQty(qty);
+        return vo;
+    }
+}
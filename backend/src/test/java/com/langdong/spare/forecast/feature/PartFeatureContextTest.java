@@ -0,0 +1,81 @@
+package com.langdong.spare.forecast.feature;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PartFeatureContext 列式存储单元测试：Map 视图语义兼容、派生索引随写入重建。
+ */
+public class PartFeatureContextTest {
+
+    @Test
+    @DisplayName("Map 视图：显式 0 与缺失区分、按月升序迭代、与 HashMap 相等")
+    void testMapViewSemantics() {
+        PartFeatureContext ctx = new PartFeatureContext("SP1");
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("2025-11", 2.0);
+        expected.put("2024-03", 0.0);
+        expected.put("2026-01", 7.5);
+        expected.forEach(ctx.getMonthlyDemand()::put);
+
+        assertEquals(expected, ctx.getMonthlyDemand());
+        assertEquals(List.of("2024-03", "2025-11", "2026-01"), List.copyOf(ctx.getMonthlyDemand().keySet()));
+        assertTrue(ctx.getMonthlyDemand().containsKey("2024-03"));
+        assertFalse(ctx.getMonthlyDemand().containsKey("2024-04"));
+        assertEquals(0.0, ctx.demandOf("2024-04"));
+        assertEquals(0.0, ctx.demandOf("not-a-month"));
+        assertEquals(7.5, ctx.demandOf("2026-01"));
+
+        ctx.getMonthlyEquipHr().merge("2025-01", 10.0, Double::sum);
+        ctx.getMonthlyEquipHr().merge("2025-01", 2.5, Double::sum);
+        assertEquals(12.5, ctx.equipHrOf("2025-01"));
+
+        assertThrows(IllegalArgumentException.class, () -> ctx.getMonthlyRepairCnt().put("2025/01", 1.0));
+    }
+
+    @Test
+    @DisplayName("派生索引：首个历史月、零需求计数、最近正需求月在写入后自动重建")
+    void testDerivedIndicesRebuildOnWrite() {
+        PartFeatureContext ctx = new PartFeatureContext("SP1");
+        ctx.getMonthlyDemand().put("2026-02", 0.0);
+        ctx.getMonthlyDemand().put("2026-03", 3.0);
+
+        int feb = MonthSeries.indexOf(YearMonth.of(2026, 2));
+        assertEquals(feb, ctx.firstHistoryIndex());
+        // 2025-10 ~ 2026-03 六个月中仅 03 非零
+        assertEquals(5, ctx.zeroDemandMonths(feb - 4, feb + 2));
+        assertEquals(feb + 1, ctx.lastPositiveAtOrBefore(feb + 10));
+        assertEquals(MonthSeries.INVALID, ctx.lastPositiveAtOrBefore(feb));
+
+        ctx.getMonthlyDemand().put("2025-12", 4.0);
+        assertEquals(feb - 2, ctx.firstHistoryIndex());
+        assertEquals(4, ctx.zeroDemandMonths(feb - 4, feb + 2));
+        assertEquals(feb - 2, ctx.lastPositiveAtOrBefore(feb));
+
+        ctx.getMonthlyDemand().remove("2025-12");
+        assertEquals(feb, ctx.firstHistoryIndex());
+        assertEquals(Integer.MAX_VALUE, new PartFeatureContext("X").firstHistoryIndex());
+    }
+
+    @Test
+    @DisplayName("月份序号与 yyyy-MM 互转")
+    void testMonthIndexRoundTrip() {
+        YearMonth m = YearMonth.of(2019, 1);
+        for (int i = 0; i < 120; i++) {
+            int idx = MonthSeries.indexOf(m.toString());
+            assertEquals(MonthSeries.indexOf(m), idx);
+            assertEquals(m.toString(), MonthSeries.monthOf(idx));
+            assertEquals(m.getMonthValue(), MonthSeries.calendarMonth(idx));
+            m = m.plusMonths(1);
+        }
+        assertEquals(MonthSeries.INVALID, MonthSeries.indexOf("2026-13"));
+        assertEquals(MonthSeries.INVALID, MonthSeries.indexOf("2026-1"));
+    }
+}
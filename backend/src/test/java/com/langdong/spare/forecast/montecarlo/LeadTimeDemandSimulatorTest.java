@@ -2,6 +2,7 @@ package com.langdong.spare.forecast.montecarlo;
 
 import com.langdong.spare.forecast.config.ForecastProperties;
 import com.langdong.spare.forecast.model.SafetyStockResult;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -52,6 +53,81 @@ public class LeadTimeDemandSimulatorTest {
                 + ", Mean=" + res1.getSampleMean() + ", Quantile=" + res1.getLeadTimeDemandQuantile());
     }
 
+    @Test
+    @DisplayName("模拟核心：分位数与导出样本的 Percentile 一致，复用缓冲区不影响结果")
+    void testQuantileMatchesExportedSamplesAndBufferReuse() {
+        ForecastProperties properties = createProperties();
+        LeadTimeDemandSimulator simulator = new LeadTimeDemandSimulator(properties);
+
+        double[] samples = simulator.simulateLeadTimeDemandSamples(0.4, 12.5, 6.0, 19.0, 40, 10000);
+        double mean = 0.0;
+        for (double v : samples) {
+            mean += v;
+            assertTrue(v >= 0.0);
+        }
+        mean /= samples.length;
+
+        SafetyStockResult res = simulator.calculateSafetyStock(0.4, 12.5, 6.0, 19.0, 40, 0.95);
+        assertEquals(new Percentile().evaluate(samples, 95.0), res.getLeadTimeDemandQuantile(), 0.0);
+        assertEquals(mean, res.getSampleMean(), 0.0);
+
+        // 先用更大的模拟次数撑大线程缓冲区，再回到 10000 次，结果不变
+        properties.getMonteCarlo().setSimulations(25000);
+        simulator.calculateSafetyStock(0.9, 30.0, 10.0, 50.0, 60, 0.99);
+        properties.getMonteCarlo().setSimulations(10000);
+        SafetyStockResult again = simulator.calculateSafetyStock(0.4, 12.5, 6.0, 19.0, 40, 0.95);
+        assertEquals(res.getLeadTimeDemandQuantile(), again.getLeadTimeDemandQuantile(), 0.0);
+        assertEquals(res.getSampleMean(), again.getSampleMean(), 0.0);
+
+        // 理论均值 E = p · E[Y] · L / W ≈ 9.1（截断影响可忽略，μ/σ≈3.2）；1 万次样本标准误约 0.1
+        assertEquals(0.4 * 12.5 * 40 / 22.0, res.getSampleMean(), 0.3);
+    }
+
+    @Test
+    @DisplayName("分块并行：结果与并行度无关（逐位一致），且与单流模拟统计一致")
+    void testBlockParallelDeterministicAcrossParallelism() {
+        double[] params = {0.7, 20.0, 12.0, 28.0};
+        double[] quantiles = new double[3];
+        double[] means = new double[3];
+        int[] parallelisms = {1, 3, 8};
+        for (int i = 0; i < parallelisms.length; i++) {
+            ForecastProperties props = createProperties();
+            props.getMonteCarlo().setParallelThreshold(50000);
+            props.getMonteCarlo().setBlockSize(7000); // 末块不满，校验边界
+            props.getMonteCarlo().setParallelism(parallelisms[i]);
+            LeadTimeDemandSimulator simulator = new LeadTimeDemandSimulator(props);
+            SafetyStockResult res = simulator.calculateSafetyStock(
+                    params[0], params[1], params[2], params[3], 45, 0.99, 100000);
+            quantiles[i] = res.getLeadTimeDemandQuantile();
+            means[i] = res.getSampleMean();
+            simulator.shutdown();
+        }
+        assertEquals(quantiles[0], quantiles[1], 0.0);
+        assertEquals(quantiles[0], quantiles[2], 0.0);
+        assertEquals(means[0], means[1], 0.0);
+        assertEquals(means[0], means[2], 0.0);
+
+        // 单流 10 万次（关闭分块）作为对照：分位数/均值统计意义上一致
+        ForecastProperties single = createProperties();
+        single.getMonteCarlo().setParallelThreshold(0);
+        SafetyStockResult ref = new LeadTimeDemandSimulator(single).calculateSafetyStock(
+                params[0], params[1], params[2], params[3], 45, 0.99, 100000);
+        assertEquals(ref.getSampleMean(), means[0], 0.01 * ref.getSampleMean());
+        assertEquals(ref.getLeadTimeDemandQuantile(), quantiles[0], 0.02 * ref.getLeadTimeDemandQuantile());
+    }
+
+    @Test
+    @DisplayName("按 ABC 类别解析模拟次数：A 类覆盖，其余回退默认")
+    void testSimulationsByClass() {
+        ForecastProperties.MonteCarlo mc = createProperties().getMonteCarlo();
+        mc.getSimulationsByClass().put("A", 100000);
+        assertEquals(100000, mc.simulationsOf("A"));
+        assertEquals(10000, mc.simulationsOf("B"));
+        assertEquals(10000, mc.simulationsOf(null));
+        assertTrue(mc.isBlockParallel(100000));
+        assertFalse(mc.isBlockParallel(10000));
+    }
+
     @Test
     @DisplayName("边界与异常单测：非法输入抛出异常，提前期为 0 时返回 0")
     void testBoundariesAndExceptions() {
@@ -0,0 +1,114 @@
+package com.langdong.spare.forecast.montecarlo;
+
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.forecast.model.SafetyStockResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LeadTimeQuantileService 单元测试：单月半解析近似精度、量化缓存命中与统计、开关回退。
+ */
+public class LeadTimeQuantileServiceTest {
+
+    private ForecastProperties createProperties() {
+        ForecastProperties properties = new ForecastProperties();
+        properties.getMonteCarlo().setSeed(20260518L);
+        properties.getMonteCarlo().setSimulations(10000);
+        properties.getMonteCarlo().setWorkingDays(22);
+        return properties;
+    }
+
+    @Test
+    @DisplayName("单月提前期：半解析分位数与 40 万次模拟参考值一致（相对误差 < 3%），均值为精确值")
+    void testAnalyticMatchesLargeSimulation() {
+        ForecastProperties props = createProperties();
+        LeadTimeQuantileService service = new LeadTimeQuantileService(new LeadTimeDemandSimulator(props), props);
+
+        ForecastProperties refProps = createProperties();
+        refProps.getMonteCarlo().setSimulations(400000);
+        LeadTimeDemandSimulator reference = new LeadTimeDemandSimulator(refProps);
+
+        double[][] cases = {
+                // p, ŷ, L, U, leadTime, α
+                {0.4, 12.5, 6.0, 19.0, 14, 0.95},
+                {0.9, 30.0, 20.0, 40.0, 22, 0.99},
+                {1.0, 8.0, 5.0, 11.0, 5, 0.90},
+                {0.6, 3.0, 1.0, 5.0, 10, 0.95},
+                {0.3, 50.0, 35.0, 65.0, 18, 0.99},
+        };
+        for (double[] c : cases) {
+            SafetyStockResult a = service.calculateSafetyStock(c[0], c[1], c[2], c[3], (int) c[4], c[5]);
+            SafetyStockResult r = reference.calculateSafetyStock(c[0], c[1], c[2], c[3], (int) c[4], c[5]);
+            String msg = java.util.Arrays.toString(c);
+            assertEquals(r.getLeadTimeDemandQuantile(), a.getLeadTimeDemandQuantile(),
+                    0.03 * r.getLeadTimeDemandQuantile(), msg);
+            assertEquals(r.getSampleMean(), a.getSampleMean(), 0.01 * r.getSampleMean() + 0.02, msg);
+            assertEquals((int) Math.ceil(a.getLeadTimeDemandQuantile()), a.getReorderPoint());
+            assertEquals(a.getReorderPoint() - (int) Math.ceil(a.getSampleMean()), a.getSafetyStock());
+        }
+        assertEquals(cases.length, service.stats().analytic());
+        assertEquals(0, service.stats().simulated());
+
+        // 退化：σ=0 时正需求为常数；发生概率 0 时全为 0
+        SafetyStockResult flat = service.calculateSafetyStock(1.0, 11.0, 11.0, 11.0, 22, 0.95);
+        assertEquals(11.0, flat.getLeadTimeDemandQuantile(), 1e-6);
+        SafetyStockResult none = service.calculateSafetyStock(0.0, 11.0, 5.0, 15.0, 10, 0.95);
+        assertEquals(0, none.getReorderPoint());
+        assertEquals(0.0, none.getSampleMean(), 0.0);
+    }
+
+    @Test
+    @DisplayName("多月提前期：量化键命中缓存、结果与以量化参数直接模拟一致、统计准确")
+    void testQuantisedCache() {
+        ForecastProperties props = createProperties();
+        LeadTimeDemandSimulator simulator = new LeadTimeDemandSimulator(props);
+        LeadTimeQuantileService service = new LeadTimeQuantileService(simulator, props);
+
+        SafetyStockResult first = service.calculateSafetyStock(0.41234, 12.50004, 6.00001, 19.00002, 45, 0.95);
+        SafetyStockResult second = service.calculateSafetyStock(0.41226, 12.49996, 5.99999, 18.99998, 45, 0.95);
+        assertSame(first, second, "量化后参数相同应命中缓存");
+
+        SafetyStockResult direct = simulator.calculateSafetyStock(0.4123, 12.5, 6.0, 19.0, 45, 0.95);
+        assertEquals(direct.getLeadTimeDemandQuantile(), first.getLeadTimeDemandQuantile(), 0.0);
+        assertEquals(direct.getSampleMean(), first.getSampleMean(), 0.0);
+
+        service.calculateSafetyStock(0.4123, 12.5, 6.0, 19.0, 45, 0.99); // 服务水平不同 → 未命中
+        LeadTimeQuantileService.Stats stats = service.stats();
+        assertEquals(1, stats.cacheHits());
+        assertEquals(2, stats.simulated());
+        assertEquals(1.0 / 3.0, stats.cacheHitRate(), 1e-12);
+
+        service.resetStats();
+        assertEquals(0, service.stats().total());
+    }
+
+    @Test
+    @DisplayName("LRU 容量受限时淘汰最久未用的键；关闭解析与缓存时直接委托模拟器")
+    void testEvictionAndDisabledPaths() {
+        ForecastProperties props = createProperties();
+        props.getMonteCarlo().setCacheSize(2);
+        LeadTimeQuantileService service = new LeadTimeQuantileService(new LeadTimeDemandSimulator(props), props);
+
+        service.calculateSafetyStock(0.5, 10.0, 5.0, 15.0, 30, 0.95); // A
+        service.calculateSafetyStock(0.5, 10.0, 5.0, 15.0, 31, 0.95); // B
+        service.calculateSafetyStock(0.5, 10.0, 5.0, 15.0, 30, 0.95); // A 命中，B 成为最久未用
+        service.calculateSafetyStock(0.5, 10.0, 5.0, 15.0, 32, 0.95); // C 淘汰 B
+        service.calculateSafetyStock(0.5, 10.0, 5.0, 15.0, 31, 0.95); // B 重新模拟
+        assertEquals(1, service.stats().cacheHits());
+        assertEquals(4, service.stats().simulated());
+
+        ForecastProperties off = createProperties();
+        off.getMonteCarlo().setAnalyticSingleMonth(false);
+        off.getMonteCarlo().setCacheEnabled(false);
+        LeadTimeDemandSimulator simulator = new LeadTimeDemandSimulator(off);
+        LeadTimeQuantileService plain = new LeadTimeQuantileService(simulator, off);
+        SafetyStockResult viaService = plain.calculateSafetyStock(0.41234, 12.5, 6.0, 19.0, 14, 0.95);
+        SafetyStockResult viaSimulator = simulator.calculateSafetyStock(0.41234, 12.5, 6.0, 19.0, 14, 0.95);
+        assertEquals(viaSimulator.getLeadTimeDemandQuantile(), viaService.getLeadTimeDemandQuantile(), 0.0);
+        assertEquals(1, plain.stats().simulated());
+
+        assertThrows(IllegalArgumentException.class, () -> plain.calculateSafetyStock(1.2, 1, 0, 2, 5, 0.9));
+    }
+}
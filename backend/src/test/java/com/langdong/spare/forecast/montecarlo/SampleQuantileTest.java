@@ -0,0 +1,43 @@
+package com.langdong.spare.forecast.montecarlo;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SampleQuantile 选择算法分位数单元测试：与 commons-math Percentile 结果逐位一致。
+ */
+public class SampleQuantileTest {
+
+    @Test
+    @DisplayName("选择分位数：随机样本（含大量重复 0）与 Percentile 完全一致")
+    void testMatchesPercentile() {
+        Random rnd = new Random(5L);
+        double[] quantiles = {0.0, 1.0, 50.0, 90.0, 95.0, 99.0, 99.9, 100.0};
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + rnd.nextInt(3000);
+            double[] data = new double[n];
+            for (int i = 0; i < n; i++) {
+                data[i] = rnd.nextDouble() < 0.6 ? 0.0 : Math.floor(rnd.nextDouble() * 40) / 4.0;
+            }
+            for (double q : quantiles) {
+                double expected = q == 0.0 ? Arrays.stream(data).min().getAsDouble() : new Percentile().evaluate(data, q);
+                double[] work = Arrays.copyOf(data, n + 7); // 缓冲区可大于有效样本数
+                assertEquals(expected, SampleQuantile.evaluate(work, n, q), 0.0, "n=" + n + ", q=" + q);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("选择分位数：非法参数抛出异常")
+    void testIllegalArguments() {
+        assertThrows(IllegalArgumentException.class, () -> SampleQuantile.evaluate(new double[3], 0, 50));
+        assertThrows(IllegalArgumentException.class, () -> SampleQuantile.evaluate(new double[3], 4, 50));
+        assertThrows(IllegalArgumentException.class, () -> SampleQuantile.evaluate(new double[3], 3, 100.5));
+    }
+}
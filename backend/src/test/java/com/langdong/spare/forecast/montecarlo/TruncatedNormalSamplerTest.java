@@ -1,9 +1,12 @@
 package com.langdong.spare.forecast.montecarlo;
 
+import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.random.JDKRandomGenerator;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.SplittableRandom;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -61,4 +64,47 @@ public class TruncatedNormalSamplerTest {
         double val = sampler.sample(rng, -100.0, 1.0);
         assertEquals(0.0, val, 1e-9, "极端负值截断应安全返回 0.0");
     }
+
+    @Test
+    @DisplayName("有理逆 CDF：与 commons-math 逆累积概率在全区间一致（含尾部）")
+    void testInverseStandardNormalAccuracy() {
+        NormalDistribution nd = new NormalDistribution(0.0, 1.0);
+        // commons-math 在极端尾部本身只有约 1e-6 精度（Φ⁻¹(1e-12) 真值 -7.0344838253）
+        assertEquals(-7.0344838253, TruncatedNormalSampler.inverseStandardNormal(1e-12), 1e-9);
+        double[] tails = {1e-9, 1e-7, 1e-4, 0.01, 0.0249, 0.075, 0.075001};
+        for (double t : tails) {
+            double tol = t < 1e-6 ? 1e-5 : 1e-8;
+            assertEquals(nd.inverseCumulativeProbability(t), TruncatedNormalSampler.inverseStandardNormal(t), tol);
+            assertEquals(nd.inverseCumulativeProbability(1 - t), TruncatedNormalSampler.inverseStandardNormal(1 - t), tol);
+        }
+        for (int i = 1; i < 1000; i++) {
+            double p = i / 1000.0;
+            assertEquals(nd.inverseCumulativeProbability(p), TruncatedNormalSampler.inverseStandardNormal(p), 1e-9);
+        }
+    }
+
+    @Test
+    @DisplayName("预计算采样：非负、经验均值符合理论、退化情形返回常数且同种子可复现")
+    void testPreparedSampling() {
+        TruncatedNormalSampler.Prepared prepared = sampler.prepare(5.0, 2.0);
+        SplittableRandom rng = new SplittableRandom(42L);
+        double sum = 0.0;
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            double val = prepared.sample(rng);
+            assertTrue(val >= 0.0);
+            sum += val;
+        }
+        assertEquals(5.035, sum / count, 0.05);
+
+        SplittableRandom a = new SplittableRandom(7L);
+        SplittableRandom b = new SplittableRandom(7L);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(prepared.sample(a), prepared.sample(b), 0.0);
+        }
+
+        assertEquals(5.0, sampler.prepare(5.0, 1e-12).sample(rng), 1e-9);
+        assertEquals(0.0, sampler.prepare(-2.0, 0.0).sample(rng), 1e-9);
+        assertEquals(0.0, sampler.prepare(-100.0, 1.0).sample(rng), 1e-9);
+    }
 }
@@ -0,0 +1,170 @@
+package com.langdong.spare.forecast.service;
+
+import com.langdong.spare.entity.AiForecastResult;
+import com.langdong.spare.entity.PartClassify;
+import com.langdong.spare.forecast.config.ForecastProperties;
+import com.langdong.spare.mapper.AiForecastResultMapper;
+import com.langdong.spare.mapper.PartClassifyMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * ForecastResultWriter 月度重算结果分批落库单元测试
+ */
+public class ForecastResultWriterTest {
+
+    private AiForecastResultMapper forecastMapper;
+    private PartClassifyMapper classifyMapper;
+    private PlatformTransactionManager transactionManager;
+    private TransactionTemplate transactionTemplate;
+    private final List<String> partCodes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        forecastMapper = mock(AiForecastResultMapper.class);
+        classifyMapper = mock(PartClassifyMapper.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < 23; i++) {
+            partCodes.add(String.format("SP%03d", i));
+        }
+    }
+
+    @Test
+    @DisplayName("DIRECT：重算期间不写库，结束时在一个事务内分段删除旧结果并分批写入，单批行数与分段编码数均不超过 batchSize")
+    void testDirectWritesInSingleFinalTransaction() {
+        ForecastProperties.Persist persist = new ForecastProperties.Persist();
+        persist.setBatchSize(10);
+        persist.setMode(ForecastProperties.Persist.Mode.DIRECT);
+        ForecastResultWriter writer = new ForecastResultWriter(forecastMapper, classifyMapper, transactionTemplate,
+                "2026-07", partCodes, persist);
+
+        writer.begin();
+        // 跳过 2 个备件，交付 21 条
+        for (int i = 0; i < 21; i++) {
+            writer.add(forecast(partCodes.get(i)), classify(partCodes.get(i)));
+        }
+        verifyNoInteractions(forecastMapper, classifyMapper, transactionManager); // 不在重算开始时删除旧结果
+        Runnable registry = mock(Runnable.class);
+        writer.finish(registry);
+
+        InOrder order = inOrder(transactionManager, forecastMapper, registry);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(forecastMapper, times(3)).deleteByMonthAndPartCodes(eq("2026-07"), anyList());
+        order.verify(forecastMapper, times(3)).insertBatch(anyList());
+        order.verify(registry).run();
+        order.verify(transactionManager).commit(any());
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(classifyMapper, times(3)).deleteByMonthAndPartCodes(eq("2026-07"), anyList());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<AiForecastResult>> captor = ArgumentCaptor.forClass(List.class);
+        verify(forecastMapper, times(3)).insertBatch(captor.capture());
+        assertEquals(List.of(10, 10, 1), captor.getAllValues().stream().map(List::size).toList());
+        assertEquals("SP000", captor.getAllValues().get(0).get(0).getPartCode());
+        assertEquals("SP020", captor.getAllValues().get(2).get(0).getPartCode());
+        verify(classifyMapper, times(3)).insertBatch(anyList());
+        verify(forecastMapper, never()).insertStagingBatch(anyList());
+        verify(forecastMapper, never()).publishStagingByMonth(anyString());
+        assertEquals(21, writer.written());
+        assertEquals(3, writer.flushes());
+    }
+
+    @Test
+    @DisplayName("STAGING：每批暂存写入独立提交，全部完成后才在一个事务内删除正式表旧结果并整体搬入，最后清理暂存表")
+    void testStagingChunksCommitSeparately() {
+        ForecastProperties.Persist persist = new ForecastProperties.Persist();
+        persist.setBatchSize(10);
+        persist.setMode(ForecastProperties.Persist.Mode.STAGING);
+        ForecastResultWriter writer = new ForecastResultWriter(forecastMapper, classifyMapper, transactionTemplate,
+                "2026-07", partCodes, persist);
+
+        writer.begin();
+        verify(transactionManager, times(1)).commit(any());
+        for (int i = 0; i < partCodes.size(); i++) {
+            writer.add(forecast(partCodes.get(i)), classify(partCodes.get(i)));
+            if (i == 9) {
+                // 满一批立即在独立事务内写出并提交
+                verify(forecastMapper, times(1)).insertStagingBatch(anyList());
+                verify(transactionManager, times(2)).commit(any());
+            }
+        }
+        verify(forecastMapper, never()).deleteByMonthAndPartCodes(anyString(), anyList());
+        Runnable registry = mock(Runnable.class);
+        writer.finish(registry);
+
+        InOrder order = inOrder(transactionManager, forecastMapper, registry);
+        order.verify(forecastMapper).deleteStagingByMonth("2026-07");
+        order.verify(transactionManager).commit(any());
+        order.verify(forecastMapper).insertStagingBatch(anyList());
+        order.verify(transactionManager).commit(any());
+        order.verify(forecastMapper).insertStagingBatch(anyList());
+        order.verify(transactionManager).commit(any());
+        order.verify(forecastMapper).insertStagingBatch(anyList());
+        order.verify(transactionManager).commit(any());
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(forecastMapper, times(3)).deleteByMonthAndPartCodes(eq("2026-07"), anyList());
+        order.verify(forecastMapper).publishStagingByMonth("2026-07");
+        order.verify(registry).run();
+        order.verify(transactionManager).commit(any());
+        order.verify(forecastMapper).deleteStagingByMonth("2026-07");
+        order.verify(transactionManager).commit(any());
+        // 清理 + 3 批暂存 + 切换 + 清理，共 6 个短事务
+        verify(transactionManager, times(6)).getTransaction(any());
+        verify(classifyMapper, times(3)).insertStagingBatch(anyList());
+        verify(classifyMapper, times(1)).publishStagingByMonth("2026-07");
+        verify(forecastMapper, never()).insertBatch(anyList());
+        assertTrue(writer.isStaging());
+        assertEquals(23, writer.written());
+        assertEquals(3, writer.flushes());
+    }
+
+    @Test
+    @DisplayName("STAGING：批大小 ≤0 回退 500，全部暂存行一批写出")
+    void testStagingBatchSizeFallback() {
+        ForecastProperties.Persist persist = new ForecastProperties.Persist();
+        persist.setBatchSize(0); // ≤0 回退 500
+        persist.setMode(ForecastProperties.Persist.Mode.STAGING);
+        ForecastResultWriter writer = new ForecastResultWriter(forecastMapper, classifyMapper, transactionTemplate,
+                "2026-07", partCodes, persist);
+
+        writer.begin();
+        for (String code : partCodes) {
+            writer.add(forecast(code), classify(code));
+        }
+        writer.finish(null);
+
+        verify(forecastMapper, times(1)).insertStagingBatch(anyList());
+        verify(forecastMapper).deleteByMonthAndPartCodes("2026-07", partCodes);
+        assertEquals(1, writer.flushes());
+    }
+
+    private static AiForecastResult forecast(String code) {
+        AiForecastResult f = new AiForecastResult();
+        f.setPartCode(code);
+        f.setForecastMonth("2026-07");
+        return f;
+    }
+
+    private static PartClassify classify(String code) {
+        PartClassify c = new PartClassify();
+        c.setPartCode(code);
+        c.setClassifyMonth("2026-07");
+        return c;
+    }
+}
@@ -15,7 +15,7 @@ import com.langdong.spare.forecast.model.FeatureVector;
 import com.langdong.spare.forecast.model.ForecastResult;
 import com.langdong.spare.forecast.model.SafetyStockResult;
 import com.langdong.spare.forecast.model.TrainingSample;
-import com.langdong.spare.forecast.montecarlo.LeadTimeDemandSimulator;
+import com.langdong.spare.forecast.montecarlo.LeadTimeQuantileService;
 import com.langdong.spare.forecast.stage.StageOneModel;
 import com.langdong.spare.forecast.stage.StageTwoModel;
 import com.langdong.spare.forecast.stage.TwoStageModel;
@@ -28,6 +28,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -46,7 +47,7 @@ public class IncrementalSnapshotTest {
     private AbcXyzClassifier abcXyzClassifier;
     private FeatureBuilder featureBuilder;
     private PredictionService predictionService;
-    private LeadTimeDemandSimulator leadTimeDemandSimulator;
+    private LeadTimeQuantileService leadTimeQuantileService;
     private SparePartMapper sparePartMapper;
     private AiForecastResultMapper aiForecastResultMapper;
     private PartClassifyMapper partClassifyMapper;
@@ -64,7 +65,8 @@ public class IncrementalSnapshotTest {
         abcXyzClassifier = mock(AbcXyzClassifier.class);
         featureBuilder = mock(FeatureBuilder.class);
         predictionService = mock(PredictionService.class);
-        leadTimeDemandSimulator = mock(LeadTimeDemandSimulator.class);
+        leadTimeQuantileService = mock(LeadTimeQuantileService.class);
+        when(leadTimeQuantileService.stats()).thenReturn(new LeadTimeQuantileService.Stats(0, 0, 0));
         sparePartMapper = mock(SparePartMapper.class);
         aiForecastResultMapper = mock(AiForecastResultMapper.class);
         partClassifyMapper = mock(PartClassifyMapper.class);
@@ -75,8 +77,9 @@ public class IncrementalSnapshotTest {
 
         service = new StockThresholdService(
                 featureLoader, abcXyzClassifier, featureBuilder, predictionService,
-                leadTimeDemandSimulator, sparePartMapper, aiForecastResultMapper,
-                partClassifyMapper, aiModelRegistryMapper, forecastProperties, xgboostProperties
+                leadTimeQuantileService, sparePartMapper, aiForecastResultMapper,
+                partClassifyMapper, aiModelRegistryMapper, forecastProperties, xgboostProperties,
+                mock(PlatformTransactionManager.class)
         );
 
         tempBaseDir = "target/test-incremental-" + System.currentTimeMillis();
@@ -101,7 +104,7 @@ public class IncrementalSnapshotTest {
         Map<String, AbcXyzCalculator.Classification> classMap = new HashMap<>();
         classMap.put("SP001", new AbcXyzCalculator.Classification("A", "X", 3, 1, 80.0, 0.2, 1000.0));
         when(abcXyzClassifier.classifyAsOf("2026-07")).thenReturn(classMap);
-        when(abcXyzClassifier.codeProviderWithCache()).thenReturn((partCode, asOfMonth) -> new int[]{3, 1});
+        when(abcXyzClassifier.rollingCodeProvider(anyString(), anyString())).thenReturn((partCode, asOfMonth) -> new int[]{3, 1});
 
         // Mock 查上月在用生产模型版本
         AiModelRegistry prevRegistry = new AiModelRegistry();
@@ -125,8 +128,8 @@ public class IncrementalSnapshotTest {
         mockForecast.setAlgoType("TWO_STAGE");
         when(predictionService.forecast(any(), any())).thenReturn(mockForecast);
 
-        when(leadTimeDemandSimulator.calculateSafetyStock(
-                anyDouble(), anyDouble(), anyDouble(), anyDouble(), anyInt(), anyDouble()
+        when(leadTimeQuantileService.calculateSafetyStock(
+                anyDouble(), anyDouble(), anyDouble(), anyDouble(), anyInt(), anyDouble(), any()
         )).thenReturn(new SafetyStockResult(10, 4, 0.99, 8.0, 9.5));
     }
 
@@ -1,5 +1,6 @@
 package com.langdong.spare.forecast.service;
 
+import com.langdong.spare.dto.PartStockVO;
 import com.langdong.spare.entity.ReorderSuggest;
 import com.langdong.spare.forecast.model.ForecastResult;
 import com.langdong.spare.mapper.ReorderSuggestMapper;
@@ -7,10 +8,15 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -52,10 +58,8 @@ public class ReplenishmentServiceTest {
         // 备件 P004: 数据不足 -> 应忽略
         ForecastResult f4 = ForecastResult.insufficient("P004", "2026-07", "历史数据不足");
 
-        // Mock 当前可用库存
-        when(mapper.findCurrentStockByPartCode("P001")).thenReturn(5);
-        when(mapper.findCurrentStockByPartCode("P002")).thenReturn(8);
-        when(mapper.findCurrentStockByPartCode("P003")).thenReturn(15);
+        // Mock 当前可用库存（一次查询全部备件）
+        when(mapper.findAllCurrentStock()).thenReturn(Arrays.asList(stock("P001", 5), stock("P002", 8), stock("P003", 15)));
 
         List<ReorderSuggest> res = service.generateReplenishmentSuggestions("2026-07", Arrays.asList(f1, f2, f3, f4));
 
@@ -72,16 +76,64 @@ public class ReplenishmentServiceTest {
         assertEquals("正常", res.get(1).getUrgency());
         assertEquals(4, res.get(1).getSuggestQty(), "建议采购量应为 ROP - CurrentStock");
 
-        // 验证幂等删除：插入前先删除旧的待处理建议
-        verify(mapper, times(1)).deletePendingByPartAndMonth("P001", "2026-07");
-        verify(mapper, times(1)).deletePendingByPartAndMonth("P002", "2026-07");
-        verify(mapper, never()).deletePendingByPartAndMonth("P003", "2026-07");
+        // 验证幂等删除：插入前按编码集合删除旧的待处理建议（不含高于 ROP 的 P003）
+        verify(mapper, times(1)).findAllCurrentStock();
+        verify(mapper, never()).findCurrentStockByPartCode(anyString());
+        verify(mapper, times(1)).deletePendingByMonthAndParts("2026-07", Arrays.asList("P001", "P002"));
+        verify(mapper, never()).deletePendingByPartAndMonth(anyString(), anyString());
 
         // 验证批量插入
-        ArgumentCaptor<ReorderSuggest> captor = ArgumentCaptor.forClass(ReorderSuggest.class);
-        verify(mapper, times(2)).insert(captor.capture());
-        List<ReorderSuggest> inserted = captor.getAllValues();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ReorderSuggest>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mapper, times(1)).insertBatch(captor.capture());
+        verify(mapper, never()).insert(any());
+        List<ReorderSuggest> inserted = captor.getValue();
+        assertEquals(2, inserted.size());
         assertEquals("P001", inserted.get(0).getPartCode());
         assertEquals("P002", inserted.get(1).getPartCode());
     }
+
+    @Test
+    @DisplayName("批量路径：1200 个备件仅 1 次库存查询、2 次分段删除、3 次多行插入，缺库存记录按 0 处理")
+    void testBulkRoundTrips() {
+        ReorderSuggestMapper mapper = mock(ReorderSuggestMapper.class);
+        ReplenishmentService service = new ReplenishmentService(mapper);
+
+        List<ForecastResult> forecasts = new ArrayList<>();
+        List<PartStockVO> stocks = new ArrayList<>();
+        for (int i = 0; i < 1300; i++) {
+            String code = String.format("P%05d", i);
+            ForecastResult fr = new ForecastResult();
+            fr.setPartCode(code);
+            fr.setDemandHat(3.0);
+            fr.setReorderPoint(10);
+            fr.setSafetyStock(2);
+            fr.setLowerBound(1.0);
+            fr.setUpperBound(5.0);
+            forecasts.add(fr);
+            // 前 1200 个备件低于 ROP（其中偶数号无库存记录），其余 100 个高于 ROP
+            if (i >= 1200) {
+                stocks.add(stock(code, 20));
+            } else if (i % 2 == 1) {
+                stocks.add(stock(code, 3));
+            }
+        }
+        when(mapper.findAllCurrentStock()).thenReturn(stocks);
+
+        List<ReorderSuggest> res = service.generateReplenishmentSuggestions("2026-07", forecasts);
+
+        assertEquals(1200, res.size());
+        assertEquals("紧急", res.get(0).getUrgency());
+        assertEquals(10, res.get(0).getSuggestQty());
+        verify(mapper, times(1)).findAllCurrentStock();
+        verify(mapper, times(2)).deletePendingByMonthAndParts(eq("2026-07"), anyList());
+        verify(mapper, times(3)).insertBatch(anyList());
+    }
+
+    private static PartStockVO stock(String code, int qty) {
+        PartStockVO vo = new PartStockVO();
+        vo.setPartCode(code);
+        vo.setQuantity(qty);
+        return vo;
+    }
 }
@@ -15,10 +15,13 @@ import com.langdong.spare.forecast.model.FeatureVector;
 import com.langdong.spare.forecast.model.ForecastResult;
 import com.langdong.spare.forecast.model.SafetyStockResult;
 import com.langdong.spare.forecast.model.TrainingSample;
-import com.langdong.spare.forecast.montecarlo.LeadTimeDemandSimulator;
+import com.langdong.spare.forecast.montecarlo.LeadTimeQuantileService;
+import com.langdong.spare.forecast.stage.DemandOccurrenceStage;
+import com.langdong.spare.forecast.stage.DemandQuantityStage;
 import com.langdong.spare.forecast.stage.StageOneModel;
 import com.langdong.spare.forecast.stage.StageTwoModel;
 import com.langdong.spare.forecast.stage.TwoStageModel;
+import com.langdong.spare.forecast.xgboost.XgbTrainer;
 import com.langdong.spare.mapper.AiForecastResultMapper;
 import com.langdong.spare.mapper.AiModelRegistryMapper;
 import com.langdong.spare.mapper.PartClassifyMapper;
@@ -26,6 +29,8 @@ import com.langdong.spare.mapper.SparePartMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -51,7 +56,8 @@ public class StockThresholdServiceTest {
         AbcXyzClassifier abcXyzClassifier = mock(AbcXyzClassifier.class);
         FeatureBuilder featureBuilder = mock(FeatureBuilder.class);
         PredictionService predictionService = mock(PredictionService.class);
-        LeadTimeDemandSimulator leadTimeDemandSimulator = mock(LeadTimeDemandSimulator.class);
+        LeadTimeQuantileService leadTimeQuantileService = mock(LeadTimeQuantileService.class);
+        when(leadTimeQuantileService.stats()).thenReturn(new LeadTimeQuantileService.Stats(0, 0, 0));
         SparePartMapper sparePartMapper = mock(SparePartMapper.class);
         AiForecastResultMapper aiForecastResultMapper = mock(AiForecastResultMapper.class);
         PartClassifyMapper partClassifyMapper = mock(PartClassifyMapper.class);
@@ -59,12 +65,14 @@ public class StockThresholdServiceTest {
 
         ForecastProperties forecastProperties = new ForecastProperties();
         XGBoostProperties xgboostProperties = new XGBoostProperties();
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
 
         // 2. 实例化并配置模型保存路径
         StockThresholdService service = new StockThresholdService(
                 featureLoader, abcXyzClassifier, featureBuilder, predictionService,
-                leadTimeDemandSimulator, sparePartMapper, aiForecastResultMapper,
-                partClassifyMapper, aiModelRegistryMapper, forecastProperties, xgboostProperties
+                leadTimeQuantileService, sparePartMapper, aiForecastResultMapper,
+                partClassifyMapper, aiModelRegistryMapper, forecastProperties, xgboostProperties,
+                transactionManager
         );
         String tempDir = "target/test-models-" + System.currentTimeMillis();
         service.setModelBaseDir(tempDir);
@@ -87,7 +95,7 @@ public class StockThresholdServiceTest {
         Map<String, AbcXyzCalculator.Classification> classMap = new HashMap<>();
         classMap.put("SP001", new AbcXyzCalculator.Classification("A", "X", 3, 1, 85.0, 0.2, 1000.0));
         when(abcXyzClassifier.classifyAsOf("2026-07")).thenReturn(classMap);
-        when(abcXyzClassifier.codeProviderWithCache()).thenReturn((partCode, asOfMonth) -> new int[]{3, 1});
+        when(abcXyzClassifier.rollingCodeProvider(anyString(), anyString())).thenReturn((partCode, asOfMonth) -> new int[]{3, 1});
 
         // 历史特征 mock
         PartFeatureContext context = new PartFeatureContext("SP001");
@@ -136,8 +144,8 @@ public class StockThresholdServiceTest {
         mockForecast.setAlgoType("TWO_STAGE");
         when(predictionService.forecast(any(), any())).thenReturn(mockForecast);
 
-        when(leadTimeDemandSimulator.calculateSafetyStock(
-                eq(0.85), eq(12.0), eq(6.0), eq(18.0), eq(14), eq(0.99)
+        when(leadTimeQuantileService.calculateSafetyStock(
+                eq(0.85), eq(12.0), eq(6.0), eq(18.0), eq(14), eq(0.99), eq("A")
         )).thenReturn(new SafetyStockResult(15, 6, 0.99, 9.0, 14.5));
 
         // 运行业务方法
@@ -155,14 +163,15 @@ public class StockThresholdServiceTest {
         verify(aiForecastResultMapper, times(1)).deleteByMonthAndPartCodes("2026-07", Collections.singletonList("SP001"));
         verify(partClassifyMapper, times(1)).deleteByMonthAndPartCodes("2026-07", Collections.singletonList("SP001"));
 
-        // 验证批量插入
+        // 验证默认 STAGING 模式：结果分批写入暂存表，正式表只经整体搬入
         ArgumentCaptor<List<AiForecastResult>> forecastCaptor = ArgumentCaptor.forClass(List.class);
-        verify(aiForecastResultMapper, times(1)).insertBatch(forecastCaptor.capture());
+        verify(aiForecastResultMapper, times(1)).insertStagingBatch(forecastCaptor.capture());
         assertEquals(1, forecastCaptor.getValue().size());
         assertEquals(BigDecimal.valueOf(10.2), forecastCaptor.getValue().get(0).getPredictQty());
+        verify(aiForecastResultMapper, never()).insertBatch(anyList());
 
         ArgumentCaptor<List<PartClassify>> classifyCaptor = ArgumentCaptor.forClass(List.class);
-        verify(partClassifyMapper, times(1)).insertBatch(classifyCaptor.capture());
+        verify(partClassifyMapper, times(1)).insertStagingBatch(classifyCaptor.capture());
         assertEquals(1, classifyCaptor.getValue().size());
         assertEquals("AX", classifyCaptor.getValue().get(0).getStrategyCode());
         assertEquals(6, classifyCaptor.getValue().get(0).getSafetyStock());
@@ -177,6 +186,19 @@ public class StockThresholdServiceTest {
         assertEquals("TWO_STAGE", reg.getAlgoType());
         assertEquals("PRODUCTION", reg.getStatus());
 
+        // 清理暂存、写入暂存各一个短事务；删除旧结果、整体搬入与模型注册在同一个短事务内提交；最后清理暂存
+        InOrder order = inOrder(transactionManager, aiForecastResultMapper, aiModelRegistryMapper);
+        order.verify(aiForecastResultMapper).deleteStagingByMonth("2026-07");
+        order.verify(aiForecastResultMapper).insertStagingBatch(anyList());
+        order.verify(transactionManager).commit(any());
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(aiForecastResultMapper).deleteByMonthAndPartCodes(eq("2026-07"), anyList());
+        order.verify(aiForecastResultMapper).publishStagingByMonth("2026-07");
+        order.verify(aiModelRegistryMapper).insert(any(AiModelRegistry.class));
+        order.verify(transactionManager).commit(any());
+        order.verify(aiForecastResultMapper).deleteStagingByMonth("2026-07");
+        verify(transactionManager, times(4)).getTransaction(any());
+
         // 清理临时测试文件夹
         Path tempPath = Paths.get(tempDir);
         if (Files.exists(tempPath)) {
@@ -189,4 +211,323 @@ public class StockThresholdServiceTest {
             }
         }
     }
+
+    @Test
+    @DisplayName("并行模式：多 worker 处理后结果按备件档案顺序汇总，进度单调递增且最终等于总数")
+    void testParallelExecutionKeepsOrderAndProgress() throws IOException {
+        ForecastFeatureLoader featureLoader = mock(ForecastFeatureLoader.class);
+        AbcXyzClassifier abcXyzClassifier = mock(AbcXyzClassifier.class);
+        FeatureBuilder featureBuilder = mock(FeatureBuilder.class);
+        PredictionService predictionService = mock(PredictionService.class);
+        LeadTimeQuantileService leadTimeQuantileService = mock(LeadTimeQuantileService.class);
+        when(leadTimeQuantileService.stats()).thenReturn(new LeadTimeQuantileService.Stats(0, 0, 0));
+        SparePartMapper sparePartMapper = mock(SparePartMapper.class);
+        AiForecastResultMapper aiForecastResultMapper = mock(AiForecastResultMapper.class);
+        PartClassifyMapper partClassifyMapper = mock(PartClassifyMapper.class);
+        AiModelRegistryMapper aiModelRegistryMapper = mock(AiModelRegistryMapper.class);
+
+        ForecastProperties forecastProperties = new ForecastProperties();
+        forecastProperties.getParallel().setEnabled(true);
+        forecastProperties.getParallel().setWorkers(4);
+
+        StockThresholdService service = new StockThresholdService(
+                featureLoader, abcXyzClassifier, featureBuilder, predictionService,
+                leadTimeQuantileService, sparePartMapper, aiForecastResultMapper,
+                partClassifyMapper, aiModelRegistryMapper, forecastProperties, new XGBoostProperties(),
+                mock(PlatformTransactionManager.class)
+        );
+        String tempDir = "target/test-models-parallel-" + System.currentTimeMillis();
+        service.setModelBaseDir(tempDir);
+        service.setIncrementalEnabled(false);
+
+        int partCount = 12;
+        List<SparePart> parts = new ArrayList<>();
+        Map<String, AbcXyzCalculator.Classification> classMap = new HashMap<>();
+        Map<String, PartFeatureContext> ctxMap = new HashMap<>();
+        for (int i = 0; i < partCount; i++) {
+            String code = String.format("SP%03d", i);
+            SparePart part = new SparePart();
+            part.setId((long) i);
+            part.setCode(code);
+            part.setLeadTime(14);
+            parts.add(part);
+            classMap.put(code, new AbcXyzCalculator.Classification("B", "Y", 2, 2, 0.5, 0.6, 100.0));
+            PartFeatureContext ctx = new PartFeatureContext(code);
+            ctx.getMonthlyDemand().put("2026-06", (double) i + 1);
+            ctxMap.put(code, ctx);
+        }
+        // 最后一个备件缺少特征，应被跳过但仍占据自己的位置
+        ctxMap.remove("SP011");
+
+        when(sparePartMapper.findAllForClassify()).thenReturn(parts);
+        when(abcXyzClassifier.classifyAsOf("2026-07")).thenReturn(classMap);
+        when(abcXyzClassifier.rollingCodeProvider(anyString(), anyString())).thenReturn((partCode, asOfMonth) -> new int[]{2, 2});
+        when(featureLoader.loadAllContexts(eq("2026-07"), anyInt())).thenReturn(ctxMap);
+        when(featureBuilder.buildTrainingSamples(any(), any(), any()))
+                .thenReturn(Collections.singletonList(new TrainingSample(new FeatureVector(), 3.0)));
+
+        TwoStageModel mockModel = mock(TwoStageModel.class);
+        StageOneModel mockS1 = mock(StageOneModel.class);
+        StageTwoModel mockS2 = mock(StageTwoModel.class);
+        com.langdong.spare.forecast.xgboost.XgbModel mockBooster = mock(com.langdong.spare.forecast.xgboost.XgbModel.class);
+        when(mockModel.getStageOne()).thenReturn(mockS1);
+        when(mockModel.getStageTwo()).thenReturn(mockS2);
+        when(mockS1.getClassifier()).thenReturn(mockBooster);
+        when(mockS1.getCalibrator()).thenReturn(mock(com.langdong.spare.forecast.calibration.ProbabilityCalibrator.class));
+        when(mockS2.getPointRegressor()).thenReturn(mockBooster);
+        when(mockS2.getLowerQuantile()).thenReturn(mockBooster);
+        when(mockS2.getUpperQuantile()).thenReturn(mockBooster);
+        when(predictionService.train(anyList(), anyString(), anyString())).thenReturn(mockModel);
+
+        when(featureBuilder.buildInferenceVector(any(), eq("2026-07"), any(), anyBoolean())).thenAnswer(inv -> {
+            PartFeatureContext ctx = inv.getArgument(0);
+            FeatureVector fv = new FeatureVector();
+            fv.setPartCode(ctx.getPartCode());
+            return fv;
+        });
+        when(predictionService.forecast(any(), any())).thenAnswer(inv -> {
+            FeatureVector fv = inv.getArgument(1);
+            ForecastResult r = new ForecastResult();
+            r.setPartCode(fv.getPartCode());
+            r.setTargetMonth("2026-07");
+            r.setOccurrenceProb(0.5);
+            r.setPositiveQty(4.0);
+            r.setLowerBound(2.0);
+            r.setUpperBound(6.0);
+            r.setDemandHat(2.0);
+            return r;
+        });
+        when(leadTimeQuantileService.calculateSafetyStock(anyDouble(), anyDouble(), anyDouble(), anyDouble(), anyInt(), anyDouble(), any()))
+                .thenReturn(new SafetyStockResult(5, 2, 0.95, 3.0, 4.5));
+
+        List<Integer> processedSeen = Collections.synchronizedList(new ArrayList<>());
+        List<ForecastResult> res = service.executeForecastAndStockThreshold("2026-07",
+                update -> processedSeen.add(update.processed));
+
+        assertEquals(partCount, res.size());
+        for (int i = 0; i < partCount; i++) {
+            assertEquals(String.format("SP%03d", i), res.get(i).getPartCode(), "结果须按备件档案顺序排列");
+        }
+        assertTrue(res.get(partCount - 1).isDataInsufficient());
+
+        for (int i = 1; i < processedSeen.size(); i++) {
+            assertTrue(processedSeen.get(i) >= processedSeen.get(i - 1), "进度 processed 必须单调递增");
+        }
+        assertEquals(partCount, processedSeen.get(processedSeen.size() - 1));
+
+        ArgumentCaptor<List<AiForecastResult>> forecastCaptor = ArgumentCaptor.forClass(List.class);
+        verify(aiForecastResultMapper, times(1)).insertStagingBatch(forecastCaptor.capture());
+        assertEquals(partCount - 1, forecastCaptor.getValue().size());
+        assertEquals("SP000", forecastCaptor.getValue().get(0).getPartCode());
+
+        Path tempPath = Paths.get(tempDir);
+        if (Files.exists(tempPath)) {
+            try (java.util.stream.Stream<Path> s = Files.walk(tempPath)) {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                    try {
+                        Files.delete(p);
+                    } catch (IOException ignored) {}
+                });
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("全局模型模式：汇集样本只训练一次、批量推理一次，产物写入 _global 目录")
+    void testGlobalModelMode() throws IOException {
+        ForecastFeatureLoader featureLoader = mock(ForecastFeatureLoader.class);
+        AbcXyzClassifier abcXyzClassifier = mock(AbcXyzClassifier.class);
+        FeatureBuilder featureBuilder = mock(FeatureBuilder.class);
+        PredictionService predictionService = mock(PredictionService.class);
+        LeadTimeQuantileService leadTimeQuantileService = mock(LeadTimeQuantileService.class);
+        when(leadTimeQuantileService.stats()).thenReturn(new LeadTimeQuantileService.Stats(0, 0, 0));
+        SparePartMapper sparePartMapper = mock(SparePartMapper.class);
+        AiForecastResultMapper aiForecastResultMapper = mock(AiForecastResultMapper.class);
+        PartClassifyMapper partClassifyMapper = mock(PartClassifyMapper.class);
+        AiModelRegistryMapper aiModelRegistryMapper = mock(AiModelRegistryMapper.class);
+
+        ForecastProperties forecastProperties = new ForecastProperties();
+        forecastProperties.setModelMode(ForecastProperties.ModelMode.GLOBAL);
+
+        StockThresholdService service = new StockThresholdService(
+                featureLoader, abcXyzClassifier, featureBuilder, predictionService,
+                leadTimeQuantileService, sparePartMapper, aiForecastResultMapper,
+                partClassifyMapper, aiModelRegistryMapper, forecastProperties, new XGBoostProperties(),
+                mock(PlatformTransactionManager.class)
+        );
+        String tempDir = "target/test-models-global-" + System.currentTimeMillis();
+        service.setModelBaseDir(tempDir);
+
+        List<SparePart> parts = new ArrayList<>();
+        Map<String, AbcXyzCalculator.Classification> classMap = new HashMap<>();
+        Map<String, PartFeatureContext> ctxMap = new HashMap<>();
+        for (String code : Arrays.asList("SP001", "SP002", "SP003")) {
+            SparePart part = new SparePart();
+            part.setCode(code);
+            part.setLeadTime(14);
+            parts.add(part);
+            classMap.put(code, new AbcXyzCalculator.Classification("C", "Z", 1, 3, 0.1, 1.5, 10.0));
+            ctxMap.put(code, new PartFeatureContext(code));
+        }
+        when(sparePartMapper.findAllForClassify()).thenReturn(parts);
+        when(abcXyzClassifier.classifyAsOf("2026-07")).thenReturn(classMap);
+        when(featureLoader.loadAllContexts(eq("2026-07"), anyInt())).thenReturn(ctxMap);
+        when(featureBuilder.buildTrainingSamples(any(), any(), any()))
+                .thenReturn(Arrays.asList(new TrainingSample(new FeatureVector(), 0.0), new TrainingSample(new FeatureVector(), 2.0)));
+        when(featureBuilder.buildInferenceVector(any(), eq("2026-07"), any(), anyBoolean())).thenAnswer(inv -> {
+            FeatureVector fv = new FeatureVector();
+            fv.setPartCode(((PartFeatureContext) inv.getArgument(0)).getPartCode());
+            return fv;
+        });
+
+        TwoStageModel mockModel = mock(TwoStageModel.class);
+        when(predictionService.train(anyList(), eq("2026-06"), eq("two-stage-2026-07"))).thenReturn(mockModel);
+        when(predictionService.forecastBatch(eq(mockModel), anyList())).thenAnswer(inv -> {
+            List<FeatureVector> vectors = inv.getArgument(1);
+            List<ForecastResult> out = new ArrayList<>();
+            for (FeatureVector fv : vectors) {
+                ForecastResult r = new ForecastResult();
+                r.setPartCode(fv.getPartCode());
+                r.setOccurrenceProb(0.3);
+                r.setPositiveQty(2.0);
+                r.setLowerBound(1.0);
+                r.setUpperBound(3.0);
+                r.setDemandHat(0.6);
+                out.add(r);
+            }
+            return out;
+        });
+        when(leadTimeQuantileService.calculateSafetyStock(anyDouble(), anyDouble(), anyDouble(), anyDouble(), anyInt(), anyDouble(), any()))
+                .thenReturn(new SafetyStockResult(2, 1, 0.90, 1.0, 1.5));
+
+        List<ForecastResult> res = service.executeForecastAndStockThreshold("2026-07");
+
+        assertEquals(3, res.size());
+        assertEquals(2, res.get(2).getReorderPoint());
+        ArgumentCaptor<List<TrainingSample>> pooledCaptor = ArgumentCaptor.forClass(List.class);
+        verify(predictionService, times(1)).train(pooledCaptor.capture(), eq("2026-06"), eq("two-stage-2026-07"));
+        assertEquals(6, pooledCaptor.getValue().size(), "全局模型应汇集全部备件的样本");
+        verify(predictionService, times(1)).forecastBatch(eq(mockModel), anyList());
+        verify(predictionService, never()).forecast(any(), any());
+        verify(mockModel, times(1)).save(Paths.get(tempDir).resolve("two-stage-2026-07").resolve(StockThresholdService.GLOBAL_MODEL_DIR));
+    }
+
+    @Test
+    @DisplayName("确定性模式：真实 XGBoost 训练下串行（1 worker）与并行（4 worker）结果逐位一致")
+    void testDeterministicAcrossWorkerCounts() throws IOException {
+        List<ForecastResult> serial = runRealTraining(1);
+        List<ForecastResult> parallel = runRealTraining(4);
+
+        assertEquals(serial.size(), parallel.size());
+        for (int i = 0; i < serial.size(); i++) {
+            ForecastResult a = serial.get(i);
+            ForecastResult b = parallel.get(i);
+            assertEquals(a.getPartCode(), b.getPartCode());
+            assertFalse(a.isDataInsufficient(), a.getPartCode());
+            assertEquals(Double.doubleToRawLongBits(a.getOccurrenceProb()), Double.doubleToRawLongBits(b.getOccurrenceProb()), a.getPartCode());
+            assertEquals(Double.doubleToRawLongBits(a.getPositiveQty()), Double.doubleToRawLongBits(b.getPositiveQty()), a.getPartCode());
+            assertEquals(Double.doubleToRawLongBits(a.getLowerBound()), Double.doubleToRawLongBits(b.getLowerBound()), a.getPartCode());
+            assertEquals(Double.doubleToRawLongBits(a.getUpperBound()), Double.doubleToRawLongBits(b.getUpperBound()), a.getPartCode());
+            assertEquals(Double.doubleToRawLongBits(a.getDemandHat()), Double.doubleToRawLongBits(b.getDemandHat()), a.getPartCode());
+        }
+    }
+
+    /**
+     * 以真实两阶段训练重算 6 个备件（样本按备件固定种子合成），workers = 1 走串行路径，其余走并行路径。
+     */
+    private List<ForecastResult> runRealTraining(int workers) throws IOException {
+        ForecastFeatureLoader featureLoader = mock(ForecastFeatureLoader.class);
+        AbcXyzClassifier abcXyzClassifier = mock(AbcXyzClassifier.class);
+        FeatureBuilder featureBuilder = mock(FeatureBuilder.class);
+        LeadTimeQuantileService leadTimeQuantileService = mock(LeadTimeQuantileService.class);
+        when(leadTimeQuantileService.stats()).thenReturn(new LeadTimeQuantileService.Stats(0, 0, 0));
+        when(leadTimeQuantileService.calculateSafetyStock(anyDouble(), anyDouble(), anyDouble(), anyDouble(), anyInt(), anyDouble(), any()))
+                .thenReturn(new SafetyStockResult(5, 2, 0.95, 3.0, 4.5));
+        SparePartMapper sparePartMapper = mock(SparePartMapper.class);
+
+        XGBoostProperties xgboostProperties = new XGBoostProperties();
+        XgbTrainer trainer = new XgbTrainer(xgboostProperties);
+        PredictionService predictionService = new PredictionService(
+                new DemandOccurrenceStage(trainer), new DemandQuantityStage(trainer, xgboostProperties));
+
+        ForecastProperties forecastProperties = new ForecastProperties();
+        forecastProperties.getParallel().setEnabled(workers > 1);
+        forecastProperties.getParallel().setWorkers(workers);
+        forecastProperties.getParallel().setXgbThreadsPerWorker(2);
+
+        StockThresholdService service = new StockThresholdService(
+                featureLoader, abcXyzClassifier, featureBuilder, predictionService,
+                leadTimeQuantileService, sparePartMapper, mock(AiForecastResultMapper.class),
+                mock(PartClassifyMapper.class), mock(AiModelRegistryMapper.class), forecastProperties, xgboostProperties,
+                mock(PlatformTransactionManager.class)
+        );
+        Path tempDir = Files.createTempDirectory("test-models-deterministic-");
+        service.setModelBaseDir(tempDir.toString());
+        service.setIncrementalEnabled(false);
+
+        List<SparePart> parts = new ArrayList<>();
+        Map<String, AbcXyzCalculator.Classification> classMap = new HashMap<>();
+        Map<String, PartFeatureContext> ctxMap = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            String code = String.format("SP%03d", i);
+            SparePart part = new SparePart();
+            part.setCode(code);
+            part.setLeadTime(14);
+            parts.add(part);
+            classMap.put(code, new AbcXyzCalculator.Classification("B", "Y", 2, 2, 0.5, 0.6, 100.0));
+            ctxMap.put(code, new PartFeatureContext(code));
+        }
+        when(sparePartMapper.findAllForClassify()).thenReturn(parts);
+        when(abcXyzClassifier.classifyAsOf("2026-07")).thenReturn(classMap);
+        when(abcXyzClassifier.rollingCodeProvider(anyString(), anyString())).thenReturn((partCode, asOfMonth) -> new int[]{2, 2});
+        when(featureLoader.loadAllContexts(eq("2026-07"), anyInt())).thenReturn(ctxMap);
+        when(featureBuilder.buildTrainingSamples(any(), any(), any())).thenAnswer(inv -> {
+            String code = ((PartFeatureContext) inv.getArgument(0)).getPartCode();
+            Random rnd = new Random(code.hashCode());
+            List<TrainingSample> samples = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                double lag1 = rnd.nextInt(11);
+                boolean occur = lag1 > 3 ? rnd.nextDouble() < 0.9 : rnd.nextDouble() < 0.1;
+                FeatureVector fv = vector(code, lag1);
+                fv.setTargetMonth(String.format("%d-%02d", 2005 + i / 12, i % 12 + 1));
+                samples.add(new TrainingSample(fv, occur ? Math.round(5 + 0.8 * lag1 + rnd.nextGaussian()) : 0));
+            }
+            return samples;
+        });
+        when(featureBuilder.buildInferenceVector(any(), eq("2026-07"), any(), anyBoolean()))
+                .thenAnswer(inv -> {
+                    FeatureVector fv = vector(((PartFeatureContext) inv.getArgument(0)).getPartCode(), 6);
+                    fv.setTargetMonth("2026-07");
+                    return fv;
+                });
+
+        try {
+            return service.executeForecastAndStockThreshold("2026-07");
+        } finally {
+            try (java.util.stream.Stream<Path> s = Files.walk(tempDir)) {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> {
+                    try {
+                        Files.delete(p);
+                    } catch (IOException ignored) {}
+                });
+            }
+        }
+    }
+
+    private static FeatureVector vector(String code, double lag1) {
+        FeatureVector fv = new FeatureVector();
+        fv.setPartCode(code);
+        fv.setLag1(lag1);
+        fv.setLag3Mean(lag1);
+        fv.setLag3Std(1.0);
+        fv.setZeroRatio6(lag1 > 3 ? 0.2 : 0.8);
+        fv.setEquipHr(100);
+        fv.setRepairCnt(lag1 > 3 ? 2 : 0);
+        fv.setMonth(6);
+        fv.setAbcCode(2);
+        fv.setXyzCode(2);
+        fv.setPosLag1(lag1);
+        fv.setPosLag3Mean(lag1);
+        return fv;
+    }
 }
@@ -112,4 +112,50 @@ public class TwoStageNumericTest {
         assertTrue(r.isDataInsufficient());
         assertEquals("test-v3", r.getModelVersion());
     }
+
+    @Test
+    @DisplayName("向量化批量推理与逐 Booster 单行推理逐字段一致，数据不足行保持占位且顺序不变")
+    void testForecastAllMatchesPerBooster() {
+        TwoStageModel model = predictionService.train(synth(400, 4L), "2024-12", "test-v4");
+
+        List<FeatureVector> vectors = new ArrayList<>();
+        for (int lag1 = 0; lag1 <= 10; lag1++) {
+            vectors.add(feature(lag1, "2025-01"));
+        }
+        FeatureVector insufficient = new FeatureVector();
+        insufficient.setPartCode("NEW001");
+        insufficient.setTargetMonth("2025-01");
+        insufficient.setDataInsufficient(true);
+        vectors.add(3, insufficient);
+
+        ForecastResult[] batch = predictionService.forecastAll(model, vectors);
+        assertEquals(vectors.size(), batch.length);
+        assertTrue(batch[3].isDataInsufficient());
+        assertEquals("test-v4", batch[3].getModelVersion());
+        for (int i = 0; i < vectors.size(); i++) {
+            if (i != 3) {
+                assertMatchesPerBooster(model, vectors.get(i), batch[i]);
+            }
+        }
+
+        // 缓冲区复用：更小的批次读取同一（更大的）线程缓冲区，结果不受残留数据影响
+        List<FeatureVector> small = vectors.subList(8, 10);
+        ForecastResult[] again = predictionService.forecastAll(model, small);
+        assertEquals(2, again.length);
+        assertMatchesPerBooster(model, small.get(0), again[0]);
+        assertMatchesPerBooster(model, small.get(1), again[1]);
+    }
+
+    private void assertMatchesPerBooster(TwoStageModel model, FeatureVector fv, ForecastResult r) {
+        double p = model.getStageOne().predictOccurrenceProb(fv.toStage1Array());
+        double yHat = model.getStageTwo().predictPositiveQty(fv.toStage2Array());
+        double lower = model.getStageTwo().predictLower(fv.toStage2Array());
+        double upper = model.getStageTwo().predictUpper(fv.toStage2Array());
+        assertEquals(fv.getPartCode(), r.getPartCode());
+        assertEquals(Math.min(1.0, Math.max(0.0, p)), r.getOccurrenceProb(), 1e-9);
+        assertEquals(yHat, r.getPositiveQty(), 1e-9);
+        assertEquals(Math.min(lower, upper), r.getLowerBound(), 1e-9);
+        assertEquals(Math.max(lower, upper), r.getUpperBound(), 1e-9);
+        assertEquals(r.getOccurrenceProb() * r.getPositiveQty(), r.getDemandHat(), 1e-9);
+    }
 }
@@ -0,0 +1,221 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.AiDeviceFeature;
+import com.langdong.spare.entity.DeviceHealth;
+import com.langdong.spare.entity.Equipment;
+import com.langdong.spare.entity.HealthConfig;
+import com.langdong.spare.mapper.AiDeviceFeatureMapper;
+import com.langdong.spare.mapper.DeviceHealthMapper;
+import com.langdong.spare.mapper.EquipmentMapper;
+import com.langdong.spare.mapper.HealthConfigMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * DeviceHealthService 批量健康评估单元测试
+ */
+public class DeviceHealthServiceTest {
+
+    private DeviceHealthMapper deviceHealthMapper;
+    private EquipmentMapper equipmentMapper;
+    private HealthConfigMapper healthConfigMapper;
+    private AiDeviceFeatureMapper aiDeviceFeatureMapper;
+    private DeviceHealthService service;
+
+    @BeforeEach
+    void setUp() {
+        deviceHealthMapper = mock(DeviceHealthMapper.class);
+        equipmentMapper = mock(EquipmentMapper.class);
+        healthConfigMapper = mock(HealthConfigMapper.class);
+        aiDeviceFeatureMapper = mock(AiDeviceFeatureMapper.class);
+        service = new DeviceHealthService();
+        ReflectionTestUtils.setField(service, "deviceHealthMapper", deviceHealthMapper);
+        ReflectionTestUtils.setField(service, "equipmentMapper", equipmentMapper);
+        ReflectionTestUtils.setField(service, "healthConfigMapper", healthConfigMapper);
+        ReflectionTestUtils.setField(service, "aiDeviceFeatureMapper", aiDeviceFeatureMapper);
+        HealthConfigRegistry registry = new HealthConfigRegistry();
+        ReflectionTestUtils.setField(registry, "healthConfigMapper", healthConfigMapper);
+        ReflectionTestUtils.setField(service, "healthConfigRegistry", registry);
+    }
+
+    @Test
+    @DisplayName("批量评估：一次加载、内存评分、按批写入，结果与单设备评估一致")
+    void testBatchEvaluateMatchesSingleDevice() {
+        int devices = 1203;
+        List<Equipment> equipments = new ArrayList<>();
+        List<AiDeviceFeature> features = new ArrayList<>();
+        for (long id = 1; id <= devices; id++) {
+            equipments.add(equipment(id));
+            if (id % 100 == 0) {
+                continue; // 无特征数据的设备应跳过
+            }
+            for (int m = 0; m < 3; m++) {
+                features.add(feature(id, m));
+            }
+        }
+        when(equipmentMapper.findAllForHealth()).thenReturn(equipments);
+        when(healthConfigMapper.findAll()).thenReturn(Collections.emptyList());
+        when(aiDeviceFeatureMapper.findRecentMonthsAll(3)).thenReturn(features);
+
+        int count = service.batchEvaluateAllDevices();
+
+        assertEquals(devices - 12, count);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DeviceHealth>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deviceHealthMapper, times(3)).insertBatch(captor.capture());
+        List<List<DeviceHealth>> chunks = captor.getAllValues();
+        assertEquals(500, chunks.get(0).size());
+        assertEquals(500, chunks.get(1).size());
+        assertEquals(devices - 12 - 1000, chunks.get(2).size());
+        verify(deviceHealthMapper, never()).insert(any());
+        verify(aiDeviceFeatureMapper, never()).findRecentMonthsByDevice(anyLong(), anyInt());
+
+        // 抽样与单设备路径比对
+        DeviceHealth bulk = chunks.get(1).get(17);
+        long deviceId = bulk.getDeviceId();
+        Equipment single = equipment(deviceId);
+        single.setImportanceLevel(null);
+        when(equipmentMapper.findById(deviceId)).thenReturn(single);
+        when(aiDeviceFeatureMapper.findRecentMonthsByDevice(deviceId, 3))
+                .thenReturn(Arrays.asList(feature(deviceId, 0), feature(deviceId, 1), feature(deviceId, 2)));
+        service.evaluateSingleDevice(deviceId);
+        ArgumentCaptor<DeviceHealth> one = ArgumentCaptor.forClass(DeviceHealth.class);
+        verify(deviceHealthMapper).insert(one.capture());
+        assertEquals(bulk.getHealthScore(), one.getValue().getHealthScore());
+        assertEquals(bulk.getRiskLevel(), one.getValue().getRiskLevel());
+        assertEquals(bulk.getRuntimeScore(), one.getValue().getRuntimeScore());
+        assertEquals(bulk.getReplacementScore(), one.getValue().getReplacementScore());
+    }
+
+    @Test
+    @DisplayName("批量评估：单批写入失败不影响其他批次")
+    void testChunkFailureIsIsolated() {
+        List<Equipment> equipments = new ArrayList<>();
+        List<AiDeviceFeature> features = new ArrayList<>();
+        for (long id = 1; id <= 700; id++) {
+            equipments.add(equipment(id));
+            features.add(feature(id, 0));
+        }
+        when(equipmentMapper.findAllForHealth()).thenReturn(equipments);
+        when(aiDeviceFeatureMapper.findRecentMonthsAll(3)).thenReturn(features);
+        when(deviceHealthMapper.insertBatch(argThat(list -> list != null && list.size() == 500)))
+                .thenThrow(new RuntimeException("deadlock"));
+
+        assertEquals(200, service.batchEvaluateAllDevices());
+        verify(deviceHealthMapper, times(2)).insertBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("配置读取走注册表：评估过程中不再按设备查询配置表，修改配置后刷新生效")
+    void testConfigServedFromRegistry() {
+        HealthConfig strict = config(null, null, 70);
+        when(healthConfigMapper.findAll()).thenReturn(Collections.singletonList(strict));
+        when(healthConfigMapper.update(any())).thenReturn(1);
+        HealthConfigRegistry registry = (HealthConfigRegistry) ReflectionTestUtils.getField(service, "healthConfigRegistry");
+        registry.init();
+
+        Equipment device = equipment(9L);
+        when(equipmentMapper.findById(9L)).thenReturn(device);
+        when(aiDeviceFeatureMapper.findRecentMonthsByDevice(9L, 3))
+                .thenReturn(Arrays.asList(feature(9L, 0), feature(9L, 1), feature(9L, 2)));
+        service.evaluateSingleDevice(9L);
+        service.evaluateSingleDevice(9L);
+
+        verify(healthConfigMapper, never()).findByDeviceTypeAndImportance(any(), any());
+        verify(healthConfigMapper, never()).findGlobalDefault();
+        verify(healthConfigMapper, times(1)).findAll();
+
+        HealthConfig stored = HealthConfigRegistry.createDefaultConfig();
+        stored.setId(1L);
+        when(healthConfigMapper.findById(1L)).thenReturn(stored);
+        strict.setId(1L);
+        service.updateHealthConfig(strict);
+        verify(healthConfigMapper, times(2)).findAll();
+        assertEquals(2L, service.getHealthConfigStats().get("hits"));
+    }
+
+    @Test
+    @DisplayName("修改配置：只提交部分字段时与现有配置合并，不合法的阈值或权重被拒绝且不写库")
+    void testPartialUpdateMergesAndValidates() {
+        // 每次查询返回新对象，与真实 Mapper 一致
+        when(healthConfigMapper.findById(5L)).thenAnswer(inv -> {
+            HealthConfig existing = config("PUMP", "CRITICAL", 40);
+            existing.setId(5L);
+            existing.setRuntimeWeight(BigDecimal.valueOf(0.25));
+            existing.setFaultWeight(BigDecimal.valueOf(0.35));
+            existing.setWorkorderWeight(BigDecimal.valueOf(0.20));
+            existing.setReplacementWeight(BigDecimal.valueOf(0.20));
+            existing.setPredictionWindowDays(90);
+            existing.setMinHistoryMonths(6);
+            return existing;
+        });
+        when(healthConfigMapper.update(any())).thenReturn(1);
+
+        HealthConfig patch = new HealthConfig();
+        patch.setId(5L);
+        patch.setCriticalThreshold(BigDecimal.valueOf(45));
+        assertTrue(service.updateHealthConfig(patch));
+        ArgumentCaptor<HealthConfig> captor = ArgumentCaptor.forClass(HealthConfig.class);
+        verify(healthConfigMapper).update(captor.capture());
+        HealthConfig written = captor.getValue();
+        assertEquals(BigDecimal.valueOf(45), written.getCriticalThreshold());
+        assertEquals("PUMP", written.getDeviceType());
+        assertEquals(BigDecimal.valueOf(0.35), written.getFaultWeight());
+        assertEquals(90, written.getPredictionWindowDays());
+
+        HealthConfig badWeight = new HealthConfig();
+        badWeight.setId(5L);
+        badWeight.setFaultWeight(BigDecimal.valueOf(0.9));
+        assertThrows(IllegalArgumentException.class, () -> service.updateHealthConfig(badWeight));
+        HealthConfig badThreshold = new HealthConfig();
+        badThreshold.setId(5L);
+        badThreshold.setHighThreshold(BigDecimal.valueOf(30));
+        assertThrows(IllegalArgumentException.class, () -> service.updateHealthConfig(badThreshold));
+        verify(healthConfigMapper, times(1)).update(any());
+
+        HealthConfig missing = new HealthConfig();
+        missing.setId(99L);
+        assertFalse(service.updateHealthConfig(missing));
+    }
+
+    private static Equipment equipment(long id) {
+        Equipment e = new Equipment();
+        e.setId(id);
+        e.setCode("EQ" + id);
+        return e;
+    }
+
+    private static AiDeviceFeature feature(long deviceId, int monthsAgo) {
+        AiDeviceFeature f = new AiDeviceFeature();
+        f.setDeviceId(deviceId);
+        f.setStatMonth("2026-0" + (9 - monthsAgo));
+        f.setRunHours(BigDecimal.valueOf((deviceId * 37 + monthsAgo * 101) % 720));
+        f.setMtbf(deviceId % 3 == 0 ? null : BigDecimal.valueOf((deviceId * 13) % 1500));
+        f.setWorkOrderCount((int) ((deviceId + monthsAgo) % 12));
+        f.setPartReplaceQty((int) ((deviceId * 7 + monthsAgo) % 25));
+        return f;
+    }
+
+    private static HealthConfig config(String deviceType, String importance, int critical) {
+        HealthConfig c = new HealthConfig();
+        c.setDeviceType(deviceType);
+        c.setImportanceLevel(importance);
+        c.setCriticalThreshold(BigDecimal.valueOf(critical));
+        c.setHighThreshold(BigDecimal.valueOf(critical + 10));
+        c.setMediumThreshold(BigDecimal.valueOf(critical + 20));
+        return c;
+    }
+}
@@ -0,0 +1,178 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.AiDeviceFeature;
+import com.langdong.spare.entity.Equipment;
+import com.langdong.spare.entity.FaultPrediction;
+import com.langdong.spare.mapper.AiDeviceFeatureMapper;
+import com.langdong.spare.mapper.EquipmentMapper;
+import com.langdong.spare.mapper.FaultPredictionMapper;
+import com.langdong.spare.util.FaultPredictionEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * FaultPredictionService 批量故障预测单元测试
+ */
+public class FaultPredictionServiceTest {
+
+    private FaultPredictionMapper faultPredictionMapper;
+    private EquipmentMapper equipmentMapper;
+    private AiDeviceFeatureMapper aiDeviceFeatureMapper;
+    private FaultPredictionService service;
+
+    @BeforeEach
+    void setUp() {
+        faultPredictionMapper = mock(FaultPredictionMapper.class);
+        equipmentMapper = mock(EquipmentMapper.class);
+        aiDeviceFeatureMapper = mock(AiDeviceFeatureMapper.class);
+        service = new FaultPredictionService();
+        ReflectionTestUtils.setField(service, "faultPredictionMapper", faultPredictionMapper);
+        ReflectionTestUtils.setField(service, "equipmentMapper", equipmentMapper);
+        ReflectionTestUtils.setField(service, "aiDeviceFeatureMapper", aiDeviceFeatureMapper);
+    }
+
+    @Test
+    @DisplayName("批量预测：两次查询加载、数据不足跳过、多行写入，结果与单设备预测一致")
+    void testBatchPredictMatchesSingleDevice() {
+        List<Long> ids = new ArrayList<>();
+        List<Equipment> devices = new ArrayList<>();
+        List<AiDeviceFeature> features = new ArrayList<>();
+        for (long id = 1; id <= 620; id++) {
+            ids.add(id);
+            devices.add(equipment(id));
+            features.addAll(featuresOf(id, id % 50 == 0 ? 5 : 12));
+        }
+        when(equipmentMapper.findByIds(anyList())).thenReturn(devices);
+        when(aiDeviceFeatureMapper.findRecentMonthsWithHealth(anyList(), eq(12))).thenReturn(features);
+
+        int count = service.batchPredict(ids, 90);
+
+        assertEquals(620 - 12, count);
+        verify(equipmentMapper, times(1)).findByIds(anyList());
+        verify(aiDeviceFeatureMapper, times(1)).findRecentMonthsWithHealth(anyList(), eq(12));
+        verify(equipmentMapper, never()).findById(any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FaultPrediction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(faultPredictionMapper, times(2)).insertBatch(captor.capture());
+        assertEquals(500, captor.getAllValues().get(0).size());
+        assertEquals(108, captor.getAllValues().get(1).size());
+
+        // 与单设备路径比对
+        FaultPrediction bulk = captor.getAllValues().get(1).get(3);
+        long deviceId = bulk.getDeviceId();
+        when(equipmentMapper.findById(deviceId)).thenReturn(equipment(deviceId));
+        when(aiDeviceFeatureMapper.findRecentMonthsWithHealth(Collections.singletonList(deviceId), 12))
+                .thenReturn(featuresOf(deviceId, 12));
+        service.predictSingleDevice(deviceId, 90);
+        ArgumentCaptor<FaultPrediction> one = ArgumentCaptor.forClass(FaultPrediction.class);
+        verify(faultPredictionMapper).insert(one.capture());
+        assertEquals(bulk.getFailureProbability(), one.getValue().getFailureProbability());
+        assertEquals(bulk.getPredictedFaultCount(), one.getValue().getPredictedFaultCount());
+        assertEquals(bulk.getFeatureImportance(), one.getValue().getFeatureImportance());
+        assertEquals(bulk.getTargetMonth(), one.getValue().getTargetMonth());
+    }
+
+    @Test
+    @DisplayName("流水线按块预测：不查设备档案、一次加载特征、多行写入，写入失败向调用方抛出")
+    void testPredictDevicesLoadsOncePerChunk() {
+        List<Long> ids = new ArrayList<>();
+        List<AiDeviceFeature> features = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            ids.add(id);
+            features.addAll(featuresOf(id, id % 8 == 0 ? 3 : 12));
+        }
+        when(aiDeviceFeatureMapper.findRecentMonthsWithHealth(anyList(), eq(12))).thenReturn(features);
+
+        assertEquals(40 - 5, service.predictDevices(ids, 90));
+        verify(equipmentMapper, never()).findByIds(anyList());
+        verify(aiDeviceFeatureMapper, times(1)).findRecentMonthsWithHealth(ids, 12);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FaultPrediction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(faultPredictionMapper, times(1)).insertBatch(captor.capture());
+        assertEquals(35, captor.getValue().size());
+        assertTrue(captor.getValue().stream().noneMatch(p -> p.getDeviceId() % 8 == 0));
+
+        doThrow(new RuntimeException("db down")).when(faultPredictionMapper).insertBatch(anyList());
+        assertThrows(RuntimeException.class, () -> service.predictDevices(ids, 90));
+        assertEquals(0, service.predictDevices(Collections.emptyList(), 90));
+    }
+
+    @Test
+    @DisplayName("批量预测：劣化率取自按时间正序的真实月度健康分")
+    void testDeteriorationUsesRealHealthSeries() {
+        // 12 个月（降序），健康分由 90 逐月降到 35，缺两个月评估记录
+        List<AiDeviceFeature> features = new ArrayList<>();
+        double[] chronologicalHealth = {90, 88, 86, 80, 75, 70, 64, 58, 50, 44, 40, 35};
+        for (int m = 11; m >= 0; m--) {
+            AiDeviceFeature f = feature(1L, m);
+            f.setHealthScore(m == 4 || m == 7 ? null : BigDecimal.valueOf(chronologicalHealth[m]));
+            features.add(f);
+        }
+        when(equipmentMapper.findByIds(anyList())).thenReturn(Collections.singletonList(equipment(1L)));
+        when(aiDeviceFeatureMapper.findRecentMonthsWithHealth(anyList(), eq(12))).thenReturn(features);
+
+        service.batchPredict(Collections.singletonList(1L), 90);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<FaultPrediction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(faultPredictionMapper).insertBatch(captor.capture());
+        FaultPrediction p = captor.getValue().get(0);
+
+        List<AiDeviceFeature> asc = new ArrayList<>(features);
+        Collections.reverse(asc);
+        List<Double> health = asc.stream().filter(f -> f.getHealthScore() != null)
+                .map(f -> f.getHealthScore().doubleValue()).collect(Collectors.toList());
+        double deterioration = FaultPredictionEngine.calcDeteriorationRate(health);
+        assertTrue(deterioration > 0.5);
+        double avgRunHours = FaultPredictionEngine.calcAvgRunHours(
+                features.stream().map(f -> f.getRunHours().doubleValue()).collect(Collectors.toList()));
+        double freq = FaultPredictionEngine.calcFaultFrequency(
+                features.stream().map(AiDeviceFeature::getFaultCount).collect(Collectors.toList()));
+        double mtbf = FaultPredictionEngine.calcAvgMTBF(
+                features.stream().map(f -> f.getMtbf().doubleValue()).collect(Collectors.toList()));
+        double expected = FaultPredictionEngine.round(
+                FaultPredictionEngine.predictFailureProbability(avgRunHours, freq, mtbf, deterioration), 4);
+        assertEquals(expected, p.getFailureProbability().doubleValue(), 1e-12);
+    }
+
+    private static Equipment equipment(long id) {
+        Equipment e = new Equipment();
+        e.setId(id);
+        e.setCode("EQ" + id);
+        return e;
+    }
+
+    private static List<AiDeviceFeature> featuresOf(long deviceId, int months) {
+        List<AiDeviceFeature> list = new ArrayList<>();
+        for (int m = months - 1; m >= 0; m--) {
+            AiDeviceFeature f = feature(deviceId, m);
+            f.setHealthScore(BigDecimal.valueOf(60 + (deviceId * 7 + m * 3) % 40));
+            list.add(f);
+        }
+        return list;
+    }
+
+    private static AiDeviceFeature feature(long deviceId, int monthIndex) {
+        AiDeviceFeature f = new AiDeviceFeature();
+        f.setDeviceId(deviceId);
+        f.setStatMonth(String.format("2025-%02d", monthIndex + 1));
+        f.setRunHours(BigDecimal.valueOf(300 + (deviceId * 31 + monthIndex * 17) % 400));
+        f.setFaultCount((int) ((deviceId + monthIndex) % 5));
+        f.setMtbf(BigDecimal.valueOf(Arrays.asList(9999, 150, 420, 800, 1200).get((int) ((deviceId + monthIndex) % 5))));
+        return f;
+    }
+}
@@ -0,0 +1,570 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.OutboundBatchTrace;
+import com.langdong.spare.entity.SparePartStock;
+import com.langdong.spare.entity.StockInItem;
+import com.langdong.spare.mapper.OutboundBatchTraceMapper;
+import com.langdong.spare.mapper.SparePartStockMapper;
+import com.langdong.spare.mapper.StockInItemMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * FifoOutboundService FIFO 出库并发分配测试
+ */
+public class FifoOutboundServiceTest {
+
+    private static final long PART_ID = 7L;
+
+    @Test
+    @DisplayName("冲突重新规划：批次扣减 0 行时保留已扣减批次，按锁定读的最新余量分配剩余需求，不回滚整单")
+    void testConflictReplansRemainingNeed() {
+        StockInItemMapper stockInItemMapper = mock(StockInItemMapper.class);
+        OutboundBatchTraceMapper traceMapper = mock(OutboundBatchTraceMapper.class);
+        SparePartStockMapper stockMapper = mock(SparePartStockMapper.class);
+        FifoOutboundService service = service(stockInItemMapper, traceMapper, stockMapper);
+
+        when(stockMapper.getAvailableQuantity(PART_ID)).thenReturn(30);
+        // 快照读：B1 余 4、B2 余 10；B2 已被并发出库扣到 3，B3 余 20
+        when(stockInItemMapper.findAvailableBatchesBySparePartId(PART_ID))
+                .thenReturn(Arrays.asList(batch(1L, "B1", 4), batch(2L, "B2", 10)));
+        when(stockInItemMapper.findAvailableBatchesForUpdate(PART_ID, false, 8))
+                .thenReturn(Arrays.asList(batch(2L, "B2", 3), batch(3L, "B3", 20)));
+        when(stockInItemMapper.deductBatchQuantity(1L, 4)).thenReturn(1);
+        when(stockInItemMapper.deductBatchQuantity(2L, 8)).thenReturn(0);
+        when(stockInItemMapper.deductBatchQuantity(2L, 3)).thenReturn(1);
+        when(stockInItemMapper.deductBatchQuantity(3L, 5)).thenReturn(1);
+
+        String info = service.processFifoOutbound(100L, PART_ID, 12);
+
+        assertEquals("B1[4件] + B2[3件] + B3[5件]", info);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<OutboundBatchTrace>> captor = ArgumentCaptor.forClass(List.class);
+        verify(traceMapper, times(1)).insertBatch(captor.capture());
+        assertEquals(Arrays.asList(4, 3, 5), captor.getValue().stream().map(OutboundBatchTrace::getDeductQty).toList());
+        verify(stockMapper, times(1)).addQuantity(PART_ID, -12);
+        assertEquals(1L, service.stats().get("conflicts"));
+        assertEquals(1L, service.stats().get("replans"));
+
+        // 锁定读确认余量不足：明确报缺货，不再重试
+        when(stockMapper.getAvailableQuantity(PART_ID)).thenReturn(100);
+        when(stockInItemMapper.findAvailableBatchesBySparePartId(PART_ID)).thenReturn(Collections.emptyList());
+        when(stockInItemMapper.findAvailableBatchesForUpdate(PART_ID, false, 8))
+                .thenReturn(Collections.singletonList(batch(3L, "B3", 15)));
+        when(stockInItemMapper.deductBatchQuantity(3L, 15)).thenReturn(1);
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> service.processFifoOutbound(101L, PART_ID, 40));
+        assertTrue(ex.getMessage().contains("尚缺25件"), ex.getMessage());
+        verify(stockInItemMapper, times(2)).findAvailableBatchesForUpdate(PART_ID, false, 8);
+    }
+
+    @Test
+    @DisplayName("锁定读只锁定所需批次：首轮 8 个批次余量不足时翻倍续读，入库单号另行查询")
+    void testLockingReadGrowsUntilNeedCovered() {
+        StockInItemMapper stockInItemMapper = mock(StockInItemMapper.class);
+        OutboundBatchTraceMapper traceMapper = mock(OutboundBatchTraceMapper.class);
+        SparePartStockMapper stockMapper = mock(SparePartStockMapper.class);
+        FifoOutboundService service = service(stockInItemMapper, traceMapper, stockMapper);
+        ReflectionTestUtils.setField(service, "lockMode", FifoOutboundService.LockMode.SKIP_LOCKED);
+
+        List<StockInItem> batches = new ArrayList<>();
+        for (long id = 1; id <= 12; id++) {
+            batches.add(batch(id, null, 2));
+        }
+        when(stockMapper.getAvailableQuantity(PART_ID)).thenReturn(24);
+        when(stockInItemMapper.findAvailableBatchesForUpdate(eq(PART_ID), eq(true), anyInt()))
+                .thenAnswer(inv -> new ArrayList<>(batches.subList(0, Math.min(batches.size(), (Integer) inv.getArgument(2)))));
+        when(stockInItemMapper.findReceiptCodesByItemIds(anyCollection())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            List<StockInItem> codes = new ArrayList<>();
+            for (Long id : ids) {
+                codes.add(batch(id, "IN" + id, 0));
+            }
+            return codes;
+        });
+        when(stockInItemMapper.deductBatchQuantity(anyLong(), anyInt())).thenReturn(1);
+
+        String info = service.processFifoOutbound(100L, PART_ID, 3);
+        assertEquals("IN1[2件] + IN2[1件]", info);
+        verify(stockInItemMapper, times(1)).findAvailableBatchesForUpdate(PART_ID, true, 8);
+        verify(stockInItemMapper, never()).findAvailableBatchesBySparePartId(anyLong());
+
+        service.processFifoOutbound(101L, PART_ID, 20);
+        verify(stockInItemMapper, times(2)).findAvailableBatchesForUpdate(PART_ID, true, 8);
+        verify(stockInItemMapper, times(1)).findAvailableBatchesForUpdate(PART_ID, true, 16);
+        verify(stockInItemMapper, times(2)).findReceiptCodesByItemIds(anyCollection());
+    }
+
+    @Test
+    @DisplayName("启动校验：SKIP_LOCKED 在 MySQL 5.7 上拒绝启动，8.0 正常；OPTIMISTIC 不访问数据库")
+    void testSkipLockedRequiresMySql8() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseMajorVersion()).thenReturn(5);
+        when(metaData.getDatabaseProductVersion()).thenReturn("5.7.24");
+
+        FifoOutboundService service = new FifoOutboundService();
+        ReflectionTestUtils.setField(service, "dataSource", dataSource);
+        service.checkLockMode();
+        verifyNoInteractions(dataSource);
+
+        ReflectionTestUtils.setField(service, "lockMode", FifoOutboundService.LockMode.SKIP_LOCKED);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, service::checkLockMode);
+        assertTrue(ex.getMessage().contains("5.7.24"), ex.getMessage());
+        verify(connection, times(1)).close();
+
+        when(metaData.getDatabaseMajorVersion()).thenReturn(8);
+        assertDoesNotThrow(service::checkLockMode);
+    }
+
+    @Test
+    @DisplayName("批量出库：按备件升序逐备件锁定所需批次，同备件多行依次消耗批次，扣减/追溯/总库存各一条语句")
+    void testBatchOutboundPlansInMemory() {
+        StockInItemMapper stockInItemMapper = mock(StockInItemMapper.class);
+        OutboundBatchTraceMapper traceMapper = mock(OutboundBatchTraceMapper.class);
+        SparePartStockMapper stockMapper = mock(SparePartStockMapper.class);
+        FifoOutboundService service = service(stockInItemMapper, traceMapper, stockMapper);
+        long otherPart = 8L;
+
+        when(stockMapper.findBySparePartIds(anyCollection()))
+                .thenReturn(Arrays.asList(stock(PART_ID, 30), stock(otherPart, 5)));
+        StockInItem other = batch(9L, "C1", 5);
+        other.setSparePartId(otherPart);
+        when(stockInItemMapper.findAvailableBatchesForUpdate(PART_ID, false, 8))
+                .thenReturn(Arrays.asList(batch(1L, "B1", 4), batch(2L, "B2", 10)));
+        when(stockInItemMapper.findAvailableBatchesForUpdate(otherPart, false, 8))
+                .thenReturn(Collections.singletonList(other));
+        when(stockInItemMapper.deductBatchQuantities(anyMap())).thenAnswer(inv -> ((Map<?, ?>) inv.getArgument(0)).size());
+
+        List<String> infos = service.processFifoOutboundBatch(Arrays.asList(
+                new FifoOutboundService.OutboundLine(100L, PART_ID, 3),
+                new FifoOutboundService.OutboundLine(101L, otherPart, 2),
+                new FifoOutboundService.OutboundLine(102L, PART_ID, 6)));
+
+        assertEquals(Arrays.asList("B1[3件]", "C1[2件]", "B1[1件] + B2[5件]"), infos);
+        // 备件升序加锁（7 → 8），每个备件一页即覆盖需求，入库单号一次补充
+        InOrder lockOrder = inOrder(stockInItemMapper);
+        lockOrder.verify(stockInItemMapper).findAvailableBatchesForUpdate(PART_ID, false, 8);
+        lockOrder.verify(stockInItemMapper).findAvailableBatchesForUpdate(otherPart, false, 8);
+        lockOrder.verify(stockInItemMapper).findReceiptCodesByItemIds(List.of(1L, 2L, 9L));
+        verify(stockInItemMapper, times(2)).findAvailableBatchesForUpdate(anyLong(), anyBoolean(), anyInt());
+        verify(stockInItemMapper, times(1)).findReceiptCodesByItemIds(anyCollection());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Long, Integer>> deductions = ArgumentCaptor.forClass(Map.class);
+        verify(stockInItemMapper, times(1)).deductBatchQuantities(deductions.capture());
+        assertEquals(Map.of(1L, 4, 2L, 5, 9L, 2), deductions.getValue());
+        verify(traceMapper, times(1)).insertBatch(argThat(list -> list.size() == 4));
+        verify(stockMapper, times(1)).addQuantities(Map.of(PART_ID, -9, otherPart, -2));
+        verify(stockInItemMapper, never()).deductBatchQuantity(anyLong(), anyInt());
+        verify(stockMapper, never()).getAvailableQuantity(anyLong());
+
+        // 等锁读取的批次余量不足：整单报缺货，不写入任何扣减
+        when(stockMapper.findBySparePartIds(anyCollection())).thenReturn(Collections.singletonList(stock(PART_ID, 50)));
+        when(stockInItemMapper.findAvailableBatchesForUpdate(PART_ID, false, 8))
+                .thenReturn(Collections.singletonList(batch(2L, "B2", 5)));
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> service.processFifoOutboundBatch(
+                Collections.singletonList(new FifoOutboundService.OutboundLine(103L, PART_ID, 8))));
+        assertTrue(ex.getMessage().contains("尚缺3件"), ex.getMessage());
+        verify(stockInItemMapper, times(1)).deductBatchQuantities(anyMap());
+        assertEquals(3L, service.stats().get("batchLines"));
+    }
+
+    @Test
+    @DisplayName("多行领用单出库：同备件多行按汇总需求续读锁定，批次队列很长时也只锁覆盖需求的前若干批次")
+    void testMultiLineRequisitionLocksBoundedBatches() {
+        StockInItemMapper stockInItemMapper = mock(StockInItemMapper.class);
+        OutboundBatchTraceMapper traceMapper = mock(OutboundBatchTraceMapper.class);
+        SparePartStockMapper stockMapper = mock(SparePartStockMapper.class);
+        FifoOutboundService service = service(stockInItemMapper, traceMapper, stockMapper);
+
+        // 备件有 200 个各 1 件的批次，领用单 3 行共需 10 件
+        List<StockInItem> queue = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            queue.add(batch(id, "B" + id, 1));
+        }
+        when(stockMapper.findBySparePartIds(anyCollection())).thenReturn(Collections.singletonList(stock(PART_ID, 200)));
+        when(stockInItemMapper.findAvailableBatchesForUpdate(eq(PART_ID), eq(false), anyInt()))
+                .thenAnswer(inv -> new ArrayList<>(queue.subList(0, Math.min(queue.size(), (int) inv.getArgument(2)))));
+        when(stockInItemMapper.deductBatchQuantities(anyMap())).thenAnswer(inv -> ((Map<?, ?>) inv.getArgument(0)).size());
+
+        service.processFifoOutboundBatch(Arrays.asList(
+                new FifoOutboundService.OutboundLine(100L, PART_ID, 3),
+                new FifoOutboundService.OutboundLine(101L, PART_ID, 4),
+                new FifoOutboundService.OutboundLine(102L, PART_ID, 3)));
+
+        verify(stockInItemMapper, times(1)).findAvailableBatchesForUpdate(PART_ID, false, 8);
+        verify(stockInItemMapper, times(1)).findAvailableBatchesForUpdate(PART_ID, false, 16);
+        verify(stockInItemMapper, times(2)).findAvailableBatchesForUpdate(anyLong(), anyBoolean(), anyInt());
+        verify(stockInItemMapper, times(1)).findReceiptCodesByItemIds(argThat(ids -> ids.size() == 16));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Long, Integer>> deductions = ArgumentCaptor.forClass(Map.class);
+        verify(stockInItemMapper).deductBatchQuantities(deductions.capture());
+        assertEquals(10, deductions.getValue().size());
+        verify(stockMapper).addQuantities(Map.of(PART_ID, -10));
+    }
+
+    @Test
+    @DisplayName("批量出库 SKIP_LOCKED：逐备件按汇总需求锁定所需批次，不做多备件整体锁定读")
+    void testBatchOutboundSkipLockedLocksPerPart() {
+        StockInItemMapper stockInItemMapper = mock(StockInItemMapper.class);
+        OutboundBatchTraceMapper traceMapper = mock(OutboundBatchTraceMapper.class);
+        SparePartStockMapper stockMapper = mock(SparePartStockMapper.class);
+        FifoOutboundService service = service(stockInItemMapper, traceMapper, stockMapper);
+        ReflectionTestUtils.setField(service, "lockMode", FifoOutboundService.LockMode.SKIP_LOCKED);
+        long otherPart = 8L;
+
+        when(stockMapper.findBySparePartIds(anyCollection()))
+                .thenReturn(Arrays.asList(stock(PART_ID, 30), stock(otherPart, 5)));
+        StockInItem other = batch(9L, "C1", 5);
+        other.setSparePartId(otherPart);
+        when(stockInItemMapper.findAvailableBatchesForUpdate(PART_ID, true, 8))
+                .thenReturn(Arrays.asList(batch(1L, "B1", 4), batch(2L, "B2", 10)));
+        when(stockInItemMapper.findAvailableBatchesForUpdate(otherPart, true, 8))
+                .thenReturn(Collections.singletonList(other));
+        when(stockInItemMapper.deductBatchQuantities(anyMap())).thenAnswer(inv -> ((Map<?, ?>) inv.getArgument(0)).size());
+
+        List<String> infos = service.processFifoOutboundBatch(Arrays.asList(
+                new FifoOutboundService.OutboundLine(100L, PART_ID, 3),
+                new FifoOutboundService.OutboundLine(101L, otherPart, 2),
+                new FifoOutboundService.OutboundLine(102L, PART_ID, 6)));
+
+        assertEquals(Arrays.asList("B1[3件]", "C1[2件]", "B1[1件] + B2[5件]"), infos);
+        verify(stockInItemMapper, times(2)).findAvailableBatchesForUpdate(anyLong(), eq(true), eq(8));
+        assertEquals(0L, service.stats().get("batchFallbacks"));
+    }
+
+    @Test
+    @DisplayName("并发压测：分段锁开启/关闭、SKIP_LOCKED 三种模式下同一热点备件并发出库，无超卖、无丢失更新")
+    void testConcurrentOutboundOnHotPart() throws Exception {
+        assertEquals(0L, hammer(true, FifoOutboundService.LockMode.OPTIMISTIC).get("conflicts"),
+                "分段锁持有至事务提交后，快照读不应再读到过期余量");
+        hammer(false, FifoOutboundService.LockMode.OPTIMISTIC);
+        assertEquals(0L, hammer(false, FifoOutboundService.LockMode.SKIP_LOCKED).get("conflicts"),
+                "SKIP_LOCKED 只扣减本事务已锁定的批次，不应出现条件更新冲突");
+    }
+
+    /**
+     * 16 个线程各发起 60 次 1~4 件的出库，总需求约为库存 2 倍。每次出库在 TransactionTemplate 中执行，
+     * 事务同步处于激活状态，分段锁在提交或回滚后才释放；失败的出库按事务语义回滚其已扣减批次。
+     */
+    private Map<String, Object> hammer(boolean striped, FifoOutboundService.LockMode mode) throws Exception {
+        InMemoryStock store = new InMemoryStock(40, 25);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new InMemoryTransactionManager(store));
+        FifoOutboundService service = service(store.itemMapper(), store.traceMapper(), store.stockMapper());
+        ReflectionTestUtils.setField(service, "stripedLock", striped);
+        ReflectionTestUtils.setField(service, "lockMode", mode);
+        ReflectionTestUtils.setField(service, "maxAttempts", 8);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 1L);
+
+        int threads = 16;
+        int perThread = 60;
+        AtomicLong reqSeq = new AtomicLong();
+        Map<Long, Integer> succeeded = Collections.synchronizedMap(new HashMap<>());
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            pool.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    long reqItemId = reqSeq.incrementAndGet();
+                    int qty = 1 + random.nextInt(4);
+                    try {
+                        transactionTemplate.executeWithoutResult(
+                                status -> service.processFifoOutbound(reqItemId, PART_ID, qty));
+                        succeeded.put(reqItemId, qty);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        int shipped = succeeded.values().stream().mapToInt(Integer::intValue).sum();
+        int traced = store.traces.stream().mapToInt(OutboundBatchTrace::getDeductQty).sum();
+        assertTrue(store.remaining.stream().allMatch(r -> r.get() >= 0), "批次余量不得为负（超卖）");
+        assertEquals(store.initialTotal, store.remainingTotal() + shipped, "批次扣减总量须等于成功出库总量（无丢失更新）");
+        assertEquals(shipped, traced, "追溯记录须与成功出库一致");
+        assertEquals(store.remainingTotal(), store.stock.get(), "总账库存须与批次余量一致");
+        Map<Long, Integer> tracedByReq = new HashMap<>();
+        for (OutboundBatchTrace trace : store.traces) {
+            tracedByReq.merge(trace.getReqItemId(), trace.getDeductQty(), Integer::sum);
+        }
+        assertEquals(succeeded, tracedByReq);
+        assertEquals(threads * perThread, succeeded.size() + failed.get());
+        assertTrue(shipped > store.initialTotal * 0.9, "库存应基本被消耗完: shipped=" + shipped);
+
+        return service.stats();
+    }
+
+    private static FifoOutboundService service(StockInItemMapper itemMapper, OutboundBatchTraceMapper traceMapper,
+                                               SparePartStockMapper stockMapper) {
+        FifoOutboundService service = new FifoOutboundService();
+        ReflectionTestUtils.setField(service, "stockInItemMapper", itemMapper);
+        ReflectionTestUtils.setField(service, "outboundBatchTraceMapper", traceMapper);
+        ReflectionTestUtils.setField(service, "sparePartStockMapper", stockMapper);
+        return service;
+    }
+
+    private static SparePartStock stock(Long sparePartId, int quantity) {
+        SparePartStock stock = new SparePartStock();
+        stock.setSparePartId(sparePartId);
+        stock.setQuantity(quantity);
+        return stock;
+    }
+
+    private static StockInItem batch(Long id, String code, int remaining) {
+        StockInItem item = new StockInItem();
+        item.setId(id);
+        item.setReceiptCode(code);
+        item.setSparePartId(PART_ID);
+        item.setRemainingQty(remaining);
+        item.setInTime(LocalDateTime.of(2026, 1, 1, 0, 0).plusDays(id));
+        return item;
+    }
+
+    /**
+     * 以 InMemoryStock 为资源的事务管理器：开启事务时激活事务同步，提交/回滚后触发 afterCompletion
+     */
+    private static final class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+        private final transient InMemoryStock store;
+
+        InMemoryTransactionManager(InMemoryStock store) {
+            this.store = store;
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            store.beginTx();
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            store.commitTx();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            store.rollbackTx();
+        }
+    }
+
+    /**
+     * 内存批次库存，模拟 InnoDB 行锁语义：
+     * <ul>
+     *   <li>快照读只返回已提交余量（其他事务未提交的扣减不可见，读取后可能过期）；</li>
+     *   <li>锁定读按 FIFO 顺序逐行加锁并读取最新余量，最多返回 limit 行；SKIP LOCKED 跳过其他事务持有的行，
+     *       否则等待行锁（超时视为锁等待超时/死锁，抛异常回滚）；</li>
+     *   <li>条件扣减先取得行锁再校验余量（对应 UPDATE ... WHERE remaining_qty >= ?）；</li>
+     *   <li>行锁持有至提交或回滚，回滚时撤销本事务的扣减。</li>
+     * </ul>
+     */
+    private static final class InMemoryStock {
+        private static final long ROW_LOCK_WAIT_MS = 200L;
+
+        final List<AtomicInteger> remaining = new ArrayList<>();
+        final AtomicIntegerArray committed;
+        final AtomicInteger stock = new AtomicInteger();
+        final Queue<OutboundBatchTrace> traces = new ConcurrentLinkedQueue<>();
+        final int initialTotal;
+        private final List<ReentrantLock> rowLocks = new ArrayList<>();
+        private final ThreadLocal<Tx> tx = new ThreadLocal<>();
+
+        /** 单个事务的行锁与未提交写入 */
+        private static final class Tx {
+            final Set<Integer> lockedRows = new LinkedHashSet<>();
+            final List<int[]> deducted = new ArrayList<>();
+            final List<OutboundBatchTrace> traces = new ArrayList<>();
+            int stockDelta;
+        }
+
+        InMemoryStock(int batches, int qtyPerBatch) {
+            committed = new AtomicIntegerArray(batches);
+            for (int i = 0; i < batches; i++) {
+                remaining.add(new AtomicInteger(qtyPerBatch));
+                committed.set(i, qtyPerBatch);
+                rowLocks.add(new ReentrantLock());
+            }
+            initialTotal = batches * qtyPerBatch;
+            stock.set(initialTotal);
+        }
+
+        int remainingTotal() {
+            return remaining.stream().mapToInt(AtomicInteger::get).sum();
+        }
+
+        void beginTx() {
+            tx.set(new Tx());
+        }
+
+        void commitTx() {
+            Tx current = tx.get();
+            for (int row : current.lockedRows) {
+                committed.set(row, remaining.get(row).get());
+            }
+            traces.addAll(current.traces);
+            stock.addAndGet(current.stockDelta);
+            release(current);
+        }
+
+        void rollbackTx() {
+            Tx current = tx.get();
+            for (int[] d : current.deducted) {
+                remaining.get(d[0]).addAndGet(d[1]);
+            }
+            release(current);
+        }
+
+        private void release(Tx current) {
+            for (int row : current.lockedRows) {
+                rowLocks.get(row).unlock();
+            }
+            tx.remove();
+        }
+
+        /** 获取行锁（事务内可重入）；skipLocked 时行被其他事务持有返回 false */
+        private boolean lockRow(int row, boolean skipLocked) {
+            ReentrantLock lock = rowLocks.get(row);
+            if (lock.isHeldByCurrentThread()) {
+                return true;
+            }
+            boolean locked;
+            try {
+                locked = skipLocked ? lock.tryLock() : lock.tryLock(ROW_LOCK_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                locked = false;
+            }
+            if (!locked) {
+                if (skipLocked) {
+                    return false;
+                }
+                throw new RuntimeException("Lock wait timeout exceeded; try restarting transaction");
+            }
+            tx.get().lockedRows.add(row);
+            return true;
+        }
+
+        List<StockInItem> snapshotRead() {
+            List<StockInItem> list = new ArrayList<>();
+            for (int i = 0; i < committed.length(); i++) {
+                int r = committed.get(i);
+                if (r > 0) {
+                    list.add(batch((long) i, "B" + i, r));
+                }
+            }
+            Thread.yield();
+            return list;
+        }
+
+        List<StockInItem> lockingRead(boolean skipLocked, int limit) {
+            List<StockInItem> list = new ArrayList<>();
+            for (int i = 0; i < remaining.size() && list.size() < limit; i++) {
+                if (!lockRow(i, skipLocked)) {
+                    continue;
+                }
+                int r = remaining.get(i).get();
+                if (r > 0) {
+                    list.add(batch((long) i, "B" + i, r));
+                }
+            }
+            return list;
+        }
+
+        StockInItemMapper itemMapper() {
+            StockInItemMapper mapper = mock(StockInItemMapper.class);
+            when(mapper.findAvailableBatchesBySparePartId(PART_ID)).thenAnswer(inv -> snapshotRead());
+            when(mapper.findAvailableBatchesForUpdate(eq(PART_ID), anyBoolean(), anyInt()))
+                    .thenAnswer(inv -> lockingRead(inv.getArgument(1), inv.getArgument(2)));
+            when(mapper.deductBatchQuantity(anyLong(), anyInt())).thenAnswer(inv -> {
+                int idx = ((Long) inv.getArgument(0)).intValue();
+                int qty = inv.getArgument(1);
+                lockRow(idx, false);
+                AtomicInteger cell = remaining.get(idx);
+                if (cell.get() < qty) {
+                    return 0;
+                }
+                cell.addAndGet(-qty);
+                tx.get().deducted.add(new int[]{idx, qty});
+                return 1;
+            });
+            return mapper;
+        }
+
+        OutboundBatchTraceMapper traceMapper() {
+            OutboundBatchTraceMapper mapper = mock(OutboundBatchTraceMapper.class);
+            when(mapper.insertBatch(anyList())).thenAnswer(inv -> {
+                List<OutboundBatchTrace> list = inv.getArgument(0);
+                tx.get().traces.addAll(list);
+                return list.size();
+            });
+            return mapper;
+        }
+
+        SparePartStockMapper stockMapper() {
+            SparePartStockMapper mapper = mock(SparePartStockMapper.class);
+            when(mapper.getAvailableQuantity(PART_ID)).thenAnswer(inv -> stock.get());
+            when(mapper.addQuantity(eq(PART_ID), anyInt())).thenAnswer(inv -> {
+                tx.get().stockDelta += (Integer) inv.getArgument(1);
+                return 1;
+            });
+            return mapper;
+        }
+    }
+}
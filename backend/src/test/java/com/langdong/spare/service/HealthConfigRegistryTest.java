@@ -0,0 +1,89 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.HealthConfig;
+import com.langdong.spare.mapper.HealthConfigMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * HealthConfigRegistry 健康配置缓存单元测试
+ */
+public class HealthConfigRegistryTest {
+
+    private HealthConfigMapper healthConfigMapper;
+    private HealthConfigRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        healthConfigMapper = mock(HealthConfigMapper.class);
+        registry = new HealthConfigRegistry();
+        ReflectionTestUtils.setField(registry, "healthConfigMapper", healthConfigMapper);
+    }
+
+    @Test
+    @DisplayName("配置匹配：与 SQL 优先级一致（精确 > 仅类型 > 仅重要性 > 全局 > 硬编码）")
+    void testLookupPriority() {
+        HealthConfig global = config(null, null, 45);
+        HealthConfig critical = config(null, "CRITICAL", 30);
+        HealthConfig pump = config("PUMP", null, 35);
+        HealthConfig pumpCritical = config("PUMP", "CRITICAL", 25);
+        when(healthConfigMapper.findAll()).thenReturn(Arrays.asList(pumpCritical, pump, critical, global));
+        registry.init();
+
+        assertSame(pumpCritical, registry.lookup("PUMP", "CRITICAL"));
+        assertSame(pump, registry.lookup("PUMP", "NORMAL"));
+        assertSame(critical, registry.lookup(null, "CRITICAL"));
+        assertSame(global, registry.lookup(null, "NORMAL"));
+        assertSame(global, registry.lookup(null, null));
+        assertSame(global, registry.lookup("FAN", "IMPORTANT"));
+        assertEquals(6L, registry.stats().get("hits"));
+        assertEquals(0L, registry.stats().get("misses"));
+    }
+
+    @Test
+    @DisplayName("无全局配置时回退硬编码默认值并计入未命中；刷新后整体替换查找表")
+    void testFallbackAndRefresh() {
+        when(healthConfigMapper.findAll()).thenReturn(Collections.singletonList(config(null, "CRITICAL", 30)));
+        registry.init();
+
+        HealthConfig fallback = registry.lookup(null, "NORMAL");
+        assertEquals(0, BigDecimal.valueOf(40).compareTo(fallback.getCriticalThreshold()));
+        assertEquals(1L, registry.stats().get("misses"));
+
+        HealthConfig global = config(null, null, 50);
+        when(healthConfigMapper.findAll()).thenReturn(Collections.singletonList(global));
+        assertEquals(1, registry.refresh());
+        assertSame(global, registry.lookup(null, "NORMAL"));
+        assertSame(global, registry.lookup(null, "CRITICAL"));
+        assertEquals(2L, registry.stats().get("refreshes"));
+        assertEquals(1, registry.stats().get("configCount"));
+    }
+
+    @Test
+    @DisplayName("启动时数据库不可用：不抛出异常，全部回退硬编码默认值")
+    void testStartupFailureTolerated() {
+        when(healthConfigMapper.findAll()).thenThrow(new RuntimeException("connection refused"));
+        assertDoesNotThrow(registry::init);
+        assertNotNull(registry.lookup("PUMP", "CRITICAL"));
+        assertEquals(1L, registry.stats().get("misses"));
+    }
+
+    private static HealthConfig config(String deviceType, String importance, int critical) {
+        HealthConfig c = new HealthConfig();
+        c.setDeviceType(deviceType);
+        c.setImportanceLevel(importance);
+        c.setCriticalThreshold(BigDecimal.valueOf(critical));
+        c.setHighThreshold(BigDecimal.valueOf(critical + 20));
+        c.setMediumThreshold(BigDecimal.valueOf(critical + 40));
+        return c;
+    }
+}
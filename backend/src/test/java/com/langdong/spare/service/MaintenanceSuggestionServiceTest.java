@@ -0,0 +1,232 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.DeviceHealth;
+import com.langdong.spare.entity.Equipment;
+import com.langdong.spare.entity.EquipmentSparePart;
+import com.langdong.spare.entity.FaultPrediction;
+import com.langdong.spare.entity.MaintenanceSuggestion;
+import com.langdong.spare.entity.SparePart;
+import com.langdong.spare.mapper.DeviceHealthMapper;
+import com.langdong.spare.mapper.EquipmentMapper;
+import com.langdong.spare.mapper.EquipmentSparePartMapper;
+import com.langdong.spare.mapper.FaultPredictionMapper;
+import com.langdong.spare.mapper.MaintenanceSuggestionMapper;
+import com.langdong.spare.mapper.SparePartMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MaintenanceSuggestionService 批量建议生成单元测试
+ */
+public class MaintenanceSuggestionServiceTest {
+
+    private MaintenanceSuggestionMapper suggestionMapper;
+    private DeviceHealthMapper deviceHealthMapper;
+    private FaultPredictionMapper faultPredictionMapper;
+    private EquipmentMapper equipmentMapper;
+    private EquipmentSparePartMapper equipmentSparePartMapper;
+    private SparePartMapper sparePartMapper;
+    private MaintenanceSuggestionService service;
+
+    @BeforeEach
+    void setUp() {
+        suggestionMapper = mock(MaintenanceSuggestionMapper.class);
+        deviceHealthMapper = mock(DeviceHealthMapper.class);
+        faultPredictionMapper = mock(FaultPredictionMapper.class);
+        equipmentMapper = mock(EquipmentMapper.class);
+        equipmentSparePartMapper = mock(EquipmentSparePartMapper.class);
+        sparePartMapper = mock(SparePartMapper.class);
+        service = new MaintenanceSuggestionService();
+        ReflectionTestUtils.setField(service, "suggestionMapper", suggestionMapper);
+        ReflectionTestUtils.setField(service, "deviceHealthMapper", deviceHealthMapper);
+        ReflectionTestUtils.setField(service, "faultPredictionMapper", faultPredictionMapper);
+        ReflectionTestUtils.setField(service, "equipmentMapper", equipmentMapper);
+        ReflectionTestUtils.setField(service, "equipmentSparePartMapper", equipmentSparePartMapper);
+        ReflectionTestUtils.setField(service, "sparePartMapper", sparePartMapper);
+    }
+
+    @Test
+    @DisplayName("批量建议：窗口查询预取、内存过滤后仅为需建议设备加载 BOM，按批写入")
+    void testBulkFiltersBeforeLoadingBom() {
+        List<Equipment> devices = new ArrayList<>();
+        List<DeviceHealth> healths = new ArrayList<>();
+        List<FaultPrediction> predictions = new ArrayList<>();
+        Set<Long> qualifying = new HashSet<>();
+        for (long id = 1; id <= 1200; id++) {
+            devices.add(equipment(id));
+            if (id % 100 == 0) {
+                continue; // 无健康评估
+            }
+            boolean risky = id % 3 != 0;
+            healths.add(health(id, risky ? 35 : 92, risky ? "CRITICAL" : "LOW"));
+            if (id % 100 == 1) {
+                continue; // 无故障预测
+            }
+            predictions.add(prediction(id, risky ? 0.8 : 0.05));
+            if (risky) {
+                qualifying.add(id);
+            }
+        }
+        when(equipmentMapper.findAllForHealth()).thenReturn(devices);
+        when(deviceHealthMapper.findLatestPerDevice(null)).thenReturn(healths);
+        when(faultPredictionMapper.findLatestPerDevice(null)).thenReturn(predictions);
+        when(equipmentSparePartMapper.findByEquipmentIds(anyList())).thenAnswer(inv -> {
+            List<Long> ids = inv.getArgument(0);
+            List<EquipmentSparePart> bom = new ArrayList<>();
+            for (Long id : ids) {
+                bom.add(bomLine(id, 10L, 2));
+            }
+            return bom;
+        });
+        when(sparePartMapper.findPricesByIds(anyList())).thenReturn(Collections.singletonList(part(10L, 120)));
+
+        int count = service.generateSuggestions(null);
+
+        assertEquals(qualifying.size(), count);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Long>> bomIds = ArgumentCaptor.forClass(List.class);
+        verify(equipmentSparePartMapper, atLeastOnce()).findByEquipmentIds(bomIds.capture());
+        Set<Long> requested = new HashSet<>();
+        bomIds.getAllValues().forEach(requested::addAll);
+        assertEquals(qualifying, requested);
+        verify(sparePartMapper, times(1)).findPricesByIds(anyList());
+        verify(deviceHealthMapper, never()).findLatestByDevice(any());
+        verify(faultPredictionMapper, never()).findLatestByDevice(any());
+        verify(equipmentSparePartMapper, never()).findByEquipmentId(any());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MaintenanceSuggestion>> captor = ArgumentCaptor.forClass(List.class);
+        verify(suggestionMapper, times(2)).insertBatch(captor.capture());
+        assertEquals(500, captor.getAllValues().get(0).size());
+        assertEquals(qualifying.size() - 500, captor.getAllValues().get(1).size());
+        verify(suggestionMapper, never()).insert(any());
+    }
+
+    @Test
+    @DisplayName("流水线按块生成：按块取快照、不查设备档案、仅为需建议设备加载 BOM，写入失败向调用方抛出")
+    void testChunkSuggestionsUseBulkSnapshot() {
+        List<Equipment> devices = new ArrayList<>();
+        List<DeviceHealth> healths = new ArrayList<>();
+        List<FaultPrediction> predictions = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            devices.add(equipment(id));
+            boolean risky = id % 4 == 0;
+            healths.add(health(id, risky ? 35 : 92, risky ? "CRITICAL" : "LOW"));
+            predictions.add(prediction(id, risky ? 0.8 : 0.05));
+        }
+        when(deviceHealthMapper.findLatestPerDevice(anyList())).thenReturn(healths);
+        when(faultPredictionMapper.findLatestPerDevice(anyList())).thenReturn(predictions);
+        when(equipmentSparePartMapper.findByEquipmentIds(anyList())).thenReturn(Collections.emptyList());
+
+        MaintenanceSuggestionService.SuggestionBatch batch = service.generateSuggestionsForDevices(devices);
+
+        assertEquals(5, batch.generated());
+        assertTrue(batch.failedDeviceIds().isEmpty());
+        verify(deviceHealthMapper, times(1)).findLatestPerDevice(anyList());
+        verify(faultPredictionMapper, times(1)).findLatestPerDevice(anyList());
+        verify(equipmentSparePartMapper).findByEquipmentIds(Arrays.asList(4L, 8L, 12L, 16L, 20L));
+        verify(equipmentMapper, never()).findByIds(anyList());
+        verify(deviceHealthMapper, never()).findLatestByDevice(any());
+        verify(suggestionMapper, times(1)).insertBatch(argThat(list -> list.size() == 5));
+
+        doThrow(new RuntimeException("db down")).when(suggestionMapper).insertBatch(anyList());
+        assertThrows(RuntimeException.class, () -> service.generateSuggestionsForDevices(devices));
+    }
+
+    @Test
+    @DisplayName("建议成本：按备件真实单价 × 数量计算，缺失单价按估算价，结果与单设备路径一致")
+    void testRealPriceCostMatchesSingleDevice() {
+        Equipment device = equipment(5L);
+        DeviceHealth h = health(5L, 30, "CRITICAL");
+        FaultPrediction p = prediction(5L, 0.9);
+        List<EquipmentSparePart> bom = Arrays.asList(bomLine(5L, 10L, 2), bomLine(5L, 11L, 1), bomLine(5L, 12L, null));
+        List<SparePart> prices = Collections.singletonList(part(10L, 80));
+
+        when(equipmentMapper.findByIds(anyList())).thenReturn(Collections.singletonList(device));
+        when(deviceHealthMapper.findLatestPerDevice(anyList())).thenReturn(Collections.singletonList(h));
+        when(faultPredictionMapper.findLatestPerDevice(anyList())).thenReturn(Collections.singletonList(p));
+        when(equipmentSparePartMapper.findByEquipmentIds(anyList())).thenReturn(bom);
+        when(sparePartMapper.findPricesByIds(anyList())).thenReturn(prices);
+        assertEquals(1, service.generateSuggestions(Collections.singletonList(5L)));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MaintenanceSuggestion>> captor = ArgumentCaptor.forClass(List.class);
+        verify(suggestionMapper).insertBatch(captor.capture());
+        MaintenanceSuggestion bulk = captor.getValue().get(0);
+        assertTrue(bulk.getRelatedSpareParts().contains("\"unitPrice\":80"));
+
+        // 单设备路径
+        when(deviceHealthMapper.findLatestByDevice(5L)).thenReturn(h);
+        when(faultPredictionMapper.findLatestByDevice(5L)).thenReturn(p);
+        when(equipmentSparePartMapper.findByEquipmentId(5L)).thenReturn(bom);
+        service.generateSingleDeviceSuggestion(device);
+        ArgumentCaptor<MaintenanceSuggestion> one = ArgumentCaptor.forClass(MaintenanceSuggestion.class);
+        verify(suggestionMapper).insert(one.capture());
+        assertEquals(bulk.getEstimatedCost(), one.getValue().getEstimatedCost());
+        assertEquals(bulk.getRelatedSpareParts(), one.getValue().getRelatedSpareParts());
+
+        // 仅提高备件 10 的单价（80 → 300），估算成本随之上升
+        reset(suggestionMapper);
+        when(sparePartMapper.findPricesByIds(anyList())).thenReturn(Collections.singletonList(part(10L, 300)));
+        service.generateSingleDeviceSuggestion(device);
+        verify(suggestionMapper).insert(one.capture());
+        assertTrue(one.getValue().getEstimatedCost().compareTo(bulk.getEstimatedCost()) > 0);
+    }
+
+    private static Equipment equipment(long id) {
+        Equipment e = new Equipment();
+        e.setId(id);
+        e.setCode("EQ" + id);
+        e.setImportanceLevel("IMPORTANT");
+        return e;
+    }
+
+    private static DeviceHealth health(long deviceId, double score, String risk) {
+        DeviceHealth h = new DeviceHealth();
+        h.setId(deviceId * 10);
+        h.setDeviceId(deviceId);
+        h.setHealthScore(BigDecimal.valueOf(score));
+        h.setRiskLevel(risk);
+        h.setRuntimeScore(BigDecimal.valueOf(50));
+        h.setFaultScore(BigDecimal.valueOf(40));
+        return h;
+    }
+
+    private static FaultPrediction prediction(long deviceId, double probability) {
+        FaultPrediction p = new FaultPrediction();
+        p.setDeviceId(deviceId);
+        p.setFailureProbability(BigDecimal.valueOf(probability));
+        p.setPredictedFaultCount(probability > 0.5 ? 3 : 0);
+        return p;
+    }
+
+    private static EquipmentSparePart bomLine(long deviceId, long partId, Integer quantity) {
+        EquipmentSparePart line = new EquipmentSparePart();
+        line.setEquipmentId(deviceId);
+        line.setSparePartId(partId);
+        line.setQuantity(quantity);
+        return line;
+    }
+
+    private static SparePart part(long id, int price) {
+        SparePart part = new SparePart();
+        part.setId(id);
+        part.setName("备件" + id);
+        part.setPrice(BigDecimal.valueOf(price));
+        return part;
+    }
+}
@@ -0,0 +1,118 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.dto.RequisitionOutboundDTO;
+import com.langdong.spare.entity.Requisition;
+import com.langdong.spare.entity.RequisitionItem;
+import com.langdong.spare.forecast.feature.ConsumptionSnapshotProvider;
+import com.langdong.spare.mapper.PartMonthlyConsumptionMapper;
+import com.langdong.spare.mapper.RequisitionItemMapper;
+import com.langdong.spare.mapper.RequisitionMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PartConsumptionRollupService 月度消耗汇总增量维护与对账单元测试
+ */
+public class PartConsumptionRollupServiceTest {
+
+    private PartMonthlyConsumptionMapper rollupMapper;
+    private ConsumptionSnapshotProvider snapshotProvider;
+    private PartConsumptionRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        rollupMapper = mock(PartMonthlyConsumptionMapper.class);
+        snapshotProvider = mock(ConsumptionSnapshotProvider.class);
+        service = new PartConsumptionRollupService();
+        ReflectionTestUtils.setField(service, "partMonthlyConsumptionMapper", rollupMapper);
+        ReflectionTestUtils.setField(service, "consumptionSnapshotProvider", snapshotProvider);
+    }
+
+    @Test
+    @DisplayName("出库增量：按审批月归集出库数量差额，重复出库只计差额，未审批或零差额不写入")
+    void testOutboundRecordsDeltaByApproveMonth() {
+        RequisitionMapper requisitionMapper = mock(RequisitionMapper.class);
+        RequisitionItemMapper itemMapper = mock(RequisitionItemMapper.class);
+        FifoOutboundService fifo = mock(FifoOutboundService.class);
+        RequisitionService requisitionService = new RequisitionService();
+        ReflectionTestUtils.setField(requisitionService, "requisitionMapper", requisitionMapper);
+        ReflectionTestUtils.setField(requisitionService, "requisitionItemMapper", itemMapper);
+        ReflectionTestUtils.setField(requisitionService, "fifoOutboundService", fifo);
+        ReflectionTestUtils.setField(requisitionService, "consumptionSnapshotProvider", snapshotProvider);
+        ReflectionTestUtils.setField(requisitionService, "consumptionRollupService", service);
+
+        Requisition req = new Requisition();
+        req.setId(1L);
+        req.setApproveTime(LocalDateTime.of(2026, 9, 30, 23, 50));
+        when(requisitionMapper.findById(1L)).thenReturn(req);
+        RequisitionItem fresh = item(11L, 101L, null);
+        RequisitionItem redo = item(12L, 102L, 5);
+        RequisitionItem same = item(13L, 103L, 2);
+        when(itemMapper.findByReqId(1L)).thenReturn(Arrays.asList(fresh, redo, same));
+        when(fifo.processFifoOutboundBatch(anyList()))
+                .thenAnswer(inv -> Collections.nCopies(((List<?>) inv.getArgument(0)).size(), "IN1[1件]"));
+
+        requisitionService.outbound(1L, outbound(new long[]{11, 12, 13}, new int[]{4, 3, 2}));
+
+        verify(rollupMapper).addQuantity(101L, "2026-09", 4);
+        verify(rollupMapper).addQuantity(102L, "2026-09", -2);
+        verify(rollupMapper, never()).addQuantity(eq(103L), anyString(), anyInt());
+        verify(snapshotProvider).invalidate();
+        verify(itemMapper, times(1)).findByReqId(1L);
+        verify(itemMapper, times(1)).updateOutboundBatch(anyList());
+
+        service.recordOutbound(101L, null, 3);
+        verify(rollupMapper, times(2)).addQuantity(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("对账：清理并按源表重算近 N 个月（含当月），回填重算全部月份，每次重算递增代次并使消耗快照失效")
+    void testReconcileAndBackfill() {
+        when(rollupMapper.rebuildFromMonth(any())).thenReturn(42);
+        String fromMonth = YearMonth.now().minusMonths(2).toString();
+
+        assertEquals(42, service.reconcile(3));
+        verify(rollupMapper).deleteFromMonth(fromMonth);
+        verify(rollupMapper).rebuildFromMonth(fromMonth);
+
+        assertEquals(42, service.backfill());
+        verify(rollupMapper).deleteFromMonth(null);
+        verify(rollupMapper).rebuildFromMonth(null);
+        verify(rollupMapper, times(2)).bumpRebuildVersion();
+        verify(snapshotProvider, times(2)).invalidate();
+    }
+
+    private static RequisitionItem item(long id, long sparePartId, Integer outQty) {
+        RequisitionItem item = new RequisitionItem();
+        item.setId(id);
+        item.setReqId(1L);
+        item.setSparePartId(sparePartId);
+        item.setOutQty(outQty);
+        return item;
+    }
+
+    private static RequisitionOutboundDTO outbound(long[] itemIds, int[] qtys) {
+        RequisitionOutboundDTO dto = new RequisitionOutboundDTO();
+        dto.setItems(new ArrayList<>());
+        for (int i = 0; i < itemIds.length; i++) {
+            RequisitionOutboundDTO.RequisitionOutboundItemDTO line = new RequisitionOutboundDTO.RequisitionOutboundItemDTO();
+            line.setItemId(itemIds[i]);
+            line.setOutQty(qtys[i]);
+            dto.getItems().add(line);
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,119 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.PhmWatermark;
+import com.langdong.spare.mapper.PhmWatermarkMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PhmChangeTracker 增量评估变更检测单元测试
+ */
+public class PhmChangeTrackerTest {
+
+    private PhmWatermarkMapper phmWatermarkMapper;
+    private HealthConfigRegistry healthConfigRegistry;
+    private PhmChangeTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        phmWatermarkMapper = mock(PhmWatermarkMapper.class);
+        healthConfigRegistry = mock(HealthConfigRegistry.class);
+        when(healthConfigRegistry.version()).thenReturn(42L);
+        tracker = new PhmChangeTracker();
+        ReflectionTestUtils.setField(tracker, "phmWatermarkMapper", phmWatermarkMapper);
+        ReflectionTestUtils.setField(tracker, "healthConfigRegistry", healthConfigRegistry);
+    }
+
+    @Test
+    @DisplayName("变更检测：特征摘要、工单、领用、配置版本、所在月份任一变化即重新评估")
+    void testDetectChanges() {
+        String month = YearMonth.now().toString();
+        when(phmWatermarkMapper.findCurrentInputs(12)).thenReturn(Arrays.asList(
+                input(1L, "2026-09", 100L, 7L, 3L),
+                input(2L, "2026-09", 101L, 7L, 3L),   // 当月特征原地更新
+                input(3L, "2026-09", 100L, 8L, 3L),   // 新工单
+                input(4L, "2026-09", 100L, 7L, 4L),   // 新领用单
+                input(5L, "2026-09", 100L, 7L, 3L),   // 配置版本变化
+                input(6L, "2026-09", 100L, 7L, 3L),   // 跨月
+                input(7L, null, null, null, null),    // 无水位记录
+                input(8L, null, null, null, null)));  // 无任何输入且水位一致
+        when(phmWatermarkMapper.findAll()).thenReturn(Arrays.asList(
+                saved(1L, "2026-09", 100L, 7L, 3L, 42L, month),
+                saved(2L, "2026-09", 100L, 7L, 3L, 42L, month),
+                saved(3L, "2026-09", 100L, 7L, 3L, 42L, month),
+                saved(4L, "2026-09", 100L, 7L, 3L, 42L, month),
+                saved(5L, "2026-09", 100L, 7L, 3L, 41L, month),
+                saved(6L, "2026-09", 100L, 7L, 3L, 42L, "2000-01"),
+                saved(8L, null, null, null, null, 42L, month)));
+
+        PhmChangeTracker.ChangeSet changes = tracker.detectChanges(false);
+
+        assertFalse(changes.isFullRun());
+        assertFalse(changes.isChanged(1L));
+        assertFalse(changes.isChanged(8L));
+        for (long id = 2; id <= 7; id++) {
+            assertTrue(changes.isChanged(id), "设备 " + id + " 应重新评估");
+        }
+        assertTrue(changes.isChanged(99L), "检测后新增的设备应重新评估");
+        assertEquals(42L, changes.watermarkOf(3L).getConfigVersion());
+        assertEquals(month, changes.watermarkOf(3L).getWindowMonth());
+    }
+
+    @Test
+    @DisplayName("强制全量：不读取已保存水位，所有设备均重新评估，当前水位仍可提交")
+    void testForceFull() {
+        when(phmWatermarkMapper.findCurrentInputs(12)).thenReturn(
+                Collections.singletonList(input(1L, "2026-09", 100L, 7L, 3L)));
+
+        PhmChangeTracker.ChangeSet changes = tracker.detectChanges(true);
+
+        assertTrue(changes.isFullRun());
+        assertTrue(changes.isChanged(1L));
+        assertNotNull(changes.watermarkOf(1L));
+        verify(phmWatermarkMapper, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("水位提交：按批写入，单批失败不影响其他批次")
+    void testCommitInChunks() {
+        List<PhmWatermark> watermarks = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) {
+            watermarks.add(input(id, null, null, null, null));
+        }
+        when(phmWatermarkMapper.upsertBatch(argThat(list -> list != null && list.size() == 200)))
+                .thenThrow(new RuntimeException("deadlock"));
+
+        assertEquals(1000, tracker.commit(watermarks));
+        verify(phmWatermarkMapper, times(3)).upsertBatch(anyList());
+    }
+
+    private static PhmWatermark input(Long deviceId, String featureMonth, Long digest, Long workOrderId, Long reqId) {
+        PhmWatermark w = new PhmWatermark();
+        w.setDeviceId(deviceId);
+        w.setFeatureMonth(featureMonth);
+        w.setFeatureDigest(digest);
+        w.setLastWorkOrderId(workOrderId);
+        w.setLastRequisitionId(reqId);
+        return w;
+    }
+
+    private static PhmWatermark saved(Long deviceId, String featureMonth, Long digest, Long workOrderId, Long reqId,
+                                      Long configVersion, String windowMonth) {
+        PhmWatermark w = input(deviceId, featureMonth, digest, workOrderId, reqId);
+        w.setConfigVersion(configVersion);
+        w.setWindowMonth(windowMonth);
+        return w;
+    }
+}
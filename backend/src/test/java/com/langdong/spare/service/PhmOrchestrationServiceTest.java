@@ -0,0 +1,228 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.DeviceHealth;
+import com.langdong.spare.entity.Equipment;
+import com.langdong.spare.entity.PhmWatermark;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PhmOrchestrationService 逐设备流水线单元测试
+ */
+public class PhmOrchestrationServiceTest {
+
+    private DeviceHealthService deviceHealthService;
+    private FaultPredictionService faultPredictionService;
+    private MaintenanceSuggestionService suggestionService;
+    private PhmChangeTracker changeTracker;
+    private PhmOrchestrationService service;
+
+    @BeforeEach
+    void setUp() {
+        deviceHealthService = mock(DeviceHealthService.class);
+        faultPredictionService = mock(FaultPredictionService.class);
+        suggestionService = mock(MaintenanceSuggestionService.class);
+        service = new PhmOrchestrationService();
+        ReflectionTestUtils.setField(service, "deviceHealthService", deviceHealthService);
+        ReflectionTestUtils.setField(service, "faultPredictionService", faultPredictionService);
+        ReflectionTestUtils.setField(service, "suggestionService", suggestionService);
+        when(suggestionService.generateSuggestionsForDevices(anyList()))
+                .thenReturn(new MaintenanceSuggestionService.SuggestionBatch(0, Collections.emptySet()));
+        changeTracker = mock(PhmChangeTracker.class);
+        when(changeTracker.detectChanges(anyBoolean())).thenReturn(PhmChangeTracker.ChangeSet.full());
+        ReflectionTestUtils.setField(service, "changeTracker", changeTracker);
+    }
+
+    @Test
+    @DisplayName("流水线：按块评估并一次写入健康记录，仅 HIGH/CRITICAL 设备进入故障预测，所有设备进入建议阶段，小队列背压下不丢任务")
+    void testPipelineRoutesDevicesThroughStages() {
+        ReflectionTestUtils.setField(service, "pipelineWorkers", 2);
+        ReflectionTestUtils.setField(service, "pipelineQueueCapacity", 1);
+        ReflectionTestUtils.setField(service, "pipelineChunkSize", 16);
+        String[] levels = {"LOW", "MEDIUM", "HIGH", "CRITICAL"};
+        DeviceHealthService.BulkHealthInputs inputs = inputsOf(200);
+        when(deviceHealthService.loadBulkInputs()).thenReturn(inputs);
+        when(deviceHealthService.evaluate(same(inputs), any())).thenAnswer(inv -> {
+            Equipment device = inv.getArgument(1);
+            if (device.getId() % 10 == 0) {
+                return null; // 无特征数据
+            }
+            if (device.getId() == 7) {
+                throw new RuntimeException("boom");
+            }
+            DeviceHealth h = new DeviceHealth();
+            h.setDeviceId(device.getId());
+            h.setRiskLevel(levels[(int) (device.getId() % 4)]);
+            return h;
+        });
+        List<Long> predictedIds = Collections.synchronizedList(new ArrayList<>());
+        when(faultPredictionService.predictDevices(anyList(), eq(90))).thenAnswer(inv -> {
+            List<Long> ids = inv.getArgument(0);
+            predictedIds.addAll(ids);
+            return ids.size();
+        });
+        when(suggestionService.generateSuggestionsForDevices(anyList())).thenAnswer(inv -> {
+            List<Equipment> devices = inv.getArgument(0);
+            int generated = (int) devices.stream().filter(d -> d.getId() % 2 == 0).count();
+            return new MaintenanceSuggestionService.SuggestionBatch(generated, Collections.emptySet());
+        });
+
+        PhmOrchestrationService.PipelineSummary summary = service.executePipeline(true);
+
+        long expectedPredictions = 0;
+        for (long id = 1; id <= 200; id++) {
+            if (id % 10 != 0 && id != 7 && id % 4 >= 2) {
+                expectedPredictions++;
+            }
+        }
+        assertEquals(200 - 20 - 1, summary.health.succeeded());
+        assertEquals(200, summary.health.calls()); // 成功 179 + 跳过 20 + 失败 1
+        verify(deviceHealthService, times(13)).saveEvaluated(anyList()); // 200 台按 16 台一块
+        assertEquals(expectedPredictions, summary.prediction.succeeded());
+        assertEquals(expectedPredictions, predictedIds.size());
+        assertFalse(predictedIds.contains(7L));
+        verify(faultPredictionService, atMost(13)).predictDevices(anyList(), eq(90)); // 每块至多一次
+        verify(faultPredictionService, never()).predictSingleDevice(anyLong(), anyInt());
+        verify(suggestionService, times(13)).generateSuggestionsForDevices(anyList()); // 每块一次
+        verify(suggestionService, never()).generateSingleDeviceSuggestion(any());
+        assertEquals(100, summary.suggestion.succeeded());
+        assertEquals(200, summary.suggestion.calls());
+    }
+
+    @Test
+    @DisplayName("流水线：运行中重复触发被单飞保护跳过")
+    void testSingleFlightGuard() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deviceHealthService.loadBulkInputs()).thenAnswer(inv -> {
+            entered.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return inputsOf(3);
+        });
+
+        Thread first = new Thread(service::runPhmFlow);
+        first.start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        assertTrue(service.isFlowRunning());
+
+        service.runPhmFlow();
+        release.countDown();
+        first.join(10_000);
+
+        verify(deviceHealthService, times(1)).loadBulkInputs();
+        verify(suggestionService, times(1)).generateSuggestionsForDevices(argThat(list -> list.size() == 3));
+        assertFalse(service.isFlowRunning());
+    }
+
+    @Test
+    @DisplayName("增量模式：仅输入变化的设备进入流水线，其余沿用上次结果，仅无失败设备推进水位")
+    void testIncrementalRunSkipsUnchangedDevices() {
+        DeviceHealthService.BulkHealthInputs inputs = inputsOf(10);
+        when(deviceHealthService.loadBulkInputs()).thenReturn(inputs);
+        when(deviceHealthService.evaluate(same(inputs), any())).thenAnswer(inv -> {
+            DeviceHealth h = new DeviceHealth();
+            h.setDeviceId(((Equipment) inv.getArgument(1)).getId());
+            h.setRiskLevel("LOW");
+            return h;
+        });
+        when(suggestionService.generateSuggestionsForDevices(anyList())).thenAnswer(inv -> {
+            List<Equipment> devices = inv.getArgument(0);
+            boolean hasFive = devices.stream().anyMatch(d -> d.getId() == 5L);
+            return new MaintenanceSuggestionService.SuggestionBatch(0,
+                    hasFive ? Collections.singleton(5L) : Collections.emptySet());
+        });
+        when(deviceHealthService.carryForwardHealth(anyList())).thenReturn(8);
+        when(changeTracker.commit(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        Map<Long, PhmWatermark> current = new HashMap<>();
+        for (long id = 1; id <= 10; id++) {
+            PhmWatermark w = new PhmWatermark();
+            w.setDeviceId(id);
+            current.put(id, w);
+        }
+        when(changeTracker.detectChanges(false)).thenReturn(
+                new PhmChangeTracker.ChangeSet(current, new HashSet<>(Arrays.asList(2L, 5L)), false));
+
+        PhmOrchestrationService.PipelineSummary summary = service.executePipeline(false);
+
+        assertFalse(summary.fullRun);
+        assertEquals(2, summary.evaluatedDevices);
+        assertEquals(8, summary.skippedDevices);
+        assertEquals(8, summary.carriedHealth);
+        verify(deviceHealthService, times(2)).evaluate(same(inputs), any());
+        verify(deviceHealthService, times(1)).saveEvaluated(argThat(list -> list.size() == 2));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Long>> carried = ArgumentCaptor.forClass(List.class);
+        verify(deviceHealthService).carryForwardHealth(carried.capture());
+        assertEquals(Arrays.asList(1L, 3L, 4L, 6L, 7L, 8L, 9L, 10L), carried.getValue());
+        verify(faultPredictionService).carryForwardPredictions(carried.getValue(), 90);
+
+        // 设备 5 建议阶段失败：不推进水位，下次重新评估
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PhmWatermark>> committed = ArgumentCaptor.forClass(List.class);
+        verify(changeTracker).commit(committed.capture());
+        assertEquals(1, committed.getValue().size());
+        assertSame(current.get(2L), committed.getValue().get(0));
+        assertEquals(1, summary.watermarksSaved);
+    }
+
+    @Test
+    @DisplayName("流水线：整块健康记录写入失败时该块设备全部记为失败，不进入预测，不推进水位")
+    void testHealthWriteFailureFailsChunk() {
+        ReflectionTestUtils.setField(service, "pipelineChunkSize", 5);
+        DeviceHealthService.BulkHealthInputs inputs = inputsOf(10);
+        when(deviceHealthService.loadBulkInputs()).thenReturn(inputs);
+        when(deviceHealthService.evaluate(same(inputs), any())).thenAnswer(inv -> {
+            DeviceHealth h = new DeviceHealth();
+            h.setDeviceId(((Equipment) inv.getArgument(1)).getId());
+            h.setRiskLevel("CRITICAL");
+            return h;
+        });
+        when(deviceHealthService.saveEvaluated(argThat(list -> list != null && !list.isEmpty()
+                && list.get(0).getDeviceId() == 1L))).thenThrow(new RuntimeException("deadlock"));
+        when(changeTracker.commit(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        Map<Long, PhmWatermark> current = new HashMap<>();
+        for (long id = 1; id <= 10; id++) {
+            PhmWatermark w = new PhmWatermark();
+            w.setDeviceId(id);
+            current.put(id, w);
+        }
+        when(changeTracker.detectChanges(true)).thenReturn(new PhmChangeTracker.ChangeSet(current, Collections.emptySet(), true));
+
+        PhmOrchestrationService.PipelineSummary summary = service.executePipeline(true);
+
+        assertEquals(5, summary.health.succeeded());
+        assertEquals(10, summary.health.calls());
+        assertEquals(5, summary.watermarksSaved);
+    }
+
+    private static DeviceHealthService.BulkHealthInputs inputsOf(int devices) {
+        List<Equipment> list = new ArrayList<>();
+        for (long id = 1; id <= devices; id++) {
+            Equipment e = new Equipment();
+            e.setId(id);
+            e.setCode("EQ" + id);
+            list.add(e);
+        }
+        return new DeviceHealthService.BulkHealthInputs(list, Collections.emptyMap(), Collections.emptyMap(), LocalDate.now());
+    }
+}
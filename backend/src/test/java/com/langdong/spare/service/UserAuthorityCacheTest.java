@@ -0,0 +1,106 @@
+package com.langdong.spare.service;
+
+import com.langdong.spare.entity.Menu;
+import com.langdong.spare.entity.User;
+import com.langdong.spare.mapper.MenuMapper;
+import com.langdong.spare.mapper.UserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserAuthorityCache 登录用户权限缓存单元测试
+ */
+public class UserAuthorityCacheTest {
+
+    private UserMapper userMapper;
+    private MenuMapper menuMapper;
+    private UserAuthorityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        userMapper = mock(UserMapper.class);
+        menuMapper = mock(MenuMapper.class);
+        cache = new UserAuthorityCache();
+        ReflectionTestUtils.setField(cache, "userMapper", userMapper);
+        ReflectionTestUtils.setField(cache, "menuMapper", menuMapper);
+        when(userMapper.findByUsername("alice")).thenReturn(user(1L, "alice", 1));
+        when(menuMapper.findMenusByUserId(1L)).thenReturn(Arrays.asList(menu("sys:user:list"), menu(null), menu("")));
+    }
+
+    @Test
+    @DisplayName("稳态命中：首次加载后重复鉴权不访问数据库，权限过滤空标识")
+    void testSteadyStateHasNoQueries() {
+        UserAuthorityCache.AuthorityEntry first = cache.resolve("alice");
+        for (int i = 0; i < 100; i++) {
+            assertSame(first, cache.resolve("alice"));
+        }
+
+        assertTrue(first.enabled());
+        assertEquals(List.of(new SimpleGrantedAuthority("sys:user:list")), first.authorities());
+        verify(userMapper, times(1)).findByUsername("alice");
+        verify(menuMapper, times(1)).findMenusByUserId(1L);
+        assertEquals(100L, cache.stats().get("hits"));
+        assertNull(cache.resolve("nobody"));
+    }
+
+    @Test
+    @DisplayName("失效：用户变更在事务提交后失效并重新加载；停用用户不查询菜单；TTL 为 0 时不缓存")
+    void testInvalidation() {
+        cache.resolve("alice");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidateUser(1L);
+            cache.resolve("alice"); // 未提交：仍命中旧条目
+            verify(userMapper, times(1)).findByUsername("alice");
+
+            when(userMapper.findByUsername("alice")).thenReturn(user(1L, "alice", 0));
+            for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+                sync.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        UserAuthorityCache.AuthorityEntry disabled = cache.resolve("alice");
+        assertFalse(disabled.enabled());
+        assertTrue(disabled.authorities().isEmpty());
+        verify(menuMapper, times(1)).findMenusByUserId(anyLong());
+
+        when(userMapper.findByUsername("alice")).thenReturn(user(1L, "alice", 1));
+        cache.invalidateAll();
+        assertTrue(cache.resolve("alice").enabled());
+        assertEquals(2L, cache.stats().get("invalidations"));
+
+        ReflectionTestUtils.setField(cache, "ttlMs", 0L);
+        cache.invalidateAll();
+        cache.resolve("alice");
+        cache.resolve("alice");
+        verify(userMapper, times(5)).findByUsername("alice");
+    }
+
+    private static User user(Long id, String username, Integer status) {
+        User u = new User();
+        u.setId(id);
+        u.setUsername(username);
+        u.setStatus(status);
+        return u;
+    }
+
+    private static Menu menu(String permission) {
+        Menu m = new Menu();
+        m.setPermission(permission);
+        return m;
+    }
+}
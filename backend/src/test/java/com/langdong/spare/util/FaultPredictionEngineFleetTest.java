@@ -0,0 +1,128 @@
+package com.langdong.spare.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FaultPredictionEngine 设备群批量评分测试（与逐设备 List 接口结果对照）
+ */
+public class FaultPredictionEngineFleetTest {
+
+    private static final int MONTHS = 12;
+    private static final int PREDICTION_DAYS = 90;
+    private static final String[] FEATURES = {"runHours", "faultCount", "mtbf", "deterioration"};
+
+    @Test
+    @DisplayName("设备群评分：与逐设备 List 接口结果一致（含健康分缺月、历史不足设备）")
+    void testScoreFleetMatchesListPath() {
+        int devices = 200;
+        FaultPredictionEngine.FleetMatrix matrix = randomFleet(devices, 7L);
+        FaultPredictionEngine.FleetScores scores = new FaultPredictionEngine.FleetScores(devices);
+
+        int scored = FaultPredictionEngine.scoreFleet(matrix, devices, PREDICTION_DAYS, scores);
+
+        int expectedScored = 0;
+        for (int d = 0; d < devices; d++) {
+            if (matrix.monthCounts[d] < 6) {
+                assertFalse(scores.isScored(d));
+                continue;
+            }
+            expectedScored++;
+            ListResult ref = scoreByLists(matrix, d);
+            assertEquals(ref.probability, scores.probability[d], 1e-12);
+            assertEquals(ref.expectedFaults, scores.expectedFaults[d]);
+            assertEquals(ref.lower, scores.faultCountLower[d]);
+            assertEquals(ref.upper, scores.faultCountUpper[d]);
+            for (int k = 0; k < FEATURES.length; k++) {
+                assertEquals(ref.importance.get(FEATURES[k]),
+                        scores.featureShares[d * FaultPredictionEngine.FEATURE_COUNT + k], 1e-12);
+            }
+        }
+        assertEquals(expectedScored, scored);
+    }
+
+    @Test
+    @DisplayName("设备群评分：输入输出可跨批次复用，容量不足时抛出异常")
+    void testReuseAndCapacity() {
+        FaultPredictionEngine.FleetMatrix matrix = randomFleet(50, 11L);
+        FaultPredictionEngine.FleetScores scores = new FaultPredictionEngine.FleetScores(50);
+        FaultPredictionEngine.scoreFleet(matrix, 50, PREDICTION_DAYS, scores);
+        double first = scores.probability[3];
+
+        // 覆盖第 0 行为历史不足后仅评分前 10 行，第 3 行结果不变
+        matrix.monthCounts[0] = 2;
+        FaultPredictionEngine.scoreFleet(matrix, 10, PREDICTION_DAYS, scores);
+        assertFalse(scores.isScored(0));
+        assertEquals(first, scores.probability[3], 0.0);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> FaultPredictionEngine.scoreFleet(matrix, 51, PREDICTION_DAYS, scores));
+    }
+
+    // ================================================================
+    // 参照实现：现有逐设备 List 接口
+    // ================================================================
+
+    private static final class ListResult {
+        double probability;
+        int expectedFaults;
+        int lower;
+        int upper;
+        Map<String, Double> importance;
+    }
+
+    private static ListResult scoreByLists(FaultPredictionEngine.FleetMatrix m, int d) {
+        int n = m.monthCounts[d];
+        int base = d * m.stride;
+        List<Double> runHours = new ArrayList<>();
+        List<Integer> faults = new ArrayList<>();
+        List<Double> mtbf = new ArrayList<>();
+        List<Double> health = new ArrayList<>();
+        for (int i = base; i < base + n; i++) {
+            runHours.add(m.runHours[i]);
+            faults.add(m.faultCounts[i]);
+            mtbf.add(m.mtbf[i]);
+            if (!Double.isNaN(m.healthScores[i])) {
+                health.add(m.healthScores[i]);
+            }
+        }
+        double avgRunHours = FaultPredictionEngine.calcAvgRunHours(runHours);
+        double freq = FaultPredictionEngine.calcFaultFrequency(faults);
+        double avgMtbf = FaultPredictionEngine.calcAvgMTBF(mtbf);
+        double deterioration = FaultPredictionEngine.calcDeteriorationRate(health);
+
+        ListResult r = new ListResult();
+        r.probability = FaultPredictionEngine.predictFailureProbability(avgRunHours, freq, avgMtbf, deterioration);
+        r.expectedFaults = FaultPredictionEngine.predictExpectedFaults(freq, PREDICTION_DAYS);
+        r.lower = FaultPredictionEngine.calcConfidenceIntervalLower(r.expectedFaults);
+        r.upper = FaultPredictionEngine.calcConfidenceIntervalUpper(r.expectedFaults);
+        r.importance = FaultPredictionEngine.calcFeatureImportance(avgRunHours, freq, avgMtbf, deterioration);
+        return r;
+    }
+
+    private static FaultPredictionEngine.FleetMatrix randomFleet(int devices, long seed) {
+        SplittableRandom rng = new SplittableRandom(seed);
+        FaultPredictionEngine.FleetMatrix m = new FaultPredictionEngine.FleetMatrix(devices, MONTHS);
+        for (int d = 0; d < devices; d++) {
+            int n = d % 17 == 0 ? 4 : 6 + rng.nextInt(MONTHS - 5);
+            int base = d * MONTHS;
+            double health = 60 + rng.nextDouble() * 40;
+            for (int i = 0; i < n; i++) {
+                m.runHours[base + i] = rng.nextDouble() * 720;
+                m.faultCounts[base + i] = rng.nextInt(5);
+                m.mtbf[base + i] = rng.nextInt(4) == 0 ? 9999.0 : 50 + rng.nextDouble() * 1500;
+                health -= rng.nextDouble() * 4;
+                m.healthScores[base + i] = rng.nextInt(6) == 0 ? Double.NaN : health;
+            }
+            m.monthCounts[d] = n;
+        }
+        return m;
+    }
+}
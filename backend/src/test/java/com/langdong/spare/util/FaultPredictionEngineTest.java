@@ -451,4 +451,48 @@ public class FaultPredictionEngineTest {
         assertTrue(failureProbability < 0.3, "故障概率应<0.3（低风险）");
         assertTrue(expectedFaults <= 1, "预期故障次数应<=1");
     }
+
+    // ================================================================
+    // 基本类型数组版本测试
+    // ================================================================
+
+    @Test
+    public void testPrimitiveOverloads_MatchListVersions() {
+        List<Double> runHours = Arrays.asList(600.0, 650.0, 680.0, 700.0, 710.0, 715.0, 500.5);
+        List<Integer> faultCounts = Arrays.asList(2, 3, 4, 5, 6, 7, 0);
+        List<Double> mtbfValues = Arrays.asList(300.0, 9999.0, 200.0, 180.0, 0.0, 150.0, 120.0);
+        List<Double> healthScores = Arrays.asList(80.0, 75.0, 70.0, 60.0, 50.0, 40.0, 35.0);
+
+        double[] rh = runHours.stream().mapToDouble(Double::doubleValue).toArray();
+        int[] fc = faultCounts.stream().mapToInt(Integer::intValue).toArray();
+        double[] mt = mtbfValues.stream().mapToDouble(Double::doubleValue).toArray();
+        double[] hs = healthScores.stream().mapToDouble(Double::doubleValue).toArray();
+        int n = rh.length;
+
+        assertEquals(FaultPredictionEngine.calcAvgRunHours(runHours), FaultPredictionEngine.calcAvgRunHours(rh, n), 1e-9);
+        assertEquals(FaultPredictionEngine.calcFaultFrequency(faultCounts), FaultPredictionEngine.calcFaultFrequency(fc, n), 0.0);
+        assertEquals(FaultPredictionEngine.calcAvgMTBF(mtbfValues), FaultPredictionEngine.calcAvgMTBF(mt, n), 1e-9);
+        assertEquals(FaultPredictionEngine.calcDeteriorationRate(healthScores), FaultPredictionEngine.calcDeteriorationRate(hs, n), 0.0);
+
+        // 只取前 n 个元素
+        assertEquals(0.0, FaultPredictionEngine.calcDeteriorationRate(hs, 5), 0.0);
+        assertEquals(9999.0, FaultPredictionEngine.calcAvgMTBF(new double[]{9999.0, 0.0, 150.0}, 2), 0.0);
+        assertEquals(0.0, FaultPredictionEngine.calcAvgRunHours(rh, 0), 0.0);
+    }
+
+    @Test
+    public void testFeatureImportanceArray_MatchesMapAndJson() {
+        double[] out = new double[FaultPredictionEngine.FEATURE_COUNT + 1];
+        FaultPredictionEngine.calcFeatureImportance(650.0, 3.5, 220.0, 0.3, out, 1);
+        Map<String, Double> map = FaultPredictionEngine.calcFeatureImportance(650.0, 3.5, 220.0, 0.3);
+
+        assertEquals(map.get("runHours"), out[1], 0.0);
+        assertEquals(map.get("faultCount"), out[2], 0.0);
+        assertEquals(map.get("mtbf"), out[3], 0.0);
+        assertEquals(map.get("deterioration"), out[4], 0.0);
+
+        String json = FaultPredictionEngine.featureImportanceJson(out, 1);
+        assertEquals("{\"runHours\":" + out[1] + ",\"faultCount\":" + out[2]
+                + ",\"mtbf\":" + out[3] + ",\"deterioration\":" + out[4] + "}", json);
+    }
 }
@@ -0,0 +1,29 @@
+-- ================================================================
+-- 共享消耗快照 - 数据库迁移脚本
+-- 说明：findConsumptionWatermark 判断消耗历史是否变化（汇总表部分已改为版本计数，见 consumption_watermark_version_migration.sql），
+--       水位读取 part_monthly_consumption（索引见 part_monthly_consumption_migration.sql）与 spare_part，
+--       为 spare_part 补充索引使水位查询走索引而非全表扫描
+-- ================================================================
+
+USE spare_db;
+
+ALTER TABLE `spare_part`           ADD INDEX `idx_updated_at` (`updated_at`);
+
+-- 水位已不再读取领用单/领用明细：若此前执行过旧版本脚本，删除其 updated_at 索引，避免每次出库的额外写入开销
+SET @exists = (
+    SELECT COUNT(*) FROM information_schema.STATISTICS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'biz_requisition' AND INDEX_NAME = 'idx_updated_at'
+);
+SET @sql = IF(@exists > 0, 'ALTER TABLE `biz_requisition` DROP INDEX `idx_updated_at`', 'SELECT 1');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @exists = (
+    SELECT COUNT(*) FROM information_schema.STATISTICS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'biz_requisition_item' AND INDEX_NAME = 'idx_updated_at'
+);
+SET @sql = IF(@exists > 0, 'ALTER TABLE `biz_requisition_item` DROP INDEX `idx_updated_at`', 'SELECT 1');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,29 @@
+-- ================================================================
+-- 消耗水位版本 - 数据库迁移脚本
+-- 说明：findConsumptionWatermark 原以 MAX(updated_at)（秒级）+ COUNT(*) 判断汇总表是否变化，
+--       同一秒内对已有行的 ON DUPLICATE KEY UPDATE 累加不改变二者，快照会漏掉这些出库。
+--       改为：每行增加 version，addQuantity 在同一语句内 +1；对账/回填删除重写后递增重算代次。
+--       水位 = 重算代次 + 行数 + SUM(version)，随每次写入严格变化。
+--       须在 part_monthly_consumption_migration.sql 之后执行，可重复执行。
+-- ================================================================
+
+USE spare_db;
+
+SET @exists = (
+    SELECT COUNT(*) FROM information_schema.COLUMNS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'part_monthly_consumption' AND COLUMN_NAME = 'version'
+);
+SET @sql = IF(@exists = 0,
+    'ALTER TABLE `part_monthly_consumption` ADD COLUMN `version` BIGINT NOT NULL DEFAULT 0 COMMENT ''行版本（每次增量累加 +1，用于消耗水位）'' AFTER `qty`',
+    'SELECT 1');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS `part_monthly_consumption_version` (
+  `id` TINYINT NOT NULL COMMENT '固定为 1',
+  `rebuild_version` BIGINT NOT NULL DEFAULT 0 COMMENT '重算代次（对账/回填每次 +1）',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='备件月度消耗汇总重算代次（消耗水位）';
+
+INSERT IGNORE INTO `part_monthly_consumption_version` (id, rebuild_version) VALUES (1, 0);
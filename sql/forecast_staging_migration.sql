@@ -0,0 +1,16 @@
+-- ================================================================
+-- 月度重算结果暂存表 - 数据库迁移脚本
+-- 说明：必须执行。forecast.persist.mode 默认 STAGING，预测结果与分类结果先分批写入暂存表，
+--       全部备件完成后在同一事务内删除正式表目标月旧结果并整体搬入，
+--       正式表行锁只在最后的切换阶段持有。
+--       暂存表结构与正式表一致（CREATE TABLE LIKE），须在 forecast_m8_complete_schema.sql 之后执行。
+--       未执行本脚本的环境须显式配置 forecast.persist.mode = DIRECT，否则月度重算写入失败。
+-- ================================================================
+
+USE spare_db;
+
+CREATE TABLE IF NOT EXISTS `ai_forecast_result_staging` LIKE `ai_forecast_result`;
+ALTER TABLE `ai_forecast_result_staging` COMMENT = 'AI需求预测结果暂存表（STAGING 落库模式）';
+
+CREATE TABLE IF NOT EXISTS `biz_part_classify_staging` LIKE `biz_part_classify`;
+ALTER TABLE `biz_part_classify_staging` COMMENT = '备件分类结果暂存表（STAGING 落库模式）';
@@ -0,0 +1,35 @@
+-- ================================================================
+-- 备件月度消耗汇总表 - 数据库迁移脚本
+-- 说明：按 (备件, 月份) 预聚合已出库领用明细的出库数量，出库时增量维护，
+--       每日对账任务按源表重算近期月份；预测/分类按月份区间走主键范围扫描，
+--       不再对领用明细全量联表 + DATE_FORMAT 分组
+-- 口径：与 PartMonthlyConsumptionMapper.rebuildFromMonth 一致——领用单状态 OUTBOUND/INSTALLED、
+--       out_qty > 0，按审批时间 approve_time 所在月份归集
+-- ================================================================
+
+USE spare_db;
+
+CREATE TABLE IF NOT EXISTS `part_monthly_consumption` (
+  `spare_part_id` BIGINT NOT NULL COMMENT '备件ID（关联spare_part.id）',
+  `stat_month` CHAR(7) NOT NULL COMMENT '统计月份（yyyy-MM，领用单审批时间所在月）',
+  `qty` INT NOT NULL DEFAULT 0 COMMENT '当月出库数量合计',
+  `version` BIGINT NOT NULL DEFAULT 0 COMMENT '行版本（每次增量累加 +1，用于消耗水位）',
+  `updated_at` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`spare_part_id`, `stat_month`),
+  KEY `idx_stat_month` (`stat_month`),
+  KEY `idx_updated_at` (`updated_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='备件月度消耗汇总（出库增量维护）';
+
+-- 历史数据回填（幂等：重复执行按源表覆盖）
+INSERT INTO `part_monthly_consumption` (spare_part_id, stat_month, qty)
+SELECT ri.spare_part_id,
+       DATE_FORMAT(r.approve_time, '%Y-%m'),
+       CAST(SUM(ri.out_qty) AS SIGNED)
+FROM biz_requisition_item ri
+INNER JOIN biz_requisition r ON ri.req_id = r.id
+WHERE r.req_status IN ('OUTBOUND', 'INSTALLED')
+  AND ri.out_qty IS NOT NULL
+  AND ri.out_qty > 0
+  AND r.approve_time IS NOT NULL
+GROUP BY ri.spare_part_id, DATE_FORMAT(r.approve_time, '%Y-%m')
+ON DUPLICATE KEY UPDATE qty = VALUES(qty);
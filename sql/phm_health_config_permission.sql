@@ -0,0 +1,20 @@
+-- ================================================================
+-- PHM 健康配置维护权限 - 数据库迁移脚本
+-- 说明：健康配置（风险阈值、评分权重）的新增/修改/删除改由独立按钮权限 phm:health:config 控制，
+--       不再复用触发批量评估的 phm:health:evaluate
+-- 执行前提：已执行 phm_module.sql
+-- ================================================================
+
+USE spare_db;
+
+-- 在「设备健康监控」菜单下新增按钮权限（不指定ID，已存在则跳过）
+INSERT INTO menu (parent_id, name, path, component, permission, type, icon, sort)
+SELECT m.id, '健康配置维护(按钮)', NULL, NULL, 'phm:health:config', 3, NULL, 2
+FROM menu m
+WHERE m.permission = 'phm:health:view' AND m.type = 2
+  AND NOT EXISTS (SELECT 1 FROM (SELECT id FROM menu WHERE permission = 'phm:health:config') t)
+LIMIT 1;
+
+-- 授权给管理员角色（role_id=1）
+INSERT IGNORE INTO role_menu (role_id, menu_id)
+SELECT 1, id FROM menu WHERE permission = 'phm:health:config';
@@ -0,0 +1,22 @@
+-- ================================================================
+-- PHM 增量评估 - 数据库迁移脚本
+-- 说明：新增设备输入水位表，记录每台设备上次成功评估时消费到的输入位置，
+--       每日流程仅对输入发生变化的设备重新评估，其余设备沿用上次结果
+-- ================================================================
+
+USE spare_db;
+
+CREATE TABLE IF NOT EXISTS `ai_phm_watermark` (
+  `device_id` BIGINT NOT NULL COMMENT '设备ID（关联equipment.id）',
+  `feature_month` VARCHAR(7) COMMENT '已消费的最新特征月份（yyyy-MM）',
+  `feature_digest` BIGINT COMMENT '回看窗口内特征行摘要（CRC32，用于识别当月特征原地更新）',
+  `last_work_order_id` BIGINT COMMENT '已消费的最大工单ID',
+  `last_requisition_id` BIGINT COMMENT '已消费的最大领用单ID',
+  `config_version` BIGINT COMMENT '评估时的健康配置版本',
+  `window_month` VARCHAR(7) COMMENT '评估时所在月份（跨月后回看窗口变化，需重新评估）',
+  `updated_at` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`device_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='PHM设备输入水位（增量评估）';
+
+-- 水位计算按设备聚合工单与领用单，补充设备维度索引
+ALTER TABLE `biz_requisition` ADD INDEX `idx_device_id` (`device_id`);